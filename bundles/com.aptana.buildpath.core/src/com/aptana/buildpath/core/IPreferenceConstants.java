@@ -0,0 +1,23 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.buildpath.core;
+
+public interface IPreferenceConstants
+{
+	/**
+	 * Boolean preference controlling whether the unified builder runs thread-safe build participants on a pool of
+	 * worker threads. Defaults to true; set to false to build every file on the build thread.
+	 */
+	public static final String PARALLEL_BUILD = "PARALLEL_BUILD"; //$NON-NLS-1$
+
+	/**
+	 * Integer preference for the number of worker threads used by parallel builds. Values <= 0 (the default) use one
+	 * thread per available processor.
+	 */
+	public static final String BUILD_THREADS = "BUILD_THREADS"; //$NON-NLS-1$
+}
@@ -71,9 +71,11 @@ public abstract class AbstractBuildParticipant implements IBuildParticipant, IEx
 	private static final String NAME = "name"; //$NON-NLS-1$
 	private static final String ID = "id"; //$NON-NLS-1$
 	private static final String ATTR_PRIORITY = "priority"; //$NON-NLS-1$
+	private static final String ATTR_THREAD_SAFE = "threadSafe"; //$NON-NLS-1$
 	public static final int DEFAULT_PRIORITY = 50;
 
 	private int fPriority = DEFAULT_PRIORITY;
+	private boolean fThreadSafe;
 	private Set<IContentType> contentTypes = Collections.emptySet();
 	private String fId;
 	private String fName;
@@ -106,6 +108,23 @@ public abstract class AbstractBuildParticipant implements IBuildParticipant, IEx
 		return fId;
 	}
 
+	/**
+	 * Can {@link #buildFile(BuildContext, IProgressMonitor)} be called concurrently for different files? Thread-safe
+	 * participants are run on the builder's worker threads during parallel builds, so they must not keep per-file state
+	 * in fields and must not acquire workspace scheduling rules. All other participants are called from the build
+	 * thread, one file at a time.
+	 * <p>
+	 * Participants are not thread-safe unless they declare it through the "threadSafe" attribute of their extension.
+	 * Participants that don't extend this class are never run concurrently.
+	 * </p>
+	 * 
+	 * @return
+	 */
+	public boolean isThreadSafe()
+	{
+		return fThreadSafe;
+	}
+
 	/**
 	 * By default participants are not 'required'. We override this for many of our own builtin ones that perform
 	 * indexing/task detection, etc.
@@ -376,6 +395,7 @@ public abstract class AbstractBuildParticipant implements IBuildParticipant, IEx
 						"Unable to parse priority value ({0}) as an integer, defaulting to 50.", rawPriority), e); //$NON-NLS-1$
 			}
 		}
+		this.fThreadSafe = Boolean.valueOf(config.getAttribute(ATTR_THREAD_SAFE));
 		this.fId = config.getAttribute(ID);
 		this.fName = config.getAttribute(NAME);
 		this.contributor = config.getContributor().getName();
@@ -111,6 +111,7 @@ public class ReconcileContext extends BuildContext
 		}
 	}
 
+	@SuppressWarnings("sync-override")
 	@Override
 	public String getContentType() throws CoreException
 	{
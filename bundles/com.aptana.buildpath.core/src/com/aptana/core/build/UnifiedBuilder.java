@@ -15,6 +15,12 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.core.filesystem.EFS;
 import org.eclipse.core.filesystem.IFileStore;
@@ -33,12 +39,16 @@ import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.preferences.IPreferencesService;
 
 import com.aptana.buildpath.core.BuildPathCorePlugin;
 import com.aptana.buildpath.core.BuildPathManager;
 import com.aptana.buildpath.core.IBuildPathEntry;
+import com.aptana.buildpath.core.IPreferenceConstants;
 import com.aptana.core.CorePlugin;
 import com.aptana.core.IDebugScopes;
 import com.aptana.core.IFilter;
@@ -63,8 +73,22 @@ public class UnifiedBuilder extends IncrementalProjectBuilder
 {
 
 	public static final String ID = "com.aptana.ide.core.unifiedBuilder"; //$NON-NLS-1$
+
+	/**
+	 * Number of files handed to the worker threads at once during a parallel build. Markers are updated once per
+	 * chunk.
+	 */
+	private static final int PARALLEL_CHUNK_SIZE = 64;
+
 	private boolean traceParticipantsEnabled = false;
 
+	/**
+	 * Number of files built and of parses their build contexts performed during the current build, reported when trace
+	 * logging is on.
+	 */
+	private final AtomicInteger builtFileCount = new AtomicInteger();
+	private final AtomicInteger parseCount = new AtomicInteger();
+
 	public UnifiedBuilder()
 	{
 	}
@@ -155,6 +179,8 @@ public class UnifiedBuilder extends IncrementalProjectBuilder
 		IProject project = getProjectHandle();
 		String projectName = project.getName();
 		long startTime = System.nanoTime();
+		builtFileCount.set(0);
+		parseCount.set(0);
 
 		SubMonitor sub = SubMonitor.convert(monitor, 100);
 
@@ -204,6 +230,8 @@ public class UnifiedBuilder extends IncrementalProjectBuilder
 		{
 			double endTime = ((double) System.nanoTime() - startTime) / 1000000;
 			logTrace(MessageFormat.format(Messages.UnifiedBuilder_FinishedBuild, projectName, endTime));
+			logTrace(MessageFormat.format(Messages.UnifiedBuilder_ParseStatistics, builtFileCount.get(),
+					parseCount.get(), projectName));
 		}
 		return null;
 	}
@@ -507,6 +535,13 @@ public class UnifiedBuilder extends IncrementalProjectBuilder
 			return;
 		}
 
+		int threads = Math.min(getBuildThreadCount(), files.size());
+		if (threads > 1 && hasThreadSafeParticipant(participants))
+		{
+			doBuildFilesInParallel(participants, new ArrayList<IFile>(files), threads, monitor);
+			return;
+		}
+
 		SubMonitor sub = SubMonitor.convert(monitor, 15 * files.size());
 		for (IFile file : files)
 		{
@@ -533,6 +568,176 @@ public class UnifiedBuilder extends IncrementalProjectBuilder
 		sub.done();
 	}
 
+	/**
+	 * Builds the files in chunks. For each chunk the build thread reads the file contents (which refreshes the file and
+	 * so needs the build's scheduling rule) and picks the participants, the worker threads parse each file and run the
+	 * thread-safe participants, then the build thread runs the remaining participants and updates the markers of the
+	 * whole chunk in a single workspace operation.
+	 * 
+	 * @param participants
+	 * @param files
+	 * @param threads
+	 * @param monitor
+	 * @throws CoreException
+	 */
+	private void doBuildFilesInParallel(List<IBuildParticipant> participants, List<IFile> files, int threads,
+			IProgressMonitor monitor) throws CoreException
+	{
+		IBuildParticipantManager manager = getBuildParticipantManager();
+		if (manager == null)
+		{
+			return;
+		}
+
+		SubMonitor sub = SubMonitor.convert(monitor, 15 * files.size());
+		ExecutorService executor = Executors.newFixedThreadPool(threads, new BuildThreadFactory(getProjectHandle()
+				.getName()));
+		try
+		{
+			for (int start = 0; start < files.size(); start += PARALLEL_CHUNK_SIZE)
+			{
+				List<IFile> chunk = files.subList(start, Math.min(start + PARALLEL_CHUNK_SIZE, files.size()));
+				if (!buildChunk(manager, executor, participants, chunk, sub.newChild(15 * chunk.size())))
+				{
+					break;
+				}
+			}
+		}
+		finally
+		{
+			executor.shutdownNow();
+			sub.done();
+		}
+	}
+
+	/**
+	 * Builds one chunk of files of a parallel build.
+	 * 
+	 * @param manager
+	 * @param executor
+	 * @param participants
+	 * @param files
+	 * @param monitor
+	 * @return false if the build was canceled or interrupted
+	 * @throws CoreException
+	 */
+	private boolean buildChunk(IBuildParticipantManager manager, ExecutorService executor,
+			List<IBuildParticipant> participants, List<IFile> files, IProgressMonitor monitor) throws CoreException
+	{
+		SubMonitor sub = SubMonitor.convert(monitor, 15 * files.size());
+		IProgressMonitor workerMonitor = new CancelForwardingMonitor(sub);
+
+		List<BuildContext> contexts = new ArrayList<BuildContext>(files.size());
+		List<List<IBuildParticipant>> serialParticipants = new ArrayList<List<IBuildParticipant>>(files.size());
+		List<Future<?>> futures = new ArrayList<Future<?>>(files.size());
+		for (IFile file : files)
+		{
+			BuildContext context = new BuildContext(file);
+			List<IBuildParticipant> filteredParticipants = manager.filterParticipants(participants,
+					context.getContentType());
+			sub.worked(1);
+			if (CollectionsUtil.isEmpty(filteredParticipants))
+			{
+				continue;
+			}
+			context.getContents();
+			sub.worked(2);
+
+			List<IBuildParticipant> threadSafe = new ArrayList<IBuildParticipant>(filteredParticipants.size());
+			List<IBuildParticipant> serial = new ArrayList<IBuildParticipant>(filteredParticipants.size());
+			for (IBuildParticipant participant : filteredParticipants)
+			{
+				if (isThreadSafe(participant))
+				{
+					threadSafe.add(participant);
+				}
+				else
+				{
+					serial.add(participant);
+				}
+			}
+			contexts.add(context);
+			serialParticipants.add(serial);
+			futures.add(executor.submit(new ParseAndBuildTask(context, threadSafe, workerMonitor)));
+		}
+
+		for (Future<?> future : futures)
+		{
+			try
+			{
+				future.get();
+			}
+			catch (ExecutionException e)
+			{
+				IdeLog.logError(BuildPathCorePlugin.getDefault(), e.getCause());
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+
+		for (int i = 0; i < contexts.size(); i++)
+		{
+			BuildContext context = contexts.get(i);
+			runParticipants(context, serialParticipants.get(i), sub.newChild(10));
+			recordParses(context);
+			if (sub.isCanceled())
+			{
+				break;
+			}
+		}
+
+		updateMarkers(contexts, sub.newChild(2 * files.size()));
+		sub.done();
+		return !sub.isCanceled();
+	}
+
+	/**
+	 * Returns the number of threads to build files with, 1 if parallel builds are turned off.
+	 * 
+	 * @return
+	 */
+	protected int getBuildThreadCount()
+	{
+		IPreferencesService service = Platform.getPreferencesService();
+		if (!service.getBoolean(BuildPathCorePlugin.PLUGIN_ID, IPreferenceConstants.PARALLEL_BUILD, true, null))
+		{
+			return 1;
+		}
+		int threads = service.getInt(BuildPathCorePlugin.PLUGIN_ID, IPreferenceConstants.BUILD_THREADS, 0, null);
+		if (threads <= 0)
+		{
+			threads = Runtime.getRuntime().availableProcessors();
+		}
+		return threads;
+	}
+
+	/**
+	 * Only participants extending {@link AbstractBuildParticipant} can declare that they are thread-safe.
+	 * 
+	 * @param participant
+	 * @return
+	 */
+	private static boolean isThreadSafe(IBuildParticipant participant)
+	{
+		return participant instanceof AbstractBuildParticipant
+				&& ((AbstractBuildParticipant) participant).isThreadSafe();
+	}
+
+	private static boolean hasThreadSafeParticipant(List<IBuildParticipant> participants)
+	{
+		for (IBuildParticipant participant : participants)
+		{
+			if (isThreadSafe(participant))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * FIXME This is a holy hell of a mess! We map from IFiles to IFileStores, then filter on that, then map back! Can't
 	 * we make the IIndexFilterParticipants also operate on IFiles? It seems like the only impl does anyways.
@@ -608,6 +813,37 @@ public class UnifiedBuilder extends IncrementalProjectBuilder
 		}
 
 		SubMonitor sub = SubMonitor.convert(monitor, 2 * participants.size());
+		runParticipants(context, participants, sub.newChild(participants.size()));
+		recordParses(context);
+		updateMarkers(context, sub.newChild(participants.size()));
+		sub.done();
+	}
+
+	/**
+	 * Adds the parses done while building a file to the build's statistics.
+	 * 
+	 * @param context
+	 */
+	private void recordParses(BuildContext context)
+	{
+		int parses = context.getParseCount();
+		builtFileCount.incrementAndGet();
+		parseCount.addAndGet(parses);
+		if (traceParticipantsEnabled)
+		{
+			IdeLog.logTrace(BuildPathCorePlugin.getDefault(), MessageFormat.format(
+					"Parsed ''{0}'' {1} time(s).", context.getURI(), parses), IDebugScopes.BUILDER_PARTICIPANTS); //$NON-NLS-1$
+		}
+	}
+
+	private void runParticipants(BuildContext context, List<IBuildParticipant> participants, IProgressMonitor monitor)
+	{
+		if (CollectionsUtil.isEmpty(participants))
+		{
+			return;
+		}
+
+		SubMonitor sub = SubMonitor.convert(monitor, participants.size());
 		for (IBuildParticipant participant : participants)
 		{
 			long startTime = System.nanoTime();
@@ -627,7 +863,6 @@ public class UnifiedBuilder extends IncrementalProjectBuilder
 				break;
 			}
 		}
-		updateMarkers(context, sub.newChild(participants.size()));
 		sub.done();
 	}
 
@@ -659,6 +894,44 @@ public class UnifiedBuilder extends IncrementalProjectBuilder
 		}
 	}
 
+	/**
+	 * Updates the markers of a chunk of files built in parallel as a single workspace operation.
+	 * 
+	 * @param contexts
+	 * @param monitor
+	 */
+	private void updateMarkers(final List<BuildContext> contexts, IProgressMonitor monitor)
+	{
+		IWorkspaceRunnable runnable = new IWorkspaceRunnable()
+		{
+			public void run(IProgressMonitor monitor)
+			{
+				SubMonitor sub = SubMonitor.convert(monitor, contexts.size());
+				for (BuildContext context : contexts)
+				{
+					Map<String, Collection<IProblem>> itemsByType = context.getProblems();
+					if (CollectionsUtil.isEmpty(itemsByType))
+					{
+						sub.worked(1);
+						continue;
+					}
+					updateMarkers(context.getFile(), itemsByType, sub.newChild(1));
+				}
+				sub.done();
+			}
+		};
+
+		try
+		{
+			ResourcesPlugin.getWorkspace().run(runnable, getMarkerRule(getProjectHandle()), IWorkspace.AVOID_UPDATE,
+					monitor);
+		}
+		catch (CoreException e)
+		{
+			IdeLog.logError(BuildPathCorePlugin.getDefault(), "Error updating markers", e); //$NON-NLS-1$
+		}
+	}
+
 	/**
 	 * @param resource
 	 * @return
@@ -721,6 +994,83 @@ public class UnifiedBuilder extends IncrementalProjectBuilder
 		sub.done();
 	}
 
+	/**
+	 * Parses a file on a worker thread of a parallel build and runs the thread-safe participants on it.
+	 */
+	private class ParseAndBuildTask implements Runnable
+	{
+		private final BuildContext context;
+		private final List<IBuildParticipant> participants;
+		private final IProgressMonitor monitor;
+
+		private ParseAndBuildTask(BuildContext context, List<IBuildParticipant> participants, IProgressMonitor monitor)
+		{
+			this.context = context;
+			this.participants = participants;
+			this.monitor = monitor;
+		}
+
+		public void run()
+		{
+			if (monitor.isCanceled())
+			{
+				return;
+			}
+
+			try
+			{
+				// parse here rather than on the build thread, the context keeps the result for the other participants
+				context.getAST();
+			}
+			catch (CoreException e)
+			{
+				// ignores the parser exception, participants report parse errors themselves
+			}
+			runParticipants(context, participants, monitor);
+		}
+	}
+
+	/**
+	 * Progress monitor handed to the worker threads. It only reports cancelation of the build.
+	 */
+	private static class CancelForwardingMonitor extends NullProgressMonitor
+	{
+		private final IProgressMonitor delegate;
+
+		private CancelForwardingMonitor(IProgressMonitor delegate)
+		{
+			this.delegate = delegate;
+		}
+
+		@Override
+		public boolean isCanceled()
+		{
+			return super.isCanceled() || delegate.isCanceled();
+		}
+	}
+
+	/**
+	 * Creates the daemon worker threads of a parallel build.
+	 */
+	private static class BuildThreadFactory implements ThreadFactory
+	{
+		private final String projectName;
+		private final AtomicInteger count = new AtomicInteger();
+
+		private BuildThreadFactory(String projectName)
+		{
+			this.projectName = projectName;
+		}
+
+		public Thread newThread(Runnable runnable)
+		{
+			Thread thread = new Thread(runnable, MessageFormat.format(
+					"Building {0} #{1}", projectName, count.incrementAndGet())); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
 	/**
 	 * Collects all files with infinite depth. Used to grab all files inside an {@link IProject} for full builds.
 	 * 
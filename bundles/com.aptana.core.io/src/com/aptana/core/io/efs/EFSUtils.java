@@ -17,6 +17,7 @@ import java.util.List;
 import org.eclipse.core.filesystem.EFS;
 import org.eclipse.core.filesystem.IFileInfo;
 import org.eclipse.core.filesystem.IFileStore;
+import org.eclipse.core.filesystem.IFileTree;
 import org.eclipse.core.filesystem.provider.FileInfo;
 
 import org.eclipse.core.resources.IContainer;
@@ -28,6 +29,7 @@ import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.SubMonitor;
 
+import com.aptana.core.io.vfs.IFileTreeVisitor;
 import com.aptana.core.io.vfs.Policy;
 import com.aptana.ide.core.io.IConnectionPoint;
 import com.aptana.ide.core.io.preferences.CloakingUtils;
@@ -271,6 +273,20 @@ public final class EFSUtils
 
 		if (isFolder(file, monitor))
 		{
+			if (recurse && file instanceof VirtualFile)
+			{
+				// fetches the whole tree at once, which lists several remote directories at a time when the
+				// connection allows it
+				IFileTree tree = ((VirtualFile) file).fetchFileTree(includeCloakedFiles ? null : new IFileTreeVisitor()
+				{
+					public boolean include(IFileStore store) throws CoreException
+					{
+						return !CloakingUtils.isFileCloaked(store);
+					}
+				}, monitor);
+				addFiles(tree, file, list);
+				return;
+			}
 			IFileStore[] children = file.childStores(EFS.NONE, monitor);
 			if (children != null)
 			{
@@ -295,6 +311,25 @@ public final class EFSUtils
 		}
 	}
 
+	/**
+	 * Adds the descendants of the given directory in a file tree, each directory followed by its own descendants.
+	 * 
+	 * @param tree
+	 * @param parent
+	 * @param list
+	 */
+	private static void addFiles(IFileTree tree, IFileStore parent, List<IFileStore> list)
+	{
+		for (IFileStore child : tree.getChildStores(parent))
+		{
+			list.add(child);
+			if (tree.getFileInfo(child).isDirectory())
+			{
+				addFiles(tree, child, list);
+			}
+		}
+	}
+
 	/**
 	 * Determines if the listed item is a file or a folder.
 	 * 
@@ -13,9 +13,7 @@ package com.aptana.core.io.efs;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
-import java.text.MessageFormat;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Map;
 
 import org.eclipse.core.filesystem.EFS;
 import org.eclipse.core.filesystem.IFileInfo;
@@ -26,7 +24,9 @@ import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 
+import com.aptana.core.IFilter;
 import com.aptana.core.io.vfs.IConnectionFileManager;
+import com.aptana.core.io.vfs.IExtendedFileInfo;
 import com.aptana.core.io.vfs.IExtendedFileStore;
 import com.aptana.core.io.vfs.IFileTreeVisitor;
 import com.aptana.core.io.vfs.Policy;
@@ -215,40 +215,57 @@ public class VirtualFile extends FileStore implements IExtendedFileStore {
 		return fileManager.getCanonicalURI(path);
 	}
 	
-	public IFileTree fetchFileTree(IFileTreeVisitor visitor, IProgressMonitor monitor) throws CoreException {
+	public IFileTree fetchFileTree(final IFileTreeVisitor visitor, IProgressMonitor monitor) throws CoreException {
 		monitor = Policy.monitorFor(monitor);
 		try {
+			final CoreException[] visitorException = new CoreException[1];
+			IFilter<IPath> filter = null;
+			if (visitor != null) {
+				filter = new IFilter<IPath>() {
+					public boolean include(IPath item) {
+						if (visitorException[0] != null) {
+							return false;
+						}
+						try {
+							return visitor.include(new VirtualFile(fileManager, baseURI, item));
+						} catch (CoreException e) {
+							visitorException[0] = e;
+							return false;
+						}
+					}
+				};
+			}
+			Map<IPath, IExtendedFileInfo[]> tree = fileManager.fetchTree(path, IExtendedFileStore.DETAILED, filter,
+					new InfiniteProgressMonitor(monitor));
+			if (visitorException[0] != null) {
+				throw visitorException[0];
+			}
 			FileTree fileTree = new FileTree(this);
-			buildFileTree(fileTree, this, visitor, new InfiniteProgressMonitor(monitor));
+			addChildren(fileTree, this, tree);
 			return fileTree;
-			} finally {
-				monitor.done();
-			}
+		} finally {
+			monitor.done();
+		}
 	}
 
 	public String toString() {
 	    return toCanonicalURI().toString();
 	}
 
-	private static void buildFileTree(FileTree fileTree, VirtualFile parent, IFileTreeVisitor visitor, IProgressMonitor monitor) throws CoreException {
-		monitor.beginTask(MessageFormat.format(Messages.VirtualFile_ListingDirectory, parent.path), 20);
-		IFileInfo[] infos = parent.fileManager.childInfos(parent.path, IExtendedFileStore.DETAILED, monitor);
-		List<IFileStore> stores = new ArrayList<IFileStore>();
-		List<IFileStore> dirs = new ArrayList<IFileStore>();
-		for (IFileInfo fileInfo : infos) {
-			IFileStore store = parent.getChild(fileInfo.getName());
-			if (visitor != null && !visitor.include(store)) {
-				continue;
-			}
-			stores.add(store);
-			if (fileInfo.isDirectory()) {
-				dirs.add(store);
-			}
+	private static void addChildren(FileTree fileTree, VirtualFile parent, Map<IPath, IExtendedFileInfo[]> tree) {
+		IExtendedFileInfo[] infos = tree.get(parent.path);
+		if (infos == null) {
+			return;
 		}
-		fileTree.addChildren(parent, stores.toArray(new IFileStore[stores.size()]), infos);
-		monitor.worked(1);
-		for (IFileStore store : dirs) {
-			buildFileTree(fileTree, (VirtualFile) store, visitor, monitor);
+		IFileStore[] stores = new IFileStore[infos.length];
+		for (int i = 0; i < infos.length; ++i) {
+			stores[i] = parent.getChild(infos[i].getName());
+		}
+		fileTree.addChildren(parent, stores, infos);
+		for (int i = 0; i < infos.length; ++i) {
+			if (infos[i].isDirectory()) {
+				addChildren(fileTree, (VirtualFile) stores[i], tree);
+			}
 		}
 	}
 }
@@ -20,10 +20,22 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.core.filesystem.EFS;
 import org.eclipse.core.filesystem.IFileInfo;
@@ -32,10 +44,12 @@ import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.MultiStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.Status;
 
+import com.aptana.core.IFilter;
 import com.aptana.core.logging.IdeLog;
 import com.aptana.core.util.ExpiringMap;
 import com.aptana.core.util.ProgressMonitorInterrupter;
@@ -68,6 +82,7 @@ public abstract class BaseConnectionFileManager implements IConnectionFileManage
 
 	private Map<IPath, ExtendedFileInfo> fileInfoCache;
 	private Map<IPath, ExtendedFileInfo[]> fileInfosCache;
+	private PersistentFileInfoCache persistentCache;
 
 	private final InterruptDelegate interruptDelegate = new InterruptDelegate()
 	{
@@ -207,11 +222,17 @@ public abstract class BaseConnectionFileManager implements IConnectionFileManage
 				testOrConnect(monitor);
 				try
 				{
-					fileInfos = cache(path, fetchFilesInternal(basePath.append(path), options, monitor));
-					for (ExtendedFileInfo fileInfo : fileInfos)
+					ExtendedFileInfo directoryInfo = fetchDirectoryInfo(path, monitor);
+					fileInfos = getPersistedFileInfos(path, directoryInfo, options);
+					if (fileInfos == null)
 					{
-						postProcessFileInfo(fileInfo, basePath.append(path), options, monitor);
-						cache(path.append(fileInfo.getName()), fileInfo);
+						fileInfos = cache(path, fetchFilesInternal(basePath.append(path), options, monitor));
+						for (ExtendedFileInfo fileInfo : fileInfos)
+						{
+							postProcessFileInfo(fileInfo, basePath.append(path), options, monitor);
+							cache(path.append(fileInfo.getName()), fileInfo);
+						}
+						persistFileInfos(path, directoryInfo, options, fileInfos);
 					}
 					setLastOperationTime();
 				}
@@ -236,6 +257,284 @@ public abstract class BaseConnectionFileManager implements IConnectionFileManage
 		}
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.core.io.vfs.IConnectionFileManager#fetchTree(org.eclipse.core.runtime.IPath, int,
+	 * com.aptana.core.IFilter, org.eclipse.core.runtime.IProgressMonitor)
+	 */
+	public final Map<IPath, IExtendedFileInfo[]> fetchTree(IPath path, int options, IFilter<IPath> filter,
+			IProgressMonitor monitor) throws CoreException
+	{
+		monitor = Policy.monitorFor(monitor);
+		monitor.beginTask(
+				MessageFormat.format(Messages.BaseConnectionFileManager_listing_directory, path.toPortableString()),
+				IProgressMonitor.UNKNOWN);
+		options = (options & IExtendedFileStore.DETAILED);
+		Map<IPath, IExtendedFileInfo[]> tree = new HashMap<IPath, IExtendedFileInfo[]>();
+		try
+		{
+			int concurrency = getListingConcurrency();
+			if (concurrency > 1)
+			{
+				fetchTreeConcurrently(path, options, filter, concurrency, tree, monitor);
+			}
+			else
+			{
+				LinkedList<IPath> directories = new LinkedList<IPath>();
+				directories.add(path);
+				while (!directories.isEmpty())
+				{
+					Policy.checkCanceled(monitor);
+					IPath directory = directories.removeFirst();
+					monitor.subTask(directory.toPortableString());
+					IExtendedFileInfo[] fileInfos = include(directory,
+							childInfos(directory, options, new NullProgressMonitor()), filter, directories);
+					tree.put(directory, fileInfos);
+					monitor.worked(1);
+				}
+			}
+			return tree;
+		}
+		finally
+		{
+			if (persistentCache != null)
+			{
+				persistentCache.save();
+			}
+			monitor.done();
+		}
+	}
+
+	/**
+	 * Lists the directories of a tree on worker threads, each one using a listing session of its own, so that the
+	 * directories found are listed at the same time instead of one after the other on the main connection. The
+	 * listings are post-processed and cached under the lock of the manager, all at once per directory.
+	 */
+	private void fetchTreeConcurrently(IPath path, final int options, IFilter<IPath> filter, int concurrency,
+			Map<IPath, IExtendedFileInfo[]> tree, final IProgressMonitor monitor) throws CoreException
+	{
+		synchronized (this)
+		{
+			// symlinks are still resolved with the main connection
+			testOrConnect(monitor);
+		}
+		final IProgressMonitor workerMonitor = new NullProgressMonitor()
+		{
+			@Override
+			public boolean isCanceled()
+			{
+				return monitor.isCanceled();
+			}
+		};
+		final ListingSessions sessions = new ListingSessions();
+		ExecutorService executor = Executors.newFixedThreadPool(concurrency, new ListingThreadFactory());
+		CompletionService<ExtendedFileInfo[]> completionService = new ExecutorCompletionService<ExtendedFileInfo[]>(
+				executor);
+		Map<Future<ExtendedFileInfo[]>, IPath> pending = new HashMap<Future<ExtendedFileInfo[]>, IPath>();
+		try
+		{
+			LinkedList<IPath> directories = new LinkedList<IPath>();
+			directories.add(path);
+			while (!directories.isEmpty() || !pending.isEmpty())
+			{
+				while (!directories.isEmpty())
+				{
+					final IPath directory = directories.removeFirst();
+					pending.put(completionService.submit(new Callable<ExtendedFileInfo[]>()
+					{
+						public ExtendedFileInfo[] call() throws Exception
+						{
+							return fetchAndCacheFileInfos(directory, options, sessions, workerMonitor);
+						}
+					}), directory);
+				}
+				Future<ExtendedFileInfo[]> future = completionService.poll(100, TimeUnit.MILLISECONDS);
+				Policy.checkCanceled(monitor);
+				if (future == null)
+				{
+					continue;
+				}
+				IPath directory = pending.remove(future);
+				monitor.subTask(directory.toPortableString());
+				tree.put(directory, include(directory, future.get(), filter, directories));
+				monitor.worked(1);
+			}
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+			throw new OperationCanceledException();
+		}
+		catch (ExecutionException e)
+		{
+			Throwable cause = e.getCause();
+			if (cause instanceof CoreException)
+			{
+				throw (CoreException) cause;
+			}
+			if (cause instanceof RuntimeException)
+			{
+				throw (RuntimeException) cause;
+			}
+			throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID, MessageFormat.format(
+					Messages.BaseConnectionFileManager_listing_directory, path.toPortableString()), cause));
+		}
+		finally
+		{
+			executor.shutdownNow();
+			sessions.close();
+		}
+	}
+
+	/**
+	 * Lists a directory with a listing session, or with the main connection when the session fails, and caches the
+	 * result. Called on the worker threads of {@link #fetchTreeConcurrently}. Only the caches are accessed under the
+	 * lock of the manager, the directory and its info are fetched with the session outside of it.
+	 */
+	private ExtendedFileInfo[] fetchAndCacheFileInfos(IPath path, int options, ListingSessions sessions,
+			IProgressMonitor monitor) throws CoreException
+	{
+		ExtendedFileInfo directoryInfo;
+		boolean persistent;
+		synchronized (this)
+		{
+			ExtendedFileInfo[] fileInfos = getCachedFileInfos(path);
+			if (fileInfos != null)
+			{
+				return fileInfos;
+			}
+			persistent = getPersistentCache() != null;
+			directoryInfo = persistent ? getCachedFileInfo(path) : null;
+		}
+		ExtendedFileInfo[] fileInfos = null;
+		try
+		{
+			IListingSession session = sessions.checkOut(monitor);
+			try
+			{
+				if (persistent)
+				{
+					if (directoryInfo == null && path.segmentCount() > 0)
+					{
+						directoryInfo = session.fetchFile(basePath.append(path), options, monitor);
+					}
+					synchronized (this)
+					{
+						if (directoryInfo == null || directoryInfo.getAttribute(EFS.ATTRIBUTE_SYMLINK))
+						{
+							// the root and symlinks are resolved with the main connection
+							directoryInfo = fetchDirectoryInfo(path, monitor);
+						}
+						else if (!directoryInfo.exists() || !directoryInfo.isDirectory())
+						{
+							directoryInfo = null;
+						}
+						ExtendedFileInfo[] persistedFileInfos = getPersistedFileInfos(path, directoryInfo, options);
+						if (persistedFileInfos != null)
+						{
+							return persistedFileInfos;
+						}
+					}
+				}
+				fileInfos = session.fetchFiles(basePath.append(path), options, monitor);
+			}
+			catch (CoreException e)
+			{
+				// the session is likely broken, so drops it and lists the directory with the main connection instead
+				session.close();
+				session = null;
+				IdeLog.logWarning(CoreIOPlugin.getDefault(), MessageFormat.format(
+						Messages.BaseConnectionFileManager_listing_directory, path.toPortableString()), e);
+			}
+			finally
+			{
+				if (session != null)
+				{
+					sessions.checkIn(session);
+				}
+			}
+		}
+		catch (CoreException e)
+		{
+			// failed to open a session
+			IdeLog.logWarning(CoreIOPlugin.getDefault(), MessageFormat.format(
+					Messages.BaseConnectionFileManager_listing_directory, path.toPortableString()), e);
+		}
+		catch (FileNotFoundException e)
+		{
+			return new ExtendedFileInfo[0];
+		}
+		catch (PermissionDeniedException e)
+		{
+			throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID, MessageFormat.format(
+					Messages.BaseConnectionFileManager_PermissionDenied0, path.toPortableString()), e));
+		}
+		synchronized (this)
+		{
+			try
+			{
+				if (fileInfos == null)
+				{
+					testOrConnect(monitor);
+					if (persistent && directoryInfo == null)
+					{
+						// the session failed before the directory was validated
+						directoryInfo = fetchDirectoryInfo(path, monitor);
+						ExtendedFileInfo[] persistedFileInfos = getPersistedFileInfos(path, directoryInfo, options);
+						if (persistedFileInfos != null)
+						{
+							return persistedFileInfos;
+						}
+					}
+					fileInfos = fetchFilesInternal(basePath.append(path), options, monitor);
+				}
+				cache(path, fileInfos);
+				for (ExtendedFileInfo fileInfo : fileInfos)
+				{
+					postProcessFileInfo(fileInfo, basePath.append(path), options, monitor);
+					cache(path.append(fileInfo.getName()), fileInfo);
+				}
+				persistFileInfos(path, directoryInfo, options, fileInfos);
+				setLastOperationTime();
+				return fileInfos;
+			}
+			catch (FileNotFoundException e)
+			{
+				setLastOperationTime();
+				return new ExtendedFileInfo[0];
+			}
+			catch (PermissionDeniedException e)
+			{
+				setLastOperationTime();
+				throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID, MessageFormat.format(
+						Messages.BaseConnectionFileManager_PermissionDenied0, path.toPortableString()), e));
+			}
+		}
+	}
+
+	/**
+	 * Filters the children of a directory, and queues the directories among them to be listed next.
+	 */
+	private static IExtendedFileInfo[] include(IPath path, IExtendedFileInfo[] fileInfos, IFilter<IPath> filter,
+			List<IPath> directories)
+	{
+		List<IExtendedFileInfo> list = new ArrayList<IExtendedFileInfo>(fileInfos.length);
+		for (IExtendedFileInfo fileInfo : fileInfos)
+		{
+			IPath childPath = path.append(fileInfo.getName());
+			if (filter != null && !filter.include(childPath))
+			{
+				continue;
+			}
+			list.add(fileInfo);
+			if (fileInfo.isDirectory())
+			{
+				directories.add(childPath);
+			}
+		}
+		return list.toArray(new IExtendedFileInfo[list.size()]);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see com.aptana.core.io.vfs.IConnectionFileManager#openInputStream(org.eclipse.core.runtime.IPath, int,
@@ -694,6 +993,55 @@ public abstract class BaseConnectionFileManager implements IConnectionFileManage
 	protected abstract void changeFileGroup(IPath path, String group, IProgressMonitor monitor) throws CoreException,
 			FileNotFoundException;
 
+	/**
+	 * A session of the connection, separate from the main one, that lists directories on a worker thread of
+	 * {@link #fetchTree(IPath, int, IFilter, IProgressMonitor)}.
+	 */
+	protected interface IListingSession
+	{
+		public ExtendedFileInfo[] fetchFiles(IPath path, int options, IProgressMonitor monitor) throws CoreException,
+				FileNotFoundException, PermissionDeniedException;
+
+		/**
+		 * Fetches the info of a file, without resolving symlinks. Used to validate the listings of the directories
+		 * persisted by an earlier session.
+		 */
+		public ExtendedFileInfo fetchFile(IPath path, int options, IProgressMonitor monitor) throws CoreException,
+				FileNotFoundException, PermissionDeniedException;
+
+		public void close();
+	}
+
+	/**
+	 * Returns the number of directories that {@link #fetchTree(IPath, int, IFilter, IProgressMonitor)} lists at the
+	 * same time, each one with a listing session of its own. The default of one lists them one after the other with
+	 * the main connection.
+	 */
+	protected int getListingConcurrency()
+	{
+		return 1;
+	}
+
+	/**
+	 * Returns the resolution, in milliseconds, of the modification times of the directories on the server. The
+	 * default is a second.
+	 */
+	protected long getModificationTimeResolution()
+	{
+		return 1000;
+	}
+
+	/**
+	 * Opens a listing session. Only called when {@link #getListingConcurrency()} is more than one, on a worker thread
+	 * that doesn't hold the lock of the manager. The default has none to open, so the directories are listed with the
+	 * main connection.
+	 */
+	protected IListingSession openListingSession(IProgressMonitor monitor) throws CoreException
+	{
+		throw new CoreException(new Status(IStatus.ERROR, CoreIOPlugin.PLUGIN_ID, MessageFormat.format(
+				"{0} doesn''t open listing sessions", getClass().getName()))); //$NON-NLS-1$
+	}
+
 	protected final ExtendedFileInfo[] fetchFilesInternal(IPath path, int options, IProgressMonitor monitor)
 			throws CoreException, FileNotFoundException, PermissionDeniedException
 	{
@@ -911,8 +1259,99 @@ public abstract class BaseConnectionFileManager implements IConnectionFileManage
 		return fileInfos;
 	}
 
+	/**
+	 * Returns the cache that keeps the listed file infos from one session to the next, or null if they aren't kept.
+	 */
+	private PersistentFileInfoCache getPersistentCache()
+	{
+		if (!PreferenceUtils.getPersistentFileInfoCache())
+		{
+			return null;
+		}
+		if (persistentCache == null)
+		{
+			persistentCache = PersistentFileInfoCache.load(getCanonicalURI(Path.ROOT));
+		}
+		return persistentCache;
+	}
+
+	/**
+	 * Fetches the info of a directory before listing it, to validate the children persisted by an earlier session
+	 * with, or to persist along with the new ones.
+	 * 
+	 * @return the info of the directory, or null if the file infos aren't persisted
+	 */
+	private ExtendedFileInfo fetchDirectoryInfo(IPath path, IProgressMonitor monitor)
+	{
+		if (getPersistentCache() == null)
+		{
+			return null;
+		}
+		try
+		{
+			ExtendedFileInfo fileInfo = getCachedFileInfo(path);
+			if (fileInfo == null)
+			{
+				fileInfo = fetchAndCacheFileInfo(path, monitor);
+			}
+			return (fileInfo.exists() && fileInfo.isDirectory()) ? fileInfo : null;
+		}
+		catch (CoreException e)
+		{
+			// lists the directory, but doesn't persist it
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the children of a directory as persisted by an earlier session, if the directory didn't change since.
+	 */
+	private ExtendedFileInfo[] getPersistedFileInfos(IPath path, ExtendedFileInfo directoryInfo, int options)
+	{
+		PersistentFileInfoCache cache = persistentCache;
+		if (directoryInfo == null || cache == null)
+		{
+			return null;
+		}
+		PersistentFileInfoCache.Directory directory = cache.get(path);
+		if (directory == null || !directory.matches(directoryInfo)
+				|| (!directory.detailed && (options & IExtendedFileStore.DETAILED) != 0))
+		{
+			return null;
+		}
+		ExtendedFileInfo[] fileInfos = cache(path, directory.getFileInfos());
+		for (ExtendedFileInfo fileInfo : fileInfos)
+		{
+			// the sub-directories are fetched again when listed, since their own state is what validates them
+			if (!fileInfo.isDirectory())
+			{
+				cache(path.append(fileInfo.getName()), fileInfo);
+			}
+		}
+		return fileInfos;
+	}
+
+	/**
+	 * Persists the children of a directory, unless the directory was modified too recently for a later change to show
+	 * in its modification time: one made within the same {@link #getModificationTimeResolution()} would leave it as
+	 * is, and the stale children would be taken as valid from then on.
+	 */
+	private void persistFileInfos(IPath path, ExtendedFileInfo directoryInfo, int options,
+			ExtendedFileInfo[] fileInfos)
+	{
+		if (directoryInfo != null && persistentCache != null
+				&& directoryInfo.getLastModified() + getModificationTimeResolution() <= System.currentTimeMillis())
+		{
+			persistentCache.put(path, directoryInfo, (options & IExtendedFileStore.DETAILED) != 0, fileInfos);
+		}
+	}
+
 	protected void clearCache(IPath path)
 	{
+		if (persistentCache != null)
+		{
+			persistentCache.invalidate(path);
+		}
 		int segments = path.segmentCount();
 		if (fileInfoCache != null)
 		{
@@ -938,6 +1377,10 @@ public abstract class BaseConnectionFileManager implements IConnectionFileManage
 
 	protected final void cleanup()
 	{
+		if (persistentCache != null)
+		{
+			persistentCache.save();
+		}
 		if (fileInfoCache != null)
 		{
 			fileInfoCache.clear();
@@ -983,4 +1426,69 @@ public abstract class BaseConnectionFileManager implements IConnectionFileManage
 		return e;
 	}
 
+	/**
+	 * The listing sessions of a tree fetch, kept open from one directory to the next.
+	 */
+	private class ListingSessions
+	{
+		private final List<IListingSession> idle = new ArrayList<IListingSession>();
+		private boolean closed;
+
+		IListingSession checkOut(IProgressMonitor monitor) throws CoreException
+		{
+			synchronized (idle)
+			{
+				if (!idle.isEmpty())
+				{
+					return idle.remove(idle.size() - 1);
+				}
+			}
+			return openListingSession(monitor);
+		}
+
+		void checkIn(IListingSession session)
+		{
+			synchronized (idle)
+			{
+				if (!closed)
+				{
+					idle.add(session);
+					return;
+				}
+			}
+			session.close();
+		}
+
+		void close()
+		{
+			List<IListingSession> sessions;
+			synchronized (idle)
+			{
+				closed = true;
+				sessions = new ArrayList<IListingSession>(idle);
+				idle.clear();
+			}
+			for (IListingSession session : sessions)
+			{
+				session.close();
+			}
+		}
+	}
+
+	/**
+	 * Creates the daemon worker threads of a tree fetch.
+	 */
+	private static class ListingThreadFactory implements ThreadFactory
+	{
+		private static final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread(Runnable runnable)
+		{
+			Thread thread = new Thread(runnable, MessageFormat.format(
+					"Directory Listing #{0}", count.incrementAndGet())); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
 }
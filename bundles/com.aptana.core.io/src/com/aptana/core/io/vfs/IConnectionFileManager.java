@@ -11,12 +11,15 @@ package com.aptana.core.io.vfs;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
+import java.util.Map;
 
 import org.eclipse.core.filesystem.IFileInfo;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 
+import com.aptana.core.IFilter;
+
 
 /**
  * @author Max Stepanov
@@ -33,6 +36,20 @@ public interface IConnectionFileManager {
 	public IExtendedFileInfo fetchInfo(IPath path, int options, IProgressMonitor monitor) throws CoreException;
 	public String[] childNames(IPath path, int options, IProgressMonitor monitor) throws CoreException;
 	public IExtendedFileInfo[] childInfos(IPath path, int options, IProgressMonitor monitor) throws CoreException;
+
+	/**
+	 * Lists the directory with the given path and, recursively, all of its sub-directories.
+	 * 
+	 * @param path
+	 * @param options
+	 * @param filter
+	 *            the paths to include and, for directories, to descend into; null to include everything
+	 * @param monitor
+	 * @return the infos of the children of every directory listed, by directory path
+	 * @throws CoreException
+	 */
+	public Map<IPath, IExtendedFileInfo[]> fetchTree(IPath path, int options, IFilter<IPath> filter,
+			IProgressMonitor monitor) throws CoreException;
 	
 	public InputStream openInputStream(IPath path, int options, IProgressMonitor monitor) throws CoreException;
 	public OutputStream openOutputStream(IPath path, int options, IProgressMonitor monitor) throws CoreException;
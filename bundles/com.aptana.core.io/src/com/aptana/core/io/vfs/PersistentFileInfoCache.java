@@ -0,0 +1,362 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.core.io.vfs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.eclipse.core.filesystem.EFS;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+
+import com.aptana.core.logging.IdeLog;
+import com.aptana.ide.core.io.CoreIOPlugin;
+
+/**
+ * Keeps the children of the directories listed on a connection from one session to the next, along with the
+ * modification time, size and permissions that the directory itself had when it was listed. A directory with the same
+ * ones is considered unchanged, so its children are taken from the cache rather than listed again; which misses the
+ * files changed in place without touching their directory, but not the ones created, deleted or renamed. The cache is
+ * stored in the state location of the plug-in, in a file per connection.
+ */
+/* package */class PersistentFileInfoCache
+{
+
+	private static final String DIRECTORY = "fileinfos"; //$NON-NLS-1$
+	private static final String EXTENSION = ".cache"; //$NON-NLS-1$
+	private static final String ENCODING = "UTF-8"; //$NON-NLS-1$
+	private static final int VERSION = 1;
+
+	/**
+	 * The children of a directory, and the state of the directory as of the time they were listed.
+	 */
+	static class Directory
+	{
+		final long lastModified;
+		final long length;
+		final long permissions;
+		final boolean detailed;
+		private final ExtendedFileInfo[] fileInfos;
+
+		Directory(long lastModified, long length, long permissions, boolean detailed, ExtendedFileInfo[] fileInfos)
+		{
+			this.lastModified = lastModified;
+			this.length = length;
+			this.permissions = permissions;
+			this.detailed = detailed;
+			this.fileInfos = fileInfos;
+		}
+
+		/**
+		 * @return whether the directory is unchanged since, so still has the recorded children
+		 */
+		boolean matches(IExtendedFileInfo info)
+		{
+			return info.exists() && info.isDirectory() && info.getLastModified() == lastModified
+					&& info.getLength() == length && info.getPermissions() == permissions;
+		}
+
+		/**
+		 * @return copies of the infos of the children, which the caller is free to change
+		 */
+		ExtendedFileInfo[] getFileInfos()
+		{
+			ExtendedFileInfo[] result = new ExtendedFileInfo[fileInfos.length];
+			for (int i = 0; i < fileInfos.length; ++i)
+			{
+				result[i] = (ExtendedFileInfo) fileInfos[i].clone();
+			}
+			return result;
+		}
+	}
+
+	private final File file;
+	private final Map<IPath, Directory> directories = new HashMap<IPath, Directory>();
+	private boolean dirty;
+
+	/**
+	 * Loads the cache of the connection with the given root.
+	 * 
+	 * @param rootURI
+	 *            the canonical URI of the root of the connection
+	 * @return the cache, or null if the plug-in isn't running
+	 */
+	static PersistentFileInfoCache load(URI rootURI)
+	{
+		CoreIOPlugin plugin = CoreIOPlugin.getDefault();
+		if (plugin == null)
+		{
+			return null;
+		}
+		File directory = plugin.getStateLocation().append(DIRECTORY).toFile();
+		try
+		{
+			String name = UUID.nameUUIDFromBytes(rootURI.toString().getBytes(ENCODING)).toString();
+			return load(new File(directory, name + EXTENSION));
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			// UTF-8 is always supported
+			return null;
+		}
+	}
+
+	/**
+	 * Loads the cache stored in the given file, if it exists.
+	 * 
+	 * @param file
+	 * @return the cache
+	 */
+	static PersistentFileInfoCache load(File file)
+	{
+		PersistentFileInfoCache cache = new PersistentFileInfoCache(file);
+		cache.read();
+		return cache;
+	}
+
+	PersistentFileInfoCache(File file)
+	{
+		this.file = file;
+	}
+
+	/**
+	 * @param path
+	 * @return the cached children of the directory with the given path, or null if there are none
+	 */
+	synchronized Directory get(IPath path)
+	{
+		return directories.get(path);
+	}
+
+	/**
+	 * Records the children of a directory.
+	 * 
+	 * @param path
+	 * @param directoryInfo
+	 *            the info of the directory itself, fetched before listing it
+	 * @param detailed
+	 *            whether the children were listed with {@link IExtendedFileStore#DETAILED}
+	 * @param fileInfos
+	 */
+	synchronized void put(IPath path, IExtendedFileInfo directoryInfo, boolean detailed, ExtendedFileInfo[] fileInfos)
+	{
+		ExtendedFileInfo[] copies = new ExtendedFileInfo[fileInfos.length];
+		for (int i = 0; i < fileInfos.length; ++i)
+		{
+			copies[i] = (ExtendedFileInfo) fileInfos[i].clone();
+		}
+		directories.put(path, new Directory(directoryInfo.getLastModified(), directoryInfo.getLength(),
+				directoryInfo.getPermissions(), detailed, copies));
+		dirty = true;
+	}
+
+	/**
+	 * Forgets the file or directory with the given path, along with all of its sub-directories and the children of
+	 * its parent, e.g. when it is changed through the connection.
+	 * 
+	 * @param path
+	 */
+	synchronized void invalidate(IPath path)
+	{
+		if (path.segmentCount() > 0 && directories.remove(path.removeLastSegments(1)) != null)
+		{
+			dirty = true;
+		}
+		int segments = path.segmentCount();
+		for (IPath p : new ArrayList<IPath>(directories.keySet()))
+		{
+			if (p.segmentCount() >= segments && path.matchingFirstSegments(p) == segments)
+			{
+				directories.remove(p);
+				dirty = true;
+			}
+		}
+	}
+
+	private void read()
+	{
+		if (!file.isFile())
+		{
+			return;
+		}
+		DataInputStream in = null;
+		try
+		{
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if (in.readInt() != VERSION)
+			{
+				return;
+			}
+			for (int count = in.readInt(); count > 0; --count)
+			{
+				IPath path = Path.fromPortableString(in.readUTF());
+				long lastModified = in.readLong();
+				long length = in.readLong();
+				long permissions = in.readLong();
+				boolean detailed = in.readBoolean();
+				ExtendedFileInfo[] fileInfos = new ExtendedFileInfo[in.readInt()];
+				for (int i = 0; i < fileInfos.length; ++i)
+				{
+					fileInfos[i] = readFileInfo(in);
+				}
+				directories.put(path, new Directory(lastModified, length, permissions, detailed, fileInfos));
+			}
+		}
+		catch (IOException e)
+		{
+			IdeLog.logWarning(CoreIOPlugin.getDefault(),
+					MessageFormat.format("Failed to read the file info cache {0}", file), e); //$NON-NLS-1$
+			directories.clear();
+		}
+		finally
+		{
+			if (in != null)
+			{
+				try
+				{
+					in.close();
+				}
+				catch (IOException e)
+				{
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the cache if it changed since it was loaded or last saved.
+	 */
+	synchronized void save()
+	{
+		if (!dirty)
+		{
+			return;
+		}
+		File directory = file.getParentFile();
+		if (!directory.isDirectory() && !directory.mkdirs())
+		{
+			return;
+		}
+
+		// writes a copy first, so that a failure doesn't lose the previous cache
+		File temp = new File(directory, file.getName() + ".tmp"); //$NON-NLS-1$
+		DataOutputStream out = null;
+		try
+		{
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+			out.writeInt(VERSION);
+			out.writeInt(directories.size());
+			for (Map.Entry<IPath, Directory> entry : directories.entrySet())
+			{
+				Directory cached = entry.getValue();
+				out.writeUTF(entry.getKey().toPortableString());
+				out.writeLong(cached.lastModified);
+				out.writeLong(cached.length);
+				out.writeLong(cached.permissions);
+				out.writeBoolean(cached.detailed);
+				out.writeInt(cached.fileInfos.length);
+				for (ExtendedFileInfo fileInfo : cached.fileInfos)
+				{
+					writeFileInfo(out, fileInfo);
+				}
+			}
+			out.close();
+			out = null;
+			if ((file.exists() && !file.delete()) || !temp.renameTo(file))
+			{
+				temp.delete();
+				return;
+			}
+			dirty = false;
+		}
+		catch (IOException e)
+		{
+			IdeLog.logWarning(CoreIOPlugin.getDefault(),
+					MessageFormat.format("Failed to save the file info cache {0}", file), e); //$NON-NLS-1$
+		}
+		finally
+		{
+			if (out != null)
+			{
+				try
+				{
+					out.close();
+				}
+				catch (IOException e)
+				{
+				}
+				temp.delete();
+			}
+		}
+	}
+
+	private static ExtendedFileInfo readFileInfo(DataInputStream in) throws IOException
+	{
+		ExtendedFileInfo fileInfo = new ExtendedFileInfo(in.readUTF());
+		fileInfo.setExists(true);
+		fileInfo.setDirectory(in.readBoolean());
+		fileInfo.setLength(in.readLong());
+		fileInfo.setLastModified(in.readLong());
+		fileInfo.setPermissions(in.readLong());
+		fileInfo.setOwner(readString(in));
+		fileInfo.setGroup(readString(in));
+		fileInfo.setAttribute(EFS.ATTRIBUTE_READ_ONLY, in.readBoolean());
+		fileInfo.setAttribute(EFS.ATTRIBUTE_EXECUTABLE, in.readBoolean());
+		fileInfo.setAttribute(EFS.ATTRIBUTE_HIDDEN, in.readBoolean());
+		fileInfo.setAttribute(EFS.ATTRIBUTE_SYMLINK, in.readBoolean());
+		String linkTarget = readString(in);
+		if (linkTarget != null)
+		{
+			fileInfo.setStringAttribute(EFS.ATTRIBUTE_LINK_TARGET, linkTarget);
+		}
+		return fileInfo;
+	}
+
+	private static void writeFileInfo(DataOutputStream out, ExtendedFileInfo fileInfo) throws IOException
+	{
+		out.writeUTF(fileInfo.getName());
+		out.writeBoolean(fileInfo.isDirectory());
+		out.writeLong(fileInfo.getLength());
+		out.writeLong(fileInfo.getLastModified());
+		out.writeLong(fileInfo.getPermissions());
+		writeString(out, fileInfo.getOwner());
+		writeString(out, fileInfo.getGroup());
+		out.writeBoolean(fileInfo.getAttribute(EFS.ATTRIBUTE_READ_ONLY));
+		out.writeBoolean(fileInfo.getAttribute(EFS.ATTRIBUTE_EXECUTABLE));
+		out.writeBoolean(fileInfo.getAttribute(EFS.ATTRIBUTE_HIDDEN));
+		out.writeBoolean(fileInfo.getAttribute(EFS.ATTRIBUTE_SYMLINK));
+		writeString(out, fileInfo.getStringAttribute(EFS.ATTRIBUTE_LINK_TARGET));
+	}
+
+	private static String readString(DataInputStream in) throws IOException
+	{
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException
+	{
+		out.writeBoolean(value != null);
+		if (value != null)
+		{
+			out.writeUTF(value);
+		}
+	}
+}
@@ -78,4 +78,9 @@ public interface IBaseRemoteConnectionPoint extends IConnectionPoint {
 	 */
 	public void setPassword(char[] password);
 
+	/**
+	 * @return the transfer type ("AUTO", "ASCII" or "BINARY")
+	 */
+	public String getTransferType();
+
 }
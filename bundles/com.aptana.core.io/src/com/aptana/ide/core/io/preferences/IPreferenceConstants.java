@@ -54,4 +54,9 @@ public interface IPreferenceConstants
 	 * Preference for which files to be cloaked by default during file transfer operations
 	 */
 	public static final String GLOBAL_CLOAKING_EXTENSIONS = "GLOBAL_CLOAKING_EXTENSIONS"; //$NON-NLS-1$
+
+	/**
+	 * Preference for if the file infos listed on remote connections should be kept from one session to the next
+	 */
+	public static final String PERSISTENT_FILE_INFO_CACHE = "PersistentFileInfoCache"; //$NON-NLS-1$
 }
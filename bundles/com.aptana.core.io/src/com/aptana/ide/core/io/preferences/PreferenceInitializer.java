@@ -33,5 +33,6 @@ public class PreferenceInitializer extends AbstractPreferenceInitializer
 		prefs.putLong(IPreferenceConstants.DOWNLOAD_FILE_PERMISSION, DEFAULT_FILE_PERMISSIONS);
 		prefs.putLong(IPreferenceConstants.DOWNLOAD_FOLDER_PERMISSION, DEFAULT_DIRECTORY_PERMISSIONS);
 		prefs.put(IPreferenceConstants.GLOBAL_CLOAKING_EXTENSIONS, DEFAULT_CLOAK_EXPRESSIONS);
+		prefs.putBoolean(IPreferenceConstants.PERSISTENT_FILE_INFO_CACHE, false);
 	}
 }
@@ -220,4 +220,34 @@ public class PreferenceUtils
 			IdeLog.logError(CoreIOPlugin.getDefault(), e);
 		}
 	}
+
+	/**
+	 * @return true if the file infos listed on remote connections should be kept from one session to the next, and
+	 *         only listed again for the directories that changed, false otherwise
+	 */
+	public static boolean getPersistentFileInfoCache()
+	{
+		return Platform.getPreferencesService().getBoolean(CoreIOPlugin.PLUGIN_ID,
+				IPreferenceConstants.PERSISTENT_FILE_INFO_CACHE, false, null);
+	}
+
+	/**
+	 * Sets if the file infos listed on remote connections should be kept from one session to the next.
+	 * 
+	 * @param persistent
+	 *            true if the file infos should be kept, false otherwise
+	 */
+	public static void setPersistentFileInfoCache(boolean persistent)
+	{
+		IEclipsePreferences prefs = InstanceScope.INSTANCE.getNode(CoreIOPlugin.PLUGIN_ID);
+		prefs.putBoolean(IPreferenceConstants.PERSISTENT_FILE_INFO_CACHE, persistent);
+		try
+		{
+			prefs.flush();
+		}
+		catch (BackingStoreException e)
+		{
+			IdeLog.logError(CoreIOPlugin.getDefault(), e);
+		}
+	}
 }
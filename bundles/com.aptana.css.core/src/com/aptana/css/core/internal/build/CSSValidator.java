@@ -7,40 +7,55 @@
  */
 package com.aptana.css.core.internal.build;
 
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
 import java.io.InputStream;
-import java.io.UnsupportedEncodingException;
-import java.lang.reflect.Field;
-import java.net.MalformedURLException;
-import java.net.URI;
+import java.net.URL;
 import java.text.MessageFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.regex.Pattern;
 
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.FileLocator;
 import org.eclipse.core.runtime.IProgressMonitor;
-import org.w3c.css.css.StyleSheet;
-import org.w3c.css.css.StyleSheetParser;
-import org.w3c.css.parser.CssError;
-import org.w3c.css.parser.CssErrorToken;
-import org.w3c.css.parser.CssParseException;
-import org.w3c.css.parser.Errors;
-import org.w3c.css.properties.PropertiesLoader;
-import org.w3c.css.util.ApplContext;
-import org.w3c.css.util.Utf8Properties;
-import org.w3c.css.util.Warning;
-import org.w3c.css.util.Warnings;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.IDocument;
 
 import com.aptana.core.build.AbstractBuildParticipant;
 import com.aptana.core.build.IProblem;
 import com.aptana.core.logging.IdeLog;
-import com.aptana.core.util.IOUtil;
 import com.aptana.css.core.CSSCorePlugin;
 import com.aptana.css.core.ICSSConstants;
+import com.aptana.css.core.internal.index.CSSMetadataReader;
+import com.aptana.css.core.model.PropertyElement;
+import com.aptana.css.core.model.ValueElement;
+import com.aptana.css.core.parsing.ast.CSSDeclarationNode;
+import com.aptana.css.core.parsing.ast.CSSErrorDeclarationNode;
+import com.aptana.css.core.parsing.ast.CSSExpressionNode;
+import com.aptana.css.core.parsing.ast.CSSFontFaceNode;
+import com.aptana.css.core.parsing.ast.CSSPageNode;
+import com.aptana.css.core.parsing.ast.CSSParseRootNode;
+import com.aptana.css.core.parsing.ast.CSSRuleNode;
+import com.aptana.css.core.parsing.ast.CSSTermNode;
+import com.aptana.css.core.parsing.ast.CSSTreeWalker;
 import com.aptana.index.core.build.BuildContext;
+import com.aptana.parsing.ast.IParseRootNode;
 
 /**
+ * Checks the declarations of a stylesheet against the CSS metadata: the properties have to exist, and a property whose
+ * values are all keywords can only be set to one of them. The declarations are taken from the AST the build already
+ * parsed, and the findings are cached by the text of their declaration block, so the blocks that didn't change since
+ * the last build, or that are repeated across files, aren't checked again.
+ * 
  * @author cwilliams
  */
 public class CSSValidator extends AbstractBuildParticipant
@@ -48,11 +63,14 @@ public class CSSValidator extends AbstractBuildParticipant
 
 	public static final String ID = "com.aptana.css.core.W3CValidator"; //$NON-NLS-1$
 
-	private static final String APTANA_PROFILE = "AptanaProfile"; //$NON-NLS-1$
-	private static final String CONFIG_FILE = "AptanaCSSConfig.properties"; //$NON-NLS-1$
-	private static final String PROFILES_CONFIG_FILE = "AptanaCSSProfiles.properties"; //$NON-NLS-1$
+	private static final String METADATA_FILE = "/metadata/css_metadata.xml"; //$NON-NLS-1$
 
-	// CSS3 properties that the validator doesn't recognize yet and need to be ignored
+	/**
+	 * The maximum number of declaration blocks whose findings are cached.
+	 */
+	private static final int CACHE_SIZE = 2000;
+
+	// CSS3 properties that the metadata doesn't list yet and need to be ignored
 	@SuppressWarnings("nls")
 	private static final String[] CSS3_PROPERTIES = { "behavior", "box-shadow", "box-sizing", "column-count",
 			"column-width", "column-gap", "column-rule", "border-radius", "background-clip", "background-origin",
@@ -60,12 +78,18 @@ public class CSSValidator extends AbstractBuildParticipant
 			"border-bottom-left-radius", "border-top-left-radius", "font-family", "font-weight", "font-style",
 			"outline-offset", "resize", "size", "src", "transform", "transition", "user-select", "word-break" };
 
+	// CSS3 keywords that the metadata doesn't list yet for properties it otherwise limits to keywords
 	@SuppressWarnings("nls")
-	private static final String[] CSS3_AT_RULES = { "@namespace" };
+	private static final String[][] CSS3_VALUES = { { "display", "flex", "inline-flex", "grid", "inline-grid" },
+			{ "position", "sticky" }, { "background-clip", "content-box" }, { "background-size", "auto" },
+			{ "text-align", "start", "end" }, { "word-break", "break-word" } };
 
-	// other messages that should be filtered automatically
+	// keywords that every property accepts
 	@SuppressWarnings("nls")
-	private static final String[] FILTERED_MESSAGES = { "unrecognized media only", "linear-gradient" };
+	private static final Set<String> GLOBAL_VALUES = new HashSet<String>(Arrays.asList("inherit", "initial",
+			"unset"));
+
+	private static final Pattern KEYWORD = Pattern.compile("[a-zA-Z][a-zA-Z0-9-]*"); //$NON-NLS-1$
 
 	@SuppressWarnings("nls")
 	public static final String[] DEFAULT_FILTERS = new String[] { ".*Unknown pseudo-element.*",
@@ -77,149 +101,175 @@ public class CSSValidator extends AbstractBuildParticipant
 			".*Too many values or values are not recognized.*", Pattern.quote(
 					"Value Error : background (http://www.w3.org/TR/REC-CSS2/colors.html#propdef-background) , is an incorrect operator :") };
 
-	static
-	{
-		loadAptanaCSSProfile();
-	}
+	/**
+	 * The known properties, mapped to the keywords they accept, or to null when they accept other values as well.
+	 */
+	private static Map<String, Set<String>> properties;
 
-	private void processErrorsInReport(Errors errors, String sourcePath, List<IProblem> items, List<String> filters)
+	/**
+	 * The findings of the declaration blocks checked so far, keyed by the text of the block.
+	 */
+	private static final Map<String, List<Finding>> findings = new LinkedHashMap<String, List<Finding>>(16, 0.75f,
+			true)
 	{
-		CssError[] cssErrors = errors.getErrors();
-		for (CssError cssError : cssErrors)
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, List<Finding>> eldest)
 		{
-			Throwable t = cssError.getException();
-			String message = (t == null) ? "" : t.getMessage(); //$NON-NLS-1$
-			if (cssError instanceof CssErrorToken)
-			{
-				CssErrorToken cet = (CssErrorToken) cssError;
-				message = cet.getErrorDescription();
-			}
-			else if (t instanceof CssParseException)
-			{
-				message = "Parse Error"; // to retain backwards compat on message //$NON-NLS-1$
-			}
-			int lineNumber = cssError.getLine();
-			if (!isIgnored(message, filters) && !containsCSS3Property(message) && !containsCSS3AtRule(message)
-					&& !isFiltered(message))
-			{
-				items.add(createError(message, lineNumber, 0, 0, sourcePath));
-			}
+			return size() > CACHE_SIZE;
 		}
-	}
+	};
 
-	private void processWarningsInReport(Warnings warnings, String sourcePath, List<IProblem> items,
-			List<String> filters)
+	/**
+	 * A problem found in a declaration block, at an offset relative to the start of the block.
+	 */
+	private static class Finding
 	{
-		Warning[] warningsArray = warnings.getWarnings();
-		for (Warning warning : warningsArray)
+		final boolean error;
+		final String message;
+		final int offset;
+		final int length;
+
+		Finding(boolean error, String message, int offset, int length)
 		{
-			String message = warning.getWarningMessage();
-			if (!isIgnored(message, filters) && !containsCSS3Property(message) && !containsCSS3AtRule(message)
-					&& !isFiltered(message))
-			{
-				items.add(createWarning(message, warning.getLine(), 0, 0, sourcePath));
-			}
+			this.error = error;
+			this.message = message;
+			this.offset = offset;
+			this.length = length;
 		}
 	}
 
 	/**
-	 * Loads our CSS profile.
-	 * 
-	 * @throws IOException
-	 *             if profile loading fails
+	 * Loads the properties and their keywords from the CSS metadata the first time they're needed.
 	 */
-	private static void loadAptanaCSSProfile()
+	private static synchronized Map<String, Set<String>> getProperties()
 	{
-		InputStream configStream = CSSValidator.class.getResourceAsStream(CONFIG_FILE);
-		InputStream profilesStream = CSSValidator.class.getResourceAsStream(PROFILES_CONFIG_FILE);
-
+		if (properties != null)
+		{
+			return properties;
+		}
+		properties = new HashMap<String, Set<String>>();
+		CSSCorePlugin plugin = CSSCorePlugin.getDefault();
+		URL url = (plugin == null) ? null : FileLocator.find(plugin.getBundle(), new Path(METADATA_FILE), null);
+		if (url == null)
+		{
+			return properties;
+		}
+		InputStream stream = null;
 		try
 		{
-			// loads our config
-			PropertiesLoader.config.load(configStream);
-
-			// loads our profile
-			Utf8Properties profiles = new Utf8Properties();
-			profiles.load(profilesStream);
-			// a hack, but no other way since PropertiesLoader provides no public access to stored profiles
-			Field field = PropertiesLoader.class.getDeclaredField("profiles"); //$NON-NLS-1$
-			field.setAccessible(true);
-			field.set(null, profiles);
+			stream = url.openStream();
+			CSSMetadataReader reader = new CSSMetadataReader();
+			reader.loadXML(stream, url.toString());
+			for (PropertyElement property : reader.getProperties())
+			{
+				properties.put(property.getName().toLowerCase(Locale.ENGLISH), getKeywords(property));
+			}
 		}
 		catch (Exception e)
 		{
-			IdeLog.logError(CSSCorePlugin.getDefault(), Messages.CSSValidator_ERR_FailToLoadProfile, e);
+			IdeLog.logError(plugin, Messages.CSSValidator_ERR_FailToLoadMetadata, e);
 		}
 		finally
 		{
-			try
+			if (stream != null)
 			{
-				configStream.close();
+				try
+				{
+					stream.close();
+				}
+				catch (Exception e)
+				{
+				}
 			}
-			catch (IOException e)
-			{
-			}
-			try
-			{
-				profilesStream.close();
-			}
-			catch (IOException e)
+		}
+		for (String[] values : CSS3_VALUES)
+		{
+			Set<String> keywords = properties.get(values[0]);
+			if (keywords != null)
 			{
+				keywords.addAll(Arrays.asList(values).subList(1, values.length));
 			}
 		}
+		return properties;
 	}
 
 	/**
-	 * Gets the validation report from the validator.
-	 * 
-	 * @param source
-	 *            the source text
-	 * @param path
-	 *            the source path
-	 * @return the report
+	 * @return the keywords of the property, or null if it also accepts lengths, colors, URLs, several values, etc.
 	 */
-	private static StyleSheet getReport(String source, URI path)
+	private static Set<String> getKeywords(PropertyElement property)
 	{
-		StyleSheetParser parser = new StyleSheetParser();
-		ApplContext ac = new ApplContext("en"); //$NON-NLS-1$
-		ac.setProfile(APTANA_PROFILE);
-		try
-		{
-			parser.parseStyleElement(ac, new ByteArrayInputStream(source.getBytes(IOUtil.UTF_8)), null, null,
-					path.toURL(), 0);
-		}
-		catch (MalformedURLException e)
+		List<ValueElement> values = property.getValues();
+		if (values.isEmpty() || property.allowMultipleValues())
 		{
-			IdeLog.logError(CSSCorePlugin.getDefault(),
-					MessageFormat.format(Messages.CSSValidator_ERR_InvalidPath, path), e);
+			return null;
 		}
-		catch (UnsupportedEncodingException e)
+		Set<String> keywords = new HashSet<String>(values.size());
+		for (ValueElement value : values)
 		{
-			IdeLog.logError(CSSCorePlugin.getDefault(), e);
+			String name = value.getName();
+			if (name == null || !KEYWORD.matcher(name).matches())
+			{
+				// a placeholder such as <length>, or * for any value
+				return null;
+			}
+			keywords.add(name.toLowerCase(Locale.ENGLISH));
 		}
-
-		StyleSheet stylesheet = parser.getStyleSheet();
-		stylesheet.findConflicts(ac);
-		return stylesheet;
+		return keywords;
 	}
 
-	private static boolean containsCSS3Property(String message)
+	/**
+	 * Checks the declarations of a block.
+	 * 
+	 * @param declarations
+	 * @param blockOffset
+	 *            the offset of the first declaration
+	 * @param problems
+	 *            the list to add the findings to, with offsets relative to the start of the block
+	 */
+	private static void validate(CSSDeclarationNode[] declarations, int blockOffset, List<Finding> problems)
 	{
-		for (String property : CSS3_PROPERTIES)
+		Map<String, Set<String>> known = getProperties();
+		for (CSSDeclarationNode declaration : declarations)
 		{
-			if (message.indexOf("Property " + property) > -1) //$NON-NLS-1$
+			String identifier = declaration.getIdentifier();
+			if (declaration instanceof CSSErrorDeclarationNode || identifier == null)
 			{
-				return true;
+				// reported by the parser
+				continue;
+			}
+			String name = identifier.toLowerCase(Locale.ENGLISH);
+			if (!known.containsKey(name))
+			{
+				if (!known.isEmpty() && !isCSS3Property(name))
+				{
+					problems.add(new Finding(true, MessageFormat.format(Messages.CSSValidator_UnknownProperty,
+							identifier), declaration.getStartingOffset() - blockOffset, identifier.length()));
+				}
+				continue;
+			}
+			Set<String> keywords = known.get(name);
+			CSSExpressionNode value = declaration.getAssignedValue();
+			if (keywords == null || !(value instanceof CSSTermNode))
+			{
+				continue;
+			}
+			String term = value.toString();
+			String keyword = term.toLowerCase(Locale.ENGLISH);
+			if (KEYWORD.matcher(term).matches() && !keywords.contains(keyword) && !GLOBAL_VALUES.contains(keyword))
+			{
+				problems.add(new Finding(false, MessageFormat.format(Messages.CSSValidator_InvalidValue, identifier,
+						term), value.getStartingOffset() - blockOffset, term.length()));
 			}
 		}
-		return false;
 	}
 
-	private static boolean containsCSS3AtRule(String message)
+	private static boolean isCSS3Property(String name)
 	{
-		for (String rule : CSS3_AT_RULES)
+		for (String property : CSS3_PROPERTIES)
 		{
-			if (message.indexOf(MessageFormat.format("the at-rule {0} is not implemented", rule)) > -1) //$NON-NLS-1$
+			if (property.equals(name))
 			{
 				return true;
 			}
@@ -227,16 +277,44 @@ public class CSSValidator extends AbstractBuildParticipant
 		return false;
 	}
 
-	private static boolean isFiltered(String message)
+	/**
+	 * Returns the findings of a declaration block, checking it only if a block with the same text wasn't checked yet.
+	 */
+	private static List<Finding> getFindings(String source, CSSDeclarationNode[] declarations)
 	{
-		for (String filtered : FILTERED_MESSAGES)
+		if (declarations == null || declarations.length == 0)
+		{
+			return Collections.emptyList();
+		}
+		int start = declarations[0].getStartingOffset();
+		int end = declarations[declarations.length - 1].getEndingOffset() + 1;
+		if (start < 0 || end > source.length() || start >= end)
 		{
-			if (message.indexOf(filtered) > -1)
+			List<Finding> problems = new ArrayList<Finding>();
+			validate(declarations, start, problems);
+			return problems;
+		}
+		// copies the text, so the cache doesn't hold on to the whole source
+		String block = new String(source.substring(start, end));
+		synchronized (findings)
+		{
+			List<Finding> problems = findings.get(block);
+			if (problems != null)
 			{
-				return true;
+				return problems;
 			}
 		}
-		return false;
+		List<Finding> problems = new ArrayList<Finding>();
+		validate(declarations, start, problems);
+		if (problems.isEmpty())
+		{
+			problems = Collections.emptyList();
+		}
+		synchronized (findings)
+		{
+			findings.put(block, problems);
+		}
+		return problems;
 	}
 
 	public void buildFile(BuildContext context, IProgressMonitor monitor)
@@ -246,16 +324,83 @@ public class CSSValidator extends AbstractBuildParticipant
 			return;
 		}
 
+		IParseRootNode ast = null;
+		try
+		{
+			ast = context.getAST();
+		}
+		catch (CoreException e)
+		{
+			// ignores the parser exception
+		}
+
 		List<IProblem> problems = new ArrayList<IProblem>();
+		if (ast instanceof CSSParseRootNode)
+		{
+			final String source = context.getContents();
+			final String path = context.getURI().toString();
+			final List<String> filters = getFilters();
+			final List<IProblem> items = problems;
+			((CSSParseRootNode) ast).accept(new CSSTreeWalker()
+			{
+				private IDocument document;
+
+				@Override
+				public void visit(CSSRuleNode node)
+				{
+					report(node.getDeclarations());
+				}
+
+				@Override
+				public void visit(CSSFontFaceNode node)
+				{
+					report(node.getDeclarations());
+				}
 
-		String source = context.getContents();
-		URI uri = context.getURI();
-		String path = uri.toString();
+				@Override
+				public void visit(CSSPageNode node)
+				{
+					report(node.getDeclarations());
+				}
 
-		StyleSheet sheet = getReport(source, uri);
-		List<String> filters = getFilters();
-		processErrorsInReport(sheet.getErrors(), path, problems, filters);
-		processWarningsInReport(sheet.getWarnings(), path, problems, filters);
+				private void report(CSSDeclarationNode[] declarations)
+				{
+					List<Finding> blockFindings = getFindings(source, declarations);
+					if (blockFindings.isEmpty())
+					{
+						return;
+					}
+					int blockOffset = declarations[0].getStartingOffset();
+					for (Finding finding : blockFindings)
+					{
+						if (isIgnored(finding.message, filters))
+						{
+							continue;
+						}
+						int offset = blockOffset + finding.offset;
+						int line = getLine(offset);
+						items.add(finding.error ? createError(finding.message, line, offset, finding.length, path)
+								: createWarning(finding.message, line, offset, finding.length, path));
+					}
+				}
+
+				private int getLine(int offset)
+				{
+					if (document == null)
+					{
+						document = new Document(source);
+					}
+					try
+					{
+						return document.getLineOfOffset(offset) + 1;
+					}
+					catch (BadLocationException e)
+					{
+						return -1;
+					}
+				}
+			});
+		}
 
 		context.putProblems(ICSSConstants.W3C_PROBLEM, problems);
 	}
@@ -49,6 +49,27 @@ public class CSSMsViewPort extends CSSNode
 		}
 	}
 
+	/**
+	 * Copies the declarations along with the view port, since they aren't among its children.
+	 */
+	@Override
+	public CSSMsViewPort clone()
+	{
+		CSSMsViewPort copy = (CSSMsViewPort) super.clone();
+
+		if (fDeclarations.length > 0)
+		{
+			copy.fDeclarations = new CSSDeclarationNode[fDeclarations.length];
+			for (int i = 0; i < fDeclarations.length; i++)
+			{
+				copy.fDeclarations[i] = (CSSDeclarationNode) fDeclarations[i].clone();
+				copy.fDeclarations[i].setParent(copy);
+			}
+		}
+
+		return copy;
+	}
+
 	/**
 	 * getDeclarations
 	 * 
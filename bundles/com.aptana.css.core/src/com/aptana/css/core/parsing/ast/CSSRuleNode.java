@@ -120,6 +120,36 @@ public class CSSRuleNode extends CSSNode
 		return true;
 	}
 
+	/**
+	 * Copies the selectors and declarations along with the rule, since they aren't among its children.
+	 */
+	@Override
+	public CSSRuleNode clone()
+	{
+		CSSRuleNode copy = (CSSRuleNode) super.clone();
+
+		copy.fSelectors = new CSSSelectorNode[fSelectors.length];
+		for (int i = 0; i < fSelectors.length; i++)
+		{
+			copy.fSelectors[i] = (CSSSelectorNode) fSelectors[i].clone();
+			copy.fSelectors[i].setParent(copy);
+		}
+
+		if (fDeclarations.length > 0)
+		{
+			// the declarations hang off the first selector, as the parser leaves them
+			IParseNode parent = (copy.fSelectors.length > 0) ? copy.fSelectors[0] : copy;
+			copy.fDeclarations = new CSSDeclarationNode[fDeclarations.length];
+			for (int i = 0; i < fDeclarations.length; i++)
+			{
+				copy.fDeclarations[i] = (CSSDeclarationNode) fDeclarations[i].clone();
+				copy.fDeclarations[i].setParent(parent);
+			}
+		}
+
+		return copy;
+	}
+
 	/**
 	 * getDeclarations
 	 * 
@@ -8,6 +8,7 @@
 package com.aptana.editor.common;
 
 import java.io.File;
+import java.net.URI;
 import java.text.MessageFormat;
 import java.util.List;
 import java.util.StringTokenizer;
@@ -16,11 +17,13 @@ import org.eclipse.core.filebuffers.FileBuffers;
 import org.eclipse.core.filebuffers.manipulation.RemoveTrailingWhitespaceOperation;
 import org.eclipse.core.filesystem.EFS;
 import org.eclipse.core.filesystem.IFileStore;
+import org.eclipse.core.filesystem.URIUtil;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IWorkspaceRoot;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.NullProgressMonitor;
@@ -37,6 +40,7 @@ import org.eclipse.jface.dialogs.IDialogConstants;
 import org.eclipse.jface.dialogs.MessageDialog;
 import org.eclipse.jface.dialogs.MessageDialogWithToggle;
 import org.eclipse.jface.preference.IPreferenceStore;
+import org.eclipse.jface.text.DocumentEvent;
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.IDocumentExtension4;
 import org.eclipse.jface.text.ITextViewer;
@@ -114,6 +118,7 @@ import com.aptana.editor.common.text.reconciler.IFoldingComputer;
 import com.aptana.editor.common.text.reconciler.RubyRegexpFolder;
 import com.aptana.editor.common.viewer.CommonProjectionViewer;
 import com.aptana.parsing.ParseResult;
+import com.aptana.parsing.ParseState;
 import com.aptana.parsing.ParserPoolFactory;
 import com.aptana.parsing.ast.IParseNode;
 import com.aptana.parsing.ast.IParseRootNode;
@@ -282,6 +287,43 @@ public abstract class AbstractThemeableEditor extends AbstractFoldingEditor impl
 	 */
 	private Object modificationStampLock = new Object();
 
+	/**
+	 * The source of the last parse, used to find what changed since then.
+	 */
+	private String lastParsedSource;
+
+	/**
+	 * The result of the last parse, whose nodes are reused by the next parse when the parser is incremental.
+	 */
+	private ParseResult lastParseResult;
+
+	/**
+	 * Lock held across a parse so that two parses never reuse the nodes of the same result.
+	 */
+	private final Object parseLock = new Object();
+
+	/**
+	 * The edit between the source of the last parse and the document, made of the document changes reported since
+	 * then: where it starts, where it ends in the parsed source and where it ends in the document. editStart is -1
+	 * while nothing changed. Access should be synchronized with editLock.
+	 */
+	private int editStart = -1;
+	private int editOldEnd;
+	private int editNewEnd;
+
+	/**
+	 * The modification stamp of the document when the source of the last parse was read, and the one the last reported
+	 * change left it with.
+	 */
+	private long parsedModificationStamp = IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+	private long editModificationStamp = IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+
+	/**
+	 * Any access to the edit fields should have this lock in place. Not held while parsing, so that reporting changes
+	 * doesn't wait for a parse.
+	 */
+	private final Object editLock = new Object();
+
 	/**
 	 * AbstractThemeableEditor
 	 */
@@ -1160,6 +1202,17 @@ public abstract class AbstractThemeableEditor extends AbstractFoldingEditor impl
 			lastAstForModificationStamp = null;
 
 		}
+		synchronized (parseLock)
+		{
+			lastParsedSource = null;
+			lastParseResult = null;
+		}
+		synchronized (editLock)
+		{
+			editStart = -1;
+			parsedModificationStamp = IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+			editModificationStamp = IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+		}
 		super.doSetInput(input);
 	}
 
@@ -1183,11 +1236,132 @@ public abstract class AbstractThemeableEditor extends AbstractFoldingEditor impl
 	}
 
 	/**
-	 * Override this method to calculate the ast (while maintaining the document time based cache).
+	 * Override this method to calculate the ast (while maintaining the document time based cache). When the language's
+	 * parser is incremental only the statements touched by the document changes reported since the last parse (see
+	 * {@link #documentChanged(DocumentEvent)}) are parsed again, or those differing from the source parsed last if some
+	 * weren't reported. The other nodes are moved over from the previous ast with their offsets updated in place, so the
+	 * previous ast is stale once this returns. The asts returned here aren't shared with the parse cache.
 	 */
 	protected ParseResult doGetAST(IDocument document) throws Exception
 	{
-		return ParserPoolFactory.parse(getContentType(), document.get());
+		synchronized (parseLock)
+		{
+			String source;
+			boolean editKnown;
+			int offset = 0;
+			int removed = 0;
+			int inserted = 0;
+			synchronized (editLock)
+			{
+				long stamp = getModificationStamp(document);
+				source = document.get();
+				if (stamp != getModificationStamp(document))
+				{
+					// changed while being read
+					stamp = IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+				}
+				editKnown = stamp != IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP && stamp == editModificationStamp
+						&& lastParseResult != null;
+				if (editStart != -1)
+				{
+					offset = editStart;
+					removed = editOldEnd - editStart;
+					inserted = editNewEnd - editStart;
+				}
+				editStart = -1;
+				parsedModificationStamp = stamp;
+				editModificationStamp = stamp;
+			}
+			if (editKnown)
+			{
+				// don't trust an edit that doesn't add up
+				editKnown = (removed == 0 && inserted == 0) ? source.equals(lastParsedSource) : lastParsedSource
+						.length() - removed + inserted == source.length();
+			}
+
+			ParseState parseState = new ParseState(source, getFilename());
+			ParseResult result;
+			if (editKnown)
+			{
+				result = ParserPoolFactory.reparse(getContentType(), parseState, lastParseResult, offset, removed,
+						inserted);
+			}
+			else
+			{
+				result = ParserPoolFactory.reparse(getContentType(), parseState, lastParsedSource, lastParseResult);
+			}
+			lastParsedSource = source;
+			lastParseResult = result;
+			return result;
+		}
+	}
+
+	/**
+	 * Records a change of the document so that the next parse only looks at the part of the source it touched. The
+	 * reconciling strategy reports the changes as they happen. Changes already part of the last parse are ignored.
+	 * 
+	 * @param event
+	 */
+	public void documentChanged(DocumentEvent event)
+	{
+		long stamp = event.getModificationStamp();
+		synchronized (editLock)
+		{
+			if (parsedModificationStamp == IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP
+					|| stamp <= parsedModificationStamp)
+			{
+				return;
+			}
+			int offset = event.getOffset();
+			int length = event.getLength();
+			String text = event.getText();
+			int delta = ((text == null) ? 0 : text.length()) - length;
+			if (editStart == -1)
+			{
+				editStart = offset;
+				editOldEnd = offset + length;
+				editNewEnd = offset + length + delta;
+			}
+			else
+			{
+				// grow the edit over the change, in the coordinates of the document before the change
+				editOldEnd += Math.max(0, offset + length - editNewEnd);
+				editNewEnd = Math.max(editNewEnd, offset + length) + delta;
+				editStart = Math.min(editStart, offset);
+			}
+			editModificationStamp = stamp;
+		}
+	}
+
+	private static long getModificationStamp(IDocument document)
+	{
+		if (document instanceof IDocumentExtension4)
+		{
+			return ((IDocumentExtension4) document).getModificationStamp();
+		}
+		return IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+	}
+
+	/**
+	 * Returns the path of the edited file for parsers whose behavior depends on where the file lives (i.e. the
+	 * extension or an enclosing package.json), or just the input's name if it isn't on the local filesystem.
+	 * 
+	 * @return
+	 */
+	private String getFilename()
+	{
+		IEditorInput input = getEditorInput();
+		if (input == null)
+		{
+			return null;
+		}
+		URI uri = UIUtils.getURI(input);
+		IPath path = (uri == null) ? null : URIUtil.toPath(uri);
+		if (path != null)
+		{
+			return path.toOSString();
+		}
+		return input.getName();
 	}
 
 	/**
@@ -1347,6 +1521,7 @@ public abstract class AbstractThemeableEditor extends AbstractFoldingEditor impl
 			return;
 		}
 		// TODO Does this need to be run in asyncExec here?
+		final String source = getParsedSource(ast);
 
 		Display.getDefault().asyncExec(new Runnable()
 		{
@@ -1354,7 +1529,7 @@ public abstract class AbstractThemeableEditor extends AbstractFoldingEditor impl
 			public void run()
 			{
 				CommonOutlinePage page = getOutlinePage();
-				page.refresh(ast);
+				page.refresh(ast, source);
 
 				if (!outlineAutoExpanded)
 				{
@@ -1365,6 +1540,24 @@ public abstract class AbstractThemeableEditor extends AbstractFoldingEditor impl
 		});
 	}
 
+	/**
+	 * Returns the source the ast was parsed from when it's the result of the last parse, null otherwise.
+	 * 
+	 * @param ast
+	 * @return
+	 */
+	private String getParsedSource(IParseRootNode ast)
+	{
+		synchronized (parseLock)
+		{
+			if (ast != null && lastParseResult != null && lastParseResult.getRootNode() == ast)
+			{
+				return lastParsedSource;
+			}
+			return null;
+		}
+	}
+
 	public ParseResult getParseResult()
 	{
 		try
@@ -40,6 +40,7 @@ import org.eclipse.swt.events.ModifyListener;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Control;
 import org.eclipse.swt.widgets.Text;
+import org.eclipse.swt.widgets.TreeItem;
 import org.eclipse.ui.IActionBars;
 import org.eclipse.ui.IWorkbenchPage;
 import org.eclipse.ui.PlatformUI;
@@ -57,6 +58,7 @@ import com.aptana.editor.common.preferences.IPreferenceConstants;
 import com.aptana.parsing.ast.IParseNode;
 import com.aptana.parsing.ast.IParseRootNode;
 import com.aptana.parsing.lexer.IRange;
+import com.aptana.parsing.lexer.Range;
 import com.aptana.theme.ThemedDelegatingLabelProvider;
 import com.aptana.ui.util.UIUtils;
 
@@ -113,6 +115,10 @@ public class CommonOutlinePage extends ContentOutlinePage implements IPropertyCh
 	private WorkbenchJob fFilterRefreshJob;
 	private ToggleLinkingAction fToggleLinkingAction;
 	private CommonOutlinePageInput fInput;
+	/**
+	 * The source of the ast shown, if known.
+	 */
+	private String fSource;
 
 	private IPreferenceStore fPrefs;
 	private ModifyListener fSearchModifyListener = new ModifyListener()
@@ -295,13 +301,113 @@ public class CommonOutlinePage extends ContentOutlinePage implements IPropertyCh
 	}
 
 	public void refresh(IParseRootNode ast)
+	{
+		refresh(ast, null);
+	}
+
+	/**
+	 * Shows a new ast. When the source of both the new ast and the one shown are known, only the labels of the items
+	 * in the top level nodes touched by the edit between them are updated.
+	 * 
+	 * @param ast
+	 * @param source
+	 *            the source the ast was parsed from, may be null
+	 */
+	public void refresh(IParseRootNode ast, String source)
 	{
 		// Just change the internal ast and call refresh, that way we keep
 		// the expanded state of items.
 		if (!isDisposed())
 		{
+			IParseRootNode previous = fInput.ast;
+			String previousSource = fSource;
+			if (ast == previous && ast != null)
+			{
+				// the source wasn't changed since the last reconcile
+				return;
+			}
 			fInput.ast = ast;
-			getTreeViewer().refresh();
+			fSource = source;
+			if (ast == null || previous == null || source == null || previousSource == null)
+			{
+				getTreeViewer().refresh();
+				return;
+			}
+			// the items of the nodes before and after the edit have the same text, so the viewer only needs to match
+			// them and the labels of the items of the nodes touched by the edit are updated
+			getTreeViewer().refresh(false);
+			updateLabels(getTreeViewer().getTree().getItems(), getChangedRange(previousSource, source, ast));
+		}
+	}
+
+	/**
+	 * Returns the range of the new ast covering the edit between the sources and the top level nodes it touches.
+	 * 
+	 * @param previousSource
+	 * @param source
+	 * @param ast
+	 * @return
+	 */
+	private static IRange getChangedRange(String previousSource, String source, IParseRootNode ast)
+	{
+		int length = Math.min(previousSource.length(), source.length());
+		int prefix = 0;
+		while (prefix < length && previousSource.charAt(prefix) == source.charAt(prefix))
+		{
+			prefix++;
+		}
+		int suffix = 0;
+		while (suffix < length - prefix
+				&& previousSource.charAt(previousSource.length() - 1 - suffix) == source.charAt(source.length() - 1
+						- suffix))
+		{
+			suffix++;
+		}
+		int start = prefix;
+		int end = source.length() - suffix;
+		for (IParseNode child : ast.getChildren())
+		{
+			if (child.getEndingOffset() + 1 >= prefix && child.getStartingOffset() <= source.length() - suffix)
+			{
+				start = Math.min(start, child.getStartingOffset());
+				end = Math.max(end, child.getEndingOffset());
+			}
+		}
+		return new Range(start, end);
+	}
+
+	/**
+	 * Updates the labels of the items whose nodes are in the range, and of the items without a node.
+	 * 
+	 * @param items
+	 * @param range
+	 */
+	private void updateLabels(TreeItem[] items, IRange range)
+	{
+		for (TreeItem item : items)
+		{
+			Object element = item.getData();
+			if (element == null)
+			{
+				// not shown yet
+				continue;
+			}
+			IParseNode node = null;
+			if (element instanceof CommonOutlineItem)
+			{
+				node = ((CommonOutlineItem) element).getReferenceNode();
+			}
+			else if (element instanceof IParseNode)
+			{
+				node = (IParseNode) element;
+			}
+			if (node == null
+					|| (node.getStartingOffset() <= range.getEndingOffset() && node.getEndingOffset() >= range
+							.getStartingOffset()))
+			{
+				getTreeViewer().update(element, null);
+			}
+			updateLabels(item.getItems(), range);
 		}
 	}
 
@@ -1,10 +1,12 @@
 package com.aptana.editor.common.text;
 
 import java.text.MessageFormat;
-import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.SubMonitor;
@@ -23,18 +25,61 @@ import com.aptana.parsing.ast.IParseRootNode;
 import com.aptana.parsing.ast.ParseRootNode;
 
 /**
- * An abstract base class to use to quickly implement an {@link IFoldingComputer} based on traversing an AST.
+ * An abstract base class to use to quickly implement an {@link IFoldingComputer} based on traversing an AST.<br>
+ * The positions computed for each top level node are remembered with the source, and reused on the next computation
+ * for the top level nodes before and after the edited part of the source.
  * 
  * @author cwilliams
  */
 public abstract class AbstractFoldingComputer implements IFoldingComputer
 {
 
+	/**
+	 * The folding positions of a top level node and of its descendants. The offsets are copied since the positions
+	 * handed to the editor are updated as the document changes.
+	 */
+	private static class FoldedNode
+	{
+		final int start;
+		final int end;
+		final short nodeType;
+		final Class<?> nodeClass;
+		final int[] offsets;
+		final int[] lengths;
+
+		FoldedNode(IParseNode node, int[] offsets, int[] lengths)
+		{
+			this.start = node.getStartingOffset();
+			this.end = node.getEndingOffset();
+			this.nodeType = node.getNodeType();
+			this.nodeClass = node.getClass();
+			this.offsets = offsets;
+			this.lengths = lengths;
+		}
+	}
+
 	private IDocument fDocument;
 	private AbstractThemeableEditor fEditor;
-	private ArrayList<Integer> fLines;
+	private Set<Integer> fLines;
 	private boolean initialReconcile;
 
+	/**
+	 * The source of the last computation, and its top level nodes with positions by starting offset.
+	 */
+	private String fLastSource;
+	private Map<Integer, FoldedNode> fFolded;
+
+	/**
+	 * State of the current computation: its root, the top level nodes computed so far, and the parts of the source
+	 * left as they were since the last one.
+	 */
+	private IParseNode fRoot;
+	private Map<Integer, FoldedNode> fNewFolded;
+	private boolean fLineTaken;
+	private int fPrefix;
+	private int fSuffixStart;
+	private int fDelta;
+
 	protected AbstractFoldingComputer(AbstractThemeableEditor editor, IDocument document)
 	{
 		super();
@@ -61,7 +106,11 @@ public abstract class AbstractFoldingComputer implements IFoldingComputer
 			IParseRootNode parseNode) throws BadLocationException
 	{
 		this.initialReconcile = initialReconcile;
-		fLines = new ArrayList<Integer>();
+		fLines = new HashSet<Integer>();
+		String lastSource = fLastSource;
+		Map<Integer, FoldedNode> folded = fFolded;
+		fLastSource = null;
+		fFolded = null;
 		int lineCount = getDocument().getNumberOfLines();
 		if (lineCount <= 1) // Quick hack fix for minified files. We need at least two lines to have folding!
 		{
@@ -74,6 +123,18 @@ public abstract class AbstractFoldingComputer implements IFoldingComputer
 			{
 				return Collections.emptyMap();
 			}
+			String source = getDocument().get();
+			// only remember the positions when the ast is the one of the document
+			if (parseNode.getStartingOffset() == 0 && parseNode.getEndingOffset() + 1 == source.length())
+			{
+				fRoot = parseNode;
+				fNewFolded = new HashMap<Integer, FoldedNode>();
+				if (!initialReconcile && lastSource != null)
+				{
+					setReusableRegions(lastSource, source);
+					fFolded = folded;
+				}
+			}
 			int length = parseNode.getChildCount();
 			if (parseNode instanceof IParseRootNode)
 			{
@@ -93,11 +154,22 @@ public abstract class AbstractFoldingComputer implements IFoldingComputer
 			{
 				monitor.setCanceled(true);
 			}
+			else if (fNewFolded != null)
+			{
+				fLastSource = source;
+				fFolded = fNewFolded;
+			}
 			return positions;
 		}
 		finally
 		{
+			if (fFolded != fNewFolded)
+			{
+				fFolded = null;
+			}
 			fLines = null;
+			fRoot = null;
+			fNewFolded = null;
 			if (sub != null)
 			{
 				sub.done();
@@ -143,68 +215,209 @@ public abstract class AbstractFoldingComputer implements IFoldingComputer
 			{
 				return newPositions;
 			}
-			if (isFoldable(child))
+			if (parseNode != fRoot || fNewFolded == null)
+			{
+				addPositions(newPositions, child, sub);
+			}
+			else if (!reusePositions(newPositions, child))
 			{
-				int start = child.getStartingOffset();
-				boolean add = true;
-				int end = child.getEndingOffset() + 1;
-				try
+				fLineTaken = false;
+				Map<ProjectionAnnotation, Position> childPositions = new HashMap<ProjectionAnnotation, Position>();
+				addPositions(childPositions, child, sub);
+				if (!fLineTaken && !sub.isCanceled())
 				{
-					int line = getDocument().getLineOfOffset(start);
-					// Don't bother adding multiple positions for the same starting line
-					if (fLines != null && fLines.contains(line))
+					rememberPositions(child, childPositions.values());
+				}
+				newPositions.putAll(childPositions);
+			}
+			sub.worked(1);
+		}
+		sub.done();
+		return newPositions;
+	}
+
+	/**
+	 * Adds the folding positions of a node and of its descendants.
+	 * 
+	 * @param positions
+	 * @param child
+	 * @param sub
+	 */
+	private void addPositions(Map<ProjectionAnnotation, Position> positions, IParseNode child, SubMonitor sub)
+	{
+		if (isFoldable(child))
+		{
+			int start = child.getStartingOffset();
+			boolean add = true;
+			int end = child.getEndingOffset() + 1;
+			try
+			{
+				int line = getDocument().getLineOfOffset(start);
+				// Don't bother adding multiple positions for the same starting line
+				if (fLines != null && fLines.contains(line))
+				{
+					add = false;
+					fLineTaken = true;
+				}
+				else
+				{
+					// Don't set up folding for stuff starting and ending on same line
+					int endLine = getDocument().getLineOfOffset(child.getEndingOffset());
+					if (endLine == line)
 					{
 						add = false;
 					}
 					else
 					{
-						// Don't set up folding for stuff starting and ending on same line
-						int endLine = getDocument().getLineOfOffset(child.getEndingOffset());
-						if (endLine == line)
+						// When we can, use the end of the end line as the end offset, so it looks nicer in the
+						// editor. Using getLineInformation excludes the line delimiter, so we use the methods that
+						// include it!
+						end = getDocument().getLineOffset(endLine) + getDocument().getLineLength(endLine);
+						if (fLines != null)
 						{
-							add = false;
-						}
-						else
-						{
-							// When we can, use the end of the end line as the end offset, so it looks nicer in the
-							// editor. Using getLineInformation excludes the line delimiter, so we use the methods that
-							// include it!
-							end = getDocument().getLineOffset(endLine) + getDocument().getLineLength(endLine);
-							if (fLines != null)
-							{
-								fLines.add(line);
-							}
+							fLines.add(line);
 						}
 					}
 				}
-				catch (BadLocationException e)
+			}
+			catch (BadLocationException e)
+			{
+				// ignore
+			}
+			if (add)
+			{
+				end = Math.min(getDocument().getLength(), end);
+				if (start <= end)
 				{
-					// ignore
+					positions.put(initialReconcile ? new ProjectionAnnotation(isCollapsed(child))
+							: new ProjectionAnnotation(), new Position(start, end - start));
 				}
-				if (add)
+				else
 				{
-					end = Math.min(getDocument().getLength(), end);
-					if (start <= end)
-					{
-						newPositions.put(initialReconcile ? new ProjectionAnnotation(isCollapsed(child))
-								: new ProjectionAnnotation(), new Position(start, end - start));
-					}
-					else
-					{
-						IdeLog.logWarning(CommonEditorPlugin.getDefault(), MessageFormat.format(
-								"Was unable to add folding position. Start: {0}, end: {1}", start, end)); //$NON-NLS-1$
-					}
+					IdeLog.logWarning(CommonEditorPlugin.getDefault(), MessageFormat.format(
+							"Was unable to add folding position. Start: {0}, end: {1}", start, end)); //$NON-NLS-1$
 				}
 			}
-			if (traverseInto(child))
+		}
+		if (traverseInto(child))
+		{
+			// Recurse into AST!
+			positions.putAll(getPositions(sub.newChild(1), child));
+		}
+	}
+
+	/**
+	 * Finds the parts of the source which are the same as in the last computation: the source before the prefix
+	 * offset, and the source from the suffix start offset, which was shifted by the delta.
+	 * 
+	 * @param lastSource
+	 * @param source
+	 */
+	private void setReusableRegions(String lastSource, String source)
+	{
+		int length = Math.min(lastSource.length(), source.length());
+		int prefix = 0;
+		while (prefix < length && lastSource.charAt(prefix) == source.charAt(prefix))
+		{
+			prefix++;
+		}
+		int suffix = 0;
+		while (suffix < length - prefix
+				&& lastSource.charAt(lastSource.length() - 1 - suffix) == source.charAt(source.length() - 1 - suffix))
+		{
+			suffix++;
+		}
+		fPrefix = prefix;
+		fSuffixStart = source.length() - suffix;
+		fDelta = source.length() - lastSource.length();
+	}
+
+	/**
+	 * Adds the positions the last computation found for the top level node when it lies in a part of the source that
+	 * wasn't edited and the starting lines of its positions weren't taken by an earlier node.
+	 * 
+	 * @param positions
+	 * @param child
+	 * @return whether the positions were reused
+	 */
+	private boolean reusePositions(Map<ProjectionAnnotation, Position> positions, IParseNode child)
+	{
+		if (fFolded == null)
+		{
+			return false;
+		}
+		int start = child.getStartingOffset();
+		int end = child.getEndingOffset();
+		int shift;
+		if (end < fPrefix)
+		{
+			shift = 0;
+		}
+		else if (start >= fSuffixStart)
+		{
+			shift = fDelta;
+		}
+		else
+		{
+			return false;
+		}
+		FoldedNode folded = fFolded.get(start - shift);
+		if (folded == null || folded.end != end - shift || folded.nodeType != child.getNodeType()
+				|| folded.nodeClass != child.getClass())
+		{
+			return false;
+		}
+		int count = folded.offsets.length;
+		int[] offsets = new int[count];
+		int[] lines = new int[count];
+		try
+		{
+			for (int i = 0; i < count; i++)
 			{
-				// Recurse into AST!
-				newPositions.putAll(getPositions(sub.newChild(1), child));
+				offsets[i] = folded.offsets[i] + shift;
+				// positions run to the end of their last line, which must not have been edited either
+				if (shift == 0 && offsets[i] + folded.lengths[i] >= fPrefix)
+				{
+					return false;
+				}
+				lines[i] = getDocument().getLineOfOffset(offsets[i]);
+				if (fLines.contains(lines[i]))
+				{
+					return false;
+				}
 			}
-			sub.worked(1);
 		}
-		sub.done();
-		return newPositions;
+		catch (BadLocationException e)
+		{
+			return false;
+		}
+		for (int i = 0; i < count; i++)
+		{
+			fLines.add(lines[i]);
+			positions.put(new ProjectionAnnotation(), new Position(offsets[i], folded.lengths[i]));
+		}
+		fNewFolded.put(start, new FoldedNode(child, offsets, folded.lengths));
+		return true;
+	}
+
+	/**
+	 * Remembers the positions computed for a top level node for the next computation.
+	 * 
+	 * @param child
+	 * @param positions
+	 */
+	private void rememberPositions(IParseNode child, Collection<Position> positions)
+	{
+		int[] offsets = new int[positions.size()];
+		int[] lengths = new int[offsets.length];
+		int i = 0;
+		for (Position position : positions)
+		{
+			offsets[i] = position.getOffset();
+			lengths[i] = position.getLength();
+			i++;
+		}
+		fNewFolded.put(child.getStartingOffset(), new FoldedNode(child, offsets, lengths));
 	}
 
 	/**
@@ -18,7 +18,9 @@ import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.DocumentEvent;
 import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentListener;
 import org.eclipse.jface.text.IRegion;
 import org.eclipse.jface.text.Position;
 import org.eclipse.jface.text.reconciler.DirtyRegion;
@@ -90,6 +92,25 @@ public class CommonReconcilingStrategy implements IReconcilingStrategy, IReconci
 		}
 	};
 
+	/**
+	 * Reports the changes of the document to the editor, so that a reconcile only parses again what they touched.
+	 */
+	private IDocumentListener documentListener = new IDocumentListener()
+	{
+		public void documentAboutToBeChanged(DocumentEvent event)
+		{
+		}
+
+		public void documentChanged(DocumentEvent event)
+		{
+			AbstractThemeableEditor editor = fEditor;
+			if (editor != null)
+			{
+				editor.documentChanged(event);
+			}
+		}
+	};
+
 	public CommonReconcilingStrategy(AbstractThemeableEditor editor)
 	{
 		fEditor = editor;
@@ -98,6 +119,10 @@ public class CommonReconcilingStrategy implements IReconcilingStrategy, IReconci
 
 	public void dispose()
 	{
+		if (fDocument != null)
+		{
+			fDocument.removeDocumentListener(documentListener);
+		}
 		if (fEditor != null)
 		{
 			fEditor.removePropertyListener(propertyListener);
@@ -121,18 +146,28 @@ public class CommonReconcilingStrategy implements IReconcilingStrategy, IReconci
 
 	public void reconcile(IRegion partition)
 	{
-		// we can't do incremental yet
+		// Nothing to do, the document listener already handed the changes to the editor (see
+		// AbstractThemeableEditor#documentChanged), so full reconciles only reparse the touched statements
 	}
 
 	public void reconcile(DirtyRegion dirtyRegion, IRegion subRegion)
 	{
-		// we can't do incremental yet
+		// Nothing to do, see reconcile(IRegion). The dirty regions merge removals with removals and insertions with
+		// insertions, so the exact changes come from the document listener instead
 	}
 
 	public void setDocument(IDocument document)
 	{
+		if (fDocument != null)
+		{
+			fDocument.removeDocumentListener(documentListener);
+		}
 		folder = createFoldingComputer(document);
 		fDocument = document;
+		if (document != null)
+		{
+			document.addDocumentListener(documentListener);
+		}
 	}
 
 	protected IFoldingComputer createFoldingComputer(IDocument document)
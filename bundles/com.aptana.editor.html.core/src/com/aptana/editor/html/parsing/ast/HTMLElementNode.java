@@ -27,6 +27,8 @@ import com.aptana.parsing.ast.IParseNodeAttribute;
 import com.aptana.parsing.ast.ParseNode;
 import com.aptana.parsing.ast.ParseNodeAttribute;
 import com.aptana.parsing.lexer.IRange;
+import com.aptana.parsing.lexer.Range;
+import com.aptana.parsing.util.ParseUtil;
 
 public class HTMLElementNode extends HTMLNode
 {
@@ -113,9 +115,44 @@ public class HTMLElementNode extends HTMLNode
 	{
 		fStartNodeOffset += offset;
 		fStartNodeEnd += offset;
+		fEndNodeOffset += offset;
+		fEndNodeEnd += offset;
+		if (fAttributes != null)
+		{
+			for (Map.Entry<String, IParseNodeAttribute> entry : fAttributes.entrySet())
+			{
+				IParseNodeAttribute attr = entry.getValue();
+				entry.setValue(new ParseNodeAttribute(this, attr.getName(), attr.getValue(), addOffset(
+						attr.getNameRange(), offset), addOffset(attr.getValueRange(), offset)));
+			}
+		}
+		// the embedded nodes aren't children, so they aren't shifted along with them
+		if (fCSSStyleNodes != null)
+		{
+			for (IParseNode node : fCSSStyleNodes)
+			{
+				ParseUtil.addOffset(node, offset);
+			}
+		}
+		if (fJSAttributeNodes != null)
+		{
+			for (IParseNode node : fJSAttributeNodes)
+			{
+				ParseUtil.addOffset(node, offset);
+			}
+		}
 		super.addOffset(offset);
 	}
 
+	private static IRange addOffset(IRange range, int offset)
+	{
+		if (range == null)
+		{
+			return null;
+		}
+		return new Range(range.getStartingOffset() + offset, range.getEndingOffset() + offset);
+	}
+
 	public void addCSSStyleNode(IParseNode node)
 	{
 		if (fCSSStyleNodes == null)
@@ -11,10 +11,20 @@ import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -24,10 +34,13 @@ import org.eclipse.jface.text.rules.ITokenScanner;
 import beaver.Scanner.Exception;
 import beaver.Symbol;
 
+import com.aptana.core.logging.IdeLog;
+import com.aptana.core.util.ArrayUtil;
 import com.aptana.core.util.StringUtil;
 import com.aptana.css.core.ICSSConstants;
 import com.aptana.css.core.parsing.ast.CSSDeclarationNode;
 import com.aptana.css.core.parsing.ast.CSSRuleNode;
+import com.aptana.editor.html.HTMLPlugin;
 import com.aptana.editor.html.core.IHTMLConstants;
 import com.aptana.editor.html.parsing.ast.HTMLCommentNode;
 import com.aptana.editor.html.parsing.ast.HTMLElementNode;
@@ -38,6 +51,7 @@ import com.aptana.editor.html.parsing.ast.IHTMLNodeTypes;
 import com.aptana.editor.html.parsing.lexer.HTMLTokens;
 import com.aptana.js.core.IJSConstants;
 import com.aptana.parsing.AbstractParser;
+import com.aptana.parsing.IIncrementalParser;
 import com.aptana.parsing.IParseState;
 import com.aptana.parsing.ParseResult;
 import com.aptana.parsing.ParseState;
@@ -45,13 +59,15 @@ import com.aptana.parsing.ParserPoolFactory;
 import com.aptana.parsing.WorkingParseResult;
 import com.aptana.parsing.ast.IParseError;
 import com.aptana.parsing.ast.IParseNode;
+import com.aptana.parsing.ast.IParseRootNode;
 import com.aptana.parsing.ast.ParseError;
+import com.aptana.parsing.ast.ParseNode;
 import com.aptana.parsing.ast.ParseRootNode;
 import com.aptana.parsing.lexer.IRange;
 import com.aptana.parsing.lexer.Range;
 import com.aptana.parsing.util.ParseUtil;
 
-public class HTMLParser extends AbstractParser
+public class HTMLParser extends AbstractParser implements IIncrementalParser
 {
 
 	private static final String ATTR_TYPE = "type"; //$NON-NLS-1$
@@ -65,6 +81,247 @@ public class HTMLParser extends AbstractParser
 
 	private static final String[] JS_VALID_LANG_ATTR = new String[] { "JavaScript" }; //$NON-NLS-1$
 
+	/**
+	 * Below this many characters of embedded CSS/JS, the regions are parsed on the calling thread.
+	 */
+	private static final int PARALLEL_THRESHOLD = 2048;
+
+	private static final String COMMENT_START = "<!--"; //$NON-NLS-1$
+
+	/**
+	 * A region of embedded CSS or JS, collected while scanning the HTML and parsed once the scan is done.
+	 */
+	private abstract static class EmbeddedRegion
+	{
+		final String language;
+		final String text;
+		final int offset;
+		ParseResult result;
+
+		EmbeddedRegion(String language, String text, int offset)
+		{
+			this.language = language;
+			this.text = text;
+			this.offset = offset;
+		}
+
+		void parse()
+		{
+			try
+			{
+				// FIXME We need to propagate options down to sub-languages, i.e. JS's attach/collect comments
+				// Not cached: the nodes are shifted in place when an edit before them is reparsed
+				result = ParserPoolFactory.parseUncached(language, new ParseState(text, offset));
+			}
+			catch (java.lang.Exception e)
+			{
+				result = null;
+			}
+		}
+
+		/**
+		 * Takes the result of an identical region parsed at another offset. Results that give nodes to graft are
+		 * copied and shifted to this region, since the nodes hold their offsets and parent; the others are shared.
+		 */
+		void copyResult(EmbeddedRegion source)
+		{
+			if (source.result == null || !source.hasNodes())
+			{
+				result = source.result;
+				return;
+			}
+			IParseNode root = source.result.getRootNode();
+			if (!(root instanceof ParseNode))
+			{
+				parse();
+				return;
+			}
+			IParseRootNode copy = (IParseRootNode) ((ParseNode) root).clone();
+			ParseUtil.addOffset(copy, offset - source.offset);
+			result = new ParseResult(copy, source.result.getErrors());
+		}
+
+		/**
+		 * Whether the result gives nodes to graft into the HTML tree.
+		 */
+		abstract boolean hasNodes();
+
+		/**
+		 * Adds the result to the HTML tree.
+		 */
+		abstract void graft();
+	}
+
+	/**
+	 * The content of a script or style element.
+	 */
+	private static class BlockRegion extends EmbeddedRegion
+	{
+		private final HTMLSpecialNode node;
+		private final int end;
+		final int errorIndex;
+
+		/**
+		 * BlockRegion
+		 * 
+		 * @param language
+		 * @param text
+		 * @param start
+		 * @param end
+		 * @param node
+		 *            the script or style node, null if the element is outside of the tree
+		 * @param errorIndex
+		 *            where the errors of the content go among the HTML errors
+		 */
+		BlockRegion(String language, String text, int start, int end, HTMLSpecialNode node, int errorIndex)
+		{
+			super(language, text, start);
+			this.node = node;
+			this.end = end;
+			this.errorIndex = errorIndex;
+		}
+
+		@Override
+		boolean hasNodes()
+		{
+			return true;
+		}
+
+		@Override
+		void graft()
+		{
+			if (result != null && node != null)
+			{
+				IParseNode root = result.getRootNode();
+				if (root == null)
+				{
+					root = new HTMLTextNode(text, offset, end);
+				}
+				node.setChildren(new IParseNode[] { root });
+			}
+		}
+
+		List<IParseError> getErrors()
+		{
+			if (result == null)
+			{
+				return Collections.emptyList();
+			}
+			List<IParseError> errors = new ArrayList<IParseError>(result.getErrors().size());
+			for (IParseError subError : result.getErrors())
+			{
+				// Shift the line/offsets based on the starting offset/line of the sub-language!
+				errors.add(new ParseError(language, offset + subError.getOffset(), subError.getLength(), subError
+						.getMessage(), subError.getSeverity()));
+			}
+			return errors;
+		}
+	}
+
+	/**
+	 * The value of a style attribute.
+	 */
+	private static class CSSAttributeRegion extends EmbeddedRegion
+	{
+		private final HTMLElementNode element;
+
+		CSSAttributeRegion(String text, int offset, HTMLElementNode element)
+		{
+			super(ICSSConstants.CONTENT_TYPE_CSS, text, offset);
+			this.element = element;
+		}
+
+		@Override
+		boolean hasNodes()
+		{
+			return getDeclarations().length > 0;
+		}
+
+		@Override
+		void graft()
+		{
+			for (CSSDeclarationNode declaration : getDeclarations())
+			{
+				element.addCSSStyleNode(declaration);
+			}
+		}
+
+		private CSSDeclarationNode[] getDeclarations()
+		{
+			IParseNode node = (result == null) ? null : result.getRootNode();
+			// should always have a rule node
+			if (node != null && node.hasChildren())
+			{
+				IParseNode rule = node.getChild(0);
+				if (rule instanceof CSSRuleNode)
+				{
+					return ((CSSRuleNode) rule).getDeclarations();
+				}
+			}
+			return new CSSDeclarationNode[0];
+		}
+	}
+
+	/**
+	 * The value of an event handler attribute.
+	 */
+	private static class JSAttributeRegion extends EmbeddedRegion
+	{
+		private final HTMLElementNode element;
+
+		JSAttributeRegion(String text, int offset, HTMLElementNode element)
+		{
+			super(IJSConstants.CONTENT_TYPE_JS, text, offset);
+			this.element = element;
+		}
+
+		@Override
+		boolean hasNodes()
+		{
+			return result != null && result.getRootNode() != null && result.getRootNode().hasChildren();
+		}
+
+		@Override
+		void graft()
+		{
+			if (hasNodes())
+			{
+				for (IParseNode child : result.getRootNode())
+				{
+					element.addJSAttributeNode(child);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates the daemon threads parsing embedded regions.
+	 */
+	private static class SubParserThreadFactory implements ThreadFactory
+	{
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread(Runnable runnable)
+		{
+			Thread thread = new Thread(runnable, MessageFormat.format(
+					"HTML embedded parser #{0}", count.incrementAndGet())); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	private static ExecutorService executor;
+
+	private static synchronized ExecutorService getExecutor()
+	{
+		if (executor == null)
+		{
+			int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+			executor = Executors.newFixedThreadPool(threads, new SubParserThreadFactory());
+		}
+		return executor;
+	}
+
 	private HTMLParserScanner fScanner;
 	private HTMLParseState fParseState;
 	private Stack<IParseNode> fElementStack;
@@ -78,6 +335,13 @@ public class HTMLParser extends AbstractParser
 	private List<IParseNode> fCommentNodes;
 	private boolean previousSymbolSkipped;
 	private WorkingParseResult fWorkingParseResult;
+	private List<EmbeddedRegion> fEmbeddedRegions;
+
+	/**
+	 * While reparsing, the content of the script and style elements of the previous tree that the edit left as it is,
+	 * by offset.
+	 */
+	private Map<Integer, IParseRootNode> fReusableContent;
 
 	/**
 	 * parse
@@ -88,6 +352,7 @@ public class HTMLParser extends AbstractParser
 		fScanner = new HTMLParserScanner();
 		fElementStack = new Stack<IParseNode>();
 		fCommentNodes = new ArrayList<IParseNode>();
+		fEmbeddedRegions = new ArrayList<EmbeddedRegion>();
 		fWorkingParseResult = working;
 
 		String source = parseState.getSource();
@@ -110,6 +375,7 @@ public class HTMLParser extends AbstractParser
 			fCurrentElement = root;
 
 			parseAll(source);
+			parseEmbeddedRegions();
 			root.setCommentNodes(fCommentNodes.toArray(new IParseNode[fCommentNodes.size()]));
 		}
 		finally
@@ -123,6 +389,7 @@ public class HTMLParser extends AbstractParser
 			fCurrentSymbol = null;
 			fParseState = null;
 			fCommentNodes = null;
+			fEmbeddedRegions = null;
 		}
 
 		// trim the tree and set the result only after clearing for garbage collection.
@@ -130,6 +397,187 @@ public class HTMLParser extends AbstractParser
 		working.setParseResult(root);
 	}
 
+	/**
+	 * Reparses after an edit inside the content of a script or style element which leaves the markup as it is, by
+	 * parsing the content again, incrementally when its language allows it, and shifting the nodes after it in place.
+	 * For other edits the markup is parsed again but the content of the elements before the edit, or after it if the
+	 * length didn't change, is moved over from the previous tree. Documents with errors aren't handled and return null.
+	 * The previous tree is taken over either way.
+	 */
+	public synchronized ParseResult reparse(IParseState parseState, ParseResult previous, int offset,
+			int removedLength, int insertedLength) throws java.lang.Exception
+	{
+		String source = parseState.getSource();
+		IParseRootNode previousRoot = previous.getRootNode();
+		if (source == null || parseState.getStartingOffset() != 0 || !(previousRoot instanceof HTMLParseRootNode)
+				|| !previous.getErrors().isEmpty() || !ArrayUtil.isEmpty(parseState.getSkippedRanges()))
+		{
+			return null;
+		}
+		ParseResult result = reparseContent(source, previousRoot, offset, removedLength, insertedLength);
+		if (result != null)
+		{
+			return result;
+		}
+
+		Map<Integer, IParseRootNode> reusable = new HashMap<Integer, IParseRootNode>();
+		collectContent(previousRoot, offset, offset + removedLength, insertedLength - removedLength, reusable);
+		fReusableContent = reusable;
+		try
+		{
+			return parse(parseState);
+		}
+		finally
+		{
+			fReusableContent = null;
+		}
+	}
+
+	/**
+	 * Handles an edit inside the content of a script or style element that keeps the first and last characters of the
+	 * content, and can't have opened a comment or closed the element. Returns null for any other edit, leaving the
+	 * previous tree untouched.
+	 */
+	private ParseResult reparseContent(String source, IParseRootNode previousRoot, int offset, int removedLength,
+			int insertedLength)
+	{
+		int editEnd = offset + removedLength;
+		IParseNode node = previousRoot;
+		while (node != null && !(node instanceof HTMLSpecialNode))
+		{
+			node = getEnclosingChild(node, offset, editEnd);
+		}
+		if (node == null || node.getChildCount() != 1 || !(node.getChild(0) instanceof IParseRootNode))
+		{
+			return null;
+		}
+		HTMLSpecialNode element = (HTMLSpecialNode) node;
+		IParseRootNode content = (IParseRootNode) element.getChild(0);
+		int start = content.getStartingOffset();
+		int delta = insertedLength - removedLength;
+		if (start >= offset || editEnd > content.getEndingOffset()
+				|| mayEndContent(source, element.getName(), offset, offset + insertedLength))
+		{
+			return null;
+		}
+
+		String language = content.getLanguage();
+		ParseState contentState = new ParseState(source.substring(start, content.getEndingOffset() + delta + 1), start);
+		ParseResult contentResult;
+		try
+		{
+			if (IJSConstants.CONTENT_TYPE_JS.equals(language))
+			{
+				// the JS parser reuses the previous nodes
+				contentResult = ParserPoolFactory.reparse(language, contentState, new ParseResult(content,
+						Collections.<IParseError> emptyList()), offset - start, removedLength, insertedLength);
+			}
+			else
+			{
+				contentResult = ParserPoolFactory.parseUncached(language, contentState);
+			}
+		}
+		catch (java.lang.Exception e)
+		{
+			return null;
+		}
+		IParseRootNode newContent = contentResult.getRootNode();
+		if (newContent == null)
+		{
+			return null;
+		}
+
+		element.setChildren(new IParseNode[] { newContent });
+		if (delta != 0)
+		{
+			for (IParseNode parent = element; parent instanceof HTMLElementNode; parent = parent.getParent())
+			{
+				HTMLElementNode enclosing = (HTMLElementNode) parent;
+				IRange endNode = enclosing.getEndNode().getNameRange();
+				enclosing.setEndNode(endNode.getStartingOffset() + delta, endNode.getEndingOffset() + delta);
+				enclosing.setLocation(enclosing.getStartingOffset(), enclosing.getEndingOffset() + delta);
+				for (IParseNode sibling : enclosing.getParent().getChildren())
+				{
+					if (sibling != enclosing && sibling.getStartingOffset() > offset)
+					{
+						ParseUtil.addOffset(sibling, delta);
+					}
+				}
+			}
+		}
+
+		// the comments are in the tree too, so they've been shifted already
+		ParseRootNode root = new HTMLParseRootNode(0, source.length() - 1);
+		root.setChildren(previousRoot.getChildren());
+		root.setCommentNodes(previousRoot.getCommentNodes());
+		WorkingParseResult working = new WorkingParseResult();
+		for (IParseError error : contentResult.getErrors())
+		{
+			working.addError(new ParseError(language, start + error.getOffset(), error.getLength(), error
+					.getMessage(), error.getSeverity()));
+		}
+		working.setParseResult(root);
+		return working.getImmutableResult();
+	}
+
+	/**
+	 * Collects the content of the script and style elements which the edit leaves at the same offset.
+	 */
+	private static void collectContent(IParseNode node, int offset, int editEnd, int delta,
+			Map<Integer, IParseRootNode> content)
+	{
+		for (IParseNode child : node.getChildren())
+		{
+			if (child instanceof HTMLSpecialNode)
+			{
+				IParseNode root = child.hasChildren() ? child.getChild(0) : null;
+				if (root instanceof IParseRootNode
+						&& (root.getEndingOffset() < offset || (delta == 0 && root.getStartingOffset() >= editEnd)))
+				{
+					content.put(root.getStartingOffset(), (IParseRootNode) root);
+				}
+			}
+			else if (child instanceof HTMLElementNode)
+			{
+				collectContent(child, offset, editEnd, delta, content);
+			}
+		}
+	}
+
+	/**
+	 * Returns the child of the node whose range holds the whole edit, null if none does.
+	 */
+	private static IParseNode getEnclosingChild(IParseNode node, int offset, int editEnd)
+	{
+		for (IParseNode child : node.getChildren())
+		{
+			if (child.getStartingOffset() <= offset && editEnd <= child.getEndingOffset() + 1)
+			{
+				return child;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Whether the source around the edit has the start of the element's end tag or of a comment, which may change how
+	 * the markup scans.
+	 */
+	private static boolean mayEndContent(String source, String tag, int start, int end)
+	{
+		String endTag = "</" + tag; //$NON-NLS-1$
+		int from = Math.max(0, start - endTag.length());
+		int to = Math.min(source.length(), end + endTag.length());
+		for (int i = from; i < to; i++)
+		{
+			if (source.regionMatches(true, i, endTag, 0, endTag.length()) || source.startsWith(COMMENT_START, i))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
 	protected void processSymbol(Symbol symbol, String source) throws IOException, Exception
 	{
 		switch (symbol.getId())
@@ -180,11 +628,17 @@ public class HTMLParser extends AbstractParser
 			((HTMLTokenScanner) tokenScanner).setInsideSpecialTag(false);
 		}
 
-		IParseNode[] nested = getParseResult(language, start, end);
+		HTMLSpecialNode node = null;
 		if (fCurrentElement != null)
 		{
-			HTMLSpecialNode node = new HTMLSpecialNode(startTag, nested, startTag.getStart(), fCurrentSymbol.getEnd());
+			node = new HTMLSpecialNode(startTag, HTMLParserConstants.NO_PARSE_NODES, startTag.getStart(),
+					fCurrentSymbol.getEnd());
 			node.setEndNode(fCurrentSymbol.getStart(), fCurrentSymbol.getEnd());
+		}
+		// the content is parsed along with the other embedded regions once the whole document has been scanned
+		addBlockRegion(language, start, end, node);
+		if (node != null)
+		{
 			parseAttribute(node, startTag);
 			fCurrentElement.addChild(node);
 		}
@@ -269,35 +723,197 @@ public class HTMLParser extends AbstractParser
 		return false;
 	}
 
-	private IParseNode[] getParseResult(String language, int start, int end)
+	private void addBlockRegion(String language, int start, int end, HTMLSpecialNode node)
 	{
-		if (start <= end)
+		if (language == null || start > end)
 		{
-			try
-			{
-				String text = fScanner.getSource().get(start, end - start + 1);
+			return;
+		}
+		try
+		{
+			String text = fScanner.getSource().get(start, end - start + 1);
+			// the errors of the content go where they were reported back when it was parsed inline
+			int errorIndex = fWorkingParseResult.getErrors().size();
+			fEmbeddedRegions.add(new BlockRegion(language, text, start, end, node, errorIndex));
+		}
+		catch (java.lang.Exception e)
+		{
+		}
+	}
 
-				ParseState subParseState = new ParseState(text,start);
-				// FIXME We need to propagate options down to sub-languages, i.e. JS's attach/collect comments
-				ParseResult subParseResult = ParserPoolFactory.parse(language, subParseState);
-				IParseNode node = subParseResult.getRootNode();
-				for (IParseError subError : subParseResult.getErrors())
+	/**
+	 * Parses the embedded CSS and JS collected during the scan and grafts the results into the tree. Identical
+	 * attribute values are grouped so that they're parsed once, the other regions of a group taking a copy. If there's
+	 * enough to parse, the groups are spread over a small pool of threads, the first one being parsed on the calling
+	 * thread. Nothing is grafted once the parse is canceled.
+	 */
+	private void parseEmbeddedRegions()
+	{
+		if (fEmbeddedRegions.isEmpty() || fMonitor.isCanceled())
+		{
+			return;
+		}
+
+		List<List<EmbeddedRegion>> groups = new ArrayList<List<EmbeddedRegion>>(fEmbeddedRegions.size());
+		Map<String, List<EmbeddedRegion>> snippets = new HashMap<String, List<EmbeddedRegion>>();
+		int length = 0;
+		for (EmbeddedRegion region : fEmbeddedRegions)
+		{
+			if (region instanceof BlockRegion)
+			{
+				if (!reuseContent((BlockRegion) region))
 				{
-					// Shift the line/offsets based on the starting offset/line of the sub-language!
-					fWorkingParseResult.addError(new ParseError(language, start + subError.getOffset(), subError
-							.getLength(), subError.getMessage(), subError.getSeverity()));
+					length += region.text.length();
+					groups.add(Collections.singletonList(region));
 				}
-				if (node == null)
+				continue;
+			}
+			length += region.text.length();
+			String key = region.language + '\n' + region.text;
+			List<EmbeddedRegion> group = snippets.get(key);
+			if (group == null)
+			{
+				group = new ArrayList<EmbeddedRegion>(1);
+				snippets.put(key, group);
+				groups.add(group);
+			}
+			group.add(region);
+		}
+
+		if (groups.size() <= 1 || length < PARALLEL_THRESHOLD)
+		{
+			for (List<EmbeddedRegion> group : groups)
+			{
+				if (fMonitor.isCanceled())
 				{
-					node = new HTMLTextNode(text, start, end);
+					return;
 				}
-				return new IParseNode[] { node };
+				parse(group, fMonitor);
 			}
-			catch (java.lang.Exception e)
+		}
+		else
+		{
+			parseConcurrently(groups);
+		}
+		if (fMonitor.isCanceled())
+		{
+			return;
+		}
+
+		List<IParseError> errors = fWorkingParseResult.getErrors();
+		int inserted = 0;
+		for (EmbeddedRegion region : fEmbeddedRegions)
+		{
+			region.graft();
+			if (region instanceof BlockRegion)
+			{
+				List<IParseError> subErrors = ((BlockRegion) region).getErrors();
+				errors.addAll(((BlockRegion) region).errorIndex + inserted, subErrors);
+				inserted += subErrors.size();
+			}
+		}
+	}
+
+	/**
+	 * Takes the content of the element from the previous tree when reparsing and the edit didn't touch it.
+	 * 
+	 * @param region
+	 * @return
+	 */
+	private boolean reuseContent(BlockRegion region)
+	{
+		IParseRootNode content = (fReusableContent == null) ? null : fReusableContent.get(region.offset);
+		if (content == null || content.getEndingOffset() != region.end || !region.language.equals(content.getLanguage()))
+		{
+			return false;
+		}
+		// the previous tree had no errors, so neither had the content
+		region.result = new ParseResult(content, Collections.<IParseError> emptyList());
+		return true;
+	}
+
+	private void parseConcurrently(List<List<EmbeddedRegion>> groups)
+	{
+		final IProgressMonitor monitor = fMonitor;
+		int size = groups.size();
+		List<Future<?>> futures = new ArrayList<Future<?>>(size - 1);
+		try
+		{
+			ExecutorService service = getExecutor();
+			for (final List<EmbeddedRegion> group : groups.subList(1, size))
+			{
+				futures.add(service.submit(new Callable<Object>()
+				{
+					public Object call() throws java.lang.Exception
+					{
+						if (!monitor.isCanceled())
+						{
+							parse(group, monitor);
+						}
+						return null;
+					}
+				}));
+			}
+		}
+		catch (RejectedExecutionException e)
+		{
+			// shouldn't happen with an unbounded queue, but don't lose the embedded nodes if it does
+			cancel(futures);
+			for (List<EmbeddedRegion> group : groups)
+			{
+				parse(group, monitor);
+			}
+			return;
+		}
+
+		parse(groups.get(0), monitor);
+		for (Future<?> future : futures)
+		{
+			if (monitor.isCanceled())
 			{
+				cancel(futures);
+				break;
+			}
+			try
+			{
+				future.get();
+			}
+			catch (ExecutionException e)
+			{
+				IdeLog.logError(HTMLPlugin.getDefault(), e.getCause());
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				cancel(futures);
+				break;
+			}
+		}
+	}
+
+	private static void cancel(List<Future<?>> futures)
+	{
+		for (Future<?> future : futures)
+		{
+			future.cancel(false);
+		}
+	}
+
+	/**
+	 * Parses a group of identical regions once, the others taking a copy of the first one's result.
+	 */
+	private static void parse(List<EmbeddedRegion> group, IProgressMonitor monitor)
+	{
+		EmbeddedRegion first = group.get(0);
+		first.parse();
+		for (EmbeddedRegion region : group.subList(1, group.size()))
+		{
+			if (monitor.isCanceled())
+			{
+				return;
 			}
+			region.copyResult(first);
 		}
-		return HTMLParserConstants.NO_PARSE_NODES;
 	}
 
 	private void processComment()
@@ -494,48 +1110,13 @@ public class HTMLParser extends AbstractParser
 				if (HTMLUtils.isCSSAttribute(name))
 				{
 					String text = tagName + " {" + value + "}"; //$NON-NLS-1$ //$NON-NLS-2$
-					try
-					{
-
-						int startingOffset = absoluteOffset - (tagName.length() + 1);
-						IParseNode node = ParserPoolFactory.parse(ICSSConstants.CONTENT_TYPE_CSS, text, startingOffset)
-								.getRootNode();
-
-						// should always have a rule node
-						if (node.hasChildren())
-						{
-							IParseNode rule = node.getChild(0);
-							if (rule instanceof CSSRuleNode)
-							{
-								CSSDeclarationNode[] declarations = ((CSSRuleNode) rule).getDeclarations();
-								for (CSSDeclarationNode declaration : declarations)
-								{
-									element.addCSSStyleNode(declaration);
-								}
-							}
-						}
-					}
-					catch (java.lang.Exception e)
-					{
-					}
+					int startingOffset = absoluteOffset - (tagName.length() + 1);
+					fEmbeddedRegions.add(new CSSAttributeRegion(text, startingOffset, element));
 				}
 				// checks if we need to process the value as JS
 				else if (HTMLUtils.isJSAttribute(tagName, name))
 				{
-					try
-					{
-						int startingOffset = absoluteOffset + 1;
-						IParseNode node = ParserPoolFactory.parse(IJSConstants.CONTENT_TYPE_JS, value, startingOffset)
-								.getRootNode();
-
-						for (IParseNode child : node)
-						{
-							element.addJSAttributeNode(child);
-						}
-					}
-					catch (java.lang.Exception e)
-					{
-					}
+					fEmbeddedRegions.add(new JSAttributeRegion(value, absoluteOffset + 1, element));
 				}
 			}
 		}
@@ -20,6 +20,7 @@ import java.util.Set;
 
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.IDocument;
@@ -55,6 +56,7 @@ import com.aptana.js.core.JSLanguageConstants;
 import com.aptana.js.core.JSTypeConstants;
 import com.aptana.js.core.index.IJSIndexConstants;
 import com.aptana.js.core.index.JSIndexQueryHelper;
+import com.aptana.js.core.inferencing.JSInferenceCache;
 import com.aptana.js.core.inferencing.JSNodeTypeInferrer;
 import com.aptana.js.core.inferencing.JSPropertyCollection;
 import com.aptana.js.core.inferencing.JSScope;
@@ -489,46 +491,52 @@ public class JSContentAssistProcessor extends CommonContentAssistProcessor
 			return;
 		}
 
-		JSScope globalScope = ParseUtil.getGlobalScope(targetNode);
-		if (globalScope == null)
+		JSInferenceCache cache = JSInferenceCache.getCache(targetNode, getQueryHelper());
+		if (cache == null)
 		{
 			return;
 		}
-		JSScope localScope = globalScope.getScopeAtOffset(offset);
 		String fileLocation = getFilename();
 		String[] userAgentNames = getActiveUserAgentIds();
 
-		while (localScope != null && localScope != globalScope)
+		// inference elsewhere fills in the symbols of the cached scopes, so they are read under the cache's lock
+		synchronized (cache)
 		{
-			List<String> symbols = localScope.getLocalSymbolNames();
+			JSScope globalScope = cache.getGlobals();
+			JSScope localScope = globalScope.getScopeAtOffset(offset);
 
-			for (String symbol : symbols)
+			while (localScope != null && localScope != globalScope)
 			{
-				boolean isFunction = false;
-				JSPropertyCollection object = localScope.getLocalSymbol(symbol);
-				List<JSNode> nodes = object.getValues();
+				List<String> symbols = localScope.getLocalSymbolNames();
 
-				if (nodes != null)
+				for (String symbol : symbols)
 				{
-					for (JSNode node : nodes)
+					boolean isFunction = false;
+					JSPropertyCollection object = localScope.getLocalSymbol(symbol);
+					List<JSNode> nodes = object.getValues();
+
+					if (nodes != null)
 					{
-						if (node instanceof JSFunctionNode)
+						for (JSNode node : nodes)
 						{
-							isFunction = true;
-							break;
+							if (node instanceof JSFunctionNode)
+							{
+								isFunction = true;
+								break;
+							}
 						}
 					}
-				}
 
-				String name = symbol;
-				String description = null;
-				Image image = (isFunction) ? JS_FUNCTION : JS_PROPERTY;
+					String name = symbol;
+					String description = null;
+					Image image = (isFunction) ? JS_FUNCTION : JS_PROPERTY;
 
-				// TODO Add a JSPropertyCollectionProposal that takes the object and generates the rest?
-				addProposal(proposals, name, image, description, userAgentNames, fileLocation, offset);
-			}
+					// TODO Add a JSPropertyCollectionProposal that takes the object and generates the rest?
+					addProposal(proposals, name, image, description, userAgentNames, fileLocation, offset);
+				}
 
-			localScope = localScope.getParentScope();
+				localScope = localScope.getParentScope();
+			}
 		}
 	}
 
@@ -627,11 +635,11 @@ public class JSContentAssistProcessor extends CommonContentAssistProcessor
 
 			if (!CollectionsUtil.isEmpty(assignments))
 			{
-				JSScope globalScope = ParseUtil.getGlobalScope(targetNode);
+				JSInferenceCache cache = JSInferenceCache.getCache(targetNode, getQueryHelper());
 
-				if (globalScope != null)
+				if (cache != null)
 				{
-					JSScope localScope = globalScope.getScopeAtOffset(offset);
+					JSScope localScope = cache.getScopeAtOffset(offset);
 					Index index = getIndex();
 					URI location = EditorUtil.getURI(editor);
 					String typeName = StringUtil.concat(getNestedFunctionTypeName(function)
@@ -645,9 +653,12 @@ public class JSContentAssistProcessor extends CommonContentAssistProcessor
 						String name = lhs.getLastChild().getText();
 
 						JSNodeTypeInferrer nodeInferrer = new JSNodeTypeInferrer(localScope, index, location,
-								getQueryHelper());
-						((JSNode) rhs).accept(nodeInferrer);
-						List<String> types = nodeInferrer.getTypes();
+								getQueryHelper(), cache, new NullProgressMonitor());
+						List<String> types;
+						synchronized (cache)
+						{
+							types = nodeInferrer.getTypes(rhs);
+						}
 
 						PropertyElement property = new PropertyElement();
 						property.setName(name);
@@ -13,6 +13,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.jface.text.IDocument;
 
 import com.aptana.core.logging.IdeLog;
@@ -23,6 +24,7 @@ import com.aptana.editor.js.text.JSFlexLexemeProvider;
 import com.aptana.index.core.Index;
 import com.aptana.js.core.JSTypeConstants;
 import com.aptana.js.core.index.JSIndexQueryHelper;
+import com.aptana.js.core.inferencing.JSInferenceCache;
 import com.aptana.js.core.inferencing.JSNodeTypeInferrer;
 import com.aptana.js.core.inferencing.JSScope;
 import com.aptana.js.core.inferencing.JSTypeMapper;
@@ -435,8 +437,10 @@ public class ParseUtil
 
 		if (getPropertyNode != null)
 		{
-			// collect the scope for the target node
-			JSScope localScope = ParseUtil.getScopeAtOffset(targetNode, offset);
+			// collect the scope for the target node, reusing what was inferred for the same AST before
+			JSInferenceCache cache = JSInferenceCache.getCache(targetNode, queryHelper);
+			JSScope localScope = (cache != null) ? cache.getScopeAtOffset(offset) : ParseUtil.getScopeAtOffset(
+					targetNode, offset);
 
 			if (localScope != null)
 			{
@@ -447,9 +451,13 @@ public class ParseUtil
 				// Infer types for the receiver
 				if (lhs instanceof JSNode)
 				{
-					JSNodeTypeInferrer typeWalker = new JSNodeTypeInferrer(localScope, projectIndex, fileURI, queryHelper);
-					typeWalker.visit((JSNode) lhs);
-					typeList = typeWalker.getTypes();
+					JSNodeTypeInferrer typeWalker = new JSNodeTypeInferrer(localScope, projectIndex, fileURI,
+							queryHelper, cache, new NullProgressMonitor());
+					// inference fills in the types of the cached scope's symbols
+					synchronized ((cache != null) ? cache : typeWalker)
+					{
+						typeList = typeWalker.getTypes(lhs);
+					}
 				}
 
 				IdeLog.logInfo(JSPlugin.getDefault(),
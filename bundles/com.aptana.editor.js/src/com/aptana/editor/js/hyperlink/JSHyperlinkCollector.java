@@ -35,6 +35,7 @@ import com.aptana.editor.js.internal.JSModelUtil;
 import com.aptana.index.core.Index;
 import com.aptana.js.core.index.JSIndexQueryHelper;
 import com.aptana.js.core.inferencing.CommonJSResolver;
+import com.aptana.js.core.inferencing.JSInferenceCache;
 import com.aptana.js.core.inferencing.JSPropertyCollection;
 import com.aptana.js.core.inferencing.JSScope;
 import com.aptana.js.core.inferencing.RequireResolverFactory;
@@ -254,54 +255,63 @@ public class JSHyperlinkCollector extends JSTreeWalker
 			return;
 		}
 
-		JSScope globalScope = ast.getGlobals();
-		JSScope activeScope = globalScope.getScopeAtOffset(offset);
-		JSPropertyCollection properties = activeScope.getSymbol(node.getText());
-
-		if (properties != null)
+		JSInferenceCache cache = JSInferenceCache.getCache(ast, createQueryHelper());
+		if (cache == null)
 		{
-			for (JSNode value : properties.getValues())
-			{
-				IParseNode parent = value.getParent();
+			return;
+		}
+		// inference elsewhere fills in the symbols of the cached scopes, so they are read under the cache's lock
+		synchronized (cache)
+		{
+			JSScope globalScope = cache.getGlobals();
+			JSScope activeScope = globalScope.getScopeAtOffset(offset);
+			JSPropertyCollection properties = (activeScope == null) ? null : activeScope.getSymbol(node.getText());
 
-				switch (parent.getNodeType())
+			if (properties != null)
+			{
+				for (JSNode value : properties.getValues())
 				{
-					case IJSNodeTypes.PARAMETERS:
-					{
-						addHyperlink(node, value, JSAbstractHyperlink.PARAMETER_TYPE);
-						break;
-					}
+					IParseNode parent = value.getParent();
 
-					case IJSNodeTypes.DECLARATION:
+					switch (parent.getNodeType())
 					{
-						// prevent jumping to LHS when trying to generate a link from RHS with same name as identifier
-						// for example: var is = ABC.DEF.i|s
-						if (!parent.contains(node.getStartingOffset()))
+						case IJSNodeTypes.PARAMETERS:
 						{
-							JSNode targetIdentifier = (JSNode) value.getParent().getFirstChild();
-
-							addHyperlink(node, targetIdentifier, JSAbstractHyperlink.LOCAL_DECLARTION_TYPE);
+							addHyperlink(node, value, JSAbstractHyperlink.PARAMETER_TYPE);
+							break;
 						}
-						break;
-					}
 
-					default:
-						if (value.getNodeType() == IJSNodeTypes.ASSIGN)
+						case IJSNodeTypes.DECLARATION:
 						{
-							JSNode targetIdentifier = (JSNode) value.getFirstChild();
+							// prevent jumping to LHS when trying to generate a link from RHS with same name as identifier
+							// for example: var is = ABC.DEF.i|s
+							if (!parent.contains(node.getStartingOffset()))
+							{
+								JSNode targetIdentifier = (JSNode) value.getParent().getFirstChild();
 
-							addHyperlink(node, targetIdentifier, JSAbstractHyperlink.LOCAL_ASSIGNMENT_TYPE);
+								addHyperlink(node, targetIdentifier, JSAbstractHyperlink.LOCAL_DECLARTION_TYPE);
+							}
+							break;
 						}
-						else if (value.getNodeType() == IJSNodeTypes.FUNCTION)
-						{
-							JSFunctionNode functionNode = (JSFunctionNode) value;
-							IParseNode name = functionNode.getName();
 
-							if (name instanceof JSNode)
+						default:
+							if (value.getNodeType() == IJSNodeTypes.ASSIGN)
 							{
-								addHyperlink(node, (JSNode) name, StringUtil.EMPTY);
+								JSNode targetIdentifier = (JSNode) value.getFirstChild();
+
+								addHyperlink(node, targetIdentifier, JSAbstractHyperlink.LOCAL_ASSIGNMENT_TYPE);
 							}
-						}
+							else if (value.getNodeType() == IJSNodeTypes.FUNCTION)
+							{
+								JSFunctionNode functionNode = (JSFunctionNode) value;
+								IParseNode name = functionNode.getName();
+
+								if (name instanceof JSNode)
+								{
+									addHyperlink(node, (JSNode) name, StringUtil.EMPTY);
+								}
+							}
+					}
 				}
 			}
 		}
@@ -83,6 +83,17 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 
 	private final static String WINDOWS_STR = "WINDOWS"; //$NON-NLS-1$
 
+	/**
+	 * The number of directories listed at the same time when fetching a tree, each one with a client of the pool.
+	 */
+	private static final int LISTING_CONCURRENCY = 4;
+
+	/**
+	 * The resolution of the modification times of directories, which LIST shows to the minute; MDTM is only sent for
+	 * files.
+	 */
+	private static final long DIRECTORY_TIME_RESOLUTION = 60000;
+
 	private final static SimpleDateFormat[] UTIME_FORMATS = new SimpleDateFormat[] {
 			new SimpleDateFormat("'UTIME' yyyyMMddHHmmss '{0}'"), //$NON-NLS-1$
 			new SimpleDateFormat("'UTIME {0}' yyyyMMddHHmmss yyyyMMddHHmmss yyyyMMddHHmmss 'UTC'"), //$NON-NLS-1$
@@ -94,8 +105,8 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 	protected String timezone;
 	protected IPath cwd;
 	private FTPFileFactory fileFactory;
-	private Boolean statSupported = null;
-	private Boolean listASupported = null;
+	private volatile Boolean statSupported = null;
+	private volatile Boolean listASupported = null;
 	private int utimeFormat = -1;
 	private Map<IPath, FTPFile> ftpFileCache = new ExpiringMap<IPath, FTPFile>(CACHE_TTL);
 	private long serverToLocalTimeZoneShift = Integer.MIN_VALUE;
@@ -639,6 +650,26 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 		}
 	}
 
+	/**
+	 * Changes the current directory of the given client, either the main one or a client of the pool.
+	 */
+	private void changeCurrentDir(FTPClient client, IPath path) throws FTPException, IOException
+	{
+		if (client == ftpClient)
+		{
+			changeCurrentDir(path);
+			return;
+		}
+		try
+		{
+			client.chdir(path.toPortableString());
+		}
+		catch (FTPException e)
+		{
+			throwFileNotFound(e, path);
+		}
+	}
+
 	private static void throwFileNotFound(FTPException e, IPath path) throws FileNotFoundException, FTPException
 	{
 		int code = e.getReplyCode();
@@ -894,17 +925,24 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 	 * @see com.aptana.ide.core.ftp.BaseFTPConnectionFileManager#fetchFiles(org.eclipse.core.runtime.IPath, int,
 	 * org.eclipse.core.runtime.IProgressMonitor)
 	 */
-	@SuppressWarnings("deprecation")
 	@Override
 	protected ExtendedFileInfo[] fetchFiles(IPath path, int options, IProgressMonitor monitor) throws CoreException,
 			FileNotFoundException
+	{
+		return fetchFiles(ftpClient, path, options, monitor);
+	}
+
+	@SuppressWarnings("deprecation")
+	private ExtendedFileInfo[] fetchFiles(FTPClient client, IPath path, int options, IProgressMonitor monitor)
+			throws CoreException, FileNotFoundException
 	{
 		monitor = Policy.subMonitorFor(monitor, 1);
 		try
 		{
-			FTPFile[] ftpFiles = listFiles(path, monitor);
+			FTPFile[] ftpFiles = listFiles(client, path, monitor);
 			monitor.beginTask(Messages.FTPConnectionFileManager_gethering_file_details, ftpFiles.length);
 			List<ExtendedFileInfo> list = new ArrayList<ExtendedFileInfo>();
+			boolean inDirectory = false;
 			for (FTPFile ftpFile : ftpFiles)
 			{
 				String fileName = ftpFile.getName();
@@ -922,11 +960,15 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 					if (!ftpFile.isDir() && ftpFile.lastModified().getSeconds() == 0)
 					{
 						if (serverSupportsFeature("MDTM")) { //$NON-NLS-1$
-							changeCurrentDir(path);
+							if (!inDirectory)
+							{
+								changeCurrentDir(client, path);
+								inDirectory = true;
+							}
 							Policy.checkCanceled(monitor);
 							try
 							{
-								Date lastModifiedLocalTZ = ftpClient.modtime(fileName);
+								Date lastModifiedLocalTZ = client.modtime(fileName);
 								if (lastModifiedLocalTZ != null)
 								{
 									ftpFile.setLastModified(lastModifiedLocalTZ);
@@ -939,7 +981,10 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 					}
 				}
 				IPath filePath = path.append(fileName);
-				ftpFileCache.put(filePath, ftpFile);
+				synchronized (this)
+				{
+					ftpFileCache.put(filePath, ftpFile);
+				}
 
 				ExtendedFileInfo fileInfo = createFileInfo(ftpFile);
 				list.add(fileInfo);
@@ -966,6 +1011,93 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 		}
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.core.io.vfs.BaseConnectionFileManager#getListingConcurrency()
+	 */
+	@Override
+	protected int getListingConcurrency()
+	{
+		return LISTING_CONCURRENCY;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.core.io.vfs.BaseConnectionFileManager#getModificationTimeResolution()
+	 */
+	@Override
+	protected long getModificationTimeResolution()
+	{
+		return DIRECTORY_TIME_RESOLUTION;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see
+	 * com.aptana.core.io.vfs.BaseConnectionFileManager#openListingSession(org.eclipse.core.runtime.IProgressMonitor)
+	 */
+	@Override
+	protected IListingSession openListingSession(IProgressMonitor monitor) throws CoreException
+	{
+		final FTPClient listingFtpClient = (FTPClient) pool.checkOut();
+		try
+		{
+			initAndAuthFTPClient(listingFtpClient, monitor);
+			setMessageLogger(listingFtpClient, messageLogWriter);
+		}
+		catch (Exception e)
+		{
+			pool.checkIn(listingFtpClient);
+			if (e instanceof OperationCanceledException)
+			{
+				throw (OperationCanceledException) e;
+			}
+			throw new CoreException(new Status(Status.ERROR, FTPPlugin.PLUGIN_ID,
+					Messages.FTPConnectionFileManager_fetching_directory_failed, e));
+		}
+		return new IListingSession()
+		{
+			public ExtendedFileInfo[] fetchFiles(IPath path, int options, IProgressMonitor monitor)
+					throws CoreException, FileNotFoundException
+			{
+				return FTPConnectionFileManager.this.fetchFiles(listingFtpClient, path, options, monitor);
+			}
+
+			public ExtendedFileInfo fetchFile(IPath path, int options, IProgressMonitor monitor)
+					throws CoreException, FileNotFoundException
+			{
+				FTPFile ftpFile;
+				synchronized (FTPConnectionFileManager.this)
+				{
+					ftpFile = ftpFileCache.get(path);
+				}
+				if (ftpFile != null)
+				{
+					return createFileInfo(ftpFile);
+				}
+				// lists the parent, which caches the siblings for the next ones
+				String name = path.lastSegment();
+				for (ExtendedFileInfo fileInfo : FTPConnectionFileManager.this.fetchFiles(listingFtpClient,
+						path.removeLastSegments(1), EFS.NONE, monitor))
+				{
+					if (fileInfo.getName().equalsIgnoreCase(name))
+					{
+						return fileInfo;
+					}
+				}
+				ExtendedFileInfo fileInfo = new ExtendedFileInfo(name);
+				fileInfo.setExists(false);
+				return fileInfo;
+			}
+
+			public void close()
+			{
+				setMessageLogger(listingFtpClient, null);
+				pool.checkIn(listingFtpClient);
+			}
+		};
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see com.aptana.ide.core.ftp.BaseFTPConnectionFileManager#listDirectory(org.eclipse.core.runtime.IPath,
@@ -1512,12 +1644,11 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 		return ftpClient.existsFile(filePath.toPortableString());
 	}
 
-	private FTPFile[] ftpSTAT(String dirname) throws IOException, FTPException, ParseException
+	private FTPFile[] ftpSTAT(FTPClient client, String dirname) throws IOException, FTPException, ParseException
 	{
-		setupFileFactory();
 		String[] validCodes = { "211", "212", "213" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
-		FTPReply reply = ftpClient.sendCommand("STAT " + dirname); //$NON-NLS-1$
-		ftpClient.validateReply(reply, validCodes);
+		FTPReply reply = client.sendCommand("STAT " + dirname); //$NON-NLS-1$
+		client.validateReply(reply, validCodes);
 		String[] data = reply.getReplyData();
 		if (data == null)
 		{
@@ -1527,7 +1658,7 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 		{
 			data[i] = data[i].trim();
 		}
-		FTPFile[] ftpFiles = fileFactory.parse(data);
+		FTPFile[] ftpFiles = parse(data);
 		for (FTPFile ftpFile : ftpFiles)
 		{
 			String name = ftpFile.getName();
@@ -1539,16 +1670,16 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 		return ftpFiles;
 	}
 
-	private FTPFile[] ftpLIST(IPath dirPath, IProgressMonitor monitor) throws IOException, ParseException, FTPException
+	private FTPFile[] ftpLIST(FTPClient client, IPath dirPath, IProgressMonitor monitor) throws IOException,
+			ParseException, FTPException
 	{
-		setupFileFactory();
-		changeCurrentDir(dirPath);
+		changeCurrentDir(client, dirPath);
 		Policy.checkCanceled(monitor);
 		if (!Boolean.FALSE.equals(listASupported))
 		{
 			try
 			{
-				FTPFile[] ftpFiles = fileFactory.parse(ftpClient.dir("-a", true)); //$NON-NLS-1$
+				FTPFile[] ftpFiles = parse(client.dir("-a", true)); //$NON-NLS-1$
 				listASupported = Boolean.TRUE;
 				return ftpFiles;
 			}
@@ -1564,7 +1695,17 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 				}
 			}
 		}
-		return fileFactory.parse(ftpClient.dir(".", true)); //$NON-NLS-1$
+		return parse(client.dir(".", true)); //$NON-NLS-1$
+	}
+
+	/**
+	 * Parses a listing, with the parser set up for the system of the server. Listings made with clients of the pool
+	 * are parsed under the lock of the manager as well, since the parser isn't thread-safe.
+	 */
+	private synchronized FTPFile[] parse(String[] listing) throws IOException, FTPException, ParseException
+	{
+		setupFileFactory();
+		return fileFactory.parse(listing);
 	}
 
 	private void setupFileFactory() throws IOException, FTPException
@@ -1585,13 +1726,23 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 
 	private FTPFile[] listFiles(IPath dirPath, IProgressMonitor monitor) throws IOException, ParseException,
 			FTPException
+	{
+		return listFiles(ftpClient, dirPath, monitor);
+	}
+
+	/**
+	 * Lists a directory with the given client, either the main one or a client of the pool: with STAT over the control
+	 * connection when the server supports it, or with LIST otherwise.
+	 */
+	private FTPFile[] listFiles(FTPClient client, IPath dirPath, IProgressMonitor monitor) throws IOException,
+			ParseException, FTPException
 	{
 		FTPFile[] ftpFiles = null;
 		if (!Boolean.FALSE.equals(statSupported) && dirPath.toPortableString().indexOf(' ') == -1)
 		{
 			try
 			{
-				ftpFiles = ftpSTAT(dirPath.addTrailingSeparator().toPortableString());
+				ftpFiles = ftpSTAT(client, dirPath.addTrailingSeparator().toPortableString());
 			}
 			catch (MalformedReplyException e)
 			{
@@ -1614,11 +1765,11 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 				{
 					statSupported = Boolean.FALSE;
 				}
-				return ftpLIST(dirPath, monitor);
+				return ftpLIST(client, dirPath, monitor);
 			}
 			else if (ftpFiles[0].isLink())
 			{
-				return ftpLIST(dirPath, monitor);
+				return ftpLIST(client, dirPath, monitor);
 			}
 			else if (statSupported == null)
 			{
@@ -1627,7 +1778,7 @@ public class FTPConnectionFileManager extends BaseFTPConnectionFileManager imple
 		}
 		else
 		{
-			ftpFiles = ftpLIST(dirPath, monitor);
+			ftpFiles = ftpLIST(client, dirPath, monitor);
 		}
 		if (fileFactory.getSystem().toUpperCase().startsWith(WINDOWS_STR) && ftpFiles != null)
 		{
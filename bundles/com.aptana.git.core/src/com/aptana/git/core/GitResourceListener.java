@@ -281,9 +281,8 @@ class GitResourceListener implements IResourceChangeListener
 				return false;
 			}
 
-			// All seems good, schedule the repo for update.
-			// TODO We force a refresh of the whole index for this repo. Maybe we should see if there's a way to
-			// refresh the status of just this file?
+			// All seems good, schedule the repo for update. Only the status of the changed resources gets refreshed, the
+			// refresh job coalesces bursts of them.
 			Set<IResource> resources = reposToRefresh.get(mapping);
 			if (resources == null)
 			{
@@ -47,12 +47,46 @@ public class GitCommit
 	private String comment;
 	private List<Diff> diffs;
 
+	/**
+	 * Loads the subject, author and comment when first asked for, null once they're loaded (or were set directly).
+	 */
+	private volatile GitRevList.DetailsLoader detailsLoader;
+
 	public GitCommit(GitRepository repository, String sha)
 	{
 		this.repository = repository;
 		this.sha = sha;
 	}
 
+	void setDetailsLoader(GitRevList.DetailsLoader loader)
+	{
+		this.detailsLoader = loader;
+	}
+
+	/**
+	 * Whether the subject, author and message are loaded, so that asking for them doesn't run git.
+	 * 
+	 * @return
+	 */
+	public boolean hasDetails()
+	{
+		return detailsLoader == null;
+	}
+
+	/**
+	 * Loads the subject, author and message of this commit, along with those of the other commits of its batch, if
+	 * they aren't loaded yet. This runs git, so it shouldn't be called from the UI thread. The details are left
+	 * unloaded when a write to the repository is going on.
+	 */
+	public void loadDetails()
+	{
+		GitRevList.DetailsLoader loader = detailsLoader;
+		if (loader != null)
+		{
+			loader.load();
+		}
+	}
+
 	public List<String> parents()
 	{
 		return parentShas;
@@ -100,16 +134,19 @@ public class GitCommit
 
 	public String getSubject()
 	{
+		loadDetails();
 		return subject;
 	}
 
 	public String getAuthor()
 	{
+		loadDetails();
 		return author;
 	}
 
 	public String getComment()
 	{
+		loadDetails();
 		return comment;
 	}
 
@@ -213,6 +250,7 @@ public class GitCommit
 
 	public String getAuthorEmail()
 	{
+		loadDetails();
 		return authorEmail;
 	}
 
@@ -7,8 +7,10 @@
  */
 package com.aptana.git.core.model;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -46,7 +48,6 @@ import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.core.runtime.jobs.IJobManager;
 import org.eclipse.core.runtime.jobs.Job;
 
-import com.aptana.core.IFilter;
 import com.aptana.core.IMap;
 import com.aptana.core.ShellExecutable;
 import com.aptana.core.logging.IdeLog;
@@ -69,6 +70,12 @@ public class GitIndex
 
 	private static final String NULL_DELIMITER = "\0"; //$NON-NLS-1$
 
+	/**
+	 * The most paths whose stat data changed that we pass along to git diff-files. Past this we ask git about all the
+	 * paths being refreshed, so we don't run into command line length limits.
+	 */
+	private static final int MAX_SUSPECT_PATHS = 200;
+
 	/**
 	 * File extensions we check against and use to assume if a file may be binary (to not show a diff/content in various
 	 * UI views)
@@ -98,6 +105,16 @@ public class GitIndex
 	 */
 	private GitIndexRefreshJob refreshJob;
 
+	/**
+	 * The result of comparing the index entries to the working tree: the files which are gone, and the ones whose stat
+	 * data changed (or can't be trusted) so git has to check their content.
+	 */
+	private static class StatCheck
+	{
+		final Map<IPath, ChangedFile> deleted = new HashMap<IPath, ChangedFile>();
+		final Set<String> suspects = new HashSet<String>();
+	}
+
 	GitIndex(GitRepository repository)
 	{
 		Assert.isNotNull(repository, "GitIndex requires a repository"); //$NON-NLS-1$
@@ -106,6 +123,102 @@ public class GitIndex
 		this.es = Executors.newFixedThreadPool(3);
 	}
 
+	/**
+	 * Reads the index file and compares the stat data of its entries (limited to the passed in paths if there are any)
+	 * to the working tree. Returns null if the index can't be read, in which case git has to do it all.
+	 * 
+	 * @param portablePathStrings
+	 * @return
+	 */
+	private StatCheck checkStatData(Set<String> portablePathStrings)
+	{
+		IPath workingDirectory = repository.workingDirectory();
+		if (workingDirectory == null)
+		{
+			return null;
+		}
+		GitIndexFile indexFile;
+		try
+		{
+			indexFile = GitIndexFile.read(repository.indexFile());
+		}
+		catch (IOException e)
+		{
+			IdeLog.logInfo(GitPlugin.getDefault(),
+					MessageFormat.format("Unable to read the index, falling back to git: {0}", e.getMessage()), //$NON-NLS-1$
+					IDebugScopes.DEBUG);
+			return null;
+		}
+
+		File root = workingDirectory.toFile();
+		boolean compareExecutable = !Platform.OS_WIN32.equals(Platform.getOS());
+		StatCheck check = new StatCheck();
+		for (GitIndexFile.Entry entry : indexFile.getEntries())
+		{
+			if (entry.isAssumedUnchanged() || !isIncluded(entry.path, portablePathStrings))
+			{
+				continue;
+			}
+			File file = new File(root, entry.path);
+			if (entry.isStatClean(file, compareExecutable) && !indexFile.isRacy(entry))
+			{
+				continue;
+			}
+			// a non-ASCII name may just not be representable in the platform's file name encoding, let git decide
+			if (entry.isRegularFile() && entry.stage == 0 && !entry.intentToAdd && !file.exists()
+					&& isASCII(entry.path))
+			{
+				IPath path = Path.fromPortableString(entry.path);
+				check.deleted.put(path, new ChangedFile(repository, path, ChangedFile.Status.DELETED,
+						entry.getModeString(), entry.sha, false, true));
+			}
+			else
+			{
+				check.suspects.add(entry.path);
+			}
+		}
+		return check;
+	}
+
+	private static boolean isASCII(String path)
+	{
+		for (int i = 0; i < path.length(); i++)
+		{
+			if (path.charAt(i) > 0x7f)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns true if the path is one of the passed in paths or inside one of them. An empty set includes everything.
+	 * 
+	 * @param path
+	 * @param portablePathStrings
+	 * @return
+	 */
+	private static boolean isIncluded(String path, Set<String> portablePathStrings)
+	{
+		if (portablePathStrings.isEmpty() || portablePathStrings.contains(StringUtil.EMPTY)
+				|| portablePathStrings.contains(".")) //$NON-NLS-1$
+		{
+			return true;
+		}
+		String current = path;
+		while (!portablePathStrings.contains(current))
+		{
+			int slash = current.lastIndexOf('/');
+			if (slash == -1)
+			{
+				return false;
+			}
+			current = current.substring(0, slash);
+		}
+		return true;
+	}
+
 	/**
 	 * Used by callers who don't need to wait for it to finish so we can squash together repeated calls when they come
 	 * rapid-fire.
@@ -155,25 +268,6 @@ public class GitIndex
 		}
 		this.notify = notify;
 
-		// If we don't run this, we end up showing files as unstaged when they're no longer modified!
-		IStatus result;
-		synchronized (this)
-		{
-			repository.forceWrite(); // Do we only want to try the lock if we're in UI thread?
-			result = GitExecutable.instance().runInBackground(repository.workingDirectory(), "update-index", "-q", //$NON-NLS-1$ //$NON-NLS-2$
-					"--unmerged", "--ignore-missing", "--refresh"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
-			repository.exitWriteProcess();
-		}
-		if (result == null) // couldn't even execute!
-		{
-			return new Status(IStatus.ERROR, GitPlugin.getPluginId(), "Failed to execute git update-index"); //$NON-NLS-1$
-		}
-		if (!result.isOK())
-		{
-			IdeLog.logWarning(GitPlugin.getDefault(), "Unable to run update-index: " + result.getMessage()); //$NON-NLS-1$
-			return result;
-		}
-
 		final Set<String> portablePathStrings = new HashSet<String>(CollectionsUtil.map(filePaths,
 				new IMap<IPath, String>()
 				{
@@ -183,10 +277,54 @@ public class GitIndex
 					}
 				}));
 
+		// Compare the index entries to the working tree ourselves first, git only needs to look at the files whose stat
+		// data changed.
+		StatCheck statCheck = checkStatData(portablePathStrings);
+		if (statCheck == null || !statCheck.suspects.isEmpty())
+		{
+			// If we don't run this, we end up showing files as unstaged when they're no longer modified!
+			IStatus result;
+			synchronized (this)
+			{
+				repository.forceWrite(); // Do we only want to try the lock if we're in UI thread?
+				result = GitExecutable.instance().runInBackground(repository.workingDirectory(), "update-index", "-q", //$NON-NLS-1$ //$NON-NLS-2$
+						"--unmerged", "--ignore-missing", "--refresh"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				repository.exitWriteProcess();
+			}
+			if (result == null) // couldn't even execute!
+			{
+				return new Status(IStatus.ERROR, GitPlugin.getPluginId(), "Failed to execute git update-index"); //$NON-NLS-1$
+			}
+			if (!result.isOK())
+			{
+				IdeLog.logWarning(GitPlugin.getDefault(), "Unable to run update-index: " + result.getMessage()); //$NON-NLS-1$
+				return result;
+			}
+		}
+
+		// Now create a new temporary list so we can build it up...
+		Map<IPath, ChangedFile> newChangedFiles = new HashMap<IPath, ChangedFile>();
+
 		Set<Callable<Map<IPath, ChangedFile>>> jobs = new HashSet<Callable<Map<IPath, ChangedFile>>>(3);
 		jobs.add(new UntrackedFilesRefreshJob(this, portablePathStrings));
-		jobs.add(new UnstagedFilesRefreshJob(this, portablePathStrings));
 		jobs.add(new StagedFilesRefreshJob(this, portablePathStrings));
+		if (statCheck == null)
+		{
+			jobs.add(new UnstagedFilesRefreshJob(this, portablePathStrings));
+		}
+		else if (statCheck.suspects.size() > MAX_SUSPECT_PATHS)
+		{
+			// too many to pass along, git reports the deleted files as well
+			jobs.add(new UnstagedFilesRefreshJob(this, portablePathStrings));
+		}
+		else
+		{
+			newChangedFiles.putAll(statCheck.deleted);
+			if (!statCheck.suspects.isEmpty())
+			{
+				jobs.add(new UnstagedFilesRefreshJob(this, statCheck.suspects));
+			}
+		}
 
 		// Last chance to cancel...
 		if (monitor != null && monitor.isCanceled())
@@ -194,9 +332,6 @@ public class GitIndex
 			return Status.CANCEL_STATUS;
 		}
 
-		// Now create a new temporary list so we can build it up...
-		Map<IPath, ChangedFile> newChangedFiles = new HashMap<IPath, ChangedFile>();
-
 		// Schedule all the jobs
 		MultiStatus errors = new MultiStatus(GitPlugin.PLUGIN_ID, 1,
 				"Errors occurred while grabbing changed file listings", null); //$NON-NLS-1$
@@ -271,53 +406,41 @@ public class GitIndex
 			IdeLog.logWarning(GitPlugin.getDefault(), e);
 		}
 
-		// Copy the last full list of changed files we built up on refresh. Used to pass along the delta
+		// Swap in the new entries for the paths we refreshed, leaving the rest of the table alone. Only the entries we
+		// replaced and their replacements go into the change event, so listeners do work in proportion to what we
+		// refreshed rather than to the number of changed files in the repo.
 		// FIXME I think the values here may have already changed! I saw a file that had staged changes but no unstaged
 		// prior to commit
 		// but here it showed true for both (which should have only gotten modified by a pre-commit hook)
-		Collection<ChangedFile> preRefresh;
+		Collection<ChangedFile> preRefresh = new ArrayList<ChangedFile>();
+		Collection<ChangedFile> postRefresh;
 		synchronized (this.changedFilesLock)
 		{
-			// Make a copy of the changed file listing, pre-refresh
+			List<ChangedFile> kept = new ArrayList<ChangedFile>();
 			if (this.changedFiles != null)
 			{
-				preRefresh = new ArrayList<ChangedFile>(this.changedFiles.size());
 				for (ChangedFile file : this.changedFiles)
 				{
-					preRefresh.add(file.clone());
-				}
-			}
-			else
-			{
-				preRefresh = new ArrayList<ChangedFile>(0);
-			}
-
-			// Now wipe any existing ChangedFile entries for any of the filePaths and add the ones we generated in
-			// dictionary
-			if (CollectionsUtil.isEmpty(filePaths))
-			{
-				this.changedFiles = new ArrayList<ChangedFile>();
-			}
-			else
-			{
-				this.changedFiles = CollectionsUtil.filter(this.changedFiles, new IFilter<ChangedFile>()
-				{
-					public boolean include(ChangedFile item)
+					if (isIncluded(file.getRelativePath().toPortableString(), portablePathStrings))
 					{
-						return !portablePathStrings.contains(item.getRelativePath().toPortableString());
+						// Make a copy of the replaced entries, pre-refresh
+						preRefresh.add(file.clone());
 					}
-				});
-			}
-			if (!CollectionsUtil.isEmpty(newChangedFiles))
-			{
-				this.changedFiles.addAll(newChangedFiles.values());
+					else
+					{
+						kept.add(file);
+					}
+				}
 			}
+			postRefresh = new ArrayList<ChangedFile>(newChangedFiles.values());
+			kept.addAll(postRefresh);
+			this.changedFiles = kept;
 		}
 
 		// Don't hold onto temp list in memory!
 		newChangedFiles = null;
 
-		postIndexChange(preRefresh, this.changedFiles);
+		postIndexChange(preRefresh, postRefresh);
 		sub.done();
 		if (!errors.isOK())
 		{
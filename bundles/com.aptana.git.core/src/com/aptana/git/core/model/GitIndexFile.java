@@ -0,0 +1,440 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.git.core.model;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.lang.reflect.Method;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.aptana.core.util.IOUtil;
+
+/**
+ * Reads the entries of a git index file (the "DIRC" format, versions 2 to 4) without running git. Extensions such as
+ * the cached tree are skipped. The stat data of the entries is used to tell which files of the working tree may have
+ * changed since they were last added or refreshed, so that git only has to look at those.
+ */
+class GitIndexFile
+{
+	private static final int SIGNATURE = 0x44495243; // "DIRC"
+
+	private static final int FLAG_ASSUME_VALID = 0x8000;
+	private static final int FLAG_EXTENDED = 0x4000;
+	private static final int FLAG_STAGE_MASK = 0x3000;
+	private static final int FLAG_STAGE_SHIFT = 12;
+	private static final int FLAG_NAME_MASK = 0xfff;
+	private static final int EXTENDED_FLAG_SKIP_WORKTREE = 0x4000;
+	private static final int EXTENDED_FLAG_INTENT_TO_ADD = 0x2000;
+
+	/**
+	 * The size of the fixed part of an entry: ten 32-bit stat fields, the SHA and the flags.
+	 */
+	private static final int ENTRY_HEADER_SIZE = 62;
+	private static final int SHA_LENGTH = 20;
+
+	private static final int TYPE_MASK = 0170000;
+	private static final int TYPE_FILE = 0100000;
+	private static final int EXECUTABLE_MASK = 0111;
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray(); //$NON-NLS-1$
+
+	/**
+	 * File.canExecute() is only available on Java 6 and higher.
+	 */
+	private static Method canExecute;
+	static
+	{
+		try
+		{
+			canExecute = File.class.getMethod("canExecute"); //$NON-NLS-1$
+		}
+		catch (Exception e) // $codepro.audit.disable emptyCatchClause
+		{
+			// older VM, the executable bit isn't compared
+		}
+	}
+
+	/**
+	 * An entry of the index.
+	 */
+	static class Entry
+	{
+		final String path;
+		final int mode;
+		final String sha;
+		final int stage;
+		final long mtimeSeconds;
+		final int mtimeNanos;
+		final long size;
+		final boolean assumeValid;
+		final boolean skipWorktree;
+		final boolean intentToAdd;
+
+		private Entry(String path, int mode, String sha, int flags, int extendedFlags, long mtimeSeconds,
+				int mtimeNanos, long size)
+		{
+			this.path = path;
+			this.mode = mode;
+			this.sha = sha;
+			this.stage = (flags & FLAG_STAGE_MASK) >> FLAG_STAGE_SHIFT;
+			this.assumeValid = (flags & FLAG_ASSUME_VALID) != 0;
+			this.skipWorktree = (extendedFlags & EXTENDED_FLAG_SKIP_WORKTREE) != 0;
+			this.intentToAdd = (extendedFlags & EXTENDED_FLAG_INTENT_TO_ADD) != 0;
+			this.mtimeSeconds = mtimeSeconds;
+			this.mtimeNanos = mtimeNanos;
+			this.size = size;
+		}
+
+		/**
+		 * The mode as git prints it, i.e. "100644".
+		 * 
+		 * @return
+		 */
+		String getModeString()
+		{
+			return Integer.toOctalString(mode);
+		}
+
+		/**
+		 * Whether this is a regular file, rather than a symbolic link or a submodule.
+		 * 
+		 * @return
+		 */
+		boolean isRegularFile()
+		{
+			return (mode & TYPE_MASK) == TYPE_FILE;
+		}
+
+		/**
+		 * Whether git trusts this entry without looking at the working tree.
+		 * 
+		 * @return
+		 */
+		boolean isAssumedUnchanged()
+		{
+			return assumeValid || skipWorktree;
+		}
+
+		/**
+		 * Returns true if the file's size, modification time and executable bit are the ones recorded in the index.
+		 * Symbolic links and submodules are never considered clean, since we can't stat them properly.
+		 * 
+		 * @param file
+		 * @param compareExecutable
+		 *            whether the executable bit should be compared
+		 * @return
+		 */
+		boolean isStatClean(File file, boolean compareExecutable)
+		{
+			if (stage != 0 || intentToAdd || !isRegularFile() || !file.isFile())
+			{
+				return false;
+			}
+			// the index only holds the lower 32 bits of the size
+			if ((file.length() & 0xffffffffL) != size)
+			{
+				return false;
+			}
+			if (!sameTime(file.lastModified(), mtimeSeconds, mtimeNanos))
+			{
+				return false;
+			}
+			if (compareExecutable && canExecute != null)
+			{
+				try
+				{
+					boolean executable = (Boolean) canExecute.invoke(file);
+					return executable == ((mode & EXECUTABLE_MASK) != 0);
+				}
+				catch (Exception e)
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public String toString()
+		{
+			return MessageFormat.format("{0} {1} {2}\t{3}", getModeString(), sha, stage, path); //$NON-NLS-1$
+		}
+	}
+
+	private final int version;
+	private final long lastModified;
+	private final List<Entry> entries;
+
+	private GitIndexFile(int version, long lastModified, List<Entry> entries)
+	{
+		this.version = version;
+		this.lastModified = lastModified;
+		this.entries = entries;
+	}
+
+	/**
+	 * Reads the index file.
+	 * 
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 *             if the file can't be read or isn't a supported index
+	 */
+	static GitIndexFile read(File file) throws IOException
+	{
+		// git replaces the index by renaming a lock file over it, so the timestamp we take here belongs to the content
+		// we read unless another replace happens in between. Take it first so that we err on the racy side.
+		long lastModified = file.lastModified();
+		byte[] data = new byte[(int) file.length()];
+		DataInputStream stream = new DataInputStream(new FileInputStream(file));
+		try
+		{
+			stream.readFully(data);
+		}
+		finally
+		{
+			stream.close();
+		}
+		return parse(data, lastModified);
+	}
+
+	/**
+	 * Parses the content of an index file.
+	 * 
+	 * @param data
+	 * @param lastModified
+	 *            the modification time of the index file
+	 * @return
+	 * @throws IOException
+	 *             if the content isn't a supported index
+	 */
+	static GitIndexFile parse(byte[] data, long lastModified) throws IOException
+	{
+		// header and trailing checksum
+		if (data.length < 12 + SHA_LENGTH || getInt(data, 0) != SIGNATURE)
+		{
+			throw new IOException("Not a git index file"); //$NON-NLS-1$
+		}
+		int version = getInt(data, 4);
+		if (version < 2 || version > 4)
+		{
+			throw new IOException(MessageFormat.format("Unsupported git index version {0}", version)); //$NON-NLS-1$
+		}
+		int count = getInt(data, 8);
+		int end = data.length - SHA_LENGTH;
+		if (count < 0 || count > end / ENTRY_HEADER_SIZE)
+		{
+			throw new IOException("Truncated git index file"); //$NON-NLS-1$
+		}
+
+		List<Entry> entries = new ArrayList<Entry>(count);
+		byte[] previousPath = new byte[0];
+		int offset = 12;
+		for (int i = 0; i < count; i++)
+		{
+			if (offset + ENTRY_HEADER_SIZE > end)
+			{
+				throw new IOException("Truncated git index file"); //$NON-NLS-1$
+			}
+			int start = offset;
+			long mtimeSeconds = getInt(data, offset + 8) & 0xffffffffL;
+			int mtimeNanos = getInt(data, offset + 12);
+			int mode = getInt(data, offset + 24);
+			long size = getInt(data, offset + 36) & 0xffffffffL;
+			String sha = toHex(data, offset + 40);
+			int flags = getShort(data, offset + 60);
+			offset += ENTRY_HEADER_SIZE;
+
+			int extendedFlags = 0;
+			if ((flags & FLAG_EXTENDED) != 0)
+			{
+				if (version < 3)
+				{
+					throw new IOException("Extended flags in a version 2 git index file"); //$NON-NLS-1$
+				}
+				extendedFlags = getShort(data, offset);
+				offset += 2;
+			}
+
+			byte[] path;
+			if (version == 4)
+			{
+				// the path is prefix compressed: how many bytes to remove from the previous path, then the suffix to
+				// append
+				long[] strip = readVarint(data, offset, end);
+				offset = (int) strip[1];
+				int nul = indexOf(data, offset, end);
+				int keep = previousPath.length - (int) strip[0];
+				if (keep < 0 || strip[0] < 0)
+				{
+					throw new IOException("Invalid path compression in git index file"); //$NON-NLS-1$
+				}
+				path = new byte[keep + nul - offset];
+				System.arraycopy(previousPath, 0, path, 0, keep);
+				System.arraycopy(data, offset, path, keep, nul - offset);
+				offset = nul + 1;
+			}
+			else
+			{
+				int length = flags & FLAG_NAME_MASK;
+				int nul = (length < FLAG_NAME_MASK) ? offset + length : indexOf(data, offset, end);
+				if (nul >= end)
+				{
+					throw new IOException("Truncated git index file"); //$NON-NLS-1$
+				}
+				path = new byte[nul - offset];
+				System.arraycopy(data, offset, path, 0, path.length);
+				// entries are padded with 1 to 8 NULs to a multiple of 8 bytes
+				offset = start + ((nul - start + 8) & ~7);
+			}
+
+			entries.add(new Entry(toString(path), mode, sha, flags, extendedFlags, mtimeSeconds, mtimeNanos, size));
+			previousPath = path;
+		}
+		if (offset > end)
+		{
+			throw new IOException("Truncated git index file"); //$NON-NLS-1$
+		}
+		return new GitIndexFile(version, lastModified, Collections.unmodifiableList(entries));
+	}
+
+	/**
+	 * The version of the index format.
+	 * 
+	 * @return
+	 */
+	int getVersion()
+	{
+		return version;
+	}
+
+	/**
+	 * The entries, sorted by path and stage.
+	 * 
+	 * @return
+	 */
+	List<Entry> getEntries()
+	{
+		return entries;
+	}
+
+	/**
+	 * Returns true if the entry's file was modified no earlier than the index was written. Such a file could have been
+	 * changed again in the same tick after it was added without its stat data changing, so its content has to be
+	 * checked.
+	 * 
+	 * @param entry
+	 * @return
+	 */
+	boolean isRacy(Entry entry)
+	{
+		return !isBefore(entry.mtimeSeconds, entry.mtimeNanos, lastModified);
+	}
+
+	/**
+	 * Compares a java timestamp to a git one. Some file systems and VMs only have a resolution of one second, in that
+	 * case the nanoseconds are ignored.
+	 * 
+	 * @param millis
+	 * @param seconds
+	 * @param nanos
+	 * @return
+	 */
+	private static boolean sameTime(long millis, long seconds, int nanos)
+	{
+		if (millis / 1000 != seconds)
+		{
+			return false;
+		}
+		return millis % 1000 == 0 || millis % 1000 == nanos / 1000000;
+	}
+
+	private static boolean isBefore(long seconds, int nanos, long millis)
+	{
+		if (millis % 1000 == 0)
+		{
+			return seconds < millis / 1000;
+		}
+		return seconds * 1000 + nanos / 1000000 < millis;
+	}
+
+	/**
+	 * Reads the variable length offset encoding git uses, returns the value and the offset after it.
+	 * 
+	 * @param data
+	 * @param offset
+	 * @param end
+	 * @return
+	 * @throws IOException
+	 */
+	private static long[] readVarint(byte[] data, int offset, int end) throws IOException
+	{
+		if (offset >= end)
+		{
+			throw new IOException("Truncated git index file"); //$NON-NLS-1$
+		}
+		int c = data[offset++] & 0xff;
+		long value = c & 0x7f;
+		while ((c & 0x80) != 0)
+		{
+			if (offset >= end)
+			{
+				throw new IOException("Truncated git index file"); //$NON-NLS-1$
+			}
+			c = data[offset++] & 0xff;
+			value = ((value + 1) << 7) | (c & 0x7f);
+		}
+		return new long[] { value, offset };
+	}
+
+	private static int indexOf(byte[] data, int offset, int end) throws IOException
+	{
+		for (int i = offset; i < end; i++)
+		{
+			if (data[i] == 0)
+			{
+				return i;
+			}
+		}
+		throw new IOException("Truncated git index file"); //$NON-NLS-1$
+	}
+
+	private static int getInt(byte[] data, int offset)
+	{
+		return ((data[offset] & 0xff) << 24) | ((data[offset + 1] & 0xff) << 16) | ((data[offset + 2] & 0xff) << 8)
+				| (data[offset + 3] & 0xff);
+	}
+
+	private static int getShort(byte[] data, int offset)
+	{
+		return ((data[offset] & 0xff) << 8) | (data[offset + 1] & 0xff);
+	}
+
+	private static String toHex(byte[] data, int offset)
+	{
+		char[] chars = new char[SHA_LENGTH * 2];
+		for (int i = 0; i < SHA_LENGTH; i++)
+		{
+			int b = data[offset + i] & 0xff;
+			chars[i * 2] = HEX[b >> 4];
+			chars[i * 2 + 1] = HEX[b & 0xf];
+		}
+		return new String(chars);
+	}
+
+	private static String toString(byte[] path) throws UnsupportedEncodingException
+	{
+		return new String(path, IOUtil.UTF_8);
+	}
+}
@@ -9,8 +9,11 @@ package com.aptana.git.core.model;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.eclipse.core.runtime.IPath;
@@ -34,6 +37,28 @@ class GitIndexRefreshJob extends Job
 	 */
 	private static final long UPDATE_DELAY = 200;
 
+	/**
+	 * The longest we let a steady stream of requests (i.e. an npm install or a branch switch) hold off a refresh.
+	 */
+	private static final long MAX_UPDATE_DELAY = 2000;
+
+	/**
+	 * The most paths we hand to a single refresh. They end up on git's command line, so past this we refresh their
+	 * parent folders instead.
+	 */
+	static final int MAX_PATHS = 100;
+
+	/**
+	 * Orders paths so that folders come before anything inside them.
+	 */
+	private static final Comparator<IPath> SEGMENT_COUNT_COMPARATOR = new Comparator<IPath>()
+	{
+		public int compare(IPath o1, IPath o2)
+		{
+			return o1.segmentCount() - o2.segmentCount();
+		}
+	};
+
 	/**
 	 * List of refresh requests. This basically just serves to queue up all requests.
 	 */
@@ -49,6 +74,12 @@ class GitIndexRefreshJob extends Job
 	 */
 	private AtomicBoolean refreshAll;
 
+	/**
+	 * When the first and the latest of the pending requests came in. Guarded by fRequests.
+	 */
+	private long firstRequestTime;
+	private long lastRequestTime;
+
 	public GitIndexRefreshJob(GitIndex index)
 	{
 		super(Messages.GitIndexRefreshJob_Name);
@@ -86,21 +117,28 @@ class GitIndexRefreshJob extends Job
 				}
 				else
 				{
-					// We were asked to refresh only some files.
+					// We were asked to refresh only some files. If we're still inside a burst of requests, wait for it
+					// to calm down first.
+					long delay = remainingDelay();
+					if (delay > 0)
+					{
+						schedule(delay);
+						break;
+					}
 					// Take all the requests off the queue
-					List<IPath> copy;
+					Set<IPath> requests;
 					synchronized (fRequests)
 					{
 						if (fRequests.isEmpty())
 						{
 							break;
 						}
-						copy = new ArrayList<IPath>(fRequests);
+						requests = fRequests;
 						fRequests = new HashSet<IPath>(3);
 					}
 
 					// Now refresh all the paths we had
-					status = index.refresh(true, copy, monitor);
+					status = index.refresh(true, coalesce(requests), monitor);
 				}
 				if (!status.isOK())
 				{
@@ -122,6 +160,93 @@ class GitIndexRefreshJob extends Job
 		return Status.OK_STATUS;
 	}
 
+	/**
+	 * Returns how much longer to wait before running: until there has been a quiet period of {@link #UPDATE_DELAY}
+	 * since the last request, but no longer than {@link #MAX_UPDATE_DELAY} after the first pending one.
+	 * 
+	 * @return
+	 */
+	private long remainingDelay()
+	{
+		if (refreshAll.get())
+		{
+			return 0;
+		}
+		synchronized (fRequests)
+		{
+			if (fRequests.isEmpty())
+			{
+				return 0;
+			}
+			long now = System.currentTimeMillis();
+			return Math.min(lastRequestTime + UPDATE_DELAY, firstRequestTime + MAX_UPDATE_DELAY) - now;
+		}
+	}
+
+	/**
+	 * Drops the paths which are inside another one of the paths, then replaces paths by their parent folders until we
+	 * have no more than {@link #MAX_PATHS} of them (top level paths are never collapsed any further).
+	 * 
+	 * @param paths
+	 * @return
+	 */
+	static List<IPath> coalesce(Collection<IPath> paths)
+	{
+		List<IPath> result = removeNested(paths);
+		while (result.size() > MAX_PATHS)
+		{
+			List<IPath> parents = new ArrayList<IPath>(result.size());
+			boolean collapsed = false;
+			for (IPath path : result)
+			{
+				if (path.segmentCount() > 1)
+				{
+					parents.add(path.removeLastSegments(1));
+					collapsed = true;
+				}
+				else
+				{
+					parents.add(path);
+				}
+			}
+			if (!collapsed)
+			{
+				break;
+			}
+			result = removeNested(parents);
+		}
+		return result;
+	}
+
+	private static List<IPath> removeNested(Collection<IPath> paths)
+	{
+		List<IPath> sorted = new ArrayList<IPath>(paths);
+		Collections.sort(sorted, SEGMENT_COUNT_COMPARATOR);
+
+		Set<IPath> kept = new HashSet<IPath>(sorted.size());
+		List<IPath> result = new ArrayList<IPath>(sorted.size());
+		for (IPath path : sorted)
+		{
+			if (!isNested(path, kept) && kept.add(path))
+			{
+				result.add(path);
+			}
+		}
+		return result;
+	}
+
+	private static boolean isNested(IPath path, Set<IPath> folders)
+	{
+		for (int i = path.segmentCount() - 1; i > 0; i--)
+		{
+			if (folders.contains(path.uptoSegment(i)))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
 	public boolean shouldRun()
 	{
 		synchronized (fRequests)
@@ -136,9 +261,14 @@ class GitIndexRefreshJob extends Job
 		{
 			return;
 		}
-		// TODO If the requests grow large enough, just flip the refreshAll flag?
 		synchronized (fRequests)
 		{
+			long now = System.currentTimeMillis();
+			if (fRequests.isEmpty())
+			{
+				firstRequestTime = now;
+			}
+			lastRequestTime = now;
 			fRequests.addAll(paths);
 		}
 		schedule(UPDATE_DELAY);
@@ -0,0 +1,379 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.git.core.model;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.zip.InflaterInputStream;
+
+import com.aptana.core.util.IOUtil;
+
+/**
+ * Reads the refs of a repository straight from the loose ref files, packed-refs and HEAD instead of running git. Only
+ * answers what can be decided from those files and the loose objects; whenever that isn't enough (e.g. an annotated
+ * tag whose object is packed and that packed-refs doesn't peel, or a repository layout we don't handle) an
+ * IOException is thrown and the caller is expected to ask git.
+ */
+class GitRefsReader
+{
+	private static final String SYMBOLIC_REF_PREFIX = "ref: "; //$NON-NLS-1$
+	private static final String PACKED_REFS = "packed-refs"; //$NON-NLS-1$
+	private static final String PACKED_REFS_HEADER = "# pack-refs with:"; //$NON-NLS-1$
+	private static final String TRAIT_PEELED = "peeled"; //$NON-NLS-1$
+	private static final String TRAIT_FULLY_PEELED = "fully-peeled"; //$NON-NLS-1$
+	private static final String OBJECTS = "objects"; //$NON-NLS-1$
+	private static final String DOT_LOCK = ".lock"; //$NON-NLS-1$
+
+	/**
+	 * Files whose presence means the refs live somewhere we don't read.
+	 */
+	private static final String[] UNSUPPORTED_LAYOUT_FILES = { "commondir", "reftable" }; //$NON-NLS-1$ //$NON-NLS-2$
+
+	static final String TYPE_COMMIT = "commit"; //$NON-NLS-1$
+	static final String TYPE_TAG = "tag"; //$NON-NLS-1$
+
+	private static final Pattern SHA_PATTERN = Pattern.compile("[0-9a-f]{40}"); //$NON-NLS-1$
+
+	/**
+	 * The maximum depth of symbolic refs we follow, same as git.
+	 */
+	private static final int MAX_SYMBOLIC_DEPTH = 5;
+
+	private static class PackedRef
+	{
+		final String sha;
+		String peeled;
+
+		PackedRef(String sha)
+		{
+			this.sha = sha;
+		}
+	}
+
+	private final File gitDir;
+
+	GitRefsReader(File gitDir)
+	{
+		this.gitDir = gitDir;
+	}
+
+	/**
+	 * Returns the name of the ref the passed in symbolic ref (i.e. HEAD) points to, null if it isn't symbolic (i.e. a
+	 * detached HEAD) or doesn't exist.
+	 * 
+	 * @param name
+	 * @return
+	 * @throws IOException
+	 *             if the ref can't be read
+	 */
+	String readSymbolicRef(String name) throws IOException
+	{
+		checkLayout();
+		File file = new File(gitDir, name);
+		if (!file.isFile())
+		{
+			// packed refs are never symbolic
+			return null;
+		}
+		String content = readFirstLine(file);
+		if (content.startsWith(SYMBOLIC_REF_PREFIX))
+		{
+			return content.substring(SYMBOLIC_REF_PREFIX.length()).trim();
+		}
+		if (isSHA(content))
+		{
+			return null;
+		}
+		throw new IOException(MessageFormat.format("Unexpected content in ref {0}", name)); //$NON-NLS-1$
+	}
+
+	/**
+	 * Returns all the refs under refs/ sorted by name, in the format of
+	 * <code>git for-each-ref --format="%(refname) %(objecttype) %(objectname) %(*objectname)" refs</code> (the peeled
+	 * SHA is only there for annotated tags). Broken and dangling refs are skipped, like git does.
+	 * 
+	 * @return
+	 * @throws IOException
+	 *             if the refs can't be fully read without git
+	 */
+	List<String> readRefs() throws IOException
+	{
+		checkLayout();
+
+		Map<String, PackedRef> packed = new HashMap<String, PackedRef>();
+		List<String> traits = readPackedRefs(packed);
+
+		// loose refs win over packed ones
+		SortedMap<String, String> loose = new TreeMap<String, String>();
+		readLooseRefs(new File(gitDir, GitRef.REFS), GitRef.REFS, loose);
+
+		SortedMap<String, Boolean> names = new TreeMap<String, Boolean>();
+		for (String name : packed.keySet())
+		{
+			names.put(name, Boolean.FALSE);
+		}
+		for (String name : loose.keySet())
+		{
+			names.put(name, Boolean.TRUE);
+		}
+
+		List<String> lines = new ArrayList<String>(names.size());
+		for (Map.Entry<String, Boolean> entry : names.entrySet())
+		{
+			String name = entry.getKey();
+			String sha = resolve(name, loose, packed);
+			if (sha == null)
+			{
+				continue;
+			}
+
+			String type = TYPE_COMMIT;
+			String peeled = null;
+			if (name.startsWith(GitRef.REFS_TAGS))
+			{
+				PackedRef packedRef = packed.get(name);
+				boolean fromPacked = !entry.getValue() && packedRef != null;
+				if (fromPacked && packedRef.peeled != null)
+				{
+					type = TYPE_TAG;
+					peeled = packedRef.peeled;
+				}
+				else if (!fromPacked || !(traits.contains(TRAIT_PEELED) || traits.contains(TRAIT_FULLY_PEELED)))
+				{
+					// we have to look at the object to know whether it's an annotated tag
+					peeled = readTagTarget(sha);
+					if (peeled != null)
+					{
+						type = TYPE_TAG;
+					}
+				}
+			}
+
+			StringBuilder line = new StringBuilder(name).append(' ').append(type).append(' ').append(sha);
+			if (peeled != null)
+			{
+				line.append(' ').append(peeled);
+			}
+			lines.add(line.toString());
+		}
+		return lines;
+	}
+
+	private void checkLayout() throws IOException
+	{
+		if (!new File(gitDir, GitRepository.HEAD).isFile())
+		{
+			throw new IOException(MessageFormat.format("{0} isn't a git directory", gitDir)); //$NON-NLS-1$
+		}
+		for (String name : UNSUPPORTED_LAYOUT_FILES)
+		{
+			if (new File(gitDir, name).exists())
+			{
+				throw new IOException(MessageFormat.format("Repository layout with {0} isn't supported", name)); //$NON-NLS-1$
+			}
+		}
+	}
+
+	/**
+	 * Resolves a ref to its SHA, following symbolic refs. Returns null for broken or dangling refs.
+	 * 
+	 * @param name
+	 * @param loose
+	 * @param packed
+	 * @return
+	 */
+	private String resolve(String name, Map<String, String> loose, Map<String, PackedRef> packed)
+	{
+		String current = name;
+		for (int i = 0; i < MAX_SYMBOLIC_DEPTH; i++)
+		{
+			String content = loose.get(current);
+			if (content == null)
+			{
+				PackedRef packedRef = packed.get(current);
+				return (packedRef == null) ? null : packedRef.sha;
+			}
+			if (content.startsWith(SYMBOLIC_REF_PREFIX))
+			{
+				current = content.substring(SYMBOLIC_REF_PREFIX.length()).trim();
+				continue;
+			}
+			return isSHA(content) ? content : null;
+		}
+		return null;
+	}
+
+	/**
+	 * Reads packed-refs into the passed in map and returns the traits from its header.
+	 * 
+	 * @param packed
+	 * @return
+	 * @throws IOException
+	 */
+	private List<String> readPackedRefs(Map<String, PackedRef> packed) throws IOException
+	{
+		List<String> traits = new ArrayList<String>();
+		File file = new File(gitDir, PACKED_REFS);
+		if (!file.isFile())
+		{
+			return traits;
+		}
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), IOUtil.UTF_8));
+		try
+		{
+			PackedRef last = null;
+			String line;
+			while ((line = reader.readLine()) != null) // $codepro.audit.disable assignmentInCondition
+			{
+				if (line.startsWith(PACKED_REFS_HEADER))
+				{
+					for (String trait : line.substring(PACKED_REFS_HEADER.length()).trim().split(" ")) //$NON-NLS-1$
+					{
+						traits.add(trait);
+					}
+				}
+				else if (line.startsWith("^")) //$NON-NLS-1$
+				{
+					// the peeled SHA of the annotated tag on the previous line
+					String peeled = line.substring(1).trim();
+					if (last == null || !isSHA(peeled))
+					{
+						throw new IOException("Unexpected peeled line in packed-refs"); //$NON-NLS-1$
+					}
+					last.peeled = peeled;
+				}
+				else if (line.length() > 41 && line.charAt(40) == ' ')
+				{
+					String sha = line.substring(0, 40);
+					if (!isSHA(sha))
+					{
+						throw new IOException("Unexpected line in packed-refs"); //$NON-NLS-1$
+					}
+					last = new PackedRef(sha);
+					packed.put(line.substring(41).trim(), last);
+				}
+				else if (line.trim().length() > 0 && !line.startsWith("#")) //$NON-NLS-1$
+				{
+					throw new IOException("Unexpected line in packed-refs"); //$NON-NLS-1$
+				}
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+		return traits;
+	}
+
+	private void readLooseRefs(File dir, String prefix, Map<String, String> refs) throws IOException
+	{
+		File[] children = dir.listFiles();
+		if (children == null)
+		{
+			return;
+		}
+		for (File child : children)
+		{
+			String name = prefix + child.getName();
+			if (child.isDirectory())
+			{
+				readLooseRefs(child, name + '/', refs);
+			}
+			else if (!name.endsWith(DOT_LOCK))
+			{
+				refs.put(name, readFirstLine(child));
+			}
+		}
+	}
+
+	/**
+	 * Returns the SHA an annotated tag points to, null if the object isn't an annotated tag.
+	 * 
+	 * @param sha
+	 * @return
+	 * @throws IOException
+	 *             if the object isn't a loose object
+	 */
+	private String readTagTarget(String sha) throws IOException
+	{
+		File file = new File(new File(new File(gitDir, OBJECTS), sha.substring(0, 2)), sha.substring(2));
+		if (!file.isFile())
+		{
+			throw new IOException(MessageFormat.format("Object {0} isn't a loose object", sha)); //$NON-NLS-1$
+		}
+
+		InputStream stream = new InflaterInputStream(new FileInputStream(file));
+		try
+		{
+			// "<type> <size>\0" followed by the content, which for tags starts with "object <sha>\n"
+			String header = readUntil(stream, 0);
+			if (!header.startsWith(TYPE_TAG + ' '))
+			{
+				return null;
+			}
+			String object = readUntil(stream, '\n');
+			if (!object.startsWith("object ") || !isSHA(object.substring(7))) //$NON-NLS-1$
+			{
+				throw new IOException(MessageFormat.format("Unexpected content in tag {0}", sha)); //$NON-NLS-1$
+			}
+			return object.substring(7);
+		}
+		finally
+		{
+			stream.close();
+		}
+	}
+
+	private static String readUntil(InputStream stream, int delimiter) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		int b;
+		while ((b = stream.read()) != delimiter) // $codepro.audit.disable assignmentInCondition
+		{
+			if (b == -1 || bytes.size() > 100)
+			{
+				throw new IOException("Unexpected object content"); //$NON-NLS-1$
+			}
+			bytes.write(b);
+		}
+		return bytes.toString(IOUtil.UTF_8);
+	}
+
+	private static String readFirstLine(File file) throws IOException
+	{
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), IOUtil.UTF_8));
+		try
+		{
+			String line = reader.readLine();
+			return (line == null) ? "" : line.trim(); //$NON-NLS-1$
+		}
+		finally
+		{
+			reader.close();
+		}
+	}
+
+	private static boolean isSHA(String string)
+	{
+		return SHA_PATTERN.matcher(string).matches();
+	}
+}
@@ -276,7 +276,7 @@ public class GitRepository
 							{
 								checkForBranchChange();
 							}
-							else if (newName.equals(INDEX) || newName.equals(COMMIT_EDITMSG))
+							else if (newName.equals(INDEX))
 							{
 								refreshIndex();
 							}
@@ -317,7 +317,6 @@ public class GitRepository
 								filesToWatch = new HashSet<String>();
 								filesToWatch.add(HEAD);
 								filesToWatch.add(INDEX);
-								filesToWatch.add(COMMIT_EDITMSG);
 							}
 							return filesToWatch;
 						}
@@ -333,13 +332,17 @@ public class GitRepository
 							{
 								checkForBranchChange();
 							}
-							else if (name.equals(INDEX) || name.equals(COMMIT_EDITMSG))
+							else if (name.equals(INDEX))
 							{
 								refreshIndex();
 							}
 						}
 
 						// Do long running work in another thread/job so we don't tie up the jnotify locks!
+						// This is the only place we rescan the whole working tree: edits to files come in through
+						// resource deltas and only refresh the paths they touch, but when the index itself changes
+						// (stage/unstage/commit/checkout/merge) any file's status may have changed. COMMIT_EDITMSG isn't
+						// watched, it's written before the commit is made and the commit rewrites the index anyway.
 						private void refreshIndex()
 						{
 							// FIXME We get this when the index file changes, which can happen on stage/unstage/rm/add.
@@ -944,12 +947,7 @@ public class GitRepository
 
 		refs = new HashMap<String, List<GitRef>>();
 
-		IStatus result = execute(ReadWrite.READ, "for-each-ref", //$NON-NLS-1$
-				"--format=%(refname) %(objecttype) %(objectname) %(*objectname)", "refs"); //$NON-NLS-1$ //$NON-NLS-2$
-
-		String output = result.getMessage();
-		List<String> lines = StringUtil.tokenize(output, "\n"); //$NON-NLS-1$
-
+		List<String> lines = readRefLines();
 		for (String line : lines)
 		{
 			// If its an empty line, skip it (e.g. with empty repositories)
@@ -979,6 +977,31 @@ public class GitRepository
 		return ret;
 	}
 
+	/**
+	 * Returns the refs in the format of "git for-each-ref". Reads the ref files ourselves when we can, so that
+	 * reloading the refs doesn't have to launch git.
+	 * 
+	 * @return
+	 */
+	private List<String> readRefLines()
+	{
+		try
+		{
+			return refsReader().readRefs();
+		}
+		catch (IOException e)
+		{
+			IdeLog.logInfo(GitPlugin.getDefault(),
+					MessageFormat.format("Falling back to git for-each-ref: {0}", e.getMessage()), IDebugScopes.DEBUG); //$NON-NLS-1$
+		}
+
+		IStatus result = execute(ReadWrite.READ, "for-each-ref", //$NON-NLS-1$
+				"--format=%(refname) %(objecttype) %(objectname) %(*objectname)", "refs"); //$NON-NLS-1$ //$NON-NLS-2$
+
+		String output = result.getMessage();
+		return StringUtil.tokenize(output, "\n"); //$NON-NLS-1$
+	}
+
 	private GitRevSpecifier addBranch(GitRevSpecifier rev)
 	{
 		if (rev.parameters().isEmpty())
@@ -1019,6 +1042,21 @@ public class GitRepository
 
 	private String parseSymbolicReference(String reference)
 	{
+		try
+		{
+			String ref = refsReader().readSymbolicRef(reference);
+			if (ref != null && ref.startsWith(GitRef.REFS))
+			{
+				return ref;
+			}
+			return null;
+		}
+		catch (IOException e)
+		{
+			IdeLog.logInfo(GitPlugin.getDefault(),
+					MessageFormat.format("Falling back to git symbolic-ref: {0}", e.getMessage()), IDebugScopes.DEBUG); //$NON-NLS-1$
+		}
+
 		IStatus result = execute(ReadWrite.READ, "symbolic-ref", "-q", reference); //$NON-NLS-1$ //$NON-NLS-2$
 		if (result == null || !result.isOK())
 		{
@@ -1790,6 +1828,21 @@ public class GitRepository
 		return gitDirPath().append(string).toFile();
 	}
 
+	/**
+	 * The index file of this repo.
+	 * 
+	 * @return
+	 */
+	File indexFile()
+	{
+		return gitFile(INDEX);
+	}
+
+	private GitRefsReader refsReader()
+	{
+		return new GitRefsReader(gitDirPath().toFile());
+	}
+
 	private IPath gitDirPath()
 	{
 		File file = new File(fileURL);
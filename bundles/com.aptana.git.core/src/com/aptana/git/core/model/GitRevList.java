@@ -7,14 +7,16 @@
  */
 package com.aptana.git.core.model;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.UnsupportedEncodingException;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
@@ -31,10 +33,78 @@ import com.aptana.git.core.IDebugScopes;
 
 public class GitRevList
 {
+	/**
+	 * The default number of commits handed to listeners at once. Also the number of commits whose details are loaded
+	 * together.
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 500;
+
+	/**
+	 * Walks the whole history.
+	 */
+	public static final int NO_LIMIT = -1;
+
+	private static final int FIELD_SEPARATOR = '\1';
+	private static final int RECORD_SEPARATOR = '\0';
+	private static final int SHA_LENGTH = 40;
+
 	private GitRepository repository;
 	private List<GitCommit> commits;
 
-	private static final int NO_LIMIT = -1;
+	/**
+	 * Loads the subject, author and message of a batch of commits with a single git process, the first time one of
+	 * them is asked for.
+	 */
+	static class DetailsLoader
+	{
+		private final GitRepository repository;
+		private List<GitCommit> commits = new ArrayList<GitCommit>();
+
+		private DetailsLoader(GitRepository repository)
+		{
+			this.repository = repository;
+		}
+
+		private void add(GitCommit commit)
+		{
+			commits.add(commit);
+			commit.setDetailsLoader(this);
+		}
+
+		synchronized void load()
+		{
+			if (commits == null)
+			{
+				return;
+			}
+			if (!repository.enterRead())
+			{
+				// a write is going on, we'll try again on the next access
+				IdeLog.logWarning(GitPlugin.getDefault(),
+						"Failed to acquire read lock to load commit details", IDebugScopes.DEBUG); //$NON-NLS-1$
+				return;
+			}
+
+			List<GitCommit> toLoad = commits;
+			commits = null;
+			try
+			{
+				loadDetails(repository, toLoad);
+			}
+			catch (Exception e)
+			{
+				IdeLog.logError(GitPlugin.getDefault(), e, IDebugScopes.DEBUG);
+			}
+			finally
+			{
+				repository.exitRead();
+				for (GitCommit commit : toLoad)
+				{
+					commit.setDetailsLoader(null);
+				}
+			}
+		}
+	}
 
 	public GitRevList(GitRepository repo)
 	{
@@ -60,6 +130,64 @@ public class GitRevList
 	 *            Maximum number of results to return. {@link #NO_LIMIT} represent no limit.
 	 */
 	public IStatus walkRevisionListWithSpecifier(GitRevSpecifier rev, int max, IProgressMonitor monitor)
+	{
+		final List<GitCommit> revisions = new ArrayList<GitCommit>();
+		IStatus status = walkRevisionListWithSpecifier(rev, max, DEFAULT_BATCH_SIZE, new IGitRevListListener()
+		{
+			public boolean commitsLoaded(List<GitCommit> batch)
+			{
+				revisions.addAll(batch);
+				return true;
+			}
+		}, monitor);
+		if (status.isOK())
+		{
+			setCommits(revisions);
+		}
+		return status;
+	}
+
+	/**
+	 * Walks a revision and hands the commits to the listener in batches, in reverse chronological order, as git
+	 * outputs them. Nothing is kept here, so memory use only depends on what the listener holds on to. Only the SHA,
+	 * parents and date of the commits are read from the walk; their subject, author and message are loaded per batch
+	 * when first asked for.
+	 * 
+	 * @param rev
+	 *            the revision to walk, HEAD if null
+	 * @param max
+	 *            Maximum number of commits to walk. {@link #NO_LIMIT} represent no limit.
+	 * @param batchSize
+	 *            the number of commits per batch
+	 * @param listener
+	 * @param monitor
+	 * @return
+	 */
+	public IStatus walkRevisionListWithSpecifier(GitRevSpecifier rev, int max, int batchSize,
+			IGitRevListListener listener, IProgressMonitor monitor)
+	{
+		return walkRevisionListWithSpecifier(rev, 0, max, batchSize, listener, monitor);
+	}
+
+	/**
+	 * Walks a revision like {@link #walkRevisionListWithSpecifier(GitRevSpecifier, int, int, IGitRevListListener,
+	 * IProgressMonitor)}, skipping the first commits. Walking a long history a window at a time this way keeps only the
+	 * commits asked for so far.
+	 * 
+	 * @param rev
+	 *            the revision to walk, HEAD if null
+	 * @param skip
+	 *            the number of commits to skip
+	 * @param max
+	 *            Maximum number of commits to walk after the skipped ones. {@link #NO_LIMIT} represent no limit.
+	 * @param batchSize
+	 *            the number of commits per batch
+	 * @param listener
+	 * @param monitor
+	 * @return
+	 */
+	public IStatus walkRevisionListWithSpecifier(GitRevSpecifier rev, int skip, int max, int batchSize,
+			IGitRevListListener listener, IProgressMonitor monitor)
 	{
 		int units = max;
 		if (units == -1)
@@ -68,38 +196,28 @@ public class GitRevList
 			units = 100000;
 		}
 		SubMonitor subMonitor = SubMonitor.convert(monitor, units);
-		long start = System.currentTimeMillis();
-		List<GitCommit> revisions = new ArrayList<GitCommit>();
-		GitExecutable gitExe = GitExecutable.instance();
-		Version v = gitExe.version();
-		// Git format doesn't support %B until 1.7.3+
-		boolean useRaw = false;
-		if (v.compareTo(Version.parseVersion("1.7.3")) >= 0) //$NON-NLS-1$
+		if (batchSize <= 0)
 		{
-			useRaw = true;
+			batchSize = DEFAULT_BATCH_SIZE;
 		}
+		long start = System.currentTimeMillis();
+		GitExecutable gitExe = GitExecutable.instance();
 		// @formatter:off
 		List<String> arguments = CollectionsUtil.newList(
 			"log", //$NON-NLS-1$
 			"-z", //$NON-NLS-1$
-			"--early-output", //$NON-NLS-1$
-			"--topo-order", //$NON-NLS-1$
-			"--children"); //$NON-NLS-1$
+			"--topo-order"); //$NON-NLS-1$
 		// @formatter:on
+		if (skip > 0)
+		{
+			arguments.add("--skip=" + skip); //$NON-NLS-1$
+		}
 		if (max > 0)
 		{
 			arguments.add("-" + max); // only last N revs //$NON-NLS-1$
 		}
 
-		String formatString;
-		if (useRaw)
-		{
-			formatString = "--pretty=format:%H\01%e\01%an\01%ae\01%B\01%P\01%at"; //$NON-NLS-1$
-		}
-		else
-		{
-			formatString = "--pretty=format:%H\01%e\01%an\01%ae\01%s\01%b\01%P\01%at"; //$NON-NLS-1$
-		}
+		String formatString = "--pretty=format:%H\01%P\01%at"; //$NON-NLS-1$
 		boolean showSign = ((rev == null) ? false : rev.hasLeftRight());
 		if (showSign)
 		{
@@ -130,131 +248,52 @@ public class GitRevList
 					"Failed to acquire read lock on the git repository. A long-running operation that writes to the repo is running (i.e. pull). Please ensure that has finished before trying again."); //$NON-NLS-1$
 		}
 
+		Process p = null;
 		try
 		{
 			// FIXME Move this into GitRepository, so we can set up lock/monitor on it!
-			Process p = gitExe.run(repository.workingDirectory(), arguments.toArray(new String[arguments.size()]));
-			InputStream stream = p.getInputStream();
+			p = gitExe.run(repository.workingDirectory(), arguments.toArray(new String[arguments.size()]));
+			InputStream stream = new BufferedInputStream(p.getInputStream());
 
 			int num = 0;
-			while (true)
+			List<GitCommit> batch = new ArrayList<GitCommit>(batchSize);
+			DetailsLoader loader = new DetailsLoader(repository);
+			byte[] record;
+			while ((record = read(stream, RECORD_SEPARATOR)) != null) // $codepro.audit.disable assignmentInCondition
 			{
 				if (subMonitor.isCanceled())
 				{
 					return Status.CANCEL_STATUS;
 				}
 
-				String sha = getline(stream, '\1');
-				if (sha == null)
-				{
-					break;
-				}
-
-				// We reached the end of some temporary output. Show what we have
-				// until now, and then start again. The sha of the next thing is still
-				// in this buffer. So, we use a substring of current input.
-				if (sha.charAt(1) == 'i') // Matches 'Final output'
-				{
-					num = 0;
-					setCommits(revisions);
-					revisions = new ArrayList<GitCommit>();
-
-					// If the length is < 40, then there are no commits.. quit now
-					if (sha.length() < 40)
-					{
-						break;
-					}
-
-					int startIndex = sha.length() - 40;
-					sha = sha.substring(startIndex, startIndex + 40);
-				}
-
-				String encoding = getline(stream, '\1', IOUtil.UTF_8);
-				GitCommit newCommit = new GitCommit(repository, sha);
-
-				String author = getline(stream, '\1', encoding);
-				String authorEmail = getline(stream, '\1', encoding);
-
-				String subject;
-				String body;
-				if (useRaw)
-				{
-					body = getline(stream, '\1', encoding);
-					subject = StringUtil.LINE_SPLITTER.split(body)[0];
-				}
-				else
+				GitCommit newCommit = parseCommit(new String(record, IOUtil.UTF_8));
+				if (newCommit == null)
 				{
-					subject = getline(stream, '\1', encoding);
-					body = getline(stream, '\1', encoding);
+					continue;
 				}
+				loader.add(newCommit);
+				batch.add(newCommit);
+				num++;
+				subMonitor.worked(1);
 
-				String parentString = getline(stream, '\1');
-				if (parentString != null && parentString.length() != 0)
-				{
-					if (((parentString.length() + 1) % 41) != 0)
-					{
-						IdeLog.logError(GitPlugin.getDefault(),
-								MessageFormat.format("invalid parents: {0}", parentString.length()), IDebugScopes.DEBUG); //$NON-NLS-1$
-						continue;
-					}
-					int nParents = (parentString.length() + 1) / 41;
-					List<String> parents = new ArrayList<String>(nParents);
-					for (int parentIndex = 0; parentIndex < nParents; ++parentIndex)
-					{
-						int stringIndex = parentIndex * 41;
-						parents.add(parentString.substring(stringIndex, stringIndex + 40));
-					}
-
-					newCommit.setParents(parents);
-				}
-
-				long time = readLong(stream); // read 10 chars as a string and parse into a long
-
-				newCommit.setSubject(subject);
-				newCommit.setComment(body);
-				newCommit.setAuthor(author);
-				newCommit.setAuthorEmail(authorEmail);
-				newCommit.setTimestamp(time);
-
-				if (showSign)
+				if (batch.size() == batchSize)
 				{
-					stream.read(); // Remove separator
-					char c = (char) stream.read();
-					if (c != '>' && c != '<' && c != '^' && c != '-')
+					if (!listener.commitsLoaded(batch))
 					{
-						IdeLog.logError(GitPlugin.getDefault(),
-								"Error loading commits: sign not correct", IDebugScopes.DEBUG); //$NON-NLS-1$
-						// newCommit.setSign(c);
+						return Status.OK_STATUS;
 					}
-
-				}
-
-				int read = stream.read();
-				if (read != 0 && read != -1)
-				{
-					IdeLog.logError(GitPlugin.getDefault(), "Error", IDebugScopes.DEBUG); //$NON-NLS-1$
-				}
-
-				revisions.add(newCommit);
-
-				subMonitor.worked(1);
-
-				if (read == -1)
-				{
-					break;
-				}
-
-				if (++num % 1000 == 0)
-				{
-					setCommits(revisions);
+					batch = new ArrayList<GitCommit>(batchSize);
+					loader = new DetailsLoader(repository);
 				}
 			}
+			if (!batch.isEmpty())
+			{
+				listener.commitsLoaded(batch);
+			}
+			p.waitFor();
 
 			long duration = System.currentTimeMillis() - start;
 			logInfo(MessageFormat.format("Loaded {0} commits in {1} ms", num, duration)); //$NON-NLS-1$
-			// Make sure the commits are stored before exiting.
-			setCommits(revisions, true);
-			p.waitFor();
 		}
 		catch (Exception e)
 		{
@@ -262,119 +301,202 @@ public class GitRevList
 		}
 		finally
 		{
+			if (p != null)
+			{
+				// stops git if we quit early
+				p.destroy();
+			}
 			repository.exitRead();
 			subMonitor.done();
 		}
 		return Status.OK_STATUS;
 	}
 
-	private void logInfo(String string)
+	/**
+	 * Parses "sha \1 parents \1 time [\1 sign]".
+	 * 
+	 * @param record
+	 * @return the commit, null if the record is invalid
+	 */
+	private GitCommit parseCommit(String record)
 	{
-		if (GitPlugin.getDefault() != null)
+		String[] fields = record.split(String.valueOf((char) FIELD_SEPARATOR), -1);
+		if (fields.length < 3 || fields[0].length() != SHA_LENGTH)
 		{
-			IdeLog.logInfo(GitPlugin.getDefault(), string);
+			IdeLog.logError(GitPlugin.getDefault(),
+					MessageFormat.format("invalid commit: {0}", record), IDebugScopes.DEBUG); //$NON-NLS-1$
+			return null;
 		}
-		else
+		GitCommit newCommit = new GitCommit(repository, fields[0]);
+
+		String parentString = fields[1];
+		if (parentString.length() != 0)
 		{
-			System.out.println(string);
+			if (((parentString.length() + 1) % 41) != 0)
+			{
+				IdeLog.logError(GitPlugin.getDefault(),
+						MessageFormat.format("invalid parents: {0}", parentString.length()), IDebugScopes.DEBUG); //$NON-NLS-1$
+				return null;
+			}
+			int nParents = (parentString.length() + 1) / 41;
+			List<String> parents = new ArrayList<String>(nParents);
+			for (int parentIndex = 0; parentIndex < nParents; ++parentIndex)
+			{
+				int stringIndex = parentIndex * 41;
+				parents.add(parentString.substring(stringIndex, stringIndex + SHA_LENGTH));
+			}
+			newCommit.setParents(parents);
 		}
+
+		newCommit.setTimestamp(toTimestamp(fields[2]));
+
+		if (fields.length > 3)
+		{
+			String sign = fields[3];
+			if (sign.length() != 1 || "<>^-".indexOf(sign.charAt(0)) == -1) //$NON-NLS-1$
+			{
+				IdeLog.logError(GitPlugin.getDefault(), "Error loading commits: sign not correct", IDebugScopes.DEBUG); //$NON-NLS-1$
+			}
+		}
+		return newCommit;
 	}
 
-	private long readLong(InputStream stream)
+	/**
+	 * Loads the subject, author and message of the commits with a single "git show".
+	 * 
+	 * @param repository
+	 * @param commits
+	 * @throws Exception
+	 */
+	private static void loadDetails(GitRepository repository, List<GitCommit> commits) throws Exception // $codepro.audit.disable declaredExceptions
 	{
-		StringBuilder builder = new StringBuilder();
-		while (true)
+		// Git format doesn't support %B until 1.7.3+
+		boolean useRaw = GitExecutable.instance().version().compareTo(Version.parseVersion("1.7.3")) >= 0; //$NON-NLS-1$
+		List<String> arguments = CollectionsUtil.newList("show", "-s", "-z", "--encoding=UTF-8"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		// the trailing separator keeps the end of the message apart from the record separator
+		if (useRaw)
 		{
-			try
+			arguments.add("--pretty=format:%H\01%an\01%ae\01%B\01"); //$NON-NLS-1$
+		}
+		else
+		{
+			arguments.add("--pretty=format:%H\01%an\01%ae\01%s\01%b\01"); //$NON-NLS-1$
+		}
+		Map<String, GitCommit> bySHA = new HashMap<String, GitCommit>(commits.size());
+		for (GitCommit commit : commits)
+		{
+			bySHA.put(commit.sha(), commit);
+			arguments.add(commit.sha());
+		}
+
+		Process p = GitExecutable.instance().run(repository.workingDirectory(),
+				arguments.toArray(new String[arguments.size()]));
+		try
+		{
+			InputStream stream = new BufferedInputStream(p.getInputStream());
+			byte[] sha;
+			while ((sha = read(stream, FIELD_SEPARATOR)) != null) // $codepro.audit.disable assignmentInCondition
 			{
-				int read = stream.read();
-				if (read == -1)
+				GitCommit commit = bySHA.get(new String(sha, IOUtil.UTF_8).trim());
+				String author = getline(stream, FIELD_SEPARATOR);
+				String authorEmail = getline(stream, FIELD_SEPARATOR);
+				String subject;
+				String body;
+				if (useRaw)
 				{
-					break;
+					body = getline(stream, FIELD_SEPARATOR);
+					subject = StringUtil.LINE_SPLITTER.split(body)[0];
 				}
-				builder.append((char) read);
-				if (builder.length() == 10)
+				else
 				{
-					break;
+					subject = getline(stream, FIELD_SEPARATOR);
+					body = getline(stream, FIELD_SEPARATOR);
+				}
+				// skip to the next record
+				read(stream, RECORD_SEPARATOR);
+
+				if (commit != null)
+				{
+					commit.setSubject(subject);
+					commit.setComment(body);
+					commit.setAuthor(author);
+					commit.setAuthorEmail(authorEmail);
 				}
 			}
-			catch (IOException e)
-			{
-				break;
-			}
+			p.waitFor();
+		}
+		finally
+		{
+			p.destroy();
 		}
-		// Since we get time in seconds since epoch, not ms we need to multiply by 1000
-		long time = Long.parseLong(builder.toString()) * 1000;
-		// HACK for some reason my times are 5 minutes off the console/GitX. Adjust 5 mins
-		return time + (5 * 60 * 1000);
-	}
-
-	private void setCommits(List<GitCommit> revisions)
-	{
-		setCommits(revisions, false);
 	}
 
-	private void setCommits(List<GitCommit> revisions, boolean trimToSize)
+	private void logInfo(String string)
 	{
-		if (trimToSize)
+		if (GitPlugin.getDefault() != null)
 		{
-			if (revisions instanceof ArrayList<?>)
-			{
-				((ArrayList<?>) revisions).trimToSize();
-			}
-			this.commits = new ArrayList<GitCommit>(revisions);
-			revisions.clear();
-			revisions = null;
+			IdeLog.logInfo(GitPlugin.getDefault(), string);
 		}
 		else
 		{
-			this.commits = revisions;
+			System.out.println(string);
 		}
 	}
 
-	private String getline(InputStream stream, char c)
+	private static long toTimestamp(String seconds)
 	{
-		byte[] bytes = read(stream, c);
-		if (bytes == null || bytes.length == 0)
+		// Since we get time in seconds since epoch, not ms we need to multiply by 1000
+		long time = Long.parseLong(seconds.trim()) * 1000;
+		// HACK for some reason my times are 5 minutes off the console/GitX. Adjust 5 mins
+		return time + (5 * 60 * 1000);
+	}
+
+	private void setCommits(List<GitCommit> revisions)
+	{
+		if (revisions instanceof ArrayList<?>)
 		{
-			return null;
+			((ArrayList<?>) revisions).trimToSize();
 		}
-		return new String(bytes);
+		this.commits = revisions;
 	}
 
-	private String getline(InputStream stream, char c, String encoding) throws UnsupportedEncodingException
+	private static String getline(InputStream stream, int c) throws IOException
 	{
-		if (encoding == null || encoding.length() == 0)
+		byte[] bytes = read(stream, c);
+		if (bytes == null)
 		{
-			return getline(stream, c);
+			return StringUtil.EMPTY;
 		}
-		byte[] bytes = read(stream, c);
-		return new String(bytes, encoding);
+		return new String(bytes, IOUtil.UTF_8);
 	}
 
-	private byte[] read(InputStream stream, char c)
+	/**
+	 * Reads up to the passed in separator, returns null at the end of the stream.
+	 * 
+	 * @param stream
+	 * @param c
+	 * @return
+	 * @throws IOException
+	 */
+	private static byte[] read(InputStream stream, int c) throws IOException
 	{
 		ByteArrayOutputStream out = new ByteArrayOutputStream();
 		while (true)
 		{
-			try
+			int read = stream.read();
+			if (read == -1)
 			{
-				int read = stream.read();
-				if (read == -1)
+				if (out.size() == 0)
 				{
-					break;
+					return null;
 				}
-				char readC = (char) read;
-				if (readC == c)
-				{
-					break;
-				}
-				out.write(read);
+				break;
 			}
-			catch (IOException e)
+			if (read == c)
 			{
 				break;
 			}
+			out.write(read);
 		}
 		return out.toByteArray();
 	}
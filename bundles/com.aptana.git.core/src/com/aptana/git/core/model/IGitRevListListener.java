@@ -0,0 +1,28 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.git.core.model;
+
+import java.util.List;
+
+/**
+ * Receives the commits of a revision walk in batches, see
+ * {@link GitRevList#walkRevisionListWithSpecifier(GitRevSpecifier, int, int, IGitRevListListener, org.eclipse.core.runtime.IProgressMonitor)}.
+ */
+public interface IGitRevListListener
+{
+	/**
+	 * Called from the walking thread with the next batch of commits, in reverse chronological order. The walk doesn't
+	 * read any further output from git until this returns, so a slow listener slows git down rather than piling up
+	 * commits in memory.
+	 * 
+	 * @param commits
+	 *            the batch, owned by the listener from now on
+	 * @return false to stop the walk
+	 */
+	public boolean commitsLoaded(List<GitCommit> commits);
+}
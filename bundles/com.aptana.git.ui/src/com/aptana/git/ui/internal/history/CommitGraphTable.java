@@ -8,9 +8,16 @@
 package com.aptana.git.ui.internal.history;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 import org.eclipse.jface.viewers.ArrayContentProvider;
 import org.eclipse.jface.viewers.BaseLabelProvider;
 import org.eclipse.jface.viewers.ColumnWeightData;
@@ -33,22 +40,87 @@ import org.eclipse.swt.widgets.Table;
 import org.eclipse.swt.widgets.TableColumn;
 import org.eclipse.swt.widgets.TableItem;
 
+import com.aptana.core.util.EclipseUtil;
 import com.aptana.core.util.StringUtil;
 import com.aptana.git.core.model.GitCommit;
 import com.aptana.git.core.model.GitRef;
 
 /**
  * Table to show the list of commits for a resource in reverse chronological order. Custom paints the first column so
- * that we can draw the branching history graphically.
+ * that we can draw the branching history graphically. The subject and author of the commits are loaded by a job once
+ * their rows are shown, the rows are blank until then.
  * 
  * @author cwilliams
  */
 class CommitGraphTable extends TableViewer
 {
 
+	/**
+	 * How long to wait before loading details again when a write to the repository kept them from being loaded.
+	 */
+	private static final long DETAILS_RETRY_DELAY = 1000;
+
+	/**
+	 * How close to the last row shown the table asks for more commits.
+	 */
+	private static final int MORE_COMMITS_THRESHOLD = 100;
+
 	private BranchPainter renderer;
 	private Map<GitCommit, GraphCellInfo> decorations;
 	private List<GitCommit> commits;
+	private GitGrapher grapher;
+	private Runnable moreCommitsLoader;
+
+	/**
+	 * Commits shown without their details, to be loaded by the details job.
+	 */
+	private final Set<GitCommit> pendingDetails = new LinkedHashSet<GitCommit>();
+	private final Job detailsJob = new Job(Messages.CommitGraphTable_LoadingDetailsJob_title)
+	{
+		@Override
+		protected IStatus run(IProgressMonitor monitor)
+		{
+			List<GitCommit> toLoad;
+			synchronized (pendingDetails)
+			{
+				toLoad = new ArrayList<GitCommit>(pendingDetails);
+				pendingDetails.clear();
+			}
+			List<GitCommit> notLoaded = new ArrayList<GitCommit>();
+			for (GitCommit commit : toLoad)
+			{
+				if (monitor.isCanceled())
+				{
+					return Status.CANCEL_STATUS;
+				}
+				// loads the details of the whole batch the commit came from
+				commit.loadDetails();
+				if (!commit.hasDetails())
+				{
+					notLoaded.add(commit);
+				}
+			}
+			if (!notLoaded.isEmpty())
+			{
+				synchronized (pendingDetails)
+				{
+					pendingDetails.addAll(notLoaded);
+				}
+				schedule(DETAILS_RETRY_DELAY);
+			}
+			if (toLoad.size() > notLoaded.size())
+			{
+				Display.getDefault().asyncExec(new Runnable()
+				{
+					public void run()
+					{
+						refreshVisibleRows();
+					}
+				});
+			}
+			return Status.OK_STATUS;
+		}
+	};
 
 	CommitGraphTable(Composite parent)
 	{
@@ -89,6 +161,7 @@ class CommitGraphTable extends TableViewer
 
 			public void widgetDisposed(DisposeEvent e)
 			{
+				detailsJob.cancel();
 				renderer.dispose();
 			}
 		});
@@ -102,21 +175,101 @@ class CommitGraphTable extends TableViewer
 				TableItem item = (TableItem) event.item;
 				int index = table.indexOf(item);
 				item.setData(commits.get(index));
+				if (moreCommitsLoader != null && index >= commits.size() - MORE_COMMITS_THRESHOLD)
+				{
+					Runnable loader = moreCommitsLoader;
+					moreCommitsLoader = null;
+					loader.run();
+				}
 			}
 		});
+		EclipseUtil.setSystemForJob(detailsJob);
+	}
+
+	/**
+	 * Sets what to run, once, when the rows near the end of the commits shown so far are shown. The history page
+	 * uses it to walk the next window of the history.
+	 * 
+	 * @param loader
+	 *            null if the whole history is shown
+	 */
+	void setMoreCommitsLoader(Runnable loader)
+	{
+		moreCommitsLoader = loader;
+	}
+
+	/**
+	 * Queues the commit for the details job, unless its details are loaded.
+	 * 
+	 * @param commit
+	 * @return whether the details of the commit are loaded
+	 */
+	private boolean requestDetails(GitCommit commit)
+	{
+		if (commit.hasDetails())
+		{
+			return true;
+		}
+		synchronized (pendingDetails)
+		{
+			if (!pendingDetails.add(commit))
+			{
+				return false;
+			}
+		}
+		detailsJob.schedule();
+		return false;
+	}
+
+	/**
+	 * Has the rows shown fetch their labels again, after the details of their commits were loaded.
+	 */
+	private void refreshVisibleRows()
+	{
+		Table table = getTable();
+		if (table.isDisposed())
+		{
+			return;
+		}
+		int top = table.getTopIndex();
+		int rows = table.getClientArea().height / Math.max(1, table.getItemHeight()) + 1;
+		int last = Math.min(table.getItemCount() - 1, top + rows);
+		if (last >= top)
+		{
+			table.clear(top, last);
+		}
 	}
 
 	void setCommits(final List<GitCommit> commits)
 	{
-		this.commits = commits;
-		decorations = new GitGrapher().decorateCommits(commits);
-		setInput(commits);
+		this.commits = new ArrayList<GitCommit>(commits);
+		grapher = new GitGrapher();
+		decorations = grapher.decorateCommits(commits);
+		setInput(this.commits);
 		if (!commits.isEmpty())
 		{
 			setSelection(new StructuredSelection(commits.get(0)));
 		}
 	}
 
+	/**
+	 * Appends the next commits of the history, which must be older than the ones shown so far.
+	 * 
+	 * @param batch
+	 */
+	void addCommits(final List<GitCommit> batch)
+	{
+		if (commits == null || commits.isEmpty())
+		{
+			setCommits(batch);
+			return;
+		}
+		commits.addAll(batch);
+		// the grapher carries its lanes over from the previous batch
+		decorations.putAll(grapher.decorateNextCommits(batch));
+		add(batch.toArray());
+	}
+
 	/**
 	 * Tell SWT that we'll be painting the first column.
 	 * 
@@ -152,14 +305,14 @@ class CommitGraphTable extends TableViewer
 
 		final GitCommit c = (GitCommit) ((TableItem) event.item).getData();
 		final ITableLabelProvider lbl = (ITableLabelProvider) getLabelProvider();
-		final String txt = lbl.getColumnText(c, event.index);
+		final String txt = StringUtil.getStringValue(lbl.getColumnText(c, event.index));
 
 		final Point textsz = event.gc.textExtent(txt);
 		final int texty = (event.height - textsz.y) / 2;
 		event.gc.drawString(txt, event.x, event.y + texty, true);
 	}
 
-	private static class CommitLabelProvider extends BaseLabelProvider implements ITableLabelProvider
+	private class CommitLabelProvider extends BaseLabelProvider implements ITableLabelProvider
 	{
 
 		private static final SimpleDateFormat fmt = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss"); //$NON-NLS-1$
@@ -179,9 +332,9 @@ class CommitGraphTable extends TableViewer
 			switch (columnIndex)
 			{
 				case 0:
-					return commit.getSubject();
+					return requestDetails(commit) ? commit.getSubject() : StringUtil.EMPTY;
 				case 1:
-					return commit.getAuthor();
+					return requestDetails(commit) ? commit.getAuthor() : StringUtil.EMPTY;
 				case 2:
 					return fmt.format(commit.date());
 				default:
@@ -304,7 +457,8 @@ class CommitGraphTable extends TableViewer
 			final int dotY = (height - dotSize) / 2;
 			drawCommitDot(dotX, dotY, dotSize, dotSize);
 
-			final String msg = commit.getSubject();
+			final String msg = requestDetails(commit) ? StringUtil.getStringValue(commit.getSubject())
+					: StringUtil.EMPTY;
 			int textx = Math.max(maxCenter + LANE_WIDTH / 2, dotX + dotSize) + HORIZONTAL_PADDING;
 			int n = commit.refCount();
 			if (commit.hasRefs())
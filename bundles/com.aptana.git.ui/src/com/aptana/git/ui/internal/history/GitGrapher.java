@@ -47,6 +47,18 @@ class GitGrapher
 	Map<GitCommit, GraphCellInfo> decorateCommits(List<GitCommit> commits)
 	{
 		GitLane.resetColors();
+		return decorateNextCommits(commits);
+	}
+
+	/**
+	 * Continues the graph of the commits decorated so far with the next, older, commits.
+	 * 
+	 * @param commits
+	 *            an in-order List of GitCommits following the ones passed in before.
+	 * @return
+	 */
+	Map<GitCommit, GraphCellInfo> decorateNextCommits(List<GitCommit> commits)
+	{
 		Map<GitCommit, GraphCellInfo> decorations = new HashMap<GitCommit, GraphCellInfo>();
 		for (GitCommit commit : commits)
 		{
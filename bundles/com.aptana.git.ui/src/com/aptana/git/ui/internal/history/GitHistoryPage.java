@@ -11,6 +11,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.text.MessageFormat;
 import java.text.SimpleDateFormat;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -53,6 +54,7 @@ import org.eclipse.ui.IWorkbenchPartSite;
 import org.eclipse.ui.progress.IWorkbenchSiteProgressService;
 
 import com.aptana.core.logging.IdeLog;
+import com.aptana.core.util.EclipseUtil;
 import com.aptana.core.util.IOUtil;
 import com.aptana.core.util.StringUtil;
 import com.aptana.git.core.GitPlugin;
@@ -62,6 +64,7 @@ import com.aptana.git.core.model.GitRepository;
 import com.aptana.git.core.model.GitRevList;
 import com.aptana.git.core.model.GitRevSpecifier;
 import com.aptana.git.core.model.IGitRepositoryManager;
+import com.aptana.git.core.model.IGitRevListListener;
 import com.aptana.git.ui.GitUIPlugin;
 import com.aptana.ui.util.UIUtils;
 
@@ -72,6 +75,11 @@ public class GitHistoryPage extends HistoryPage
 
 	private static final SimpleDateFormat TIMESTAMP_FORMAT = new SimpleDateFormat(Messages.GitHistoryPage_DateFormat);
 
+	/**
+	 * The number of commits walked at once. The next ones are walked when the table gets near the end of those shown.
+	 */
+	private static final int HISTORY_WINDOW = 10 * GitRevList.DEFAULT_BATCH_SIZE;
+
 	private Composite ourControl;
 	private SashForm graphDetailSplit;
 	private SashForm revInfoSplit;
@@ -79,6 +87,10 @@ public class GitHistoryPage extends HistoryPage
 	private Browser commentViewer;
 	private CommitFileDiffViewer fileViewer;
 	private String currentRef;
+	/**
+	 * Incremented for each history loaded, so that the walks of a previous one stop adding to the table.
+	 */
+	private volatile int historyGeneration;
 
 	@Override
 	public boolean inputSet()
@@ -117,6 +129,21 @@ public class GitHistoryPage extends HistoryPage
 	private void loadHistory(final IResource resource, final String ref)
 	{
 		currentRef = ref;
+		loadHistoryWindow(resource, ref, ++historyGeneration, 0);
+	}
+
+	/**
+	 * Walks the next window of the history and adds it to the table, replacing the previous history for the first
+	 * one.
+	 * 
+	 * @param resource
+	 * @param ref
+	 * @param generation
+	 * @param skip
+	 *            the number of commits already shown
+	 */
+	private void loadHistoryWindow(final IResource resource, final String ref, final int generation, final int skip)
+	{
 		Job job = new Job(Messages.GitHistoryPage_GeneratingHistoryJob_title)
 		{
 			@Override
@@ -147,33 +174,96 @@ public class GitHistoryPage extends HistoryPage
 				{
 					rev = new GitRevSpecifier(ref, "--", resourcePath.toOSString()); //$NON-NLS-1$
 				}
-				IStatus result = revList.walkRevisionListWithSpecifier(rev, subMonitor.newChild(95));
+				// Show the history as it comes in. The table is fed synchronously, so git is only read as fast as the
+				// UI takes the commits.
+				final boolean[] first = new boolean[] { skip == 0 };
+				final int[] count = new int[1];
+				IStatus result = revList.walkRevisionListWithSpecifier(rev, skip, HISTORY_WINDOW,
+						GitRevList.DEFAULT_BATCH_SIZE, new IGitRevListListener()
+						{
+							public boolean commitsLoaded(List<GitCommit> commits)
+							{
+								count[0] += commits.size();
+								return showCommits(commits, first, generation);
+							}
+						}, subMonitor.newChild(95));
 				if (result != null && result.isOK())
 				{
-					final List<GitCommit> commits = revList.getCommits();
-					Display.getDefault().asyncExec(new Runnable()
+					if (first[0])
 					{
-
-						public void run()
+						showCommits(Collections.<GitCommit> emptyList(), first, generation);
+					}
+					else if (count[0] == HISTORY_WINDOW)
+					{
+						// there may be more, walk them once they're about to be shown
+						Display.getDefault().asyncExec(new Runnable()
 						{
-							graph.setCommits(commits);
-							if (getControl() != null && !getControl().isDisposed())
+							public void run()
 							{
-								getSite().getPage().activate((IWorkbenchPart) getHistoryView());
-								((IViewPart) getHistoryView()).getViewSite().getActionBars().updateActionBars();
+								if (generation == historyGeneration && graph != null
+										&& !graph.getControl().isDisposed())
+								{
+									graph.setMoreCommitsLoader(new Runnable()
+									{
+										public void run()
+										{
+											loadHistoryWindow(resource, ref, generation, skip + HISTORY_WINDOW);
+										}
+									});
+								}
 							}
-						}
-					});
+						});
+					}
 				}
 				subMonitor.done();
 				return result;
 			}
 		};
-		job.setUser(true);
+		// only the first window is walked on behalf of the user, the others while scrolling
+		job.setUser(skip == 0);
 		job.setPriority(Job.SHORT);
 		schedule(job);
 	}
 
+	/**
+	 * Shows the next batch of commits in the table, replacing the previous history for the first batch. Returns false
+	 * if the table is gone or shows another history.
+	 * 
+	 * @param commits
+	 * @param first
+	 * @param generation
+	 * @return
+	 */
+	private boolean showCommits(final List<GitCommit> commits, final boolean[] first, final int generation)
+	{
+		final boolean[] shown = new boolean[1];
+		Display.getDefault().syncExec(new Runnable()
+		{
+			public void run()
+			{
+				if (graph == null || graph.getControl().isDisposed() || generation != historyGeneration)
+				{
+					return;
+				}
+				shown[0] = true;
+				if (!first[0])
+				{
+					graph.addCommits(commits);
+					return;
+				}
+				first[0] = false;
+				graph.setMoreCommitsLoader(null);
+				graph.setCommits(commits);
+				if (getControl() != null && !getControl().isDisposed())
+				{
+					getSite().getPage().activate((IWorkbenchPart) getHistoryView());
+					((IViewPart) getHistoryView()).getViewSite().getActionBars().updateActionBars();
+				}
+			}
+		});
+		return shown[0];
+	}
+
 	private IGitRepositoryManager getGitRepositoryManager()
 	{
 		return GitPlugin.getDefault().getGitRepositoryManager();
@@ -301,12 +391,61 @@ public class GitHistoryPage extends HistoryPage
 				GitCommit commit = (GitCommit) sel.getFirstElement();
 				// TODO If we know the user's github project URL, we can point them to the GitHub URL for this instead
 				// of generating our own!
-				commentViewer.setText(commitToHTML(commit));
+				if (commit.hasDetails())
+				{
+					commentViewer.setText(commitToHTML(commit));
+				}
+				else
+				{
+					commentViewer.setText(StringUtil.EMPTY);
+					showCommitDetails(commit);
+				}
 				fileViewer.setInput(commit);
 			}
 		});
 	}
 
+	/**
+	 * Loads the details of the commit in a job, and shows them if it's still the one selected.
+	 * 
+	 * @param commit
+	 */
+	private void showCommitDetails(final GitCommit commit)
+	{
+		Job job = new Job(Messages.CommitGraphTable_LoadingDetailsJob_title)
+		{
+			@Override
+			protected IStatus run(IProgressMonitor monitor)
+			{
+				commit.loadDetails();
+				if (!commit.hasDetails())
+				{
+					// a write to the repository is going on, try again later
+					schedule(1000);
+					return Status.OK_STATUS;
+				}
+				Display.getDefault().asyncExec(new Runnable()
+				{
+					public void run()
+					{
+						if (graph == null || graph.getControl().isDisposed() || commentViewer.isDisposed())
+						{
+							return;
+						}
+						IStructuredSelection selection = (IStructuredSelection) graph.getSelection();
+						if (commit.equals(selection.getFirstElement()))
+						{
+							commentViewer.setText(commitToHTML(commit));
+						}
+					}
+				});
+				return Status.OK_STATUS;
+			}
+		};
+		EclipseUtil.setSystemForJob(job);
+		job.schedule();
+	}
+
 	private Composite createMainPanel(final Composite parent)
 	{
 		final Composite c = new Composite(parent, SWT.NULL);
@@ -392,7 +531,7 @@ public class GitHistoryPage extends HistoryPage
 		variables.put("\\{date\\}", TIMESTAMP_FORMAT.format(commit.date())); //$NON-NLS-1$
 		variables.put("\\{author\\}", commit.getAuthor()); //$NON-NLS-1$
 		variables.put("\\{subject\\}", commit.getSubject()); //$NON-NLS-1$
-		String comment = commit.getComment();
+		String comment = StringUtil.getStringValue(commit.getComment());
 		// Auto convert references to URLs into links
 		comment = comment.replaceAll("http://(.+)", "<a href=\"$0\" target=\"_blank\">http://$1</a>"); //$NON-NLS-1$ //$NON-NLS-2$
 		comment = comment.replaceAll(StringUtil.LINE_SPLITTER_REGEX, "<br />"); // Convert newlines into breakreads //$NON-NLS-1$
@@ -20,6 +20,7 @@ public class Messages extends NLS
 	public static String CommitFileDiffViewer_Renamed;
 	public static String CommitGraphTable_AuthorColumn_Label;
 	public static String CommitGraphTable_DateColumn_Label;
+	public static String CommitGraphTable_LoadingDetailsJob_title;
 	public static String GitCompareFileRevisionEditorInput_workspace;
 	public static String GitCompareFileRevisionEditorInput_localRevision;
 	public static String GitCompareFileRevisionEditorInput_repository;
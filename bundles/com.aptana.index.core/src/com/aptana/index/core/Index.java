@@ -12,11 +12,11 @@ import java.io.IOException;
 import java.net.URI;
 import java.text.MessageFormat;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.regex.Pattern;
@@ -24,16 +24,32 @@ import java.util.regex.PatternSyntaxException;
 import java.util.zip.CRC32;
 
 import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 
 import com.aptana.core.logging.IdeLog;
+import com.aptana.core.util.EclipseUtil;
 import com.aptana.internal.index.core.DiskIndex;
+import com.aptana.internal.index.core.DiskIndex.PendingMerge;
 import com.aptana.internal.index.core.MemoryIndex;
 
+/**
+ * An index made of a file on disk and the changes made since it was last written, which are held in memory.
+ * <p>
+ * Queries never wait for writers: they run against an immutable {@link Snapshot} of the disk and memory indexes.
+ * Writers add to a pending memory index which queries don't see until it is published, i.e. merged with the snapshot's
+ * memory index into a new snapshot. That happens at the start of a query if no writer is busy, and before a save. Once
+ * the memory index grows large enough it is merged into a new disk file in the background while queries keep running
+ * against the old one; queries only have to wait for the new file to be swapped in.
+ * </p>
+ */
 public class Index
 {
 	private static final int MATCH_RULE_INDEX_MASK = SearchPattern.EXACT_MATCH | SearchPattern.PREFIX_MATCH
 			| SearchPattern.PATTERN_MATCH | SearchPattern.CASE_SENSITIVE | SearchPattern.REGEX_MATCH;
-	private static final Map<String, Pattern> PATTERNS = new HashMap<String, Pattern>();
+	private static final Map<String, Pattern> PATTERNS = new ConcurrentHashMap<String, Pattern>();
 	// Separator to use after the container path
 	public static final char DEFAULT_SEPARATOR = '/';
 
@@ -300,9 +316,51 @@ public class Index
 		return (pattern != null) ? pattern.matcher(word).find() : false;
 	}
 
-	private MemoryIndex memoryIndex;
-	private DiskIndex diskIndex;
+	/**
+	 * What queries run against. Neither index is ever modified once part of a snapshot.
+	 */
+	private static final class Snapshot
+	{
+		final DiskIndex diskIndex;
+		final MemoryIndex memoryIndex;
+
+		Snapshot(DiskIndex diskIndex, MemoryIndex memoryIndex)
+		{
+			this.diskIndex = diskIndex;
+			this.memoryIndex = memoryIndex;
+		}
+	}
+
+	private volatile Snapshot snapshot;
+
+	/**
+	 * Bumped every time the content queries see changes.
+	 */
+	private volatile long generation;
+
+	/**
+	 * The changes made since the last time they were published. Only touched while holding the write lock of monitor.
+	 */
+	private MemoryIndex pendingIndex;
+	private volatile boolean hasPendingChanges;
+
+	/**
+	 * Writers hold its write lock. Queries never take it.
+	 */
 	ReadWriteLock monitor;
+
+	/**
+	 * Queries hold its read lock while they use a snapshot's disk index. Its write lock is only held while a disk index
+	 * file is being released or replaced.
+	 */
+	private final ReadWriteLock swapMonitor;
+
+	/**
+	 * Only one merge into the disk index at a time.
+	 */
+	private final Object mergeLock = new Object();
+
+	private final Job mergeJob;
 	private URI containerURI;
 
 	/**
@@ -316,27 +374,39 @@ public class Index
 	{
 		this.containerURI = containerURI;
 
-		this.memoryIndex = new MemoryIndex();
+		this.pendingIndex = new MemoryIndex();
 		this.monitor = new ReentrantReadWriteLock();
+		this.swapMonitor = new ReentrantReadWriteLock();
+		this.mergeJob = new Job(MessageFormat.format("Merging {0}", this)) //$NON-NLS-1$
+		{
+			@Override
+			protected IStatus run(IProgressMonitor monitor)
+			{
+				try
+				{
+					save(false);
+				}
+				catch (IOException e)
+				{
+					IdeLog.logError(IndexPlugin.getDefault(), e);
+				}
+				return Status.OK_STATUS;
+			}
+		};
+		EclipseUtil.setSystemForJob(this.mergeJob);
 
 		// Convert to a filename we can use for the actual index on disk
 		IPath diskIndexPath = computeIndexLocation(containerURI);
 		if (diskIndexPath == null)
 		{
+			this.snapshot = new Snapshot(null, new MemoryIndex());
 			return;
 		}
 		String diskIndexPathString = (diskIndexPath.getDevice() == null) ? diskIndexPath.toString() : diskIndexPath
 				.toOSString();
-		this.enterWrite();
-		try
-		{
-			this.diskIndex = new DiskIndex(diskIndexPathString);
-			this.diskIndex.initialize(reuseExistingFile);
-		}
-		finally
-		{
-			this.exitWrite();
-		}
+		DiskIndex diskIndex = new DiskIndex(diskIndexPathString);
+		diskIndex.initialize(reuseExistingFile);
+		this.snapshot = new Snapshot(diskIndex, new MemoryIndex());
 	}
 
 	/**
@@ -348,10 +418,15 @@ public class Index
 	 */
 	public void addEntry(String category, String key, URI containerRelativeURI)
 	{
+		String documentName = containerRelativeURI.toString();
+
 		this.enterWrite();
 		try
 		{
-			this.memoryIndex.addEntry(category, key, containerRelativeURI.toString());
+			// keep adding to what was already published for the document
+			this.pendingIndex.copyDocument(documentName, this.snapshot.memoryIndex);
+			this.pendingIndex.addEntry(category, key, documentName);
+			this.hasPendingChanges = true;
 		}
 		finally
 		{
@@ -369,12 +444,33 @@ public class Index
 			logTrace(MessageFormat.format("Deleting index ''{0}''", this)); //$NON-NLS-1$
 		}
 
-		// TODO Enter write?
+		this.mergeJob.cancel();
 
 		File indexFile = this.getIndexFile();
-		if (indexFile != null && indexFile.exists())
+		// waits for a merge that is already running, so it can't rename its file over the index once deleted
+		synchronized (this.mergeLock)
 		{
-			indexFile.delete();
+			this.enterWrite();
+			this.enterSwap();
+			try
+			{
+				// the file is mapped while the index is open, release it so it can be deleted
+				DiskIndex diskIndex = this.snapshot.diskIndex;
+				if (diskIndex != null)
+				{
+					diskIndex.close();
+				}
+				if (indexFile != null && indexFile.exists())
+				{
+					indexFile.delete();
+				}
+				this.generation++;
+			}
+			finally
+			{
+				this.exitSwap();
+				this.exitWrite();
+			}
 		}
 	}
 
@@ -389,70 +485,100 @@ public class Index
 	}
 
 	/**
-	 * Blocks to acquire the read lock.
+	 * Blocks to acquire the write lock
 	 */
-	private void enterRead()
+	private void enterWrite()
 	{
 		if (this.monitor != null)
 		{
-			this.monitor.readLock().lock();
+			this.monitor.writeLock().lock();
 		}
 	}
 
 	/**
-	 * Blocks to acquire the write lock
+	 * Tries to acquire the write lock without waiting. A boolean is returned indicating success.
+	 * 
+	 * @return
 	 */
-	private void enterWrite()
+	private boolean tryEnterWrite()
 	{
-		if (this.monitor != null)
-		{
-			this.monitor.writeLock().lock();
-		}
+		return this.monitor == null || this.monitor.writeLock().tryLock();
 	}
 
-	private void exitRead()
+	private void exitWrite()
 	{
 		if (this.monitor != null)
 		{
-			this.monitor.readLock().unlock();
+			this.monitor.writeLock().unlock();
 		}
 	}
 
 	/**
-	 * This method does not guarantee that it will acquire the write lock. A boolean is returned indicating success.
+	 * Returns the current snapshot, after publishing the pending changes if no writer is busy. Blocks only while a disk
+	 * index file is being swapped; {@link #exitRead()} must be called once done with the snapshot.
 	 * 
 	 * @return
 	 */
-	private boolean exitReadEnterWrite()
+	private Snapshot enterRead()
 	{
-		boolean result = false;
+		this.publishIfIdle();
+		this.swapMonitor.readLock().lock();
+		return this.snapshot;
+	}
 
-		if (this.monitor != null)
-		{
-			monitor.readLock().unlock();
-			result = monitor.writeLock().tryLock();
-		}
+	private void exitRead()
+	{
+		this.swapMonitor.readLock().unlock();
+	}
 
-		return result;
+	private void enterSwap()
+	{
+		this.swapMonitor.writeLock().lock();
 	}
 
-	private void exitWrite()
+	private void exitSwap()
 	{
-		if (this.monitor != null)
+		this.swapMonitor.writeLock().unlock();
+	}
+
+	/**
+	 * Publishes the pending changes unless a writer is busy.
+	 */
+	private void publishIfIdle()
+	{
+		if (this.hasPendingChanges && this.tryEnterWrite())
 		{
-			this.monitor.writeLock().unlock();
+			try
+			{
+				this.publish();
+			}
+			finally
+			{
+				this.exitWrite();
+			}
 		}
 	}
 
 	/**
-	 * This operation is _not_ atomic. This method will block until the read lock is acquired.
+	 * Makes the pending changes visible to queries. The write lock must be held.
 	 */
-	private void exitWriteEnterRead()
+	private void publish()
 	{
-		if (this.monitor != null)
+		if (!this.hasPendingChanges)
+		{
+			return;
+		}
+
+		Snapshot current = this.snapshot;
+		MemoryIndex memoryIndex = current.memoryIndex.mergedWith(this.pendingIndex);
+		this.snapshot = new Snapshot(current.diskIndex, memoryIndex);
+		this.pendingIndex = new MemoryIndex();
+		this.hasPendingChanges = false;
+		this.generation++;
+
+		if (memoryIndex.shouldMerge())
 		{
-			exitWrite();
-			enterRead();
+			this.mergeJob.schedule();
 		}
 	}
 
@@ -464,11 +590,11 @@ public class Index
 	public List<String> getCategories()
 	{
 		Set<String> categories = new HashSet<String>();
-		this.enterRead();
+		Snapshot current = this.enterRead();
 		try
 		{
-			categories.addAll(this.memoryIndex.getCategories());
-			categories.addAll(this.diskIndex.getCategories());
+			categories.addAll(current.memoryIndex.getCategories());
+			categories.addAll(current.diskIndex.getCategories());
 		}
 		finally
 		{
@@ -478,33 +604,36 @@ public class Index
 	}
 
 	/**
-	 * getIndexFile
+	 * Returns a number which changes whenever the content seen by queries may have changed, so that what is computed
+	 * from query results can be cached until it does.
 	 * 
 	 * @return
 	 */
-	public File getIndexFile()
+	public long getGeneration()
 	{
-		return this.diskIndex == null ? null : this.diskIndex.indexFile;
+		this.publishIfIdle();
+		return this.generation;
 	}
 
 	/**
-	 * @deprecated
+	 * getIndexFile
+	 * 
 	 * @return
 	 */
-	public URI getRoot()
+	public File getIndexFile()
 	{
-		// TODO Remove this! JDT doesn't need it!
-		return containerURI;
+		DiskIndex diskIndex = this.snapshot.diskIndex;
+		return diskIndex == null ? null : diskIndex.indexFile;
 	}
 
 	/**
-	 * hasChanged
-	 * 
+	 * @deprecated
 	 * @return
 	 */
-	private boolean hasChanged()
+	public URI getRoot()
 	{
-		return memoryIndex.hasChanged();
+		// TODO Remove this! JDT doesn't need it!
+		return containerURI;
 	}
 
 	/**
@@ -520,36 +649,19 @@ public class Index
 	{
 		Map<String, QueryResult> results = null;
 
+		Snapshot current = this.enterRead();
 		try
 		{
-			// NOTE: I'd like to lock later in the method, but it would contort
-			// the IReadWriteMonitor interface, so we lock here and stick with
-			// the call to exitReadEnterWrite below
-			this.enterRead();
-
-			if (this.memoryIndex.shouldMerge() && this.exitReadEnterWrite())
-			{
-				// in write...
-				try
-				{
-					this.save(false);
-				}
-				finally
-				{
-					this.exitWriteEnterRead();
-				}
-			}
-			// We're in read mode for monitor here now matter what...
 			int rule = matchRule & MATCH_RULE_INDEX_MASK;
 
-			if (this.memoryIndex.hasChanged())
+			if (current.memoryIndex.hasChanged())
 			{
-				results = this.diskIndex.addQueryResults(categories, key, rule, this.memoryIndex);
-				results = this.memoryIndex.addQueryResults(categories, key, rule, results);
+				results = current.diskIndex.addQueryResults(categories, key, rule, current.memoryIndex);
+				results = current.memoryIndex.addQueryResults(categories, key, rule, results);
 			}
 			else
 			{
-				results = this.diskIndex.addQueryResults(categories, key, rule, null);
+				results = current.diskIndex.addQueryResults(categories, key, rule, null);
 			}
 		}
 		catch (IOException e)
@@ -577,17 +689,17 @@ public class Index
 	public Set<String> queryDocumentNames(String substring) throws IOException
 	{
 		Set<String> results;
-		this.enterRead();
+		Snapshot current = this.enterRead();
 		try
 		{
-			if (this.memoryIndex.hasChanged())
+			if (current.memoryIndex.hasChanged())
 			{
-				results = this.diskIndex.addDocumentNames(substring, this.memoryIndex);
-				results.addAll(this.memoryIndex.addDocumentNames(substring));
+				results = current.diskIndex.addDocumentNames(substring, current.memoryIndex);
+				results.addAll(current.memoryIndex.addDocumentNames(substring));
 			}
 			else
 			{
-				results = this.diskIndex.addDocumentNames(substring, null);
+				results = current.diskIndex.addDocumentNames(substring, null);
 			}
 		}
 		finally
@@ -606,26 +718,20 @@ public class Index
 	{
 		String documentName = containerRelativeURI.toString();
 
-		this.enterRead();
-		try
-		{
-			if (isTraceEnabled() && memoryIndex.hasDocument(documentName))
-			{
-				// @formatter:off
-				String message = MessageFormat.format("Removing URI ''{0}'' from index ''{1}''", //$NON-NLS-1$
-						containerRelativeURI, this);
-				// @formatter:on
-				logTrace(message);
-			}
-		}
-		finally
+		if (isTraceEnabled() && this.snapshot.memoryIndex.hasDocument(documentName))
 		{
-			this.exitRead();
-			this.enterWrite(); // we must wait for write! DO NOT CALL exitReadEnterWrite!
+			// @formatter:off
+			String message = MessageFormat.format("Removing URI ''{0}'' from index ''{1}''", //$NON-NLS-1$
+					containerRelativeURI, this);
+			// @formatter:on
+			logTrace(message);
 		}
+
+		this.enterWrite();
 		try
 		{
-			this.memoryIndex.remove(documentName);
+			this.pendingIndex.remove(documentName);
+			this.hasPendingChanges = true;
 		}
 		finally
 		{
@@ -640,19 +746,49 @@ public class Index
 	 */
 	public void removeCategories(String... categoryNames)
 	{
-		this.enterWrite();
-		try
+		synchronized (this.mergeLock)
 		{
-			this.memoryIndex.removeCategories(categoryNames);
-			this.diskIndex = this.diskIndex.removeCategories(categoryNames, this.memoryIndex);
+			this.enterWrite();
+			try
+			{
+				this.publish();
+
+				Snapshot current = this.snapshot;
+				PendingMerge merge = current.diskIndex.prepareRemoveCategories(categoryNames,
+						current.memoryIndex.withoutCategories(categoryNames));
+				this.swap(merge, new MemoryIndex());
+				this.generation++;
+			}
+			catch (IOException e)
+			{
+				IdeLog.logError(IndexPlugin.getDefault(),
+						"An error occurred while removing categories from the index", e); //$NON-NLS-1$
+			}
+			finally
+			{
+				this.exitWrite();
+			}
 		}
-		catch (IOException e)
+	}
+
+	/**
+	 * Replaces the snapshot's disk index by the merged one once the queries using it are done.
+	 * 
+	 * @param merge
+	 * @param memoryIndex
+	 *            the memory index to go with it
+	 * @throws IOException
+	 */
+	private void swap(PendingMerge merge, MemoryIndex memoryIndex) throws IOException
+	{
+		this.enterSwap();
+		try
 		{
-			IdeLog.logError(IndexPlugin.getDefault(), "An error occurred while removing categories from the index", e); //$NON-NLS-1$
+			this.snapshot = new Snapshot(merge.commit(), memoryIndex);
 		}
 		finally
 		{
-			this.exitWrite();
+			this.exitSwap();
 		}
 	}
 
@@ -672,46 +808,63 @@ public class Index
 	}
 
 	/**
-	 * save
+	 * Merges the published memory index into the disk index. Writers only wait while the changes are published and
+	 * while the new disk index is swapped in, not while it is written; whatever they add in the meantime stays in
+	 * memory.
 	 * 
-	 * @param lock
+	 * @param includePending
+	 *            whether to publish the pending changes first, so they get saved as well
 	 * @throws IOException
 	 */
-	private void save(boolean lock) throws IOException
+	private void save(boolean includePending) throws IOException
 	{
-		// NOTE: Unfortunately we need the ugly "lock" flag hack in order to
-		// prevent hanging when save is called from query
-		try
+		synchronized (this.mergeLock)
 		{
-			if (lock)
+			Snapshot merged;
+			if (includePending)
 			{
 				this.enterWrite();
+				try
+				{
+					this.publish();
+				}
+				finally
+				{
+					this.exitWrite();
+				}
 			}
+			merged = this.snapshot;
 
 			// no need to do anything if the memory index hasn't changed
-			if (!hasChanged())
+			if (!merged.memoryIndex.hasChanged() || merged.diskIndex == null)
 			{
 				return;
 			}
 
-			int numberOfChanges = this.memoryIndex.numberOfChanges();
-			this.diskIndex = this.diskIndex.mergeWith(this.memoryIndex);
-			this.memoryIndex = new MemoryIndex();
-
-			if (numberOfChanges > 1000)
+			try
 			{
-				System.gc(); // reclaim space if the MemoryIndex was very BIG
+				int numberOfChanges = merged.memoryIndex.numberOfChanges();
+				PendingMerge merge = merged.diskIndex.prepareMerge(merged.memoryIndex);
+
+				this.enterWrite();
+				try
+				{
+					// keep whatever was published while we were writing the new file
+					this.swap(merge, this.snapshot.memoryIndex.without(merged.memoryIndex));
+				}
+				finally
+				{
+					this.exitWrite();
+				}
+
+				if (numberOfChanges > 1000)
+				{
+					System.gc(); // reclaim space if the MemoryIndex was very BIG
+				}
 			}
-		}
-		catch (Exception e)
-		{
-			IdeLog.logError(IndexPlugin.getDefault(), e);
-		}
-		finally
-		{
-			if (lock)
+			catch (Exception e)
 			{
-				this.exitWrite();
+				IdeLog.logError(IndexPlugin.getDefault(), e);
 			}
 		}
 	}
@@ -737,8 +890,29 @@ public class Index
 	 */
 	public void reset() throws IOException
 	{
-		this.memoryIndex = new MemoryIndex();
-		this.diskIndex = new DiskIndex(this.diskIndex.indexFile.getCanonicalPath());
-		this.diskIndex.initialize(false/* do not reuse the index file */);
+		this.mergeJob.cancel();
+
+		synchronized (this.mergeLock)
+		{
+			this.enterWrite();
+			this.enterSwap();
+			try
+			{
+				DiskIndex diskIndex = this.snapshot.diskIndex;
+				diskIndex.close();
+				diskIndex = new DiskIndex(diskIndex.indexFile.getCanonicalPath());
+				diskIndex.initialize(false/* do not reuse the index file */);
+
+				this.pendingIndex = new MemoryIndex();
+				this.hasPendingChanges = false;
+				this.snapshot = new Snapshot(diskIndex, new MemoryIndex());
+				this.generation++;
+			}
+			finally
+			{
+				this.exitSwap();
+				this.exitWrite();
+			}
+		}
 	}
 }
@@ -120,6 +120,21 @@ public abstract class IndexReader
 		});
 	}
 
+	/**
+	 * Wrap the word of the specified query result so its fields can be read. The word is expected to have been built
+	 * with an {@link IndexRecord.Writer} using this reader's delimiter
+	 * 
+	 * @param item
+	 *            The query result
+	 * @param keyColumnCount
+	 *            The number of key columns preceding the record's fields
+	 * @return
+	 */
+	protected IndexRecord getRecord(QueryResult item, int keyColumnCount)
+	{
+		return new IndexRecord(item.getWord(), this.getDelimiter(), keyColumnCount);
+	}
+
 	/**
 	 * Get the second level delimiter string used to separate test within a column in an index word
 	 * 
@@ -0,0 +1,397 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.index.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An index word made of key columns followed by a record of typed, length-prefixed fields. The key columns are joined
+ * by the index's delimiter and come first, so prefix and regex queries keep matching them as before. The fields follow
+ * the last key column and its delimiter; each starts with a type tag and, for strings and lists, a length, so reading
+ * one field never requires looking at the content of the others. Fields are decoded on demand straight from the word,
+ * without regular expressions or splitting the word into columns.
+ * 
+ * <pre>
+ * key0 DELIM key1 DELIM ... DELIM field0 field1 ...
+ * 
+ * string: 's' length chars...
+ * list:   'l' count (length chars...)*
+ * true:   't'
+ * false:  'f'
+ * null:   'n'
+ * </pre>
+ * 
+ * Lengths and counts take one char holding the value plus one, so that they never collide with the delimiter. Values
+ * which don't fit below the surrogate range are stored as {@link #LONG_LENGTH} followed by two chars of 15 bits each.
+ */
+public class IndexRecord
+{
+	private static final char STRING = 's';
+	private static final char LIST = 'l';
+	private static final char TRUE = 't';
+	private static final char FALSE = 'f';
+	private static final char NULL = 'n';
+
+	/**
+	 * Marks a length which is stored in the two following chars.
+	 */
+	private static final char LONG_LENGTH = '\uD7FF';
+
+	/**
+	 * Builds an index word out of key columns and typed fields.
+	 */
+	public static class Writer
+	{
+		private final StringBuilder buffer;
+
+		/**
+		 * @param delimiter
+		 *            the delimiter used between the key columns and before the fields
+		 * @param keyColumns
+		 *            the columns used to match the word in queries
+		 */
+		public Writer(String delimiter, String... keyColumns)
+		{
+			buffer = new StringBuilder();
+			for (String column : keyColumns)
+			{
+				if (column != null)
+				{
+					buffer.append(column);
+				}
+				buffer.append(delimiter);
+			}
+		}
+
+		public Writer addString(String value)
+		{
+			if (value == null)
+			{
+				buffer.append(NULL);
+			}
+			else
+			{
+				buffer.append(STRING);
+				appendString(value);
+			}
+			return this;
+		}
+
+		public Writer addBoolean(boolean value)
+		{
+			buffer.append(value ? TRUE : FALSE);
+			return this;
+		}
+
+		public Writer addStringList(Collection<String> values)
+		{
+			if (values == null)
+			{
+				buffer.append(NULL);
+			}
+			else
+			{
+				buffer.append(LIST);
+				appendLength(values.size());
+				for (String value : values)
+				{
+					appendString((value == null) ? "" : value); //$NON-NLS-1$
+				}
+			}
+			return this;
+		}
+
+		private void appendString(String value)
+		{
+			appendLength(value.length());
+			buffer.append(value);
+		}
+
+		private void appendLength(int length)
+		{
+			int value = length + 1;
+			if (value < LONG_LENGTH)
+			{
+				buffer.append((char) value);
+			}
+			else
+			{
+				buffer.append(LONG_LENGTH);
+				buffer.append((char) ((value >>> 15) & 0x7fff));
+				buffer.append((char) (value & 0x7fff));
+			}
+		}
+
+		/**
+		 * Returns the word to add to the index.
+		 */
+		@Override
+		public String toString()
+		{
+			return buffer.toString();
+		}
+	}
+
+	private final String word;
+	private final String delimiter;
+	private final int keyColumnCount;
+
+	/**
+	 * The start of each field within the word, filled in lazily as fields are asked for. -1 once we know the record has
+	 * no more fields.
+	 */
+	private int[] fieldOffsets;
+	private int knownFields;
+
+	/**
+	 * @param word
+	 *            a word built with a {@link Writer}
+	 * @param delimiter
+	 *            the delimiter the word was built with
+	 * @param keyColumnCount
+	 *            the number of key columns the word was built with
+	 */
+	public IndexRecord(String word, String delimiter, int keyColumnCount)
+	{
+		this.word = word;
+		this.delimiter = delimiter;
+		this.keyColumnCount = keyColumnCount;
+	}
+
+	/**
+	 * Returns the key column at the given index, null if there's no such column.
+	 * 
+	 * @param column
+	 * @return
+	 */
+	public String getKeyColumn(int column)
+	{
+		if (column < 0 || column >= keyColumnCount)
+		{
+			return null;
+		}
+		int start = 0;
+		for (int i = 0; i < column; i++)
+		{
+			int end = word.indexOf(delimiter, start);
+			if (end == -1)
+			{
+				return null;
+			}
+			start = end + delimiter.length();
+		}
+		int end = word.indexOf(delimiter, start);
+		return (end == -1) ? null : word.substring(start, end);
+	}
+
+	/**
+	 * Returns the string field at the given index, null if the field is null or doesn't exist.
+	 * 
+	 * @param field
+	 * @return
+	 */
+	public String getString(int field)
+	{
+		int offset = fieldOffset(field);
+		if (offset == -1 || word.charAt(offset) != STRING)
+		{
+			return null;
+		}
+		int[] position = { offset + 1 };
+		int length = readLength(position);
+		if (length == -1 || position[0] + length > word.length())
+		{
+			return null;
+		}
+		return word.substring(position[0], position[0] + length);
+	}
+
+	/**
+	 * Returns the boolean field at the given index, false if the field doesn't exist.
+	 * 
+	 * @param field
+	 * @return
+	 */
+	public boolean getBoolean(int field)
+	{
+		int offset = fieldOffset(field);
+		return offset != -1 && word.charAt(offset) == TRUE;
+	}
+
+	/**
+	 * Returns the list field at the given index, an empty list if the field is null or doesn't exist.
+	 * 
+	 * @param field
+	 * @return
+	 */
+	public List<String> getStringList(int field)
+	{
+		int offset = fieldOffset(field);
+		if (offset == -1 || word.charAt(offset) != LIST)
+		{
+			return Collections.emptyList();
+		}
+		int[] position = { offset + 1 };
+		int count = readLength(position);
+		if (count == -1)
+		{
+			return Collections.emptyList();
+		}
+		List<String> result = new ArrayList<String>(count);
+		for (int i = 0; i < count; i++)
+		{
+			int length = readLength(position);
+			if (length == -1 || position[0] + length > word.length())
+			{
+				return Collections.emptyList();
+			}
+			result.add(word.substring(position[0], position[0] + length));
+			position[0] += length;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the offset of the given field's type tag, -1 if there's no such field. Walks the field headers up to the
+	 * field once, skipping over the content of the fields before it.
+	 * 
+	 * @param field
+	 * @return
+	 */
+	private int fieldOffset(int field)
+	{
+		if (field < 0)
+		{
+			return -1;
+		}
+		if (fieldOffsets == null)
+		{
+			int start = fieldsStart();
+			if (start == -1)
+			{
+				return -1;
+			}
+			fieldOffsets = new int[4];
+			fieldOffsets[0] = start;
+			knownFields = 1;
+		}
+		while (knownFields <= field)
+		{
+			int last = fieldOffsets[knownFields - 1];
+			if (last == -1)
+			{
+				return -1;
+			}
+			int next = skipField(last);
+			if (knownFields == fieldOffsets.length)
+			{
+				int[] grown = new int[fieldOffsets.length * 2];
+				System.arraycopy(fieldOffsets, 0, grown, 0, fieldOffsets.length);
+				fieldOffsets = grown;
+			}
+			fieldOffsets[knownFields++] = next;
+		}
+		int offset = fieldOffsets[field];
+		return (offset >= word.length()) ? -1 : offset;
+	}
+
+	private int fieldsStart()
+	{
+		int start = 0;
+		for (int i = 0; i < keyColumnCount; i++)
+		{
+			int end = word.indexOf(delimiter, start);
+			if (end == -1)
+			{
+				return -1;
+			}
+			start = end + delimiter.length();
+		}
+		return start;
+	}
+
+	/**
+	 * Returns the offset of the field following the one at the given offset, -1 if there is none or the word isn't a
+	 * record.
+	 * 
+	 * @param offset
+	 * @return
+	 */
+	private int skipField(int offset)
+	{
+		if (offset >= word.length())
+		{
+			return -1;
+		}
+		int[] position = { offset + 1 };
+		switch (word.charAt(offset))
+		{
+			case STRING:
+				int length = readLength(position);
+				if (length == -1)
+				{
+					return -1;
+				}
+				position[0] += length;
+				break;
+
+			case LIST:
+				int count = readLength(position);
+				for (int i = 0; i < count; i++)
+				{
+					int itemLength = readLength(position);
+					if (itemLength == -1)
+					{
+						return -1;
+					}
+					position[0] += itemLength;
+				}
+				break;
+
+			case TRUE:
+			case FALSE:
+			case NULL:
+				break;
+
+			default:
+				// not a record, i.e. a word written before the index switched to records and not reindexed yet
+				return -1;
+		}
+		return (position[0] > word.length()) ? -1 : position[0];
+	}
+
+	/**
+	 * Reads a length at the given position and moves the position past it. Returns -1 if there's no valid length there.
+	 * 
+	 * @param position
+	 * @return
+	 */
+	private int readLength(int[] position)
+	{
+		if (position[0] >= word.length())
+		{
+			return -1;
+		}
+		char c = word.charAt(position[0]++);
+		if (c != LONG_LENGTH)
+		{
+			return (c == 0) ? -1 : c - 1;
+		}
+		if (position[0] + 2 > word.length())
+		{
+			return -1;
+		}
+		int high = word.charAt(position[0]++);
+		int low = word.charAt(position[0]++);
+		return ((high << 15) | low) - 1;
+	}
+
+}
@@ -23,6 +23,18 @@ public abstract class IndexWriter
 	 */
 	protected abstract URI getDocumentPath();
 
+	/**
+	 * Start an index word with the specified key columns, to be followed by the fields added to the returned writer
+	 * 
+	 * @param delimiter
+	 * @param keyColumns
+	 * @return
+	 */
+	protected IndexRecord.Writer createRecord(String delimiter, String... keyColumns)
+	{
+		return new IndexRecord.Writer(delimiter, keyColumns);
+	}
+
 	/**
 	 * Convert the specified object into a string representation. This representation should be reversible to recreate
 	 * the original object
@@ -15,11 +15,13 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.eclipse.core.filesystem.URIUtil;
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.NullProgressMonitor;
@@ -36,6 +38,7 @@ import com.aptana.core.util.StringUtil;
 import com.aptana.index.core.IDebugScopes;
 import com.aptana.index.core.IndexPlugin;
 import com.aptana.parsing.IParseState;
+import com.aptana.parsing.IParseStateCacheKey;
 import com.aptana.parsing.ParseResult;
 import com.aptana.parsing.ParseState;
 import com.aptana.parsing.ParserPoolFactory;
@@ -43,6 +46,11 @@ import com.aptana.parsing.WorkingParseResult;
 import com.aptana.parsing.ast.IParseError;
 import com.aptana.parsing.ast.IParseRootNode;
 
+/**
+ * Holds everything that is computed for a single file during a build: the decoded contents, the resolved content type,
+ * the parse result and the problems reported by the participants. A single context is shared by all the participants
+ * building the file, so the file is read and parsed once no matter how many of them ask for the AST.
+ */
 public class BuildContext
 {
 
@@ -52,7 +60,16 @@ public class BuildContext
 	protected Map<String, Collection<IProblem>> problems;
 	private ParseResult fParseResult;
 
+	/**
+	 * The key of the parse state that produced {@link #fParseResult}. A request with a different key (other contents,
+	 * or comments wanted when the cached result was parsed without them) triggers a new parse.
+	 */
+	private IParseStateCacheKey fParseCacheKey;
+	private int fParseCount;
+
 	private String fContents;
+	private String fContentType;
+	private boolean fContentTypeResolved;
 
 	protected BuildContext()
 	{
@@ -92,23 +109,51 @@ public class BuildContext
 
 	public IParseRootNode getAST() throws CoreException
 	{
-		return getAST(new ParseState(getContents())).getRootNode();
+		return getAST(new ParseState(getContents(), getFilename())).getRootNode();
 	}
 
 	/**
-	 * Does not return null (must be an empty parse result in the case the ast == null).
+	 * Returns the path of the file for parsers whose behavior depends on where the file lives (i.e. the extension or
+	 * an enclosing package.json), or just its name if it isn't on the local filesystem.
+	 * 
+	 * @return
+	 */
+	protected String getFilename()
+	{
+		URI uri = getURI();
+		IPath path = (uri == null) ? null : URIUtil.toPath(uri);
+		if (path != null)
+		{
+			return path.toOSString();
+		}
+		return getName();
+	}
+
+	/**
+	 * Does not return null (must be an empty parse result in the case the ast == null). The result is kept and handed
+	 * to later callers whose parse state does not require a new parse, see
+	 * {@link IParseStateCacheKey#requiresReparse(IParseStateCacheKey)}.
 	 */
 	public synchronized ParseResult getAST(IParseState parseState) throws CoreException
 	{
 		try
 		{
+			String contentType = getContentType();
+			IParseStateCacheKey cacheKey = parseState.getCacheKey(contentType);
+			if (fParseResult != null && fParseCacheKey != null && !fParseCacheKey.requiresReparse(cacheKey))
+			{
+				return fParseResult;
+			}
+
 			// FIXME What if we fail to parse? Should we catch and log that exception here and return null?
 			try
 			{
 				// FIXME The parsers need to throw a specific SyntaxException or something for us to differentiate
 				// between those and IO errors!
 				WorkingParseResult working = new WorkingParseResult();
-				fParseResult = parse(getContentType(), parseState, working);
+				fParseCount++;
+				fParseResult = parse(contentType, parseState, working);
+				fParseCacheKey = (fParseResult == null) ? null : cacheKey;
 			}
 			catch (CoreException e)
 			{
@@ -116,6 +161,8 @@ public class BuildContext
 			}
 			catch (Exception e)
 			{
+				fParseResult = null;
+				fParseCacheKey = null;
 				throw new CoreException(new Status(IStatus.ERROR, IndexPlugin.PLUGIN_ID, e.getMessage(), e));
 			}
 			if (fParseResult == null)
@@ -143,6 +190,18 @@ public class BuildContext
 	public synchronized void resetAST()
 	{
 		fParseResult = null;
+		fParseCacheKey = null;
+	}
+
+	/**
+	 * Returns how many times the file of this context was actually parsed, calls to {@link #getAST()} answered from the
+	 * kept parse result are not counted.
+	 * 
+	 * @return
+	 */
+	public synchronized int getParseCount()
+	{
+		return fParseCount;
 	}
 
 	public synchronized String getContents()
@@ -171,19 +230,19 @@ public class BuildContext
 		return file.getCharset(true);
 	}
 
-	public String getContentType() throws CoreException
+	public synchronized String getContentType() throws CoreException
 	{
-		IContentType[] types = getContentTypes();
-		if (ArrayUtil.isEmpty(types))
+		if (!fContentTypeResolved)
 		{
-			return null;
+			IContentType[] types = getContentTypes();
+			fContentType = ArrayUtil.isEmpty(types) ? null : types[0].getId();
+			fContentTypeResolved = true;
 		}
-		return types[0].getId();
+		return fContentType;
 	}
 
 	protected IContentType[] getContentTypes() throws CoreException
 	{
-		// TODO Cache this?
 		IProject theProject = getProject();
 		if (theProject != null)
 		{
@@ -7,16 +7,18 @@
  */
 package com.aptana.internal.index.core;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.io.UTFDataFormatException;
+import java.lang.reflect.Method;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -30,45 +32,210 @@ import java.util.Set;
 import com.aptana.core.logging.IdeLog;
 import com.aptana.core.util.CollectionsUtil;
 import com.aptana.core.util.StringUtil;
+import com.aptana.index.core.IDebugScopes;
 import com.aptana.index.core.Index;
 import com.aptana.index.core.IndexPlugin;
 import com.aptana.index.core.QueryResult;
 import com.aptana.index.core.SearchPattern;
 
 /**
- * Yuck this needs to be a random access file that stores the index of documents, category names, and the relationship
- * between them. We need to be careful to allow for quick access into the categories when reading, and to keep filesize
- * down if possible.
+ * A random access file that stores the index of documents, category names, and the relationship between them. The
+ * file is memory-mapped once it has been written and is never fully loaded into memory.
+ * <p>
+ * The words of each category are stored sorted in a term dictionary which is split into blocks of
+ * {@link #BLOCK_SIZE} words. The first word of each block is written in full, the remaining ones only store the
+ * suffix that differs from the previous word. The dictionary starts with the offsets of each block so that exact and
+ * prefix queries can binary search the block's first words and then decode a single block at a time.
+ * </p>
+ * <p>
+ * Files written in the previous "INDEX VERSION 0.1" format are read through {@link LegacyDiskIndexReader} and
+ * rewritten in the current format when they are first opened.
+ * </p>
  * 
  * @author cwilliams
  */
 public class DiskIndex
 {
-	private static final String SIGNATURE = "INDEX VERSION 0.1"; //$NON-NLS-1$
+	private static final String SIGNATURE = "INDEX VERSION 0.2"; //$NON-NLS-1$
 	private static final int CHUNK_SIZE = 100;
+	private static final int BLOCK_SIZE = 16;
 	private static final int RE_INDEXED = -1;
 	private static final int DELETED = -2;
 	private static final boolean DEBUG = true;
 
 	public File indexFile;
 	private int headerInfoOffset;
-	private int streamRead;
 	private int numberOfChunks;
 	private int sizeOfLastChunk;
 	private int documentReferenceSize;
+	private int blockSize;
 	private char separator = Index.DEFAULT_SEPARATOR;
 	private int[] chunkOffsets;
 	private int startOfCategoryTables;
 	private Map<String, Integer> categoryOffsets;
-	// Usually a map from string to map from string to list of integer. But may also be a single integer (to represent a
-	// pointer to long array)
-	// FIXME YUCK!! This "usually a list of integers, sometimes one integer that acts as a pointer" stuff is killing me!
-	private Map<String, Map<String, Object>> categoryTables;
+	private Map<String, TermDictionary> termDictionaries;
 
+	// only used while writing a new index file
+	private Map<String, Map<String, List<Integer>>> categoryTables;
+
+	private MappedByteBuffer buffer;
 	private int streamEnd;
 	private String[][] cachedChunks;
 	private String[] categoriesToDiscard;
 
+	/**
+	 * The sorted, block-compressed words of a single category.
+	 */
+	private final class TermDictionary
+	{
+		private final int wordCount;
+		private final int[] blockOffsets;
+		private final String[] firstWords;
+
+		/**
+		 * TermDictionary
+		 * 
+		 * @param wordCount
+		 * @param blockOffsets
+		 */
+		private TermDictionary(int wordCount, int[] blockOffsets)
+		{
+			this.wordCount = wordCount;
+			this.blockOffsets = blockOffsets;
+			this.firstWords = new String[blockOffsets.length];
+		}
+
+		/**
+		 * Returns a cursor positioned before the first word of the given block
+		 * 
+		 * @param block
+		 * @return
+		 */
+		private TermCursor cursor(int block)
+		{
+			return new TermCursor(this, block);
+		}
+
+		/**
+		 * Returns the index of the last block whose first word is less than or equal to the key. This is the only
+		 * block which may hold the key, or the first block holding words that start with the key.
+		 * 
+		 * @param key
+		 * @return
+		 * @throws IOException
+		 */
+		private int findBlock(String key) throws IOException
+		{
+			int low = 0;
+			int high = this.blockOffsets.length - 1;
+			int result = 0;
+
+			while (low <= high)
+			{
+				int middle = (low + high) >>> 1;
+
+				if (firstWord(middle).compareTo(key) <= 0)
+				{
+					result = middle;
+					low = middle + 1;
+				}
+				else
+				{
+					high = middle - 1;
+				}
+			}
+
+			return result;
+		}
+
+		/**
+		 * firstWord
+		 * 
+		 * @param block
+		 * @return
+		 * @throws IOException
+		 */
+		private String firstWord(int block) throws IOException
+		{
+			String word = this.firstWords[block];
+
+			if (word == null)
+			{
+				ByteBuffer view = newView(this.blockOffsets[block]);
+
+				word = readString(view);
+				this.firstWords[block] = word;
+			}
+
+			return word;
+		}
+
+		/**
+		 * isEmpty
+		 * 
+		 * @return
+		 */
+		private boolean isEmpty()
+		{
+			return this.wordCount == 0;
+		}
+	}
+
+	/**
+	 * Decodes the words of a term dictionary sequentially, starting at a block boundary.
+	 */
+	private final class TermCursor
+	{
+		private final ByteBuffer view;
+		private final int end;
+		private int index;
+		private String word;
+		private int postings;
+
+		/**
+		 * TermCursor
+		 * 
+		 * @param dictionary
+		 * @param block
+		 */
+		private TermCursor(TermDictionary dictionary, int block)
+		{
+			this.view = newView(dictionary.blockOffsets[block]);
+			this.index = block * blockSize;
+			this.end = dictionary.wordCount;
+		}
+
+		/**
+		 * Advances to the next word. Returns false when the end of the dictionary has been reached
+		 * 
+		 * @return
+		 * @throws IOException
+		 */
+		private boolean next() throws IOException
+		{
+			if (this.index >= this.end)
+			{
+				return false;
+			}
+
+			if (this.index % blockSize == 0)
+			{
+				this.word = readString(this.view);
+			}
+			else
+			{
+				int shared = this.view.get() & 0xFF;
+
+				this.word = this.word.substring(0, shared) + readString(this.view);
+			}
+
+			this.postings = this.view.getInt();
+			this.index++;
+
+			return true;
+		}
+	}
+
 	/**
 	 * DiskIndex
 	 * 
@@ -84,8 +251,10 @@ public class DiskIndex
 		this.sizeOfLastChunk = -1;
 		this.chunkOffsets = null;
 		this.documentReferenceSize = -1;
+		this.blockSize = BLOCK_SIZE;
 		this.categoryTables = null;
 		this.categoryOffsets = null;
+		this.termDictionaries = null;
 		this.categoriesToDiscard = null;
 	}
 
@@ -154,13 +323,13 @@ public class DiskIndex
 	 * 
 	 * @param results
 	 * @param word
-	 * @param wordsToDocNumbers
+	 * @param postings
 	 * @param memoryIndex
 	 * @return
 	 * @throws IOException
 	 */
-	private Map<String, QueryResult> addQueryResult(Map<String, QueryResult> results, String word,
-			Map<String, Object> wordsToDocNumbers, MemoryIndex memoryIndex) throws IOException
+	private Map<String, QueryResult> addQueryResult(Map<String, QueryResult> results, String word, int postings,
+			MemoryIndex memoryIndex) throws IOException
 	{
 		// must skip over documents which have been added/changed/deleted in the memory index
 		if (results == null)
@@ -178,9 +347,7 @@ public class DiskIndex
 				results.put(word, result);
 			}
 
-			result.addDocumentTable(wordsToDocNumbers);
-
-			List<Integer> docNumbers = readDocumentNumbers(wordsToDocNumbers.get(word));
+			List<Integer> docNumbers = readDocumentNumbers(postings);
 
 			for (Integer docNumber : docNumbers)
 			{
@@ -196,7 +363,7 @@ public class DiskIndex
 				result = new QueryResult(word, null);
 			}
 
-			List<Integer> docNumbers = readDocumentNumbers(wordsToDocNumbers.get(word));
+			List<Integer> docNumbers = readDocumentNumbers(postings);
 
 			for (Integer docNumber : docNumbers)
 			{
@@ -230,7 +397,6 @@ public class DiskIndex
 	public Map<String, QueryResult> addQueryResults(String[] categories, String key, int matchRule,
 			MemoryIndex memoryIndex) throws IOException
 	{
-		// assumes sender has called startQuery() & will call stopQuery() when finished
 		if (this.categoryOffsets == null)
 		{
 			return null; // file is empty
@@ -252,89 +418,89 @@ public class DiskIndex
 			key = null;
 		}
 
-		if (key == null)
+		for (int i = 0, l = categories.length; i < l; i++)
 		{
-			for (int i = 0, l = categories.length; i < l; i++)
-			{
-				Map<String, Object> wordsToDocNumbers = readCategoryTable(categories[i], true); // cache if key
-				// is null
-				// since its a definite
-				// match
-				if (wordsToDocNumbers != null)
-				{
-					if (results == null)
-					{
-						results = new HashMap<String, QueryResult>(wordsToDocNumbers.size());
-					}
+			TermDictionary dictionary = getTermDictionary(categories[i]);
 
-					for (String word : wordsToDocNumbers.keySet())
-					{
-						if (word != null)
-						{
-							results = addQueryResult(results, word, wordsToDocNumbers, memoryIndex);
-						}
-					}
-				}
+			if (dictionary == null || dictionary.isEmpty())
+			{
+				continue;
 			}
 
-			if (results != null && this.cachedChunks == null)
+			if (key == null)
 			{
-				cacheDocumentNames();
+				TermCursor cursor = dictionary.cursor(0);
+
+				while (cursor.next())
+				{
+					results = addQueryResult(results, cursor.word, cursor.postings, memoryIndex);
+				}
+
+				continue;
 			}
-		}
-		else
-		{
+
 			switch (matchRule)
 			{
 				case SearchPattern.EXACT_MATCH | SearchPattern.CASE_SENSITIVE:
-					for (int i = 0, l = categories.length; i < l; i++)
+				{
+					TermCursor cursor = dictionary.cursor(dictionary.findBlock(key));
+
+					while (cursor.next())
 					{
-						Map<String, Object> wordsToDocNumbers = readCategoryTable(categories[i], false);
+						int comparison = cursor.word.compareTo(key);
+
+						if (comparison == 0)
+						{
+							results = addQueryResult(results, key, cursor.postings, memoryIndex);
+						}
 
-						if (wordsToDocNumbers != null && wordsToDocNumbers.containsKey(key))
+						if (comparison >= 0)
 						{
-							results = addQueryResult(results, key, wordsToDocNumbers, memoryIndex);
+							break;
 						}
 					}
 					break;
+				}
 
 				case SearchPattern.PREFIX_MATCH | SearchPattern.CASE_SENSITIVE:
-					for (int i = 0, l = categories.length; i < l; i++)
-					{
-						Map<String, Object> wordsToDocNumbers = readCategoryTable(categories[i], false);
+				{
+					// all words sharing the prefix are contiguous and sort at or after the prefix itself
+					TermCursor cursor = dictionary.cursor(dictionary.findBlock(key));
 
-						if (wordsToDocNumbers != null)
+					while (cursor.next())
+					{
+						if (cursor.word.startsWith(key))
+						{
+							results = addQueryResult(results, cursor.word, cursor.postings, memoryIndex);
+						}
+						else if (cursor.word.compareTo(key) > 0)
 						{
-							for (String word : wordsToDocNumbers.keySet())
-							{
-								if (word != null && word.startsWith(key))
-								{
-									results = addQueryResult(results, word, wordsToDocNumbers, memoryIndex);
-								}
-							}
+							break;
 						}
 					}
 					break;
+				}
 
 				default:
-					for (int i = 0, l = categories.length; i < l; i++)
-					{
-						Map<String, Object> wordsToDocNumbers = readCategoryTable(categories[i], false);
+				{
+					TermCursor cursor = dictionary.cursor(0);
 
-						if (wordsToDocNumbers != null)
+					while (cursor.next())
+					{
+						if (Index.isMatch(key, cursor.word, matchRule))
 						{
-							for (String word : wordsToDocNumbers.keySet())
-							{
-								if (word != null && Index.isMatch(key, word, matchRule))
-								{
-									results = addQueryResult(results, word, wordsToDocNumbers, memoryIndex);
-								}
-							}
+							results = addQueryResult(results, cursor.word, cursor.postings, memoryIndex);
 						}
 					}
+				}
 			}
 		}
 
+		if (key == null && results != null && this.cachedChunks == null)
+		{
+			cacheDocumentNames();
+		}
+
 		return results;
 	}
 
@@ -343,37 +509,38 @@ public class DiskIndex
 	 * 
 	 * @throws IOException
 	 */
-	private void cacheDocumentNames() throws IOException
+	private synchronized void cacheDocumentNames() throws IOException
 	{
 		// will need all document names so get them now
-		this.cachedChunks = new String[this.numberOfChunks][];
-
-		InputStream stream = new BufferedInputStream(new FileInputStream(this.indexFile));
+		String[][] chunks = new String[this.numberOfChunks][];
+		ByteBuffer view = newView(this.chunkOffsets[0]);
 
-		try
+		for (int i = 0; i < this.numberOfChunks; i++)
 		{
-			// if (this.numberOfChunks > 5)
-			// BUFFER_READ_SIZE <<= 1;
-			int offset = this.chunkOffsets[0];
+			int size = i == this.numberOfChunks - 1 ? this.sizeOfLastChunk : CHUNK_SIZE;
 
-			skip(stream, offset);
+			readChunk(chunks[i] = new String[size], view, 0, size);
+		}
 
-			for (int i = 0; i < this.numberOfChunks; i++)
-			{
-				int size = i == this.numberOfChunks - 1 ? this.sizeOfLastChunk : CHUNK_SIZE;
+		this.cachedChunks = chunks;
+	}
 
-				readChunk(this.cachedChunks[i] = new String[size], stream, 0, size);
-			}
-		}
-		catch (IOException e)
-		{
-			this.cachedChunks = null;
-			throw e;
-		}
-		finally
+	/**
+	 * Release the mapping of the index file. Must only be called once no more queries will be run against this
+	 * instance, i.e. after it has been replaced by the result of {@link #mergeWith(MemoryIndex)}.
+	 */
+	public synchronized void close()
+	{
+		if (this.buffer != null)
 		{
-			stream.close();
+			unmap(this.buffer);
+			this.buffer = null;
 		}
+
+		this.categoryOffsets = null;
+		this.termDictionaries = null;
+		this.cachedChunks = null;
+		this.numberOfChunks = -1;
 	}
 
 	/**
@@ -547,7 +714,6 @@ public class DiskIndex
 	 * @param categoryToWords
 	 * @param newPosition
 	 */
-	@SuppressWarnings("unchecked")
 	private void copyQueryResults(Map<String, Set<String>> categoryToWords, int newPosition)
 	{
 		for (Map.Entry<String, Set<String>> entry : categoryToWords.entrySet())
@@ -559,11 +725,11 @@ public class DiskIndex
 				continue;
 			}
 
-			Map<String, Object> wordsToDocs = this.categoryTables.get(categoryName);
+			Map<String, List<Integer>> wordsToDocs = this.categoryTables.get(categoryName);
 
 			if (wordsToDocs == null)
 			{
-				this.categoryTables.put(categoryName, wordsToDocs = new HashMap<String, Object>());
+				this.categoryTables.put(categoryName, wordsToDocs = new HashMap<String, List<Integer>>());
 			}
 
 			for (String word : entry.getValue())
@@ -573,18 +739,19 @@ public class DiskIndex
 					continue;
 				}
 
-				Object positions = wordsToDocs.get(word);
+				List<Integer> positions = wordsToDocs.get(word);
 
 				if (positions == null)
 				{
 					wordsToDocs.put(word, positions = new ArrayList<Integer>());
 				}
 
-				((List<Integer>) positions).add(newPosition);
+				positions.add(newPosition);
 			}
 		}
 	}
 
+
 	/**
 	 * getCategories
 	 * 
@@ -626,6 +793,57 @@ public class DiskIndex
 		return result;
 	}
 
+	/**
+	 * getTermDictionary
+	 * 
+	 * @param categoryName
+	 * @return
+	 * @throws IOException
+	 */
+	private synchronized TermDictionary getTermDictionary(String categoryName) throws IOException
+	{
+		// result will be null if categoryName is unknown
+		Integer offset = this.categoryOffsets.get(categoryName);
+
+		if (offset == null)
+		{
+			return null;
+		}
+
+		if (this.termDictionaries == null)
+		{
+			this.termDictionaries = new HashMap<String, TermDictionary>(3);
+		}
+
+		TermDictionary dictionary = this.termDictionaries.get(categoryName);
+
+		if (dictionary == null)
+		{
+			ByteBuffer view = newView(offset);
+			int wordCount = view.getInt();
+			int blockCount = view.getInt();
+
+			if (wordCount < 0 || blockCount < 0 || blockCount * this.blockSize < wordCount)
+			{
+				throw new IOException(MessageFormat.format(
+						"Corrupt index file ''{0}'', category ''{1}'' reports {2} words in {3} blocks", //$NON-NLS-1$
+						this.indexFile, categoryName, wordCount, blockCount));
+			}
+
+			int[] blockOffsets = new int[blockCount];
+
+			for (int i = 0; i < blockCount; i++)
+			{
+				blockOffsets[i] = view.getInt();
+			}
+
+			dictionary = new TermDictionary(wordCount, blockOffsets);
+			this.termDictionaries.put(categoryName, dictionary);
+		}
+
+		return dictionary;
+	}
+
 	/**
 	 * initialize
 	 * 
@@ -637,34 +855,18 @@ public class DiskIndex
 		{
 			if (reuseExistingFile)
 			{
-				// read it in!
-				InputStream stream = new BufferedInputStream(new FileInputStream(this.indexFile));
+				String signature = LegacyDiskIndexReader.readSignature(this.indexFile);
 
-				try
+				if (LegacyDiskIndexReader.SIGNATURE.equals(signature))
 				{
-					streamRead = 0;
-
-					String signature = readString(stream);
-
-					if (!signature.equals(SIGNATURE))
-					{
-						throw new IOException(Messages.DiskIndex_Wrong_Format);
-					}
-
-					this.headerInfoOffset = readStreamInt(stream);
-
-					if (this.headerInfoOffset > 0)
-					{ // file is empty if its not set
-						skip(stream, this.headerInfoOffset - this.streamRead); // assume that the header info offset is
-						// over
-						// current buffer end
-						readHeaderInfo(stream);
-					}
+					migrate();
 				}
-				finally
+				else if (!SIGNATURE.equals(signature))
 				{
-					stream.close();
+					throw new IOException(Messages.DiskIndex_Wrong_Format);
 				}
+
+				openIndexFile();
 				return;
 			}
 
@@ -682,12 +884,12 @@ public class DiskIndex
 		// create a new empty one!
 		if (indexFile.createNewFile())
 		{
-			FileOutputStream stream = new FileOutputStream(this.indexFile, false);
+			OutputStream stream = new FileOutputStream(this.indexFile, false);
 
 			try
 			{
 				writeString(stream, SIGNATURE);
-				stream.write(-1);
+				writeStreamInt(stream, -1);
 			}
 			finally
 			{
@@ -733,7 +935,7 @@ public class DiskIndex
 
 		int size = diskIndex.categoryOffsets == null ? 8 : diskIndex.categoryOffsets.size();
 		this.categoryOffsets = new HashMap<String, Integer>(size);
-		this.categoryTables = new HashMap<String, Map<String, Object>>(size);
+		this.categoryTables = new HashMap<String, Map<String, List<Integer>>>(size);
 		this.separator = diskIndex.separator;
 		this.categoriesToDiscard = diskIndex.categoriesToDiscard;
 	}
@@ -781,22 +983,21 @@ public class DiskIndex
 	 * @param stream
 	 * @throws IOException
 	 */
-	@SuppressWarnings("unchecked")
 	private void mergeCategory(String categoryName, DiskIndex onDisk, int[] positions, OutputStream stream)
 			throws IOException
 	{
-		Map<String, Object> wordsToDocs = this.categoryTables.get(categoryName);
+		Map<String, List<Integer>> wordsToDocs = this.categoryTables.get(categoryName);
 
 		if (wordsToDocs == null)
 		{
-			wordsToDocs = new HashMap<String, Object>(3);
+			wordsToDocs = new HashMap<String, List<Integer>>(3);
 		}
 
-		Map<String, Object> oldWordsToDocs = onDisk.readCategoryTable(categoryName, true);
+		Map<String, List<Integer>> oldWordsToDocs = onDisk.readCategoryTable(categoryName);
 
 		if (oldWordsToDocs != null)
 		{
-			nextWord: for (Map.Entry<String, Object> entry : oldWordsToDocs.entrySet())
+			nextWord: for (Map.Entry<String, List<Integer>> entry : oldWordsToDocs.entrySet())
 			{
 				String oldWord = entry.getKey();
 
@@ -805,7 +1006,7 @@ public class DiskIndex
 					continue;
 				}
 
-				List<Integer> oldDocNumbers = (List<Integer>) entry.getValue();
+				List<Integer> oldDocNumbers = entry.getValue();
 				List<Integer> mappedNumbers = new ArrayList<Integer>(oldDocNumbers.size());
 
 				for (Integer oldDocNumber : oldDocNumbers)
@@ -823,46 +1024,47 @@ public class DiskIndex
 					continue nextWord; // skip words which no longer have any references
 				}
 
-				Object o = wordsToDocs.get(oldWord);
+				List<Integer> list = wordsToDocs.get(oldWord);
 
-				if (o == null)
+				if (list == null)
 				{
 					wordsToDocs.put(oldWord, mappedNumbers);
 				}
 				else
 				{
-					List<Integer> list = null;
-
-					if (o instanceof List<?>)
-					{
-						list = (List<Integer>) o;
-					}
-					else
-					{
-						list = new ArrayList<Integer>();
-						wordsToDocs.put(oldWord, list);
-					}
-
 					list.addAll(mappedNumbers);
 				}
 			}
-
-			onDisk.categoryTables.put(categoryName, null); // flush cached table
 		}
 
 		writeCategoryTable(categoryName, wordsToDocs, stream);
 	}
 
 	/**
-	 * mergeWith
+	 * Merges the memory index into this index, replacing this index's file. Same as
+	 * <code>prepareMerge(memoryIndex).commit()</code>.
 	 * 
 	 * @param memoryIndex
-	 * @return
+	 * @return the index to use from now on
 	 * @throws IOException
 	 */
 	public DiskIndex mergeWith(MemoryIndex memoryIndex) throws IOException
 	{
-		// assume write lock is held
+		return prepareMerge(memoryIndex).commit();
+	}
+
+	/**
+	 * Writes the result of merging the memory index into this index to a temporary file. This index keeps serving
+	 * queries until the returned merge is committed, so that only the short {@link PendingMerge#commit()} has to be
+	 * kept from running concurrently with queries against this index. Neither this index nor the memory index may be
+	 * modified in between.
+	 * 
+	 * @param memoryIndex
+	 * @return
+	 * @throws IOException
+	 */
+	public PendingMerge prepareMerge(MemoryIndex memoryIndex) throws IOException
+	{
 		// compute & write out new docNames
 		List<String> names = readAllDocumentNames();
 		int previousLength = names.size();
@@ -877,14 +1079,12 @@ public class DiskIndex
 		{
 			if (previousLength == 0)
 			{
-				return this; // nothing to do... memory index contained deleted documents that had never been saved
+				// nothing to do... memory index contained deleted documents that had never been saved
+				return new PendingMerge(this, false);
 			}
 
 			// index is now empty since all the saved documents were removed
-			DiskIndex newDiskIndex = new DiskIndex(this.indexFile.getPath());
-			newDiskIndex.initialize(false);
-
-			return newDiskIndex;
+			return new PendingMerge(null, true);
 		}
 
 		this.streamEnd = 0;
@@ -894,310 +1094,331 @@ public class DiskIndex
 		try
 		{
 			newDiskIndex.initializeFrom(this, newDiskIndex.indexFile);
-			OutputStream stream = new BufferedOutputStream(new FileOutputStream(newDiskIndex.indexFile, false));
-			int offsetToHeader = -1;
 
-			try
+			// add each new/changed doc to empty category tables using its new position #
+			if (!indexedDocuments.isEmpty())
 			{
-				newDiskIndex.writeDocumentNames(stream, names);
-				names = null;
-
-				// add each new/changed doc to empty category tables using its new position #
-				if (!indexedDocuments.isEmpty())
+				for (Map.Entry<String, Integer> entry : indexedDocuments.entrySet())
 				{
-					for (Map.Entry<String, Integer> entry : indexedDocuments.entrySet())
+					if (entry.getKey() != null)
 					{
-						if (entry.getKey() != null)
-						{
-							newDiskIndex.copyQueryResults(memoryIndex.getCategoriesForDocument(entry.getKey()),
-									entry.getValue());
-						}
+						newDiskIndex.copyQueryResults(memoryIndex.getCategoriesForDocument(entry.getKey()),
+								entry.getValue());
 					}
 				}
+			}
+
+			indexedDocuments = null; // free up the space
+
+			// merge each category table with the new ones & write them out
+			newDiskIndex.write(names, previousLength == 0 ? null : this, positions);
+			names = null;
+			positions = null; // free up the space
+		}
+		catch (IOException e)
+		{
+			newDiskIndex.deleteTemporaryFile();
+			throw e;
+		}
+
+		return new PendingMerge(newDiskIndex, false);
+	}
+
+	/**
+	 * A merge which has been written to a temporary file but doesn't replace the index file yet.
+	 */
+	public final class PendingMerge
+	{
+		private final DiskIndex merged;
+		private final boolean empty;
+
+		private PendingMerge(DiskIndex merged, boolean empty)
+		{
+			this.merged = merged;
+			this.empty = empty;
+		}
 
-				indexedDocuments = null; // free up the space
+		/**
+		 * Replaces the index file by the merged one. The index this merge was prepared from can't be queried anymore
+		 * once this starts.
+		 * 
+		 * @return the index to use from now on
+		 * @throws IOException
+		 */
+		public DiskIndex commit() throws IOException
+		{
+			if (merged == DiskIndex.this)
+			{
+				return merged;
+			}
+
+			if (empty)
+			{
+				close();
+
+				DiskIndex newDiskIndex = new DiskIndex(indexFile.getPath());
+				newDiskIndex.initialize(false);
+
+				return newDiskIndex;
+			}
 
-				// TODO Check list of categories we wanted removed and wipe them out of "categoryTables"?
+			try
+			{
+				// the old file may not be replaced while it is still mapped
+				close();
 
-				// merge each category table with the new ones & write them out
-				if (previousLength == 0)
+				// rename file by deleting previous index file & renaming temp one
+				if (indexFile.exists() && !indexFile.delete())
 				{
-					newDiskIndex.writeCategories(stream);
+					throw new IOException("Failed to delete index file " + indexFile); //$NON-NLS-1$
 				}
-				else
+
+				if (!merged.indexFile.renameTo(indexFile))
 				{
-					newDiskIndex.mergeCategories(this, positions, stream);
+					throw new IOException("Failed to rename index file " + indexFile); //$NON-NLS-1$
 				}
-				// write header
-				offsetToHeader = newDiskIndex.streamEnd;
-				newDiskIndex.writeHeaderInfo(stream);
-				positions = null; // free up the space
 			}
-			finally
+			catch (IOException e)
 			{
-				stream.close();
-			}
+				merged.deleteTemporaryFile();
 
-			newDiskIndex.writeOffsetToHeader(offsetToHeader);
+				// keep serving queries from the previous file if it could not be replaced
+				if (buffer == null && indexFile.exists())
+				{
+					try
+					{
+						openIndexFile();
+					}
+					catch (IOException e1)
+					{
+						IdeLog.logError(IndexPlugin.getDefault(), e1);
+					}
+				}
 
-			// rename file by deleting previous index file & renaming temp one
-			if (this.indexFile.exists() && !this.indexFile.delete())
-			{
-				throw new IOException("Failed to delete index file " + this.indexFile); //$NON-NLS-1$
+				throw e;
 			}
 
-			if (!newDiskIndex.indexFile.renameTo(this.indexFile))
+			merged.indexFile = indexFile;
+			merged.openIndexFile();
+
+			return merged;
+		}
+
+		/**
+		 * Throws away the merged file, leaving the index as it was.
+		 */
+		public void abandon()
+		{
+			if (merged != null && merged != DiskIndex.this)
 			{
-				throw new IOException("Failed to rename index file " + this.indexFile); //$NON-NLS-1$
+				merged.deleteTemporaryFile();
 			}
 		}
-		catch (IOException e)
+	}
+
+	private void deleteTemporaryFile()
+	{
+		if (this.indexFile.exists() && !this.indexFile.delete())
 		{
-			if (newDiskIndex.indexFile.exists() && !newDiskIndex.indexFile.delete())
+			if (DEBUG)
 			{
-				if (DEBUG)
-				{
-					System.out.println("mergeWith - Failed to delete temp index " + newDiskIndex.indexFile); //$NON-NLS-1$
-				}
+				System.out.println("mergeWith - Failed to delete temp index " + this.indexFile); //$NON-NLS-1$
 			}
-
-			throw e;
 		}
-
-		newDiskIndex.indexFile = this.indexFile;
-
-		return newDiskIndex;
 	}
 
 	/**
-	 * read
+	 * Rewrites an index file in the legacy format using the current format. The document numbers of the legacy file
+	 * are kept since both formats store the same sorted list of document names.
 	 * 
-	 * @param stream
-	 * @return
 	 * @throws IOException
 	 */
-	private int read(InputStream stream) throws IOException
+	private void migrate() throws IOException
 	{
-		int val = stream.read();
+		LegacyDiskIndexReader reader = new LegacyDiskIndexReader(this.indexFile);
+		List<String> names;
+		Map<String, Map<String, List<Integer>>> tables = new HashMap<String, Map<String, List<Integer>>>();
+		char legacySeparator;
 
-		streamRead++;
+		try
+		{
+			names = reader.readAllDocumentNames();
 
-		return val;
-	}
+			for (String categoryName : reader.getCategories())
+			{
+				tables.put(categoryName, reader.readCategoryTable(categoryName));
+			}
 
-	/**
-	 * readAllDocumentNames
-	 * 
-	 * @return
-	 * @throws IOException
-	 */
-	private synchronized List<String> readAllDocumentNames() throws IOException
-	{
-		if (this.numberOfChunks <= 0)
+			legacySeparator = reader.getSeparator();
+		}
+		finally
 		{
-			return Collections.emptyList();
+			reader.close();
 		}
 
-		InputStream stream = new BufferedInputStream(new FileInputStream(this.indexFile));
-
-		try
+		if (IdeLog.isTraceEnabled(IndexPlugin.getDefault(), IDebugScopes.INDEXER))
 		{
-			int offset = this.chunkOffsets[0];
-
-			skip(stream, offset);
+			IdeLog.logTrace(IndexPlugin.getDefault(), MessageFormat.format(
+					"Migrating index ''{0}'' with {1} documents and {2} categories", //$NON-NLS-1$
+					this.indexFile, names.size(), tables.size()), IDebugScopes.INDEXER);
+		}
 
-			int lastIndex = this.numberOfChunks - 1;
+		DiskIndex newDiskIndex = new DiskIndex(this.indexFile.getPath() + ".tmp"); //$NON-NLS-1$
 
-			String[] docNames = new String[lastIndex * CHUNK_SIZE + sizeOfLastChunk];
+		try
+		{
+			newDiskIndex.initializeFrom(this, newDiskIndex.indexFile);
+			newDiskIndex.separator = legacySeparator;
+			newDiskIndex.categoryTables = tables;
+			newDiskIndex.write(names, null, null);
 
-			for (int i = 0; i < this.numberOfChunks; i++)
+			if (!this.indexFile.delete())
 			{
-				readChunk(docNames, stream, i * CHUNK_SIZE, i < lastIndex ? CHUNK_SIZE : sizeOfLastChunk);
+				throw new IOException("Failed to delete index file " + this.indexFile); //$NON-NLS-1$
 			}
 
-			return Arrays.asList(docNames);
+			if (!newDiskIndex.indexFile.renameTo(this.indexFile))
+			{
+				throw new IOException("Failed to rename index file " + this.indexFile); //$NON-NLS-1$
+			}
 		}
-		finally
+		catch (IOException e)
 		{
-			stream.close();
+			if (newDiskIndex.indexFile.exists() && !newDiskIndex.indexFile.delete())
+			{
+				if (DEBUG)
+				{
+					System.out.println("migrate - Failed to delete temp index " + newDiskIndex.indexFile); //$NON-NLS-1$
+				}
+			}
+
+			throw e;
 		}
 	}
 
 	/**
-	 * readCategoryTable
+	 * Returns an independent view of the mapped index file, positioned at the given offset. Views are not shared
+	 * between threads, so concurrent queries never disturb each other's position.
 	 * 
-	 * @param categoryName
-	 * @param readDocNumbers
+	 * @param offset
 	 * @return
+	 */
+	private ByteBuffer newView(int offset)
+	{
+		ByteBuffer view = this.buffer.duplicate();
+
+		view.position(offset);
+
+		return view;
+	}
+
+	/**
+	 * Maps the index file into memory and reads its header
+	 * 
 	 * @throws IOException
 	 */
-	private synchronized Map<String, Object> readCategoryTable(String categoryName, boolean readDocNumbers)
-			throws IOException
+	private void openIndexFile() throws IOException
 	{
-		// result will be null if categoryName is unknown
-		Integer offset = this.categoryOffsets.get(categoryName);
+		RandomAccessFile file = new RandomAccessFile(this.indexFile, "r"); //$NON-NLS-1$
 
-		if (offset == null)
+		try
 		{
-			return null;
-		}
+			FileChannel channel = file.getChannel();
 
-		if (this.categoryTables == null)
-		{
-			this.categoryTables = new HashMap<String, Map<String, Object>>(3);
+			// the mapping stays valid once the channel has been closed
+			this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
 		}
-		else
+		finally
 		{
-			Map<String, Object> cachedTable = this.categoryTables.get(categoryName);
-
-			if (cachedTable != null)
-			{
-				if (readDocNumbers)
-				{ // must cache remaining document number arrays
-					Map<String, Object> copy = new HashMap<String, Object>(cachedTable);
-
-					for (Map.Entry<String, Object> entry : cachedTable.entrySet())
-					{
-						Object arrayOffset = entry.getValue();
-
-						if (arrayOffset instanceof Integer)
-						{
-							copy.put(entry.getKey(), readDocumentNumbers(arrayOffset));
-						}
-					}
-
-					cachedTable = copy;
-				}
-
-				return cachedTable;
-			}
+			file.close();
 		}
 
-		InputStream stream = new BufferedInputStream(new FileInputStream(this.indexFile));
-		Map<String, Object> categoryTable = null;
-		String[] matchingWords = null;
-		int count = 0;
-		int firstOffset = -1;
-
 		try
 		{
-			// skip to start of category
-			skip(stream, offset);
-
-			// Read the number of words in the category
-			int size = readStreamInt(stream);
+			ByteBuffer view = newView(0);
+			String signature = readString(view);
 
-			try
-			{
-				if (size < 0)
-				{
-					// DEBUG
-					StringBuilder debug = new StringBuilder();
-					debug.append("-------------------- DEBUG --------------------\n"); //$NON-NLS-1$
-					debug.append("file = ").append(this.indexFile).append('\n'); //$NON-NLS-1$
-					debug.append("offset = ").append(offset).append('\n'); //$NON-NLS-1$
-					debug.append("size = ").append(size).append('\n'); //$NON-NLS-1$
-					debug.append("--------------------   END   --------------------\n"); //$NON-NLS-1$
-					System.err.print(debug.toString());
-					IdeLog.logError(
-							IndexPlugin.getDefault(),
-							MessageFormat.format(
-									"Size of category ''{0}'' negative:\n{1}", categoryName, debug.toString())); //$NON-NLS-1$
-					size = 0;
-				}
-
-				categoryTable = new HashMap<String, Object>(size);
-			}
-			catch (OutOfMemoryError oom)
+			if (!SIGNATURE.equals(signature))
 			{
-				// Here we hope that those string allocation will not throw another OutOfMemoryError...
-				// DEBUG
-				oom.printStackTrace();
-				String error = MessageFormat
-						.format("Index error in readCategoryTable. \nfile = {0} \noffset = {1} \n size = {2}", this.indexFile, offset, size); //$NON-NLS-1$
-				System.err.println("-------------------- DEBUG --------------------\n"); //$NON-NLS-1$
-				System.err.println(error);
-				System.err.println("--------------------   END   --------------------\n"); //$NON-NLS-1$
-				IdeLog.logError(IndexPlugin.getDefault(), error, oom);
-				throw oom;
+				throw new IOException(Messages.DiskIndex_Wrong_Format);
 			}
 
-			int largeArraySize = 256;
+			this.headerInfoOffset = view.getInt();
 
-			for (int i = 0; i < size; i++)
-			{
-				String word = readString(stream);
-				int arrayOffset = readStreamInt(stream);
+			if (this.headerInfoOffset > 0)
+			{ // file is empty if its not set
+				readHeaderInfo(newView(this.headerInfoOffset));
+			}
+		}
+		catch (BufferUnderflowException e)
+		{
+			close();
+			throw new IOException(MessageFormat.format("Corrupt index file ''{0}''", this.indexFile)); //$NON-NLS-1$
+		}
+		catch (IllegalArgumentException e)
+		{
+			close();
+			throw new IOException(MessageFormat.format("Corrupt index file ''{0}''", this.indexFile)); //$NON-NLS-1$
+		}
+		catch (IOException e)
+		{
+			close();
+			throw e;
+		}
+	}
 
-				// if arrayOffset is:
-				// <= 0 then the array size == 1 with the value -> -arrayOffset
-				// > 1 & < 256 then the size of the array is > 1 & < 256, the document array follows immediately
-				// 256 if the array size >= 256 followed by another int which is the offset to the array (written prior
-				// to the table)
-				if (arrayOffset <= 0)
-				{
-					categoryTable.put(word, CollectionsUtil.newList(-arrayOffset)); // store 1 element array by negating
-					// documentNumber
-				}
-				else if (arrayOffset < largeArraySize)
-				{
-					categoryTable.put(word, readStreamDocumentArray(stream, arrayOffset)); // read in-lined array
-					// providing size
-				}
-				else
-				{
-					arrayOffset = readStreamInt(stream); // read actual offset
+	/**
+	 * readAllDocumentNames
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	private synchronized List<String> readAllDocumentNames() throws IOException
+	{
+		if (this.numberOfChunks <= 0)
+		{
+			return Collections.emptyList();
+		}
 
-					if (readDocNumbers)
-					{
-						if (matchingWords == null)
-						{
-							matchingWords = new String[size];
-						}
+		ByteBuffer view = newView(this.chunkOffsets[0]);
+		int lastIndex = this.numberOfChunks - 1;
+		String[] docNames = new String[lastIndex * CHUNK_SIZE + sizeOfLastChunk];
 
-						if (count == 0)
-						{
-							firstOffset = arrayOffset;
-						}
+		for (int i = 0; i < this.numberOfChunks; i++)
+		{
+			readChunk(docNames, view, i * CHUNK_SIZE, i < lastIndex ? CHUNK_SIZE : sizeOfLastChunk);
+		}
 
-						matchingWords[count++] = word;
-					}
+		return Arrays.asList(docNames);
+	}
 
-					categoryTable.put(word, new Integer(arrayOffset)); // offset to array in the file
-				}
-			}
+	/**
+	 * Decodes a whole category into a map of words to document numbers. This is only needed when merging, queries
+	 * read the term dictionary directly.
+	 * 
+	 * @param categoryName
+	 * @return
+	 * @throws IOException
+	 */
+	private Map<String, List<Integer>> readCategoryTable(String categoryName) throws IOException
+	{
+		// result will be null if categoryName is unknown
+		TermDictionary dictionary = getTermDictionary(categoryName);
 
-			this.categoryTables.put(categoryName, categoryTable);
-		}
-		catch (IOException ioe)
+		if (dictionary == null)
 		{
-			throw ioe;
-		}
-		finally
-		{
-			stream.close();
+			return null;
 		}
 
-		if (matchingWords != null && count > 0)
-		{
-			stream = new BufferedInputStream(new FileInputStream(this.indexFile));
+		Map<String, List<Integer>> categoryTable = new HashMap<String, List<Integer>>(dictionary.wordCount);
 
-			try
-			{
-				skip(stream, firstOffset);
+		if (!dictionary.isEmpty())
+		{
+			TermCursor cursor = dictionary.cursor(0);
 
-				for (int i = 0; i < count; i++)
-				{ // each array follows the previous one
-					categoryTable.put(matchingWords[i], readStreamDocumentArray(stream, readStreamInt(stream)));
-				}
-			}
-			catch (IOException ioe)
+			while (cursor.next())
 			{
-				throw ioe;
-			}
-			finally
-			{
-				stream.close();
+				categoryTable.put(cursor.word, readDocumentNumbers(cursor.postings));
 			}
 		}
 
@@ -1208,22 +1429,22 @@ public class DiskIndex
 	 * readChunk
 	 * 
 	 * @param docNames
-	 * @param stream
+	 * @param view
 	 * @param index
 	 * @param size
 	 * @throws IOException
 	 */
-	private void readChunk(String[] docNames, InputStream stream, int index, int size) throws IOException
+	static void readChunk(String[] docNames, ByteBuffer view, int index, int size) throws IOException
 	{
-		String current = readString(stream);
+		String current = readString(view);
 
 		docNames[index++] = current;
 
 		for (int i = 1; i < size; i++)
 		{
-			int start = read(stream) & 0xFF;
-			int end = read(stream) & 0xFF;
-			String next = readString(stream);
+			int start = view.get() & 0xFF;
+			int end = view.get() & 0xFF;
+			String next = readString(view);
 
 			if (start > 0)
 			{
@@ -1250,6 +1471,48 @@ public class DiskIndex
 		}
 	}
 
+	/**
+	 * readDocumentArray
+	 * 
+	 * @param view
+	 * @param arraySize
+	 * @param documentReferenceSize
+	 * @return
+	 */
+	static List<Integer> readDocumentArray(ByteBuffer view, int arraySize, int documentReferenceSize)
+	{
+		if (arraySize == 0)
+		{
+			return Collections.emptyList();
+		}
+
+		List<Integer> indexes = new ArrayList<Integer>(arraySize);
+
+		for (int i = 0; i < arraySize; i++)
+		{
+			int value;
+
+			switch (documentReferenceSize)
+			{
+				case 1:
+					value = view.get() & 0xFF;
+					break;
+
+				case 2:
+					value = view.getShort() & 0xFFFF;
+					break;
+
+				default:
+					value = view.getInt();
+					break;
+			}
+
+			indexes.add(value);
+		}
+
+		return indexes;
+	}
+
 	/**
 	 * readDocumentName
 	 * 
@@ -1270,33 +1533,10 @@ public class DiskIndex
 		if (chunk == null)
 		{
 			boolean isLastChunk = chunkNumber == this.numberOfChunks - 1;
-			int start = this.chunkOffsets[chunkNumber];
-			int numberOfBytes = (isLastChunk ? this.startOfCategoryTables : this.chunkOffsets[chunkNumber + 1]) - start;
-
-			if (numberOfBytes < 0)
-			{
-				throw new IllegalArgumentException();
-			}
+			int numberOfNames = isLastChunk ? this.sizeOfLastChunk : CHUNK_SIZE;
 
-			InputStream file = new BufferedInputStream(new FileInputStream(this.indexFile));
-
-			try
-			{
-				skip(file, start);
-
-				int numberOfNames = isLastChunk ? this.sizeOfLastChunk : CHUNK_SIZE;
-
-				chunk = new String[numberOfNames];
-				readChunk(chunk, file, 0, numberOfNames);
-			}
-			catch (IOException ioe)
-			{
-				throw ioe;
-			}
-			finally
-			{
-				file.close();
-			}
+			chunk = new String[numberOfNames];
+			readChunk(chunk, newView(this.chunkOffsets[chunkNumber]), 0, numberOfNames);
 
 			this.cachedChunks[chunkNumber] = chunk;
 		}
@@ -1307,145 +1547,77 @@ public class DiskIndex
 	/**
 	 * readDocumentNumbers
 	 * 
-	 * @param arrayOffset
+	 * @param postings
+	 *            Either a document number stored as a value <= 0 or the offset of the document number array
 	 * @return
 	 * @throws IOException
 	 */
-	private @SuppressWarnings("unchecked")
-	synchronized List<Integer> readDocumentNumbers(Object arrayOffset) throws IOException
+	private List<Integer> readDocumentNumbers(int postings) throws IOException
 	{
-		// arrayOffset is either a cached array of docNumbers or an Integer offset in the file
-		if (arrayOffset instanceof List<?>)
+		if (postings <= 0)
 		{
-			return (List<Integer>) arrayOffset;
+			return CollectionsUtil.newList(-postings);
 		}
 
-		InputStream stream = new BufferedInputStream(new FileInputStream(this.indexFile));
-
-		try
-		{
-			int offset = ((Integer) arrayOffset).intValue();
-
-			skip(stream, offset);
+		ByteBuffer view = newView(postings);
 
-			return readStreamDocumentArray(stream, readStreamInt(stream));
-		}
-		finally
-		{
-			stream.close();
-		}
+		return readDocumentArray(view, view.getInt(), this.documentReferenceSize);
 	}
 
 	/**
 	 * readHeaderInfo
 	 * 
-	 * @param stream
+	 * @param view
 	 * @throws IOException
 	 */
-	private void readHeaderInfo(InputStream stream) throws IOException
+	private void readHeaderInfo(ByteBuffer view) throws IOException
 	{
 		// must be same order as writeHeaderInfo()
-		this.numberOfChunks = readStreamInt(stream);
+		this.numberOfChunks = view.getInt();
 		if (this.numberOfChunks < 0)
 		{
 			throw new IOException(MessageFormat.format("Corrupt index file, reported {0} chunks", numberOfChunks)); //$NON-NLS-1$
 		}
-		this.sizeOfLastChunk = read(stream) & 0xFF;
-		this.documentReferenceSize = read(stream) & 0xFF;
-		this.separator = (char) (read(stream) & 0xFF);
+		this.sizeOfLastChunk = view.get() & 0xFF;
+		this.documentReferenceSize = view.get() & 0xFF;
+		this.separator = (char) (view.get() & 0xFF);
+		this.blockSize = view.get() & 0xFF;
+		if (this.blockSize == 0)
+		{
+			throw new IOException("Corrupt index file, reported a block size of 0"); //$NON-NLS-1$
+		}
 
 		this.chunkOffsets = new int[this.numberOfChunks];
 		for (int i = 0; i < this.numberOfChunks; i++)
 		{
-			this.chunkOffsets[i] = readStreamInt(stream);
+			this.chunkOffsets[i] = view.getInt();
 		}
 
-		this.startOfCategoryTables = readStreamInt(stream);
+		this.startOfCategoryTables = view.getInt();
 
 		// Build the table of categories to offsets where they start
-		int categoryCount = readStreamInt(stream);
+		int categoryCount = view.getInt();
 		this.categoryOffsets = new HashMap<String, Integer>(categoryCount);
 		for (int i = 0; i < categoryCount; i++)
 		{
-			String categoryName = readString(stream);
-			int offset = readStreamInt(stream);
+			String categoryName = readString(view);
+			int offset = view.getInt();
 			this.categoryOffsets.put(categoryName, offset); // cache offset to category table
 		}
 
-		this.categoryTables = new HashMap<String, Map<String, Object>>(3);
-	}
-
-	/**
-	 * readStreamDocumentArray
-	 * 
-	 * @param stream
-	 * @param arraySize
-	 * @return
-	 * @throws IOException
-	 */
-	private List<Integer> readStreamDocumentArray(InputStream stream, int arraySize) throws IOException
-	{
-		if (arraySize == 0)
-		{
-			return Collections.emptyList();
-		}
-
-		List<Integer> indexes = new ArrayList<Integer>();
-
-		for (int i = 0; i < arraySize; i++)
-		{
-			int value = 0;
-
-			switch (this.documentReferenceSize)
-			{
-				case 1:
-					value = read(stream) & 0xFF;
-					break;
-
-				case 2:
-					value = (read(stream) & 0xFF) << 8;
-					value = value + (read(stream) & 0xFF);
-					break;
-
-				default:
-					value = readStreamInt(stream);
-					break;
-			}
-
-			indexes.add(value);
-		}
-
-		return indexes;
-	}
-
-	/**
-	 * readStreamInt
-	 * 
-	 * @param stream
-	 * @return
-	 * @throws IOException
-	 */
-	private int readStreamInt(InputStream stream) throws IOException
-	{
-		int val = (read(stream) & 0xFF) << 24;
-
-		val += (read(stream) & 0xFF) << 16;
-		val += (read(stream) & 0xFF) << 8;
-
-		return val + (read(stream) & 0xFF);
+		this.termDictionaries = new HashMap<String, TermDictionary>(3);
 	}
 
 	/**
 	 * readString
 	 * 
-	 * @param stream
+	 * @param view
 	 * @return
 	 * @throws IOException
 	 */
-	private String readString(InputStream stream) throws IOException
+	static String readString(ByteBuffer view) throws IOException
 	{
-		int length = (read(stream) & 0xFF) << 8;
-		length += read(stream) & 0xFF;
+		int length = view.getShort() & 0xFFFF;
 
 		// fill the chars from bytes buffer
 		char[] word = new char[length];
@@ -1453,7 +1625,7 @@ public class DiskIndex
 
 		while (i < length)
 		{
-			byte b = (byte) read(stream);
+			byte b = view.get();
 
 			switch (b & 0xF0)
 			{
@@ -1470,7 +1642,7 @@ public class DiskIndex
 
 				case 0xC0:
 				case 0xD0:
-					char next = (char) read(stream);
+					char next = (char) (view.get() & 0xFF);
 
 					if ((next & 0xC0) != 0x80)
 					{
@@ -1484,8 +1656,8 @@ public class DiskIndex
 					break;
 
 				case 0xE0:
-					char first = (char) read(stream);
-					char second = (char) read(stream);
+					char first = (char) (view.get() & 0xFF);
+					char second = (char) (view.get() & 0xFF);
 
 					if ((first & second & 0xC0) != 0x80)
 					{
@@ -1499,10 +1671,9 @@ public class DiskIndex
 					break;
 
 				default:
-					throw new UTFDataFormatException(
-							MessageFormat
-									.format("Unexpected byte value ''{0}'' at index {1}, reading string of length {2}. Possibly corrupt index file: ''{3}''", //$NON-NLS-1$
-											b, i, length, indexFile.getAbsolutePath()));
+					throw new UTFDataFormatException(MessageFormat.format(
+							"Unexpected byte value ''{0}'' at index {1}, reading string of length {2}. Possibly corrupt index file", //$NON-NLS-1$
+							b, i, length));
 			}
 		}
 
@@ -1519,62 +1690,103 @@ public class DiskIndex
 	 */
 	public DiskIndex removeCategories(String[] categoryNames, MemoryIndex memoryIndex) throws IOException
 	{
-		// FIXME We need to wipe out the category from the file somehow! The problem is that we can drop a document/file
-		// fairly easily by setting it's mapping to null in memory index and merging, but the way the thing is set up we
-		// don't really have an easy way of wiping a category out from memory and disk right now.
-
-		// int offset = this.categoryOffsets.get(categoryName);
-		// // "Wipe out" from the category offset to next category offset. However we need to handle the "long arrays"
-		// written just before offsets!
-		// RandomAccessFile file = new RandomAccessFile(this.indexFile, "rw");
-		// file.seek(offset);
+		return prepareRemoveCategories(categoryNames, memoryIndex).commit();
+	}
 
+	/**
+	 * Like {@link #prepareMerge(MemoryIndex)}, dropping the given categories from the merged file.
+	 * 
+	 * @param categoryNames
+	 * @param memoryIndex
+	 * @return
+	 * @throws IOException
+	 */
+	public PendingMerge prepareRemoveCategories(String[] categoryNames, MemoryIndex memoryIndex) throws IOException
+	{
+		// Categories are dropped while the merged file is written, see writeCategoryTable()
 		this.categoriesToDiscard = categoryNames;
 
-		DiskIndex newIndex = mergeWith(memoryIndex);
+		try
+		{
+			PendingMerge merge = prepareMerge(memoryIndex);
+			if (merge.merged != null)
+			{
+				merge.merged.categoriesToDiscard = null;
+			}
+			return merge;
+		}
+		finally
+		{
+			this.categoriesToDiscard = null;
+		}
+	}
 
-		newIndex.categoriesToDiscard = null;
+	/**
+	 * Best effort attempt at releasing a mapped buffer right away instead of waiting for it to be garbage collected.
+	 * Windows refuses to delete or rename a file while it is mapped.
+	 * 
+	 * @param mappedBuffer
+	 */
+	private static void unmap(MappedByteBuffer mappedBuffer)
+	{
+		try
+		{
+			Method cleanerMethod = mappedBuffer.getClass().getMethod("cleaner"); //$NON-NLS-1$
+			cleanerMethod.setAccessible(true);
+			Object cleaner = cleanerMethod.invoke(mappedBuffer);
 
-		return newIndex;
+			if (cleaner != null)
+			{
+				Method cleanMethod = cleaner.getClass().getMethod("clean"); //$NON-NLS-1$
+				cleanMethod.setAccessible(true);
+				cleanMethod.invoke(cleaner);
+			}
+		}
+		catch (Exception e)
+		{
+			// not available on this VM, the mapping is released once the buffer is collected
+		}
 	}
 
 	/**
-	 * skip
+	 * Writes the document names, category tables and header to this index file.
 	 * 
-	 * @param stream
-	 * @param n
-	 * @return
+	 * @param names
+	 *            The sorted names of all the documents in the new file
+	 * @param onDisk
+	 *            The index to merge categories from, null if this.categoryTables holds all the categories
+	 * @param positions
+	 *            The new position of each document of onDisk
 	 * @throws IOException
 	 */
-	private long skip(InputStream stream, long n) throws IOException
+	private void write(List<String> names, DiskIndex onDisk, int[] positions) throws IOException
 	{
-		final long wantToSkip = n;
-		long actuallySkipped = 0;
+		OutputStream stream = new BufferedOutputStream(new FileOutputStream(this.indexFile, false));
+		int offsetToHeader = -1;
 
-		while (n > 0)
+		try
 		{
-			long skipped = stream.skip(n);
-
-			actuallySkipped += skipped;
-			n = n - skipped;
+			writeDocumentNames(stream, names);
 
-			if (actuallySkipped == wantToSkip)
+			if (onDisk == null)
 			{
-				return actuallySkipped;
+				writeCategories(stream);
 			}
-
-			int read = stream.read();
-
-			if (read == -1)
+			else
 			{
-				return actuallySkipped;
+				mergeCategories(onDisk, positions, stream);
 			}
 
-			n--;
-			actuallySkipped++;
+			// write header
+			offsetToHeader = this.streamEnd;
+			writeHeaderInfo(stream);
+		}
+		finally
+		{
+			stream.close();
 		}
 
-		return actuallySkipped;
+		writeOffsetToHeader(offsetToHeader);
 	}
 
 	/**
@@ -1585,7 +1797,7 @@ public class DiskIndex
 	 */
 	private void writeCategories(OutputStream stream) throws IOException
 	{
-		for (Map.Entry<String, Map<String, Object>> entry : categoryTables.entrySet())
+		for (Map.Entry<String, Map<String, List<Integer>>> entry : categoryTables.entrySet())
 		{
 			String categoryName = entry.getKey();
 
@@ -1606,8 +1818,7 @@ public class DiskIndex
 	 * @param stream
 	 * @throws IOException
 	 */
-	@SuppressWarnings("unchecked")
-	private void writeCategoryTable(String categoryName, Map<String, Object> wordsToDocs, OutputStream stream)
+	private void writeCategoryTable(String categoryName, Map<String, List<Integer>> wordsToDocs, OutputStream stream)
 			throws IOException
 	{
 		if (this.categoriesToDiscard != null)
@@ -1622,67 +1833,94 @@ public class DiskIndex
 		}
 
 		// the format of a category table is as follows:
-		// any document number arrays with >= 256 elements are written before the table (the offset to each array is
-		// remembered)
-		// then the number of word->int[] pairs in the table is written
-		// for each word -> int[] pair, the word is written followed by:
-		// an int <= 0 if the array size == 1
-		// an int > 1 & < 256 for the size of the array if its > 1 & < 256, the document array follows immediately
-		// 256 if the array size >= 256 followed by another int which is the offset to the array (written prior to the
-		// table)
+		// the document number arrays of all words with more than one document are written first (the offset to each
+		// array is remembered)
+		// then the sorted words are written in blocks of blockSize words. The first word of a block is written in full,
+		// each following one as a byte holding the number of leading characters it shares with the previous word and
+		// the remaining characters. Each word is followed by an int which is:
+		// <= 0 if the array size == 1, the value is the negated document number
+		// > 0 for the offset to the document array in the file
+		// the table itself starts after the blocks, with the number of words, the number of blocks and the offset to
+		// each block
 
-		Map<String, Integer> longArrays = new HashMap<String, Integer>();
-		int largeArraySize = 256;
+		List<String> words = new ArrayList<String>(wordsToDocs.size());
 
-		for (Map.Entry<String, Object> entry : wordsToDocs.entrySet())
+		for (String word : wordsToDocs.keySet())
 		{
-			List<Integer> docNumbers = (List<Integer>) entry.getValue();
+			if (word != null && word.length() < 65535)
+			{
+				words.add(word);
+			}
+			else if (word != null)
+			{
+				// We may have run into the JS indexing issue: https://jira.appcelerator.org/browse/APSTUD-7366
+				// To limit the damage, we're going to effectively skip writing one entry into the index. This will
+				// break our knowledge of some property/type in JS but will allow indexing to continue.
+				IdeLog.logError(IndexPlugin.getDefault(), MessageFormat.format(
+						"Skipping a word of length {0} in category ''{1}'' of index file {2}", //$NON-NLS-1$
+						word.length(), categoryName, this.indexFile.getAbsolutePath()));
+			}
+		}
+
+		Collections.sort(words);
+
+		int wordCount = words.size();
+		int[] postings = new int[wordCount];
+
+		for (int i = 0; i < wordCount; i++)
+		{
+			List<Integer> documentNumbers = wordsToDocs.get(words.get(i));
 
-			if (docNumbers.size() >= largeArraySize)
+			if (documentNumbers.size() == 1)
 			{
-				longArrays.put(entry.getKey(), new Integer(this.streamEnd));
-				writeDocumentNumbers(docNumbers, stream);
+				postings[i] = -documentNumbers.get(0);
+			}
+			else
+			{
+				postings[i] = this.streamEnd;
+				writeDocumentNumbers(documentNumbers, stream);
 			}
 		}
 
-		this.categoryOffsets.put(categoryName, this.streamEnd); // remember the offset to the start of the table
-		this.categoryTables.put(categoryName, null); // flush cached table
-		writeStreamInt(stream, wordsToDocs.size());
+		int blockCount = (wordCount + this.blockSize - 1) / this.blockSize;
+		int[] blockOffsets = new int[blockCount];
+		String previous = null;
 
-		for (Map.Entry<String, Object> entry : wordsToDocs.entrySet())
+		for (int i = 0; i < wordCount; i++)
 		{
-			try
+			String word = words.get(i);
+
+			if (i % this.blockSize == 0)
 			{
-				writeString(stream, entry.getKey());
+				blockOffsets[i / this.blockSize] = this.streamEnd;
+				writeString(stream, word);
+			}
+			else
+			{
+				int max = Math.min(Math.min(previous.length(), word.length()), 255);
+				int shared = 0;
 
-				if (longArrays.containsKey(entry.getKey()))
+				while (shared < max && previous.charAt(shared) == word.charAt(shared))
 				{
-					writeStreamInt(stream, largeArraySize); // mark to identify that an offset follows
-					writeStreamInt(stream, longArrays.get(entry.getKey()).intValue()); // offset in the file of the
-																						// array of
-					// document numbers
+					shared++;
 				}
-				else
-				{
-					List<Integer> documentNumbers = (List<Integer>) entry.getValue();
 
-					if (documentNumbers.size() == 1)
-					{
-						writeStreamInt(stream, -documentNumbers.get(0));
-					}
-					else
-					{
-						writeDocumentNumbers(documentNumbers, stream);
-					}
-				}
-			}
-			catch (IOException ioe)
-			{
-				// We may have run into the JS indexing issue: https://jira.appcelerator.org/browse/APSTUD-7366
-				IdeLog.logError(IndexPlugin.getDefault(), ioe);
-				// To limit the damage, we're going to effectively skip writing one entry into the index. This will
-				// break our knowledge of some property/type in JS but will allow indexing to continue.
+				stream.write((byte) shared);
+				this.streamEnd++;
+				writeString(stream, word.substring(shared));
 			}
+
+			writeStreamInt(stream, postings[i]);
+			previous = word;
+		}
+
+		this.categoryOffsets.put(categoryName, this.streamEnd); // remember the offset to the start of the table
+		writeStreamInt(stream, wordCount);
+		writeStreamInt(stream, blockCount);
+
+		for (int offset : blockOffsets)
+		{
+			writeStreamInt(stream, offset);
 		}
 	}
 
@@ -1794,7 +2032,6 @@ public class DiskIndex
 	 */
 	private void writeDocumentNumbers(List<Integer> documentNumbers, OutputStream stream) throws IOException
 	{
-		// must store length as a positive int to detect in-lined array of 1 element
 		int length = documentNumbers.size();
 
 		writeStreamInt(stream, length);
@@ -1822,8 +2059,6 @@ public class DiskIndex
 					break;
 			}
 		}
-
-		stream.flush();
 	}
 
 	/**
@@ -1839,7 +2074,8 @@ public class DiskIndex
 		stream.write((byte) this.sizeOfLastChunk);
 		stream.write((byte) this.documentReferenceSize);
 		stream.write((byte) this.separator);
-		this.streamEnd += 3;
+		stream.write((byte) this.blockSize);
+		this.streamEnd += 4;
 
 		// apend the file with chunk offsets
 		for (int i = 0; i < this.numberOfChunks; i++)
@@ -1850,7 +2086,7 @@ public class DiskIndex
 		writeStreamInt(stream, this.startOfCategoryTables);
 
 		// append the file with the category offsets... # of name -> offset pairs, followed by each name & an offset to
-		// its word->doc# table
+		// its term dictionary
 		writeStreamInt(stream, this.categoryOffsets.size());
 
 		for (Map.Entry<String, Integer> entry : categoryOffsets.entrySet())
@@ -1901,7 +2137,6 @@ public class DiskIndex
 		stream.write((byte) (val >> 8));
 		stream.write((byte) val);
 		this.streamEnd += 4;
-		stream.flush();
 	}
 
 	/**
@@ -1929,7 +2164,6 @@ public class DiskIndex
 		stream.write((byte) (length & 0xFF)); // this will allow to read it faster
 		this.streamEnd += 2;
 
-		// we're assuming that very few char[] are so large that we need to flush the buffer more than once, if at all
 		for (char ch : array)
 		{
 			if ((ch & 0x007F) == ch)
@@ -1972,7 +2206,5 @@ public class DiskIndex
 				streamEnd++;
 			}
 		}
-
-		stream.flush();
 	}
 }
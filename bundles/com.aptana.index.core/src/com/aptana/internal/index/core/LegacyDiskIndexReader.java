@@ -0,0 +1,335 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the Eclipse Public License (EPL).
+ * Please see the license-epl.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.internal.index.core;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.aptana.index.core.Index;
+
+/**
+ * Reads index files written in the "INDEX VERSION 0.1" format so that {@link DiskIndex} can rewrite them in the
+ * current format. The whole file is read into memory, this is only used once per index file.
+ */
+class LegacyDiskIndexReader
+{
+	static final String SIGNATURE = "INDEX VERSION 0.1"; //$NON-NLS-1$
+
+	private static final int CHUNK_SIZE = 100;
+	private static final int LARGE_ARRAY_SIZE = 256;
+
+	/**
+	 * Returns the signature an index file starts with, or null if it cannot be read.
+	 * 
+	 * @param indexFile
+	 * @return
+	 */
+	static String readSignature(File indexFile)
+	{
+		DataInputStream stream = null;
+
+		try
+		{
+			stream = new DataInputStream(new FileInputStream(indexFile));
+
+			int length = stream.readUnsignedShort();
+
+			// both signatures are plain ASCII
+			if (length > 64)
+			{
+				return null;
+			}
+
+			byte[] bytes = new byte[length];
+			stream.readFully(bytes);
+
+			return new String(bytes, "US-ASCII"); //$NON-NLS-1$
+		}
+		catch (IOException e)
+		{
+			return null;
+		}
+		finally
+		{
+			if (stream != null)
+			{
+				try
+				{
+					stream.close();
+				}
+				catch (IOException e)
+				{
+					// ignore
+				}
+			}
+		}
+	}
+
+	private final File indexFile;
+	private ByteBuffer buffer;
+	private int numberOfChunks;
+	private int sizeOfLastChunk;
+	private int documentReferenceSize;
+	private char separator = Index.DEFAULT_SEPARATOR;
+	private int[] chunkOffsets;
+	private Map<String, Integer> categoryOffsets;
+
+	/**
+	 * LegacyDiskIndexReader
+	 * 
+	 * @param indexFile
+	 * @throws IOException
+	 */
+	LegacyDiskIndexReader(File indexFile) throws IOException
+	{
+		this.indexFile = indexFile;
+
+		RandomAccessFile file = new RandomAccessFile(indexFile, "r"); //$NON-NLS-1$
+
+		try
+		{
+			FileChannel channel = file.getChannel();
+			this.buffer = ByteBuffer.allocate((int) channel.size());
+
+			while (this.buffer.hasRemaining() && channel.read(this.buffer) != -1)
+			{
+				// keep reading
+			}
+
+			this.buffer.flip();
+		}
+		finally
+		{
+			file.close();
+		}
+
+		try
+		{
+			ByteBuffer view = newView(0);
+
+			if (!SIGNATURE.equals(DiskIndex.readString(view)))
+			{
+				throw new IOException(Messages.DiskIndex_Wrong_Format);
+			}
+
+			// an empty index only has a single byte after the signature
+			int headerInfoOffset = view.remaining() >= 4 ? view.getInt() : -1;
+
+			if (headerInfoOffset > 0)
+			{
+				readHeaderInfo(newView(headerInfoOffset));
+			}
+			else
+			{
+				this.categoryOffsets = Collections.emptyMap();
+			}
+		}
+		catch (BufferUnderflowException e)
+		{
+			throw new IOException(MessageFormat.format("Corrupt index file ''{0}''", indexFile)); //$NON-NLS-1$
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new IOException(MessageFormat.format("Corrupt index file ''{0}''", indexFile)); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * close
+	 */
+	void close()
+	{
+		this.buffer = null;
+	}
+
+	/**
+	 * getCategories
+	 * 
+	 * @return
+	 */
+	List<String> getCategories()
+	{
+		return new ArrayList<String>(this.categoryOffsets.keySet());
+	}
+
+	/**
+	 * getSeparator
+	 * 
+	 * @return
+	 */
+	char getSeparator()
+	{
+		return this.separator;
+	}
+
+	/**
+	 * newView
+	 * 
+	 * @param offset
+	 * @return
+	 */
+	private ByteBuffer newView(int offset)
+	{
+		ByteBuffer view = this.buffer.duplicate();
+
+		view.position(offset);
+
+		return view;
+	}
+
+	/**
+	 * readAllDocumentNames
+	 * 
+	 * @return
+	 * @throws IOException
+	 */
+	List<String> readAllDocumentNames() throws IOException
+	{
+		if (this.numberOfChunks <= 0)
+		{
+			return Collections.emptyList();
+		}
+
+		try
+		{
+			ByteBuffer view = newView(this.chunkOffsets[0]);
+			int lastIndex = this.numberOfChunks - 1;
+			String[] docNames = new String[lastIndex * CHUNK_SIZE + this.sizeOfLastChunk];
+
+			for (int i = 0; i < this.numberOfChunks; i++)
+			{
+				DiskIndex.readChunk(docNames, view, i * CHUNK_SIZE, i < lastIndex ? CHUNK_SIZE
+						: this.sizeOfLastChunk);
+			}
+
+			return Arrays.asList(docNames);
+		}
+		catch (BufferUnderflowException e)
+		{
+			throw new IOException(MessageFormat.format("Corrupt index file ''{0}''", this.indexFile)); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * readCategoryTable
+	 * 
+	 * @param categoryName
+	 * @return
+	 * @throws IOException
+	 */
+	Map<String, List<Integer>> readCategoryTable(String categoryName) throws IOException
+	{
+		Integer offset = this.categoryOffsets.get(categoryName);
+
+		if (offset == null)
+		{
+			return null;
+		}
+
+		try
+		{
+			ByteBuffer view = newView(offset);
+
+			// Read the number of words in the category
+			int size = Math.max(view.getInt(), 0);
+			Map<String, List<Integer>> categoryTable = new HashMap<String, List<Integer>>(size);
+
+			for (int i = 0; i < size; i++)
+			{
+				String word = DiskIndex.readString(view);
+				int arrayOffset = view.getInt();
+
+				// if arrayOffset is:
+				// <= 0 then the array size == 1 with the value -> -arrayOffset
+				// > 1 & < 256 then the size of the array is > 1 & < 256, the document array follows immediately
+				// 256 if the array size >= 256 followed by another int which is the offset to the array (written prior
+				// to the table)
+				List<Integer> documentNumbers;
+
+				if (arrayOffset <= 0)
+				{
+					documentNumbers = new ArrayList<Integer>(1);
+					documentNumbers.add(-arrayOffset);
+				}
+				else if (arrayOffset < LARGE_ARRAY_SIZE)
+				{
+					documentNumbers = DiskIndex.readDocumentArray(view, arrayOffset, this.documentReferenceSize);
+				}
+				else
+				{
+					ByteBuffer arrayView = newView(view.getInt());
+
+					documentNumbers = DiskIndex.readDocumentArray(arrayView, arrayView.getInt(),
+							this.documentReferenceSize);
+				}
+
+				// the merge sorts these lists in place
+				categoryTable.put(word, new ArrayList<Integer>(documentNumbers));
+			}
+
+			return categoryTable;
+		}
+		catch (BufferUnderflowException e)
+		{
+			throw new IOException(MessageFormat.format("Corrupt index file ''{0}''", this.indexFile)); //$NON-NLS-1$
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new IOException(MessageFormat.format("Corrupt index file ''{0}''", this.indexFile)); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * readHeaderInfo
+	 * 
+	 * @param view
+	 * @throws IOException
+	 */
+	private void readHeaderInfo(ByteBuffer view) throws IOException
+	{
+		this.numberOfChunks = view.getInt();
+		if (this.numberOfChunks < 0)
+		{
+			throw new IOException(MessageFormat.format("Corrupt index file, reported {0} chunks", numberOfChunks)); //$NON-NLS-1$
+		}
+		this.sizeOfLastChunk = view.get() & 0xFF;
+		this.documentReferenceSize = view.get() & 0xFF;
+		this.separator = (char) (view.get() & 0xFF);
+
+		this.chunkOffsets = new int[this.numberOfChunks];
+		for (int i = 0; i < this.numberOfChunks; i++)
+		{
+			this.chunkOffsets[i] = view.getInt();
+		}
+
+		// start of the category tables, not needed to read them
+		view.getInt();
+
+		int categoryCount = view.getInt();
+		this.categoryOffsets = new HashMap<String, Integer>(categoryCount);
+		for (int i = 0; i < categoryCount; i++)
+		{
+			String categoryName = DiskIndex.readString(view);
+			int offset = view.getInt();
+			this.categoryOffsets.put(categoryName, offset);
+		}
+	}
+}
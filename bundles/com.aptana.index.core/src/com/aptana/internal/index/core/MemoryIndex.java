@@ -167,6 +167,33 @@ public class MemoryIndex
 		return results;
 	}
 
+	/**
+	 * Copies the entries of a document from another memory index, so that entries added to this index for that document
+	 * add to them instead of replacing them. Does nothing if this index already has an entry (or a removal) for the
+	 * document.
+	 * 
+	 * @param documentName
+	 * @param other
+	 */
+	public void copyDocument(String documentName, MemoryIndex other)
+	{
+		if (documentsToTable.containsKey(documentName))
+		{
+			return;
+		}
+		Map<String, Set<String>> categoriesToWords = other.documentsToTable.get(documentName);
+		if (categoriesToWords == null)
+		{
+			return;
+		}
+		Map<String, Set<String>> copy = new HashMap<String, Set<String>>(categoriesToWords.size());
+		for (Map.Entry<String, Set<String>> entry : categoriesToWords.entrySet())
+		{
+			copy.put(entry.getKey(), new HashSet<String>(entry.getValue()));
+		}
+		documentsToTable.put(documentName, copy);
+	}
+
 	/**
 	 * getCategories
 	 * 
@@ -229,6 +256,69 @@ public class MemoryIndex
 		return documentsToTable.get(documentName) != null;
 	}
 
+	/**
+	 * Returns a new index holding the documents of this index overlaid with those of the newer one. Neither index is
+	 * modified, and the document tables are shared rather than copied, so neither may be modified afterwards.
+	 * 
+	 * @param newer
+	 * @return
+	 */
+	public MemoryIndex mergedWith(MemoryIndex newer)
+	{
+		MemoryIndex result = new MemoryIndex();
+		result.documentsToTable.putAll(this.documentsToTable);
+		result.documentsToTable.putAll(newer.documentsToTable);
+		return result;
+	}
+
+	/**
+	 * Returns a new index holding the documents of this index, minus the ones which are unchanged since the given
+	 * (older) index, i.e. which still have the same table or are still removed. Used to drop what has just been merged
+	 * into the disk index.
+	 * 
+	 * @param merged
+	 * @return
+	 */
+	public MemoryIndex without(MemoryIndex merged)
+	{
+		MemoryIndex result = new MemoryIndex();
+		for (Map.Entry<String, Map<String, Set<String>>> entry : documentsToTable.entrySet())
+		{
+			String documentName = entry.getKey();
+			if (!merged.documentsToTable.containsKey(documentName)
+					|| merged.documentsToTable.get(documentName) != entry.getValue())
+			{
+				result.documentsToTable.put(documentName, entry.getValue());
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns a new index holding the documents of this index without the given categories. This index isn't modified.
+	 * 
+	 * @param categoryNames
+	 * @return
+	 */
+	public MemoryIndex withoutCategories(String[] categoryNames)
+	{
+		MemoryIndex result = new MemoryIndex();
+		for (Map.Entry<String, Map<String, Set<String>>> entry : documentsToTable.entrySet())
+		{
+			Map<String, Set<String>> categoriesToWords = entry.getValue();
+			if (categoriesToWords != null)
+			{
+				categoriesToWords = new HashMap<String, Set<String>>(categoriesToWords);
+				for (String category : categoryNames)
+				{
+					categoriesToWords.remove(category);
+				}
+			}
+			result.documentsToTable.put(entry.getKey(), categoriesToWords);
+		}
+		return result;
+	}
+
 	/**
 	 * numberOfChanges
 	 * 
@@ -25,4 +25,9 @@ public interface IDebugScopes
 	 * A debug scope used to display the stages of JS indexing
 	 */
 	String INDEXING_STEPS = JSCorePlugin.PLUGIN_ID + "/debug/show_indexing_steps"; //$NON-NLS-1$
+
+	/**
+	 * A debug scope used to display when a JS file has to be parsed again with the other goal (module or script)
+	 */
+	String PARSING = JSCorePlugin.PLUGIN_ID + "/debug/show_parsing"; //$NON-NLS-1$
 }
@@ -12,6 +12,7 @@ import org.eclipse.core.runtime.Plugin;
 import org.osgi.framework.BundleContext;
 import org.osgi.util.tracker.ServiceTracker;
 
+import com.aptana.js.core.index.JSIndexQueryHelper;
 import com.aptana.js.core.inferencing.IAliasResolver;
 import com.aptana.js.core.node.INodeJS;
 import com.aptana.js.core.node.INodeJSService;
@@ -74,6 +75,7 @@ public class JSCorePlugin extends Plugin
 			fNodeService = null;
 			fAliasResolverFactory = null;
 			PLUGIN = null;
+			JSIndexQueryHelper.shutdown();
 			super.stop(context);
 		}
 	}
@@ -42,7 +42,9 @@ public interface IJSIndexConstants
 	// 0.36 - Include Module definition mappings to autogenerated UUID type names holding the exported object, remove
 	// requires keys
 	// 0.37 - Retain internal flag and user agent listing when writing types to index
-	public static final double INDEX_VERSION = 0.37;
+	// 0.38 - Write types and members as key columns followed by typed, length-prefixed fields (IndexRecord)
+	// 0.39 - Write member fields as typed record fields instead of a single JSON string
+	public static final double INDEX_VERSION = 0.39;
 
 	// for debugging, comment the line above, and uncomment the following
 	// public static final double INDEX_VERSION = new Random().nextDouble() * 1e6;
@@ -19,8 +19,6 @@ import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.SubMonitor;
-import org.jaxen.JaxenException;
-import org.jaxen.XPath;
 
 import com.aptana.core.logging.IdeLog;
 import com.aptana.core.util.ArrayUtil;
@@ -49,29 +47,17 @@ import com.aptana.js.internal.core.parsing.sdoc.model.Tag;
 import com.aptana.js.internal.core.parsing.sdoc.model.TagType;
 import com.aptana.parsing.ast.IParseNode;
 import com.aptana.parsing.ast.IParseRootNode;
-import com.aptana.parsing.xpath.ParseNodeXPath;
+import com.aptana.parsing.query.ParseNodeQuery;
 
 public class JSFileIndexingParticipant extends AbstractFileIndexingParticipant
 {
-	private static XPath LAMBDAS_IN_SCOPE;
+	private static final ParseNodeQuery LAMBDAS_IN_SCOPE = ParseNodeQuery
+			.compile("invoke[1]/group/function|invoke[1]/function"); //$NON-NLS-1$
 
 	private JSIndexWriter indexWriter;
 
 	private JSIndexQueryHelper queryHelper;
 
-	static
-	{
-		try
-		{
-			LAMBDAS_IN_SCOPE = new ParseNodeXPath(
-					"invoke[position() = 1]/group/function|invoke[position() = 1]/function"); //$NON-NLS-1$
-		}
-		catch (JaxenException e)
-		{
-			IdeLog.logError(JSCorePlugin.getDefault(), e);
-		}
-	}
-
 	/**
 	 * JSFileIndexingParticipant
 	 */
@@ -122,45 +108,31 @@ public class JSFileIndexingParticipant extends AbstractFileIndexingParticipant
 	 * @param node
 	 * @param location
 	 */
-	@SuppressWarnings("unchecked")
 	private List<PropertyElement> processLambdas(Index index, JSScope globals, IParseNode node, URI location,
 			IProgressMonitor monitor)
 	{
 		List<PropertyElement> result = Collections.emptyList();
+		List<JSFunctionNode> functions = LAMBDAS_IN_SCOPE.select(node, JSFunctionNode.class);
 
-		try
+		if (!functions.isEmpty())
 		{
-			Object queryResult = (LAMBDAS_IN_SCOPE != null) ? LAMBDAS_IN_SCOPE.evaluate(node) : null;
+			SubMonitor sub = SubMonitor.convert(monitor, functions.size() * 11);
+			result = new ArrayList<PropertyElement>(functions.size());
 
-			if (queryResult != null)
+			for (JSFunctionNode function : functions)
 			{
-				List<JSFunctionNode> functions = (List<JSFunctionNode>) queryResult;
+				// grab the correct scope for this function's body
+				JSScope scope = globals.getScopeAtOffset(function.getBody().getStartingOffset());
+				sub.worked(1);
 
-				if (!functions.isEmpty())
-				{
-					SubMonitor sub = SubMonitor.convert(monitor, functions.size() * 11);
-					result = new ArrayList<PropertyElement>(functions.size());
-
-					for (JSFunctionNode function : functions)
-					{
-						// grab the correct scope for this function's body
-						JSScope scope = globals.getScopeAtOffset(function.getBody().getStartingOffset());
-						sub.worked(1);
-
-						JSSymbolTypeInferrer infer = new JSSymbolTypeInferrer(scope, index, location, queryHelper);
-						// add all properties off of "window" to our list
-						result.addAll(processWindowAssignments(scope, infer, sub.newChild(5)));
+				JSSymbolTypeInferrer infer = new JSSymbolTypeInferrer(scope, index, location, queryHelper);
+				// add all properties off of "window" to our list
+				result.addAll(processWindowAssignments(scope, infer, sub.newChild(5)));
 
-						// handle any nested lambdas in this function
-						result.addAll(processLambdas(index, globals, function, location, sub.newChild(5)));
-					}
-				}
+				// handle any nested lambdas in this function
+				result.addAll(processLambdas(index, globals, function, location, sub.newChild(5)));
 			}
 		}
-		catch (JaxenException e)
-		{
-			IdeLog.logError(JSCorePlugin.getDefault(), e);
-		}
 
 		return result;
 	}
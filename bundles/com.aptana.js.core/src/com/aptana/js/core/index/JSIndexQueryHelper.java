@@ -8,6 +8,7 @@
 package com.aptana.js.core.index;
 
 import java.net.URI;
+import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -15,8 +16,19 @@ import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.runtime.IPath;
@@ -25,6 +37,7 @@ import org.eclipse.core.runtime.Path;
 import com.aptana.buildpath.core.BuildPathManager;
 import com.aptana.buildpath.core.IBuildPathEntry;
 import com.aptana.core.IFilter;
+import com.aptana.core.logging.IdeLog;
 import com.aptana.core.util.CollectionsUtil;
 import com.aptana.core.util.StringUtil;
 import com.aptana.index.core.Index;
@@ -32,6 +45,7 @@ import com.aptana.index.core.IndexManager;
 import com.aptana.index.core.IndexPlugin;
 import com.aptana.index.core.QueryResult;
 import com.aptana.index.core.SearchPattern;
+import com.aptana.js.core.JSCorePlugin;
 import com.aptana.js.core.JSTypeConstants;
 import com.aptana.js.core.inferencing.JSTypeUtil;
 import com.aptana.js.core.model.EventElement;
@@ -43,6 +57,11 @@ import com.aptana.js.internal.core.index.JSIndexReader;
 /**
  * This class is intended to silently query the types/functions/properties/events for a given project. It uses the
  * project's build paths to know what indices to look through and their ordering.
+ * <p>
+ * Lookups are run against all the indices at once, the first index on the calling thread and the others on a shared
+ * pool, and their results are combined in index order. The parent types read from each index are cached until the index
+ * changes, so walking a type hierarchy doesn't hit the indices again for types already seen.
+ * </p>
  * 
  * @author cwilliams
  */
@@ -51,6 +70,76 @@ public class JSIndexQueryHelper
 
 	private static final String DOT_EXPORTS = ".exports"; //$NON-NLS-1$
 
+	/**
+	 * A lookup run against each index.
+	 */
+	private interface IndexQuery<T>
+	{
+		Collection<? extends T> query(Index index);
+	}
+
+	/**
+	 * The parent types of the types defined in an index, as of a given generation of that index.
+	 */
+	private static class TypeHierarchy
+	{
+		final long generation;
+		final Map<String, List<String>> parentTypes = new ConcurrentHashMap<String, List<String>>();
+
+		TypeHierarchy(long generation)
+		{
+			this.generation = generation;
+		}
+	}
+
+	/**
+	 * Creates the daemon threads querying the indices.
+	 */
+	private static class QueryThreadFactory implements ThreadFactory
+	{
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread(Runnable runnable)
+		{
+			Thread thread = new Thread(runnable, MessageFormat.format(
+					"JS index query #{0}", count.incrementAndGet())); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	private static final Map<Index, TypeHierarchy> HIERARCHIES = new WeakHashMap<Index, TypeHierarchy>();
+
+	private static ExecutorService executor;
+
+	/**
+	 * Returns the pool querying the indices, or null once the plug-in has stopped.
+	 * 
+	 * @return
+	 */
+	private static synchronized ExecutorService getExecutor()
+	{
+		if (executor == null && JSCorePlugin.getDefault() != null)
+		{
+			int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+			executor = Executors.newFixedThreadPool(threads, new QueryThreadFactory());
+		}
+		return executor;
+	}
+
+	/**
+	 * Shuts down the pool querying the indices. The queries already submitted still run, later ones run on the calling
+	 * thread. This is called when the plug-in stops.
+	 */
+	public static synchronized void shutdown()
+	{
+		if (executor != null)
+		{
+			executor.shutdown();
+			executor = null;
+		}
+	}
+
 	public static Index getJSCoreIndex()
 	{
 		IndexManager manager = getIndexManager();
@@ -111,6 +200,21 @@ public class JSIndexQueryHelper
 		this._reader = new JSIndexReader();
 	}
 
+	/**
+	 * Returns a number which changes whenever the content of any of the indices queried changes.
+	 * 
+	 * @return
+	 */
+	public long getGeneration()
+	{
+		long generation = 0;
+		for (Index index : indices)
+		{
+			generation += index.getGeneration();
+		}
+		return generation;
+	}
+
 	private static Index[] getIndices(IProject project)
 	{
 		// TODO Eventually the JS Core index(indices, JS core and DOM should be separated) should already be in the
@@ -151,7 +255,7 @@ public class JSIndexQueryHelper
 	 *            The name of the member of global we're trying to query for.
 	 * @return
 	 */
-	public Collection<PropertyElement> getGlobals(String fileName, String memberName)
+	public Collection<PropertyElement> getGlobals(String fileName, final String memberName)
 	{
 		// Need to search Global or Window!
 		String globalTypeName = JSTypeUtil.getGlobalType(project, fileName);
@@ -161,19 +265,21 @@ public class JSIndexQueryHelper
 			types.add(0, JSTypeConstants.WINDOW_TYPE);
 		}
 
-		ArrayList<PropertyElement> properties = new ArrayList<PropertyElement>();
-		for (String type : types)
+		final List<String> globalTypes = types;
+		return queryAll(new IndexQuery<PropertyElement>()
 		{
-			// TODO Search all types at once
-			for (Index index : indices)
+			public Collection<PropertyElement> query(Index index)
 			{
-				// FIXME Search both categories at once?
-				properties.addAll(_reader.getFunctions(index, type, memberName));
-				properties.addAll(_reader.getProperties(index, type, memberName));
+				List<PropertyElement> properties = new ArrayList<PropertyElement>();
+				for (String type : globalTypes)
+				{
+					// FIXME Search both categories at once?
+					properties.addAll(_reader.getFunctions(index, type, memberName));
+					properties.addAll(_reader.getProperties(index, type, memberName));
+				}
+				return properties;
 			}
-		}
-
-		return properties;
+		});
 	}
 
 	/**
@@ -203,15 +309,15 @@ public class JSIndexQueryHelper
 	 * @param includeMembers
 	 * @return
 	 */
-	public Collection<TypeElement> getTypes(String typeName, boolean includeMembers)
+	public Collection<TypeElement> getTypes(final String typeName, final boolean includeMembers)
 	{
-		ArrayList<TypeElement> types = new ArrayList<TypeElement>();
-		for (Index index : indices)
+		return queryAll(new IndexQuery<TypeElement>()
 		{
-			types.addAll(_reader.getType(index, typeName, includeMembers));
-		}
-		types.trimToSize();
-		return types;
+			public Collection<TypeElement> query(Index index)
+			{
+				return _reader.getType(index, typeName, includeMembers);
+			}
+		});
 	}
 
 	/**
@@ -234,24 +340,24 @@ public class JSIndexQueryHelper
 
 		while (!queue.isEmpty())
 		{
-			String name = queue.poll();
-			Collection<TypeElement> typeList = getTypes(name, false);
+			final String name = queue.poll();
+			List<String> parentTypes = queryAll(new IndexQuery<String>()
+			{
+				public Collection<String> query(Index index)
+				{
+					return getParentTypes(index, name);
+				}
+			});
 
-			if (typeList != null)
+			for (String parentType : parentTypes)
 			{
-				for (TypeElement type : typeList)
+				if (!types.contains(parentType))
 				{
-					for (String parentType : type.getParentTypes())
+					types.add(parentType);
+
+					if (!JSTypeConstants.OBJECT_TYPE.equals(parentType))
 					{
-						if (!types.contains(parentType))
-						{
-							types.add(parentType);
-
-							if (!JSTypeConstants.OBJECT_TYPE.equals(parentType))
-							{
-								queue.offer(parentType);
-							}
-						}
+						queue.offer(parentType);
 					}
 				}
 			}
@@ -261,21 +367,151 @@ public class JSIndexQueryHelper
 	}
 
 	/**
-	 * Gets all the functions and properties with the given name for the given type.
+	 * Returns the parent types of the types with the given name in the given index, from the cache unless the index
+	 * changed since they were looked up.
 	 * 
+	 * @param index
 	 * @param typeName
-	 * @param memberName
 	 * @return
 	 */
-	public Collection<PropertyElement> getTypeMembers(String typeName, String memberName)
+	private List<String> getParentTypes(Index index, String typeName)
+	{
+		long generation = index.getGeneration();
+		TypeHierarchy hierarchy;
+		synchronized (HIERARCHIES)
+		{
+			hierarchy = HIERARCHIES.get(index);
+			if (hierarchy == null || hierarchy.generation != generation)
+			{
+				hierarchy = new TypeHierarchy(generation);
+				HIERARCHIES.put(index, hierarchy);
+			}
+		}
+
+		List<String> parentTypes = hierarchy.parentTypes.get(typeName);
+		if (parentTypes == null)
+		{
+			parentTypes = new ArrayList<String>();
+			for (TypeElement type : _reader.getType(index, typeName, false))
+			{
+				parentTypes.addAll(type.getParentTypes());
+			}
+			parentTypes = Collections.unmodifiableList(parentTypes);
+			hierarchy.parentTypes.put(typeName, parentTypes);
+		}
+		return parentTypes;
+	}
+
+	/**
+	 * Runs the query against all the indices, in parallel when there's more than one, and returns the combined results
+	 * in index order.
+	 * 
+	 * @param query
+	 * @return
+	 */
+	private <T> List<T> queryAll(final IndexQuery<T> query)
 	{
-		ArrayList<PropertyElement> properties = new ArrayList<PropertyElement>();
+		int size = indices.size();
+		if (size == 0)
+		{
+			return new ArrayList<T>(0);
+		}
+		if (size == 1)
+		{
+			return new ArrayList<T>(query.query(indices.get(0)));
+		}
+
+		ExecutorService service = getExecutor();
+		if (service == null)
+		{
+			return querySequentially(query);
+		}
+
+		List<Future<Collection<? extends T>>> futures = new ArrayList<Future<Collection<? extends T>>>(size - 1);
+		try
+		{
+			for (final Index index : indices.subList(1, size))
+			{
+				futures.add(service.submit(new Callable<Collection<? extends T>>()
+				{
+					public Collection<? extends T> call() throws Exception
+					{
+						return query.query(index);
+					}
+				}));
+			}
+		}
+		catch (RejectedExecutionException e)
+		{
+			// the pool was shut down in the meantime
+			for (Future<Collection<? extends T>> future : futures)
+			{
+				future.cancel(false);
+			}
+			return querySequentially(query);
+		}
+
+		ArrayList<T> results = new ArrayList<T>(query.query(indices.get(0)));
+		for (Future<Collection<? extends T>> future : futures)
+		{
+			try
+			{
+				results.addAll(future.get());
+			}
+			catch (ExecutionException e)
+			{
+				IdeLog.logError(JSCorePlugin.getDefault(), e.getCause());
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				for (Future<Collection<? extends T>> other : futures)
+				{
+					other.cancel(false);
+				}
+				break;
+			}
+		}
+		results.trimToSize();
+		return results;
+	}
+
+	/**
+	 * Runs the query against the indices one after the other on the calling thread.
+	 * 
+	 * @param query
+	 * @return
+	 */
+	private <T> List<T> querySequentially(IndexQuery<T> query)
+	{
+		ArrayList<T> results = new ArrayList<T>();
 		for (Index index : indices)
 		{
-			properties.addAll(_reader.getFunctions(index, typeName, memberName));
-			properties.addAll(_reader.getProperties(index, typeName, memberName));
+			results.addAll(query.query(index));
 		}
-		return properties;
+		results.trimToSize();
+		return results;
+	}
+
+	/**
+	 * Gets all the functions and properties with the given name for the given type.
+	 * 
+	 * @param typeName
+	 * @param memberName
+	 * @return
+	 */
+	public Collection<PropertyElement> getTypeMembers(final String typeName, final String memberName)
+	{
+		return queryAll(new IndexQuery<PropertyElement>()
+		{
+			public Collection<PropertyElement> query(Index index)
+			{
+				List<PropertyElement> properties = new ArrayList<PropertyElement>();
+				properties.addAll(_reader.getFunctions(index, typeName, memberName));
+				properties.addAll(_reader.getProperties(index, typeName, memberName));
+				return properties;
+			}
+		});
 	}
 
 	/**
@@ -284,22 +520,24 @@ public class JSIndexQueryHelper
 	 * @param typeNames
 	 * @return
 	 */
-	public Collection<PropertyElement> getTypeMembers(List<String> typeNames)
+	public Collection<PropertyElement> getTypeMembers(final List<String> typeNames)
 	{
 		if (CollectionsUtil.isEmpty(typeNames))
 		{
 			return Collections.emptyList();
 		}
-		ArrayList<PropertyElement> properties = new ArrayList<PropertyElement>();
 		// FIXME Can we search both functions and properties at the same time?
 		// FIXME What about "sub-types" that aren't hung explicitly off owning type? i.e. "Global.console"
-		for (Index index : indices)
+		return queryAll(new IndexQuery<PropertyElement>()
 		{
-			properties.addAll(_reader.getFunctions(index, typeNames));
-			properties.addAll(_reader.getProperties(index, typeNames));
-		}
-		properties.trimToSize();
-		return properties;
+			public Collection<PropertyElement> query(Index index)
+			{
+				List<PropertyElement> properties = new ArrayList<PropertyElement>();
+				properties.addAll(_reader.getFunctions(index, typeNames));
+				properties.addAll(_reader.getProperties(index, typeNames));
+				return properties;
+			}
+		});
 	}
 
 	/**
@@ -309,19 +547,19 @@ public class JSIndexQueryHelper
 	 * @param typeName
 	 * @return
 	 */
-	public Collection<PropertyElement> getTypeProperties(String typeName)
+	public Collection<PropertyElement> getTypeProperties(final String typeName)
 	{
 		if (StringUtil.isEmpty(typeName))
 		{
 			return Collections.emptyList();
 		}
-		ArrayList<PropertyElement> properties = new ArrayList<PropertyElement>();
-		for (Index index : indices)
+		return queryAll(new IndexQuery<PropertyElement>()
 		{
-			properties.addAll(_reader.getProperties(index, typeName));
-		}
-		properties.trimToSize();
-		return properties;
+			public Collection<PropertyElement> query(Index index)
+			{
+				return _reader.getProperties(index, typeName);
+			}
+		});
 	}
 
 	/**
@@ -332,15 +570,15 @@ public class JSIndexQueryHelper
 	 * @param eventName
 	 * @return
 	 */
-	public List<EventElement> getEvents(String owningType, String eventName)
+	public List<EventElement> getEvents(final String owningType, final String eventName)
 	{
-		ArrayList<EventElement> events = new ArrayList<EventElement>();
-		for (Index index : indices)
+		return queryAll(new IndexQuery<EventElement>()
 		{
-			events.addAll(_reader.getEvents(index, owningType, eventName));
-		}
-		events.trimToSize();
-		return events;
+			public Collection<EventElement> query(Index index)
+			{
+				return _reader.getEvents(index, owningType, eventName);
+			}
+		});
 	}
 
 	/**
@@ -380,48 +618,48 @@ public class JSIndexQueryHelper
 		return null;
 	}
 
-	public List<EventElement> getEvents(List<String> owningTypes)
+	public List<EventElement> getEvents(final List<String> owningTypes)
 	{
-		ArrayList<EventElement> events = new ArrayList<EventElement>();
-		for (Index index : indices)
+		return queryAll(new IndexQuery<EventElement>()
 		{
-			events.addAll(_reader.getEvents(index, owningTypes));
-		}
-		events.trimToSize();
-		return events;
+			public Collection<EventElement> query(Index index)
+			{
+				return _reader.getEvents(index, owningTypes);
+			}
+		});
 	}
 
-	public List<PropertyElement> getProperties(List<String> allTypes)
+	public List<PropertyElement> getProperties(final List<String> allTypes)
 	{
-		ArrayList<PropertyElement> properties = new ArrayList<PropertyElement>();
-		for (Index index : indices)
+		return queryAll(new IndexQuery<PropertyElement>()
 		{
-			properties.addAll(_reader.getProperties(index, allTypes));
-		}
-		properties.trimToSize();
-		return properties;
+			public Collection<PropertyElement> query(Index index)
+			{
+				return _reader.getProperties(index, allTypes);
+			}
+		});
 	}
 
-	public List<FunctionElement> getFunctions(String typeName, String propertyName)
+	public List<FunctionElement> getFunctions(final String typeName, final String propertyName)
 	{
-		ArrayList<FunctionElement> functions = new ArrayList<FunctionElement>();
-		for (Index index : indices)
+		return queryAll(new IndexQuery<FunctionElement>()
 		{
-			functions.addAll(_reader.getFunctions(index, typeName, propertyName));
-		}
-		functions.trimToSize();
-		return functions;
+			public Collection<FunctionElement> query(Index index)
+			{
+				return _reader.getFunctions(index, typeName, propertyName);
+			}
+		});
 	}
 
-	public List<PropertyElement> getProperties(String typeName, String propertyName)
+	public List<PropertyElement> getProperties(final String typeName, final String propertyName)
 	{
-		ArrayList<PropertyElement> properties = new ArrayList<PropertyElement>();
-		for (Index index : indices)
+		return queryAll(new IndexQuery<PropertyElement>()
 		{
-			properties.addAll(_reader.getProperties(index, typeName, propertyName));
-		}
-		properties.trimToSize();
-		return properties;
+			public Collection<PropertyElement> query(Index index)
+			{
+				return _reader.getProperties(index, typeName, propertyName);
+			}
+		});
 	}
 
 	/**
@@ -434,15 +672,17 @@ public class JSIndexQueryHelper
 	 *            or exact matching)
 	 * @return
 	 */
-	public Collection<String> getTypeNames(String pattern, int matchFlags)
+	public Collection<String> getTypeNames(final String pattern, final int matchFlags)
 	{
-		ArrayList<String> properties = new ArrayList<String>();
-		for (Index index : indices)
+		List<String> typeNames = queryAll(new IndexQuery<String>()
 		{
-			properties.addAll(_reader.getTypeNames(index, pattern, matchFlags));
-		}
-		properties.trimToSize();
-		return properties;
+			public Collection<String> query(Index index)
+			{
+				return _reader.getTypeNames(index, pattern, matchFlags);
+			}
+		});
+		// the same type is often defined in several indices
+		return new ArrayList<String>(new LinkedHashSet<String>(typeNames));
 	}
 
 	/**
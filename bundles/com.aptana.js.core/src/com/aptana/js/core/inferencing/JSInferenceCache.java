@@ -0,0 +1,183 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.js.core.inferencing;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.aptana.js.core.index.JSIndexQueryHelper;
+import com.aptana.js.core.parsing.ast.JSNode;
+import com.aptana.js.core.parsing.ast.JSParseRootNode;
+import com.aptana.parsing.ast.IParseNode;
+
+/**
+ * Remembers what type inference found in one AST, so that content assist, hovers and hyperlinks don't infer the same
+ * nodes over and over. The cache hangs off the AST's root node, which is replaced on every reconcile, and is dropped as
+ * soon as any of the indices it was computed against changes.
+ * <p>
+ * It also holds the global scope of the AST. Inferring types fills in the types of the scope's symbols, so that is
+ * cached along with the rest. Inference using the scope must synchronize on the cache.
+ * </p>
+ */
+public class JSInferenceCache
+{
+	/**
+	 * Stands for a module for which no type was found.
+	 */
+	private static final String NO_TYPE = ""; //$NON-NLS-1$
+
+	private final JSParseRootNode root;
+	private final long generation;
+	private JSScope globals;
+	private final Map<JSNode, Map<JSScope, List<String>>> types;
+	private final Map<String, String> moduleTypes;
+
+	/**
+	 * Returns the cache of the AST containing the given node, for the current content of the indices of the query
+	 * helper. Returns null if the node isn't part of a JS AST.
+	 * 
+	 * @param node
+	 * @param queryHelper
+	 * @return
+	 */
+	public static JSInferenceCache getCache(IParseNode node, JSIndexQueryHelper queryHelper)
+	{
+		IParseNode root = node;
+		while (root != null && !(root instanceof JSParseRootNode))
+		{
+			root = root.getParent();
+		}
+		if (root == null || queryHelper == null)
+		{
+			return null;
+		}
+		return ((JSParseRootNode) root).getInferenceCache(queryHelper.getGeneration());
+	}
+
+	/**
+	 * JSInferenceCache
+	 * 
+	 * @param root
+	 * @param generation
+	 *            the generation of the indices the inferred types come from
+	 */
+	public JSInferenceCache(JSParseRootNode root, long generation)
+	{
+		this.root = root;
+		this.generation = generation;
+		this.types = new IdentityHashMap<JSNode, Map<JSScope, List<String>>>();
+		this.moduleTypes = new HashMap<String, String>();
+	}
+
+	/**
+	 * getGeneration
+	 * 
+	 * @return
+	 */
+	public long getGeneration()
+	{
+		return generation;
+	}
+
+	/**
+	 * Returns the global scope of the AST, collecting it the first time.
+	 * 
+	 * @return
+	 */
+	public synchronized JSScope getGlobals()
+	{
+		if (globals == null)
+		{
+			globals = root.getGlobals();
+		}
+		return globals;
+	}
+
+	/**
+	 * Returns the innermost scope containing the given offset, the global scope if there's none.
+	 * 
+	 * @param offset
+	 * @return
+	 */
+	public JSScope getScopeAtOffset(int offset)
+	{
+		JSScope global = getGlobals();
+		JSScope candidate = global.getScopeAtOffset(offset);
+		return (candidate != null) ? candidate : global;
+	}
+
+	/**
+	 * Returns the types inferred for the node in the given scope, null if they haven't been inferred yet.
+	 * 
+	 * @param node
+	 * @param scope
+	 * @return
+	 */
+	public synchronized List<String> getTypes(JSNode node, JSScope scope)
+	{
+		Map<JSScope, List<String>> byScope = types.get(node);
+		return (byScope == null) ? null : byScope.get(scope);
+	}
+
+	/**
+	 * putTypes
+	 * 
+	 * @param node
+	 * @param scope
+	 * @param nodeTypes
+	 */
+	public synchronized void putTypes(JSNode node, JSScope scope, List<String> nodeTypes)
+	{
+		Map<JSScope, List<String>> byScope = types.get(node);
+		if (byScope == null)
+		{
+			byScope = new IdentityHashMap<JSScope, List<String>>(2);
+			types.put(node, byScope);
+		}
+		byScope.put(scope, Collections.unmodifiableList(nodeTypes));
+	}
+
+	/**
+	 * Returns whether the type of the given required module has been looked up already.
+	 * 
+	 * @param moduleId
+	 * @return
+	 */
+	public synchronized boolean hasModuleType(String moduleId)
+	{
+		return moduleTypes.containsKey(moduleId);
+	}
+
+	/**
+	 * Returns the type of the object exported by the given required module, null if there's none or it hasn't been
+	 * looked up yet.
+	 * 
+	 * @param moduleId
+	 * @return
+	 */
+	public synchronized String getModuleType(String moduleId)
+	{
+		String type = moduleTypes.get(moduleId);
+		return (type == NO_TYPE) ? null : type;
+	}
+
+	/**
+	 * putModuleType
+	 * 
+	 * @param moduleId
+	 * @param typeName
+	 *            may be null
+	 */
+	public synchronized void putModuleType(String moduleId, String typeName)
+	{
+		moduleTypes.put(moduleId, (typeName == null) ? NO_TYPE : typeName);
+	}
+}
@@ -79,6 +79,7 @@ public class JSNodeTypeInferrer extends JSTreeWalker
 	private JSIndexQueryHelper _queryHelper;
 	private IAliasResolver _factory;
 	private IPath _projectLocation;
+	private JSInferenceCache _cache;
 	/**
 	 * A monitor we use mostly to monitor cancellation, but also to report progress (though it's on an unknown/number of
 	 * units!)
@@ -102,8 +103,24 @@ public class JSNodeTypeInferrer extends JSTreeWalker
 
 	public JSNodeTypeInferrer(JSScope scope, Index projectIndex, URI location, JSIndexQueryHelper queryHelper,
 			IProgressMonitor monitor)
+	{
+		this(scope, projectIndex, location, queryHelper, null, monitor);
+	}
+
+	/**
+	 * @param scope
+	 * @param projectIndex
+	 * @param location
+	 * @param queryHelper
+	 * @param cache
+	 *            where to look up and remember the types of nodes and required modules. May be null.
+	 * @param monitor
+	 */
+	public JSNodeTypeInferrer(JSScope scope, Index projectIndex, URI location, JSIndexQueryHelper queryHelper,
+			JSInferenceCache cache, IProgressMonitor monitor)
 	{
 		this._scope = scope;
+		this._cache = cache;
 		this._index = projectIndex;
 		this._location = location;
 		this._queryHelper = queryHelper;
@@ -272,16 +289,31 @@ public class JSNodeTypeInferrer extends JSTreeWalker
 	{
 		if (node instanceof JSNode)
 		{
+			JSNode jsNode = (JSNode) node;
+			if (this._cache != null)
+			{
+				List<String> types = this._cache.getTypes(jsNode, scope);
+				if (types != null)
+				{
+					return types;
+				}
+			}
+
 			// create new nested walker
 			// FIXME How can we avoid total recursion here? can we re-use ourself somehow?
 			JSNodeTypeInferrer walker = new JSNodeTypeInferrer(scope, this._index, this._location, this._queryHelper,
-					_monitor.newChild(1));
+					this._cache, _monitor.newChild(1));
 
 			// collect types
-			walker.visit((JSNode) node);
+			walker.visit(jsNode);
 
 			// return collected types
-			return walker.getTypes();
+			List<String> types = walker.getTypes();
+			if (this._cache != null)
+			{
+				this._cache.putTypes(jsNode, scope, types);
+			}
+			return types;
 		}
 
 		return Collections.emptyList();
@@ -775,8 +807,7 @@ public class JSNodeTypeInferrer extends JSTreeWalker
 					String moduleId = CommonJSResolver.getModuleId(arg);
 					if (!StringUtil.isEmpty(moduleId))
 					{
-						IPath absolutePath = resolve(moduleId);
-						String typeName = _queryHelper.getModuleType(absolutePath);
+						String typeName = getModuleType(moduleId);
 						if (typeName != null)
 						{
 							this.addType(typeName);
@@ -833,6 +864,26 @@ public class JSNodeTypeInferrer extends JSTreeWalker
 		_monitor.worked(1);
 	}
 
+	/**
+	 * Returns the type of the object exported by the given required module, null if it can't be found.
+	 * 
+	 * @param moduleId
+	 * @return
+	 */
+	private String getModuleType(String moduleId)
+	{
+		if (this._cache != null && this._cache.hasModuleType(moduleId))
+		{
+			return this._cache.getModuleType(moduleId);
+		}
+		String typeName = _queryHelper.getModuleType(resolve(moduleId));
+		if (this._cache != null)
+		{
+			this._cache.putModuleType(moduleId, typeName);
+		}
+		return typeName;
+	}
+
 	protected IPath resolve(String moduleId)
 	{
 		return RequireResolverFactory.resolve(moduleId, getProject(), Path.fromPortableString(_location.getPath())
@@ -7,6 +7,7 @@
  */
 package com.aptana.js.core.model;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -34,6 +35,24 @@ public class EventPropertyElement extends BaseElement implements IHasPredefinedV
 	{
 	}
 
+	/**
+	 * addConstant
+	 * 
+	 * @param constant
+	 */
+	public void addConstant(String constant)
+	{
+		if (constant != null && constant.length() > 0)
+		{
+			if (this._constants == null)
+			{
+				this._constants = new ArrayList<String>();
+			}
+
+			this._constants.add(constant);
+		}
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see com.aptana.editor.js.contentassist.model.BaseElement#fromJSON(java.util.Map)
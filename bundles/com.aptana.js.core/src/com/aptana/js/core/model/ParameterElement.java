@@ -41,6 +41,24 @@ public class ParameterElement implements Convertible, IHasPredefinedValues
 	{
 	}
 
+	/**
+	 * addConstant
+	 * 
+	 * @param constant
+	 */
+	public void addConstant(String constant)
+	{
+		if (constant != null && constant.length() > 0)
+		{
+			if (this._constants == null)
+			{
+				this._constants = new ArrayList<String>();
+			}
+
+			this._constants.add(constant);
+		}
+	}
+
 	/**
 	 * addType
 	 * 
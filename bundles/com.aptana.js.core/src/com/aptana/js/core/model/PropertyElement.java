@@ -62,6 +62,24 @@ public class PropertyElement extends BaseElement implements IHasPredefinedValues
 		this._constants = new ArrayList<String>(base.getConstants());
 	}
 
+	/**
+	 * addConstant
+	 * 
+	 * @param constant
+	 */
+	public void addConstant(String constant)
+	{
+		if (constant != null && constant.length() > 0)
+		{
+			if (this._constants == null)
+			{
+				this._constants = new ArrayList<String>();
+			}
+
+			this._constants.add(constant);
+		}
+	}
+
 	/**
 	 * addExample
 	 * 
@@ -84,6 +84,7 @@ import com.aptana.js.core.parsing.ast.JSYieldNode;
 import com.aptana.parsing.ast.IParseNode;
 import com.aptana.parsing.ast.IParseRootNode;
 import com.aptana.parsing.ast.ParseNode;
+import com.oracle.js.parser.Parser;
 import com.oracle.js.parser.TokenType;
 import com.oracle.js.parser.ir.AccessNode;
 import com.oracle.js.parser.ir.BinaryNode;
@@ -127,7 +128,7 @@ import com.oracle.js.parser.ir.visitor.NodeVisitor;
 
 import beaver.Symbol;
 
-class GraalASTWalker extends NodeVisitor<LexicalContext>
+class GraalASTWalker extends NodeVisitor<LexicalContext> implements Parser.StatementHandler
 {
 
 	private IParseRootNode fRootNode;
@@ -141,6 +142,7 @@ class GraalASTWalker extends NodeVisitor<LexicalContext>
 	private Module module;
 	private ParenWrapChecker parenCheck;
 	private String fDefaultExportName;
+	private RuntimeException fStatementException;
 
 	public GraalASTWalker(String source, LexicalContext lc)
 	{
@@ -2118,6 +2120,37 @@ class GraalASTWalker extends NodeVisitor<LexicalContext>
 		return fRootNode;
 	}
 
+	/**
+	 * Converts a top level statement of a script while it is being parsed. The script's function node still needs to
+	 * be visited once parsing is done to finish the root node.
+	 */
+	public void handle(Statement statement)
+	{
+		if (fStatementException != null)
+		{
+			return;
+		}
+		try
+		{
+			statement.accept(this);
+		}
+		catch (RuntimeException e)
+		{
+			// Keep it from being reported as a syntax error by the parser
+			fStatementException = e;
+		}
+	}
+
+	/**
+	 * Returns the exception thrown while converting a statement passed to {@link #handle(Statement)}, if any.
+	 * 
+	 * @return
+	 */
+	RuntimeException getStatementException()
+	{
+		return fStatementException;
+	}
+
 	/**
 	 * vars and function declarations get "hoisted" in the Graal AST so we may visit items out of their original source
 	 * order. This re-orders back to original source order.
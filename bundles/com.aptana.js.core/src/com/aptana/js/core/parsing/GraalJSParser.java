@@ -2,22 +2,44 @@ package com.aptana.js.core.parsing;
 
 import java.io.ByteArrayOutputStream;
 import java.io.PrintWriter;
+import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.regex.Pattern;
 
 import com.aptana.core.build.IProblem.Severity;
+import com.aptana.core.logging.IdeLog;
 import com.aptana.core.util.StringUtil;
+import com.aptana.js.core.IDebugScopes;
 import com.aptana.js.core.IJSConstants;
+import com.aptana.js.core.JSCorePlugin;
 import com.aptana.js.core.parsing.ast.IJSNodeTypes;
+import com.aptana.js.core.parsing.ast.JSAbstractForNode;
+import com.aptana.js.core.parsing.ast.JSArrowFunctionNode;
+import com.aptana.js.core.parsing.ast.JSClassNode;
 import com.aptana.js.core.parsing.ast.JSCommentNode;
+import com.aptana.js.core.parsing.ast.JSEmptyNode;
+import com.aptana.js.core.parsing.ast.JSFunctionNode;
+import com.aptana.js.core.parsing.ast.JSGeneratorFunctionNode;
+import com.aptana.js.core.parsing.ast.JSIfNode;
 import com.aptana.js.core.parsing.ast.JSParseRootNode;
+import com.aptana.js.core.parsing.ast.JSStatementsNode;
+import com.aptana.js.core.parsing.ast.JSSwitchNode;
+import com.aptana.js.core.parsing.ast.JSTryNode;
+import com.aptana.js.core.parsing.ast.JSWhileNode;
+import com.aptana.js.core.parsing.ast.JSWithNode;
+import com.aptana.js.internal.core.parsing.ParseGoalDetector;
+import com.aptana.js.internal.core.parsing.ParseGoalDetector.Goal;
 import com.aptana.parsing.AbstractParser;
+import com.aptana.parsing.IIncrementalParser;
 import com.aptana.parsing.IParseState;
+import com.aptana.parsing.ParseResult;
 import com.aptana.parsing.WorkingParseResult;
 import com.aptana.parsing.ast.IParseError;
 import com.aptana.parsing.ast.IParseNode;
 import com.aptana.parsing.ast.IParseRootNode;
 import com.aptana.parsing.ast.ParseError;
+import com.aptana.parsing.ast.ParseNode;
 import com.aptana.parsing.util.ParseUtil;
 import com.oracle.js.parser.ErrorManager;
 import com.oracle.js.parser.Parser;
@@ -28,25 +50,65 @@ import com.oracle.js.parser.TokenType;
 import com.oracle.js.parser.ir.FunctionNode;
 import com.oracle.js.parser.ir.LexicalContext;
 
-public class GraalJSParser extends AbstractParser
+public class GraalJSParser extends AbstractParser implements IIncrementalParser
 {
 
 	private static final String DEFAULT_FILENAME = "filename.js"; //$NON-NLS-1$
+	private static final String USE_STRICT = "use strict"; //$NON-NLS-1$
+
+	/**
+	 * Matches the keywords a script fails on when it's really a module, i.e. "Expected an operand but found import".
+	 */
+	private static final Pattern MODULE_KEYWORD = Pattern.compile("\\b(import|export)\\b"); //$NON-NLS-1$
+
+	/**
+	 * How many times a reparse may grow its region over the following statements before giving up.
+	 */
+	private static final int MAX_REGION_EXTENSIONS = 3;
+
+	/**
+	 * The function wrapped around the statements of a body when it's reparsed on its own.
+	 */
+	private static final String FUNCTION_HEADER = "(function(){"; //$NON-NLS-1$
+	private static final String GENERATOR_HEADER = "(function*(){"; //$NON-NLS-1$
+	private static final String FUNCTION_FOOTER = "})"; //$NON-NLS-1$
+
 	private CommentCollectingParser fParser;
+	private GraalASTWalker fWalker;
+
+	/**
+	 * Whether scripts are converted statement by statement while Graal parses them, rather than after building the
+	 * whole Graal tree.
+	 */
+	private final boolean fConvertWhileParsing;
+
+	public GraalJSParser()
+	{
+		this(true);
+	}
+
+	/**
+	 * GraalJSParser
+	 * 
+	 * @param convertWhileParsing
+	 *            if true, each top level statement of a script is converted to our AST as soon as Graal has parsed it
+	 *            and its Graal nodes are dropped. This keeps the peak memory of a parse close to the size of our AST
+	 *            alone. Modules are always converted once parsed, since exports can refer to earlier statements.
+	 */
+	public GraalJSParser(boolean convertWhileParsing)
+	{
+		fConvertWhileParsing = convertWhileParsing;
+	}
 
 	protected void parse(IParseState parseState, final WorkingParseResult working) throws Exception
 	{
 		String source = parseState.getSource();
 		String filename = parseState.getFilename();
-		if (filename == null)
-		{
-			filename = DEFAULT_FILENAME;
-		}
 
 		try
 		{
 			FunctionNode graalAST = parse(filename, 0, source, working);
-			JSParseRootNode ast = (JSParseRootNode) convertAST(source, graalAST);
+			JSParseRootNode ast = (JSParseRootNode) convertAST(graalAST);
 			if (ast != null)
 			{
 				ast.setCommentNodes(fParser.getCommentNodes());
@@ -62,6 +124,10 @@ public class GraalJSParser extends AbstractParser
 				{
 					// shift all offsets to the correct position
 					ParseUtil.addOffset(ast, start);
+					for (IParseNode comment : ast.getCommentNodes())
+					{
+						ParseUtil.addOffset(comment, start);
+					}
 				}
 				working.setParseResult(ast);
 			}
@@ -78,6 +144,358 @@ public class GraalJSParser extends AbstractParser
 
 	}
 
+	/**
+	 * Reparses the statements touched by the edit, plus one statement on each side so that statements joined or split
+	 * by the edit are found, and reuses the other nodes of the previous AST. The statements are those of the innermost
+	 * function body holding the whole edit, so that files wrapped in a single function such as IIFEs and UMD bundles
+	 * are handled too, or else the top level statements of the script. The region grows over statements that aren't
+	 * closed by a ';' or by the '}' of a block since the edit may continue them. Modules, ASTs with errors, edits whose
+	 * region has errors on its own and top level edits touching every statement aren't handled and return null.<br>
+	 * The previous AST is taken over rather than copied: the nodes before the edit are moved into the new AST as they
+	 * are, and the nodes after the edit and those enclosing it are shifted in place.
+	 */
+	public ParseResult reparse(IParseState parseState, ParseResult previous, int offset, int removedLength,
+			int insertedLength) throws Exception // $codepro.audit.disable declaredExceptions
+	{
+		String source = parseState.getSource();
+		IParseRootNode previousRoot = previous.getRootNode();
+		if (source == null || !(previousRoot instanceof JSParseRootNode)
+				|| !previous.getErrors().isEmpty()
+				|| ParseGoalDetector.getInstance().predictGoal(parseState.getFilename(), source) != Goal.SCRIPT)
+		{
+			return null;
+		}
+
+		// find the innermost function body holding the whole edit, in the coordinates of the previous AST
+		int base = parseState.getStartingOffset();
+		int editStart = base + offset;
+		int editEnd = editStart + removedLength;
+		boolean strict = previousRoot.hasChildren() && isUseStrict(previousRoot.getChild(0), source, base, editStart);
+		IParseNode container = previousRoot;
+		String header = StringUtil.EMPTY;
+		IParseNode node = previousRoot;
+		while ((node = getEnclosingChild(node, editStart, editEnd)) != null)
+		{
+			if (node instanceof JSClassNode)
+			{
+				// class bodies are always strict
+				strict = true;
+			}
+			else if (node instanceof JSFunctionNode)
+			{
+				IParseNode body = ((JSFunctionNode) node).getBody();
+				if (body instanceof JSStatementsNode && body.getStartingOffset() < editStart
+						&& editEnd <= body.getEndingOffset() && source.charAt(body.getStartingOffset() - base) == '{')
+				{
+					container = body;
+					header = (node instanceof JSGeneratorFunctionNode) ? GENERATOR_HEADER : FUNCTION_HEADER;
+					strict |= body.hasChildren() && isUseStrict(body.getChild(0), source, base, editStart);
+				}
+			}
+		}
+		boolean topLevel = (container == previousRoot);
+		IParseNode[] children = container.getChildren();
+		int count = children.length;
+		if (topLevel && count < 2)
+		{
+			return null;
+		}
+
+		// find the statements touched by the edit
+		int first = 0;
+		while (first < count && children[first].getEndingOffset() + 1 < editStart)
+		{
+			first++;
+		}
+		int last = count - 1;
+		while (last >= 0 && children[last].getStartingOffset() > editEnd)
+		{
+			last--;
+		}
+		first = Math.max(first - 1, 0);
+		last = Math.min(last + 1, count - 1);
+
+		// the source before the edit is the same in both versions, so the terminators of earlier statements are still
+		// there
+		int regionStart = topLevel ? base : container.getStartingOffset() + 1;
+		while (first > 0)
+		{
+			int terminator = getTerminator(children[first - 1], source, base, editStart);
+			if (terminator != -1)
+			{
+				regionStart = terminator + 1;
+				break;
+			}
+			first--;
+		}
+
+		int delta = insertedLength - removedLength;
+		int containerEnd = topLevel ? base + source.length() - delta : container.getEndingOffset();
+		for (int extensions = 0;; extensions++)
+		{
+			if (topLevel && first == 0 && last == count - 1)
+			{
+				return null;
+			}
+			int regionEndOld = (last + 1 < count) ? children[last + 1].getStartingOffset() : containerEnd;
+			String region = source.substring(regionStart - base, regionEndOld + delta - base);
+			// a body is parsed inside a function, as "return" fails anywhere else
+			String text = topLevel ? region : header + region + FUNCTION_FOOTER;
+
+			WorkingParseResult working = new WorkingParseResult();
+			FunctionNode graalAST = parse(createEnvironment(strict), Source.sourceFor(DEFAULT_FILENAME, text), text,
+					Goal.SCRIPT, 0, working);
+			if (graalAST == null || !working.getErrors().isEmpty())
+			{
+				return null;
+			}
+			IParseNode[] comments = fParser.getCommentNodes();
+			IParseRootNode regionRoot = convertAST(graalAST);
+			if (regionRoot == null)
+			{
+				return null;
+			}
+
+			IParseNode[] parsed = topLevel ? regionRoot.getChildren() : getWrappedStatements(regionRoot);
+			if (parsed == null)
+			{
+				return null;
+			}
+			if (last + 1 < count && parsed.length > 0
+					&& getTerminator(parsed[parsed.length - 1], text, 0, header.length() + region.length()) == -1)
+			{
+				// the last statement may go on into the next one
+				if (extensions == MAX_REGION_EXTENSIONS)
+				{
+					return null;
+				}
+				last++;
+				continue;
+			}
+			if (parsed.length == 1 && isPlaceholder(parsed[0]) && (first > 0 || last < count - 1))
+			{
+				// the region has no statements left but the rest of the body does
+				parsed = new IParseNode[0];
+			}
+
+			int shift = regionStart - header.length();
+			IParseNode[] nodes = new IParseNode[first + parsed.length + count - last - 1];
+			System.arraycopy(children, 0, nodes, 0, first);
+			for (int i = 0; i < parsed.length; i++)
+			{
+				ParseUtil.addOffset(parsed[i], shift);
+				nodes[first + i] = parsed[i];
+			}
+			for (int i = last + 1; i < count; i++)
+			{
+				if (delta != 0)
+				{
+					ParseUtil.addOffset(children[i], delta);
+				}
+				nodes[first + parsed.length + i - last - 1] = children[i];
+			}
+
+			IParseNode[] previousComments = previousRoot.getCommentNodes();
+			List<IParseNode> newComments = new ArrayList<IParseNode>(previousComments.length + comments.length);
+			for (IParseNode comment : previousComments)
+			{
+				if (comment.getEndingOffset() < regionStart)
+				{
+					newComments.add(comment);
+				}
+			}
+			for (IParseNode comment : comments)
+			{
+				ParseUtil.addOffset(comment, shift);
+				newComments.add(comment);
+			}
+			for (IParseNode comment : previousComments)
+			{
+				if (comment.getStartingOffset() >= regionEndOld)
+				{
+					if (delta != 0)
+					{
+						ParseUtil.addOffset(comment, delta);
+					}
+					newComments.add(comment);
+				}
+			}
+
+			JSParseRootNode root = new JSParseRootNode();
+			if (topLevel)
+			{
+				root.setChildren(nodes);
+			}
+			else
+			{
+				((ParseNode) container).setChildren(nodes);
+				resizeEnclosingNodes(container, editStart, delta);
+				root.setChildren(previousRoot.getChildren());
+			}
+			root.setLocation(base, base + source.length() - 1);
+			root.setCommentNodes(newComments.toArray(new IParseNode[newComments.size()]));
+			working.setParseResult(root);
+			return working.getImmutableResult();
+		}
+	}
+
+	/**
+	 * Returns the child of the node whose range holds the whole edit, null if none does.
+	 * 
+	 * @param node
+	 * @param offset
+	 * @param editEnd
+	 * @return
+	 */
+	private static IParseNode getEnclosingChild(IParseNode node, int offset, int editEnd)
+	{
+		for (IParseNode child : node.getChildren())
+		{
+			if (child.getStartingOffset() <= offset && editEnd <= child.getEndingOffset() + 1)
+			{
+				return child;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the statements of the function wrapped around a reparsed body, null if the region didn't parse as the
+	 * body of that function alone.
+	 * 
+	 * @param root
+	 * @return
+	 */
+	private static IParseNode[] getWrappedStatements(IParseRootNode root)
+	{
+		if (root.getChildCount() != 1)
+		{
+			return null;
+		}
+		IParseNode node = root.getChild(0);
+		while (!(node instanceof JSFunctionNode))
+		{
+			if (node.getChildCount() != 1)
+			{
+				return null;
+			}
+			node = node.getChild(0);
+		}
+		IParseNode body = ((JSFunctionNode) node).getBody();
+		return (body instanceof JSStatementsNode) ? body.getChildren() : null;
+	}
+
+	/**
+	 * Grows the end of the nodes enclosing an edit, from the reparsed body up to the top level statement holding it, and
+	 * shifts the nodes following each of them.
+	 * 
+	 * @param container
+	 * @param offset
+	 * @param delta
+	 */
+	private static void resizeEnclosingNodes(IParseNode container, int offset, int delta)
+	{
+		if (delta == 0)
+		{
+			return;
+		}
+		for (IParseNode node = container; !(node instanceof IParseRootNode); node = node.getParent())
+		{
+			((ParseNode) node).setLocation(node.getStartingOffset(), node.getEndingOffset() + delta);
+			for (IParseNode sibling : node.getParent().getChildren())
+			{
+				if (sibling != node && sibling.getStartingOffset() > offset)
+				{
+					ParseUtil.addOffset(sibling, delta);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Whether the statement is a "use strict" directive that the edit leaves as it is.
+	 * 
+	 * @param statement
+	 * @param source
+	 * @param base
+	 *            the offset of the source's first character
+	 * @param editStart
+	 * @return
+	 */
+	private static boolean isUseStrict(IParseNode statement, String source, int base, int editStart)
+	{
+		return statement.getEndingOffset() + 1 < editStart
+				&& source.startsWith(USE_STRICT, statement.getStartingOffset() + 1 - base);
+	}
+
+	/**
+	 * Whether the node is the empty statement added to statement lists that have none.
+	 * 
+	 * @param node
+	 * @return
+	 */
+	private static boolean isPlaceholder(IParseNode node)
+	{
+		return node instanceof JSEmptyNode && node.getEndingOffset() < node.getStartingOffset();
+	}
+
+	/**
+	 * Returns the offset of the ';' ending the statement, or of the '}' closing it if it's a block statement, -1 if it
+	 * isn't closed by either before the limit.
+	 * 
+	 * @param statement
+	 * @param source
+	 * @param base
+	 *            the offset of the source's first character
+	 * @param limit
+	 * @return
+	 */
+	private static int getTerminator(IParseNode statement, String source, int base, int limit)
+	{
+		int end = statement.getEndingOffset();
+		if (end < base || end >= limit)
+		{
+			return -1;
+		}
+		char c = source.charAt(end - base);
+		if (c == ';' || (c == '}' && isBlockStatement(statement)))
+		{
+			return end;
+		}
+		for (int i = end + 1; i < limit; i++)
+		{
+			c = source.charAt(i - base);
+			if (c == ';')
+			{
+				return i;
+			}
+			if (!Character.isWhitespace(c))
+			{
+				break;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Whether the statement ends with a block which nothing but "else", "catch" or "finally" could continue, which
+	 * fail to parse on their own.
+	 * 
+	 * @param statement
+	 * @return
+	 */
+	private static boolean isBlockStatement(IParseNode statement)
+	{
+		if (statement instanceof JSFunctionNode)
+		{
+			return !(statement instanceof JSArrowFunctionNode);
+		}
+		return statement instanceof JSClassNode || statement instanceof JSIfNode
+				|| statement instanceof JSAbstractForNode || statement instanceof JSWhileNode
+				|| statement instanceof JSTryNode || statement instanceof JSSwitchNode
+				|| statement instanceof JSStatementsNode || statement instanceof JSWithNode;
+	}
+
 	private IParseError handleError(Exception e)
 	{
 		// print the stack traces to a string!
@@ -88,24 +506,110 @@ public class GraalJSParser extends AbstractParser
 				Severity.ERROR);
 	}
 
-	private IParseRootNode convertAST(final String source, final FunctionNode result)
+	private IParseRootNode convertAST(final FunctionNode result)
 	{
 		if (result == null)
 		{
 			return null;
 		}
 
-		GraalASTWalker astWalker = new GraalASTWalker(source, new LexicalContext());
-		result.accept(astWalker);
-		return astWalker.getRootNode();
+		// When converting while parsing, the walker already holds the top level statements and this only finishes the
+		// root
+		result.accept(fWalker);
+		IParseRootNode root = fWalker.getRootNode();
+		fWalker = null;
+		return root;
 	}
 
+	/**
+	 * Parses the source with the goal predicted by {@link ParseGoalDetector}. If that fails or reports errors and the
+	 * file's extension doesn't require the goal, the source is parsed again with the other goal. A failed script is
+	 * only parsed again as a module when the errors or the source point to import/export statements, so that plain
+	 * syntax errors in scripts aren't parsed twice. If both fail, the script parse's result and errors are kept.
+	 * 
+	 * @param filename
+	 *            the path of the file being parsed, may be null
+	 * @param startOffset
+	 * @param source
+	 * @param working
+	 * @return
+	 */
 	private FunctionNode parse(final String filename, int startOffset, final String source,
 			final WorkingParseResult working)
 	{
-		Source src = Source.sourceFor(filename, source);
+		// Always name the source the same so that error messages don't carry the file's path
+		Source src = Source.sourceFor(DEFAULT_FILENAME, source);
+		ScriptEnvironment env = createEnvironment(false);
+		ParseGoalDetector detector = ParseGoalDetector.getInstance();
 
-		ScriptEnvironment env = ScriptEnvironment.builder().es6(true).strict(false).emptyStatements(true).build();
+		Goal goal = detector.predictGoal(filename, source);
+		FunctionNode result = parse(env, src, source, goal, startOffset, working);
+		// Scripts recover from errors in statements, so a result alone doesn't mean the goal was right
+		boolean success = result != null && working.getErrors().isEmpty();
+		detector.parsed(filename, goal, success);
+		if (!success && detector.getRequiredGoal(filename) == null
+				&& (goal == Goal.MODULE || mayBeModule(source, working.getErrors())))
+		{
+			detector.fellBack();
+			if (IdeLog.isTraceEnabled(JSCorePlugin.getDefault(), IDebugScopes.PARSING))
+			{
+				IdeLog.logTrace(JSCorePlugin.getDefault(),
+						MessageFormat.format("Parsing {0} as {1} failed, trying {2}", filename, goal, goal.other()), //$NON-NLS-1$
+						IDebugScopes.PARSING);
+			}
+
+			FunctionNode firstResult = result;
+			List<IParseError> firstErrors = new ArrayList<IParseError>(working.getErrors());
+			CommentCollectingParser firstParser = fParser;
+			GraalASTWalker firstWalker = fWalker;
+			working.getErrors().clear();
+
+			goal = goal.other();
+			result = parse(env, src, source, goal, startOffset, working);
+			success = result != null && working.getErrors().isEmpty();
+			detector.parsed(filename, goal, success);
+			if (!success && goal == Goal.MODULE)
+			{
+				// Both failed, report the script attempt as we always did
+				working.getErrors().clear();
+				working.getErrors().addAll(firstErrors);
+				fParser = firstParser;
+				fWalker = firstWalker;
+				result = firstResult;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Whether a script that failed to parse may be a module: an error is about an import or export keyword, or the
+	 * source has top level import/export statements.
+	 * 
+	 * @param source
+	 * @param errors
+	 * @return
+	 */
+	private static boolean mayBeModule(String source, List<IParseError> errors)
+	{
+		for (IParseError error : errors)
+		{
+			String message = error.getMessage();
+			if (message != null && MODULE_KEYWORD.matcher(message).find())
+			{
+				return true;
+			}
+		}
+		return ParseGoalDetector.hasModuleSyntax(source);
+	}
+
+	private static ScriptEnvironment createEnvironment(boolean strict)
+	{
+		return ScriptEnvironment.builder().es6(true).strict(strict).emptyStatements(true).build();
+	}
+
+	private FunctionNode parse(ScriptEnvironment env, Source src, String source, Goal goal, int startOffset,
+			final WorkingParseResult working)
+	{
 		ErrorManager errorManager = new ErrorManager()
 		{
 			@Override
@@ -122,18 +626,25 @@ public class GraalJSParser extends AbstractParser
 		};
 		// Subclass and collect comments too
 		fParser = new CommentCollectingParser(env, src, errorManager);
+		fWalker = new GraalASTWalker(source, new LexicalContext());
 
-		// TODO Can we do a quick peek/guess based on a regexp to find imports/exports at top-level?
-		// FIXME Based on file extensions, choose module goal explicitly for *.mjs files!
+		int length = src.getLength() - startOffset;
+		if (goal == Goal.MODULE)
+		{
+			// This also implicitly does strict mode.
+			return fParser.parseModule(DEFAULT_FILENAME, startOffset, length);
+		}
 
-		// First try as module. This also implicitly does strict mode.
-		FunctionNode result = fParser.parseModule(filename, startOffset, source.length() - startOffset);
-		if (result == null || errorManager.getParserException() != null)
+		if (fConvertWhileParsing)
 		{
-			// Reset state and fall back to non-strict script as our goal
-			working.getErrors().clear();
-			fParser = new CommentCollectingParser(env, src, errorManager);
-			result = fParser.parse(filename, startOffset, source.length() - startOffset, false);
+			fParser.setStatementHandler(fWalker);
+		}
+		FunctionNode result = fParser.parse(DEFAULT_FILENAME, startOffset, length, false);
+		RuntimeException e = fWalker.getStatementException();
+		if (e != null)
+		{
+			// Don't let the parser report our own failure as a syntax error
+			throw e;
 		}
 		return result;
 	}
@@ -0,0 +1,996 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.js.core.parsing;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import beaver.Symbol;
+
+import com.aptana.js.core.parsing.ast.JSArgumentsNode;
+import com.aptana.js.core.parsing.ast.JSArrayNode;
+import com.aptana.js.core.parsing.ast.JSArrowFunctionNode;
+import com.aptana.js.core.parsing.ast.JSAssignmentNode;
+import com.aptana.js.core.parsing.ast.JSBinaryArithmeticOperatorNode;
+import com.aptana.js.core.parsing.ast.JSBinaryBooleanOperatorNode;
+import com.aptana.js.core.parsing.ast.JSBinaryOperatorNode;
+import com.aptana.js.core.parsing.ast.JSBreakNode;
+import com.aptana.js.core.parsing.ast.JSCaseNode;
+import com.aptana.js.core.parsing.ast.JSCatchNode;
+import com.aptana.js.core.parsing.ast.JSClassNode;
+import com.aptana.js.core.parsing.ast.JSCommaNode;
+import com.aptana.js.core.parsing.ast.JSCommentNode;
+import com.aptana.js.core.parsing.ast.JSComputedPropertyNameNode;
+import com.aptana.js.core.parsing.ast.JSConditionalNode;
+import com.aptana.js.core.parsing.ast.JSConstructNode;
+import com.aptana.js.core.parsing.ast.JSContinueNode;
+import com.aptana.js.core.parsing.ast.JSDeclarationNode;
+import com.aptana.js.core.parsing.ast.JSDefaultNode;
+import com.aptana.js.core.parsing.ast.JSDestructuringNode;
+import com.aptana.js.core.parsing.ast.JSDoNode;
+import com.aptana.js.core.parsing.ast.JSElementsNode;
+import com.aptana.js.core.parsing.ast.JSElisionNode;
+import com.aptana.js.core.parsing.ast.JSEmptyNode;
+import com.aptana.js.core.parsing.ast.JSErrorNode;
+import com.aptana.js.core.parsing.ast.JSExportNode;
+import com.aptana.js.core.parsing.ast.JSExportSpecifierNode;
+import com.aptana.js.core.parsing.ast.JSFalseNode;
+import com.aptana.js.core.parsing.ast.JSFinallyNode;
+import com.aptana.js.core.parsing.ast.JSForInNode;
+import com.aptana.js.core.parsing.ast.JSForNode;
+import com.aptana.js.core.parsing.ast.JSForOfNode;
+import com.aptana.js.core.parsing.ast.JSFunctionNode;
+import com.aptana.js.core.parsing.ast.JSGeneratorFunctionNode;
+import com.aptana.js.core.parsing.ast.JSGetElementNode;
+import com.aptana.js.core.parsing.ast.JSGetPropertyNode;
+import com.aptana.js.core.parsing.ast.JSGetterNode;
+import com.aptana.js.core.parsing.ast.JSGroupNode;
+import com.aptana.js.core.parsing.ast.JSIdentifierNode;
+import com.aptana.js.core.parsing.ast.JSIfNode;
+import com.aptana.js.core.parsing.ast.JSImportNode;
+import com.aptana.js.core.parsing.ast.JSImportSpecifierNode;
+import com.aptana.js.core.parsing.ast.JSInitializerNode;
+import com.aptana.js.core.parsing.ast.JSInvokeNode;
+import com.aptana.js.core.parsing.ast.JSLabelledNode;
+import com.aptana.js.core.parsing.ast.JSNameValuePairNode;
+import com.aptana.js.core.parsing.ast.JSNamedImportsNode;
+import com.aptana.js.core.parsing.ast.JSNode;
+import com.aptana.js.core.parsing.ast.JSNullNode;
+import com.aptana.js.core.parsing.ast.JSNumberNode;
+import com.aptana.js.core.parsing.ast.JSObjectNode;
+import com.aptana.js.core.parsing.ast.JSParametersNode;
+import com.aptana.js.core.parsing.ast.JSParseRootNode;
+import com.aptana.js.core.parsing.ast.JSPostUnaryOperatorNode;
+import com.aptana.js.core.parsing.ast.JSPreUnaryOperatorNode;
+import com.aptana.js.core.parsing.ast.JSPrimitiveNode;
+import com.aptana.js.core.parsing.ast.JSRegexNode;
+import com.aptana.js.core.parsing.ast.JSRestElementNode;
+import com.aptana.js.core.parsing.ast.JSReturnNode;
+import com.aptana.js.core.parsing.ast.JSSetterNode;
+import com.aptana.js.core.parsing.ast.JSSpreadElementNode;
+import com.aptana.js.core.parsing.ast.JSStatementsNode;
+import com.aptana.js.core.parsing.ast.JSStringNode;
+import com.aptana.js.core.parsing.ast.JSSwitchNode;
+import com.aptana.js.core.parsing.ast.JSThisNode;
+import com.aptana.js.core.parsing.ast.JSThrowNode;
+import com.aptana.js.core.parsing.ast.JSTrueNode;
+import com.aptana.js.core.parsing.ast.JSTryNode;
+import com.aptana.js.core.parsing.ast.JSVarNode;
+import com.aptana.js.core.parsing.ast.JSWhileNode;
+import com.aptana.js.core.parsing.ast.JSWithNode;
+import com.aptana.js.core.parsing.ast.JSYieldNode;
+import com.aptana.parsing.IParseResultCodec;
+import com.aptana.parsing.ast.IParseNode;
+import com.aptana.parsing.ast.IParseRootNode;
+
+/**
+ * Writes and reads the ASTs built by {@link GraalASTWalker} for the disk parse cache. Nodes are written in pre-order as
+ * their class, offsets, semicolon flag and children followed by the punctuation symbols and flags passed to their
+ * constructors. They're read back through the same constructors the walker uses, so node types derived from operators
+ * and the like come out exactly as after a parse. The walker doesn't attach documentation, so none is stored.
+ */
+public class JSParseResultCodec implements IParseResultCodec
+{
+	/**
+	 * Bump whenever the format or the nodes built by {@link GraalASTWalker} change.
+	 */
+	private static final int VERSION = 1;
+
+	// node kinds, written as a byte
+	private static final int ARGUMENTS = 0;
+	private static final int ARRAY = 1;
+	private static final int ARROW_FUNCTION = 2;
+	private static final int ASSIGNMENT = 3;
+	private static final int BINARY_ARITHMETIC = 4;
+	private static final int BINARY_BOOLEAN = 5;
+	private static final int BREAK = 6;
+	private static final int CASE = 7;
+	private static final int CATCH = 8;
+	private static final int CLASS = 9;
+	private static final int COMMA = 10;
+	private static final int COMPUTED_PROPERTY_NAME = 11;
+	private static final int CONDITIONAL = 12;
+	private static final int CONSTRUCT = 13;
+	private static final int CONTINUE = 14;
+	private static final int DECLARATION = 15;
+	private static final int DEFAULT = 16;
+	private static final int DESTRUCTURING = 17;
+	private static final int DO = 18;
+	private static final int ELEMENTS = 19;
+	private static final int ELISION = 20;
+	private static final int EMPTY = 21;
+	private static final int ERROR = 22;
+	private static final int EXPORT = 23;
+	private static final int EXPORT_SPECIFIER = 24;
+	private static final int FALSE = 25;
+	private static final int FINALLY = 26;
+	private static final int FOR = 27;
+	private static final int FOR_IN = 28;
+	private static final int FOR_OF = 29;
+	private static final int FUNCTION = 30;
+	private static final int GENERATOR_FUNCTION = 31;
+	private static final int GET_ELEMENT = 32;
+	private static final int GET_PROPERTY = 33;
+	private static final int GETTER = 34;
+	private static final int GROUP = 35;
+	private static final int IDENTIFIER = 36;
+	private static final int IF = 37;
+	private static final int IMPORT = 38;
+	private static final int IMPORT_SPECIFIER = 39;
+	private static final int INITIALIZER = 40;
+	private static final int INVOKE = 41;
+	private static final int LABELLED = 42;
+	private static final int NAME_VALUE_PAIR = 43;
+	private static final int NAMED_IMPORTS = 44;
+	private static final int NULL = 45;
+	private static final int NUMBER = 46;
+	private static final int OBJECT = 47;
+	private static final int PARAMETERS = 48;
+	private static final int POST_UNARY_OPERATOR = 49;
+	private static final int PRE_UNARY_OPERATOR = 50;
+	private static final int REGEX = 51;
+	private static final int REST_ELEMENT = 52;
+	private static final int RETURN = 53;
+	private static final int SETTER = 54;
+	private static final int SPREAD_ELEMENT = 55;
+	private static final int STATEMENTS = 56;
+	private static final int STRING = 57;
+	private static final int SWITCH = 58;
+	private static final int THIS = 59;
+	private static final int THROW = 60;
+	private static final int TRUE = 61;
+	private static final int TRY = 62;
+	private static final int VAR = 63;
+	private static final int WHILE = 64;
+	private static final int WITH = 65;
+	private static final int YIELD = 66;
+
+	// string table markers
+	private static final int NULL_STRING = -1;
+	private static final int NEW_STRING = -2;
+
+	private static final Map<Class<?>, Integer> NODE_KINDS;
+
+	static
+	{
+		NODE_KINDS = new HashMap<Class<?>, Integer>();
+		NODE_KINDS.put(JSArgumentsNode.class, ARGUMENTS);
+		NODE_KINDS.put(JSArrayNode.class, ARRAY);
+		NODE_KINDS.put(JSArrowFunctionNode.class, ARROW_FUNCTION);
+		NODE_KINDS.put(JSAssignmentNode.class, ASSIGNMENT);
+		NODE_KINDS.put(JSBinaryArithmeticOperatorNode.class, BINARY_ARITHMETIC);
+		NODE_KINDS.put(JSBinaryBooleanOperatorNode.class, BINARY_BOOLEAN);
+		NODE_KINDS.put(JSBreakNode.class, BREAK);
+		NODE_KINDS.put(JSCaseNode.class, CASE);
+		NODE_KINDS.put(JSCatchNode.class, CATCH);
+		NODE_KINDS.put(JSClassNode.class, CLASS);
+		NODE_KINDS.put(JSCommaNode.class, COMMA);
+		NODE_KINDS.put(JSComputedPropertyNameNode.class, COMPUTED_PROPERTY_NAME);
+		NODE_KINDS.put(JSConditionalNode.class, CONDITIONAL);
+		NODE_KINDS.put(JSConstructNode.class, CONSTRUCT);
+		NODE_KINDS.put(JSContinueNode.class, CONTINUE);
+		NODE_KINDS.put(JSDeclarationNode.class, DECLARATION);
+		NODE_KINDS.put(JSDefaultNode.class, DEFAULT);
+		NODE_KINDS.put(JSDestructuringNode.class, DESTRUCTURING);
+		NODE_KINDS.put(JSDoNode.class, DO);
+		NODE_KINDS.put(JSElementsNode.class, ELEMENTS);
+		NODE_KINDS.put(JSElisionNode.class, ELISION);
+		NODE_KINDS.put(JSEmptyNode.class, EMPTY);
+		NODE_KINDS.put(JSErrorNode.class, ERROR);
+		NODE_KINDS.put(JSExportNode.class, EXPORT);
+		NODE_KINDS.put(JSExportSpecifierNode.class, EXPORT_SPECIFIER);
+		NODE_KINDS.put(JSFalseNode.class, FALSE);
+		NODE_KINDS.put(JSFinallyNode.class, FINALLY);
+		NODE_KINDS.put(JSForNode.class, FOR);
+		NODE_KINDS.put(JSForInNode.class, FOR_IN);
+		NODE_KINDS.put(JSForOfNode.class, FOR_OF);
+		NODE_KINDS.put(JSFunctionNode.class, FUNCTION);
+		NODE_KINDS.put(JSGeneratorFunctionNode.class, GENERATOR_FUNCTION);
+		NODE_KINDS.put(JSGetElementNode.class, GET_ELEMENT);
+		NODE_KINDS.put(JSGetPropertyNode.class, GET_PROPERTY);
+		NODE_KINDS.put(JSGetterNode.class, GETTER);
+		NODE_KINDS.put(JSGroupNode.class, GROUP);
+		NODE_KINDS.put(JSIdentifierNode.class, IDENTIFIER);
+		NODE_KINDS.put(JSIfNode.class, IF);
+		NODE_KINDS.put(JSImportNode.class, IMPORT);
+		NODE_KINDS.put(JSImportSpecifierNode.class, IMPORT_SPECIFIER);
+		NODE_KINDS.put(JSInitializerNode.class, INITIALIZER);
+		NODE_KINDS.put(JSInvokeNode.class, INVOKE);
+		NODE_KINDS.put(JSLabelledNode.class, LABELLED);
+		NODE_KINDS.put(JSNameValuePairNode.class, NAME_VALUE_PAIR);
+		NODE_KINDS.put(JSNamedImportsNode.class, NAMED_IMPORTS);
+		NODE_KINDS.put(JSNullNode.class, NULL);
+		NODE_KINDS.put(JSNumberNode.class, NUMBER);
+		NODE_KINDS.put(JSObjectNode.class, OBJECT);
+		NODE_KINDS.put(JSParametersNode.class, PARAMETERS);
+		NODE_KINDS.put(JSPostUnaryOperatorNode.class, POST_UNARY_OPERATOR);
+		NODE_KINDS.put(JSPreUnaryOperatorNode.class, PRE_UNARY_OPERATOR);
+		NODE_KINDS.put(JSRegexNode.class, REGEX);
+		NODE_KINDS.put(JSRestElementNode.class, REST_ELEMENT);
+		NODE_KINDS.put(JSReturnNode.class, RETURN);
+		NODE_KINDS.put(JSSetterNode.class, SETTER);
+		NODE_KINDS.put(JSSpreadElementNode.class, SPREAD_ELEMENT);
+		NODE_KINDS.put(JSStatementsNode.class, STATEMENTS);
+		NODE_KINDS.put(JSStringNode.class, STRING);
+		NODE_KINDS.put(JSSwitchNode.class, SWITCH);
+		NODE_KINDS.put(JSThisNode.class, THIS);
+		NODE_KINDS.put(JSThrowNode.class, THROW);
+		NODE_KINDS.put(JSTrueNode.class, TRUE);
+		NODE_KINDS.put(JSTryNode.class, TRY);
+		NODE_KINDS.put(JSVarNode.class, VAR);
+		NODE_KINDS.put(JSWhileNode.class, WHILE);
+		NODE_KINDS.put(JSWithNode.class, WITH);
+		NODE_KINDS.put(JSYieldNode.class, YIELD);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.parsing.IParseResultCodec#getVersion()
+	 */
+	public int getVersion()
+	{
+		return VERSION;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.parsing.IParseResultCodec#write(com.aptana.parsing.ast.IParseRootNode, java.io.DataOutput)
+	 */
+	public void write(IParseRootNode rootNode, DataOutput output) throws IOException
+	{
+		if (!(rootNode instanceof JSParseRootNode))
+		{
+			String className = rootNode.getClass().getName();
+			throw new IOException(MessageFormat.format("Unexpected root node {0}", className)); //$NON-NLS-1$
+		}
+		new Writer(output).writeRoot((JSParseRootNode) rootNode);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.parsing.IParseResultCodec#read(java.io.DataInput)
+	 */
+	public IParseRootNode read(DataInput input) throws IOException
+	{
+		return new Reader(input).readRoot();
+	}
+
+	/**
+	 * Writes one tree. Strings are written once and referred to by index afterwards, identifiers repeat a lot.
+	 */
+	private static class Writer
+	{
+		private final DataOutput fOutput;
+		private final Map<String, Integer> fStrings;
+
+		private Writer(DataOutput output)
+		{
+			fOutput = output;
+			fStrings = new HashMap<String, Integer>();
+		}
+
+		private void writeRoot(JSParseRootNode root) throws IOException
+		{
+			fOutput.writeInt(root.getStartingOffset());
+			fOutput.writeInt(root.getEndingOffset());
+			writeChildren(root);
+
+			IParseNode[] comments = root.getCommentNodes();
+			fOutput.writeInt(comments.length);
+			for (IParseNode comment : comments)
+			{
+				if (!(comment instanceof JSCommentNode))
+				{
+					String className = comment.getClass().getName();
+					throw new IOException(MessageFormat.format("Unexpected comment node {0}", className)); //$NON-NLS-1$
+				}
+				fOutput.writeShort(comment.getNodeType());
+				fOutput.writeInt(comment.getStartingOffset());
+				fOutput.writeInt(comment.getEndingOffset());
+			}
+		}
+
+		private void writeChildren(IParseNode parent) throws IOException
+		{
+			IParseNode[] children = parent.getChildren();
+			fOutput.writeInt(children.length);
+			for (IParseNode child : children)
+			{
+				if (!(child instanceof JSNode))
+				{
+					String className = child.getClass().getName();
+					throw new IOException(MessageFormat.format("Unexpected node {0}", className)); //$NON-NLS-1$
+				}
+				writeNode((JSNode) child);
+			}
+		}
+
+		private void writeNode(JSNode node) throws IOException
+		{
+			Integer nodeKind = NODE_KINDS.get(node.getClass());
+			if (nodeKind == null)
+			{
+				String className = node.getClass().getName();
+				throw new IOException(MessageFormat.format("Unsupported node {0}", className)); //$NON-NLS-1$
+			}
+			int kind = nodeKind;
+			fOutput.writeByte(kind);
+			fOutput.writeInt(node.getStartingOffset());
+			fOutput.writeInt(node.getEndingOffset());
+			fOutput.writeBoolean(node.getSemicolonIncluded());
+			writeChildren(node);
+
+			switch (kind)
+			{
+				case ARRAY:
+					writeSymbol(((JSArrayNode) node).getLeftBracket());
+					writeSymbol(((JSArrayNode) node).getRightBracket());
+					break;
+
+				case ARROW_FUNCTION:
+				case FUNCTION:
+				case GENERATOR_FUNCTION:
+					fOutput.writeBoolean(((JSFunctionNode) node).isStatic());
+					break;
+
+				case ASSIGNMENT:
+					writeSymbol(((JSAssignmentNode) node).getOperator());
+					break;
+
+				case BINARY_ARITHMETIC:
+				case BINARY_BOOLEAN:
+				case GET_PROPERTY:
+					writeSymbol(((JSBinaryOperatorNode) node).getOperator());
+					break;
+
+				case BREAK:
+					writeSymbol(((JSBreakNode) node).getLabel());
+					break;
+
+				case CONTINUE:
+					writeSymbol(((JSContinueNode) node).getLabel());
+					break;
+
+				case CASE:
+					writeSymbol(((JSCaseNode) node).getColon());
+					break;
+
+				case CATCH:
+					writeSymbol(((JSCatchNode) node).getLeftParenthesis());
+					writeSymbol(((JSCatchNode) node).getRightParenthesis());
+					break;
+
+				case CLASS:
+					fOutput.writeBoolean(((JSClassNode) node).hasName());
+					fOutput.writeBoolean(((JSClassNode) node).hasSuperClass());
+					break;
+
+				case CONDITIONAL:
+					writeSymbol(((JSConditionalNode) node).getQuestionMark());
+					writeSymbol(((JSConditionalNode) node).getColon());
+					break;
+
+				case DECLARATION:
+					writeSymbol(((JSDeclarationNode) node).getEqualSign());
+					break;
+
+				case DEFAULT:
+					writeSymbol(((JSDefaultNode) node).getColon());
+					break;
+
+				case DO:
+					writeSymbol(((JSDoNode) node).getLeftParenthesis());
+					writeSymbol(((JSDoNode) node).getRightParenthesis());
+					break;
+
+				case EXPORT:
+					fOutput.writeBoolean(((JSExportNode) node).isDefault());
+					writeString(((JSExportNode) node).getFrom());
+					break;
+
+				case FOR:
+					writeSymbol(((JSForNode) node).getLeftParenthesis());
+					writeSymbol(((JSForNode) node).getSemicolon1());
+					writeSymbol(((JSForNode) node).getSemicolon2());
+					writeSymbol(((JSForNode) node).getRightParenthesis());
+					break;
+
+				case FOR_IN:
+					writeSymbol(((JSForInNode) node).getLeftParenthesis());
+					writeSymbol(((JSForInNode) node).getIn());
+					writeSymbol(((JSForInNode) node).getRightParenthesis());
+					break;
+
+				case FOR_OF:
+					writeSymbol(((JSForOfNode) node).getLeftParenthesis());
+					writeSymbol(((JSForOfNode) node).getRightParenthesis());
+					break;
+
+				case GET_ELEMENT:
+					writeSymbol(((JSGetElementNode) node).getLeftBracket());
+					writeSymbol(((JSGetElementNode) node).getRightBracket());
+					break;
+
+				case GETTER:
+					fOutput.writeBoolean(((JSGetterNode) node).isStatic());
+					break;
+
+				case GROUP:
+					writeSymbol(((JSGroupNode) node).getLeftParenthesis());
+					writeSymbol(((JSGroupNode) node).getRightParenthesis());
+					break;
+
+				case IDENTIFIER:
+				case NULL:
+				case NUMBER:
+				case REGEX:
+				case STRING:
+					writeString(((JSPrimitiveNode) node).getText());
+					break;
+
+				case IF:
+					writeSymbol(((JSIfNode) node).getLeftParenthesis());
+					writeSymbol(((JSIfNode) node).getRightParenthesis());
+					break;
+
+				case IMPORT:
+					writeString(((JSImportNode) node).getFrom());
+					break;
+
+				case IMPORT_SPECIFIER:
+					// the star symbol itself isn't exposed
+					fOutput.writeBoolean(((JSImportSpecifierNode) node).isWildcard());
+					break;
+
+				case INITIALIZER:
+					writeSymbol(((JSInitializerNode) node).getEquals());
+					break;
+
+				case LABELLED:
+					writeSymbol(((JSLabelledNode) node).getColon());
+					break;
+
+				case NAME_VALUE_PAIR:
+					writeSymbol(((JSNameValuePairNode) node).getColon());
+					break;
+
+				case OBJECT:
+					writeSymbol(((JSObjectNode) node).getLeftBrace());
+					writeSymbol(((JSObjectNode) node).getRightBrace());
+					break;
+
+				case POST_UNARY_OPERATOR:
+					writeSymbol(((JSPostUnaryOperatorNode) node).getOperator());
+					break;
+
+				case PRE_UNARY_OPERATOR:
+					writeSymbol(((JSPreUnaryOperatorNode) node).getOperator());
+					break;
+
+				case REST_ELEMENT:
+					writeSymbol(((JSRestElementNode) node).getEllipsis());
+					break;
+
+				case SPREAD_ELEMENT:
+					writeSymbol(((JSSpreadElementNode) node).getEllipsis());
+					break;
+
+				case SWITCH:
+					writeSymbol(((JSSwitchNode) node).getLeftParenthesis());
+					writeSymbol(((JSSwitchNode) node).getRightParenthesis());
+					writeSymbol(((JSSwitchNode) node).getLeftBrace());
+					writeSymbol(((JSSwitchNode) node).getRightBrace());
+					break;
+
+				case VAR:
+					writeSymbol(((JSVarNode) node).getVar());
+					break;
+
+				case WHILE:
+					writeSymbol(((JSWhileNode) node).getLeftParenthesis());
+					writeSymbol(((JSWhileNode) node).getRightParenthesis());
+					break;
+
+				case WITH:
+					writeSymbol(((JSWithNode) node).getLeftParenthesis());
+					writeSymbol(((JSWithNode) node).getRightParenthesis());
+					break;
+
+				case YIELD:
+					fOutput.writeBoolean(((JSYieldNode) node).hasStar());
+					break;
+
+				default:
+					// nothing but offsets and children
+					break;
+			}
+		}
+
+		private void writeSymbol(Symbol symbol) throws IOException
+		{
+			fOutput.writeBoolean(symbol != null);
+			if (symbol != null)
+			{
+				fOutput.writeShort(symbol.getId());
+				fOutput.writeInt(symbol.getStart());
+				fOutput.writeInt(symbol.getEnd());
+				writeString((symbol.value instanceof String) ? (String) symbol.value : null);
+			}
+		}
+
+		private void writeString(String value) throws IOException
+		{
+			if (value == null)
+			{
+				fOutput.writeInt(NULL_STRING);
+				return;
+			}
+			Integer index = fStrings.get(value);
+			if (index != null)
+			{
+				fOutput.writeInt(index);
+				return;
+			}
+
+			fStrings.put(value, fStrings.size());
+			fOutput.writeInt(NEW_STRING);
+			// not writeUTF, long string literals go over its 64k limit
+			fOutput.writeInt(value.length());
+			fOutput.writeChars(value);
+		}
+	}
+
+	/**
+	 * Reads one tree written by {@link Writer}.
+	 */
+	private static class Reader
+	{
+		private final DataInput fInput;
+		private final List<String> fStrings;
+
+		private Reader(DataInput input)
+		{
+			fInput = input;
+			fStrings = new ArrayList<String>();
+		}
+
+		private JSParseRootNode readRoot() throws IOException
+		{
+			int start = fInput.readInt();
+			int end = fInput.readInt();
+			JSNode[] children = readChildren();
+
+			JSParseRootNode root = new JSParseRootNode();
+			if (children.length > 0)
+			{
+				root.setChildren(children);
+			}
+			root.setLocation(start, end);
+
+			IParseNode[] comments = new IParseNode[readCount()];
+			for (int i = 0; i < comments.length; i++)
+			{
+				short type = fInput.readShort();
+				int commentStart = fInput.readInt();
+				int commentEnd = fInput.readInt();
+				comments[i] = new JSCommentNode(type, commentStart, commentEnd);
+			}
+			root.setCommentNodes(comments);
+			return root;
+		}
+
+		private JSNode[] readChildren() throws IOException
+		{
+			JSNode[] children = new JSNode[readCount()];
+			for (int i = 0; i < children.length; i++)
+			{
+				children[i] = readNode();
+			}
+			return children;
+		}
+
+		private JSNode readNode() throws IOException
+		{
+			int kind = fInput.readUnsignedByte();
+			int start = fInput.readInt();
+			int end = fInput.readInt();
+			boolean semicolonIncluded = fInput.readBoolean();
+			JSNode[] children = readChildren();
+
+			JSNode node;
+			switch (kind)
+			{
+				case ARGUMENTS:
+					node = new JSArgumentsNode(start, end);
+					break;
+
+				case ARRAY:
+					node = new JSArrayNode(readSymbol(), readSymbol());
+					break;
+
+				case ARROW_FUNCTION:
+					node = readStatic(new JSArrowFunctionNode(start, end));
+					break;
+
+				case ASSIGNMENT:
+					node = new JSAssignmentNode(start, end, readSymbol());
+					break;
+
+				case BINARY_ARITHMETIC:
+					node = new JSBinaryArithmeticOperatorNode(start, end, readSymbol());
+					break;
+
+				case BINARY_BOOLEAN:
+					node = new JSBinaryBooleanOperatorNode(start, end, readSymbol());
+					break;
+
+				case BREAK:
+					node = new JSBreakNode(start, end, readSymbol());
+					break;
+
+				case CASE:
+					node = new JSCaseNode(start, end, readSymbol());
+					break;
+
+				case CATCH:
+					node = new JSCatchNode(start, end, readSymbol(), readSymbol());
+					break;
+
+				case CLASS:
+					node = new JSClassNode(fInput.readBoolean(), fInput.readBoolean());
+					break;
+
+				case COMMA:
+					node = new JSCommaNode(start, end, null);
+					break;
+
+				case COMPUTED_PROPERTY_NAME:
+					node = new JSComputedPropertyNameNode();
+					break;
+
+				case CONDITIONAL:
+					node = new JSConditionalNode(start, end, readSymbol(), readSymbol());
+					break;
+
+				case CONSTRUCT:
+					node = new JSConstructNode(start, end);
+					break;
+
+				case CONTINUE:
+					node = new JSContinueNode(start, end, readSymbol());
+					break;
+
+				case DECLARATION:
+					node = new JSDeclarationNode(start, end, readSymbol());
+					break;
+
+				case DEFAULT:
+					node = new JSDefaultNode(start, end, readSymbol());
+					break;
+
+				case DESTRUCTURING:
+					node = new JSDestructuringNode();
+					break;
+
+				case DO:
+					node = new JSDoNode(start, end, readSymbol(), readSymbol());
+					break;
+
+				case ELEMENTS:
+					node = new JSElementsNode();
+					break;
+
+				case ELISION:
+					node = new JSElisionNode();
+					break;
+
+				case EMPTY:
+					node = new JSEmptyNode(start);
+					break;
+
+				case ERROR:
+					node = new JSErrorNode();
+					break;
+
+				case EXPORT:
+					node = new JSExportNode(fInput.readBoolean(), (Symbol) null, readString());
+					break;
+
+				case EXPORT_SPECIFIER:
+					node = new JSExportSpecifierNode();
+					break;
+
+				case FALSE:
+					node = new JSFalseNode();
+					break;
+
+				case FINALLY:
+					node = new JSFinallyNode(start, end, getFirstChild(children, kind));
+					break;
+
+				case FOR:
+					node = new JSForNode(start, end, readSymbol(), readSymbol(), readSymbol(), readSymbol());
+					break;
+
+				case FOR_IN:
+					node = new JSForInNode(start, end, readSymbol(), readSymbol(), readSymbol());
+					break;
+
+				case FOR_OF:
+					node = new JSForOfNode(start, end, readSymbol(), readSymbol());
+					break;
+
+				case FUNCTION:
+					node = readStatic(new JSFunctionNode(start, end));
+					break;
+
+				case GENERATOR_FUNCTION:
+					node = readStatic(new JSGeneratorFunctionNode(start, end));
+					break;
+
+				case GET_ELEMENT:
+					node = new JSGetElementNode(start, end, readSymbol(), readSymbol());
+					break;
+
+				case GET_PROPERTY:
+					node = new JSGetPropertyNode(start, end, readSymbol());
+					break;
+
+				case GETTER:
+					node = new JSGetterNode(start, end, fInput.readBoolean());
+					break;
+
+				case GROUP:
+					node = new JSGroupNode(readSymbol(), readSymbol());
+					break;
+
+				case IDENTIFIER:
+					node = new JSIdentifierNode(new Symbol(JSTokenType.IDENTIFIER.getIndex(), start, end,
+							readString()));
+					break;
+
+				case IF:
+					node = new JSIfNode(start, end, readSymbol(), readSymbol());
+					break;
+
+				case IMPORT:
+					node = new JSImportNode(readString());
+					break;
+
+				case IMPORT_SPECIFIER:
+					// the node only tells whether it had a star, which is all the rebuilt one needs
+					if (fInput.readBoolean())
+					{
+						Symbol star = new Symbol(JSTokenType.STAR.getIndex(), start, start, JSTokenType.STAR.getName());
+						node = new JSImportSpecifierNode(star);
+					}
+					else
+					{
+						node = new JSImportSpecifierNode();
+					}
+					break;
+
+				case INITIALIZER:
+					node = new JSInitializerNode(readSymbol(), getFirstChild(children, kind));
+					break;
+
+				case INVOKE:
+					node = new JSInvokeNode(start, end);
+					break;
+
+				case LABELLED:
+					node = new JSLabelledNode(getFirstChild(children, kind), readSymbol());
+					break;
+
+				case NAME_VALUE_PAIR:
+					node = new JSNameValuePairNode(start, end, readSymbol());
+					break;
+
+				case NAMED_IMPORTS:
+					node = new JSNamedImportsNode();
+					break;
+
+				case NULL:
+					node = new JSNullNode(new Symbol(JSTokenType.NULL.getIndex(), start, end, readString()));
+					break;
+
+				case NUMBER:
+					node = new JSNumberNode(readString());
+					break;
+
+				case OBJECT:
+					node = new JSObjectNode(readSymbol(), readSymbol());
+					break;
+
+				case PARAMETERS:
+					node = new JSParametersNode(start, end);
+					break;
+
+				case POST_UNARY_OPERATOR:
+					node = new JSPostUnaryOperatorNode(start, end, readSymbol());
+					break;
+
+				case PRE_UNARY_OPERATOR:
+					node = new JSPreUnaryOperatorNode(start, end, readSymbol());
+					break;
+
+				case REGEX:
+					node = new JSRegexNode(readString());
+					break;
+
+				case REST_ELEMENT:
+					node = new JSRestElementNode(readSymbol());
+					break;
+
+				case RETURN:
+					node = new JSReturnNode(start, end);
+					break;
+
+				case SETTER:
+					node = new JSSetterNode(start, end);
+					break;
+
+				case SPREAD_ELEMENT:
+					node = new JSSpreadElementNode(start, end, readSymbol());
+					break;
+
+				case STATEMENTS:
+					node = new JSStatementsNode(start, end);
+					break;
+
+				case STRING:
+					node = new JSStringNode(readString());
+					break;
+
+				case SWITCH:
+					node = new JSSwitchNode(start, end, readSymbol(), readSymbol(), readSymbol(), readSymbol());
+					break;
+
+				case THIS:
+					node = new JSThisNode();
+					break;
+
+				case THROW:
+					node = new JSThrowNode(start, end);
+					break;
+
+				case TRUE:
+					node = new JSTrueNode();
+					break;
+
+				case TRY:
+					node = new JSTryNode(start, end);
+					break;
+
+				case VAR:
+					node = new JSVarNode(start, end, readSymbol());
+					break;
+
+				case WHILE:
+					node = new JSWhileNode(start, end, readSymbol(), readSymbol());
+					break;
+
+				case WITH:
+					node = new JSWithNode(start, end, readSymbol(), readSymbol());
+					break;
+
+				case YIELD:
+					// @formatter:off
+					node = fInput.readBoolean()
+						? new JSYieldNode(null, null, getFirstChild(children, kind))
+						: new JSYieldNode(start, end, null);
+					// @formatter:on
+					break;
+
+				default:
+					throw new IOException(MessageFormat.format("Unknown node kind {0}", kind)); //$NON-NLS-1$
+			}
+
+			// the semicolon moves the end of empty nodes, so it goes before the location
+			node.setSemicolonIncluded(semicolonIncluded);
+			node.setLocation(start, end);
+			if (children.length > 0)
+			{
+				node.setChildren(children);
+			}
+			return node;
+		}
+
+		private JSNode readStatic(JSFunctionNode function) throws IOException
+		{
+			if (fInput.readBoolean())
+			{
+				function.setStatic();
+			}
+			return function;
+		}
+
+		private JSNode getFirstChild(JSNode[] children, int kind) throws IOException
+		{
+			if (children.length == 0)
+			{
+				throw new IOException(MessageFormat.format("Missing child of node kind {0}", kind)); //$NON-NLS-1$
+			}
+			return children[0];
+		}
+
+		private Symbol readSymbol() throws IOException
+		{
+			if (!fInput.readBoolean())
+			{
+				return null;
+			}
+			short id = fInput.readShort();
+			int start = fInput.readInt();
+			int end = fInput.readInt();
+			return new Symbol(id, start, end, readString());
+		}
+
+		private String readString() throws IOException
+		{
+			int index = fInput.readInt();
+			if (index == NULL_STRING)
+			{
+				return null;
+			}
+			if (index != NEW_STRING)
+			{
+				if (index < 0 || index >= fStrings.size())
+				{
+					throw new IOException(MessageFormat.format("Invalid string index {0}", index)); //$NON-NLS-1$
+				}
+				return fStrings.get(index);
+			}
+
+			char[] chars = new char[readCount()];
+			for (int i = 0; i < chars.length; i++)
+			{
+				chars[i] = fInput.readChar();
+			}
+			String value = new String(chars);
+			fStrings.add(value);
+			return value;
+		}
+
+		private int readCount() throws IOException
+		{
+			int count = fInput.readInt();
+			if (count < 0)
+			{
+				throw new IOException(MessageFormat.format("Invalid count {0}", count)); //$NON-NLS-1$
+			}
+			return count;
+		}
+	}
+}
@@ -10,12 +10,15 @@ package com.aptana.js.core.parsing.ast;
 import beaver.Symbol;
 
 import com.aptana.js.core.IJSConstants;
+import com.aptana.js.core.inferencing.JSInferenceCache;
 import com.aptana.js.core.inferencing.JSScope;
 import com.aptana.js.internal.core.inferencing.JSSymbolCollector;
 import com.aptana.parsing.ast.ParseRootNode;
 
 public class JSParseRootNode extends ParseRootNode
 {
+	private JSInferenceCache inferenceCache;
+
 	/**
 	 * JSParseRootNode
 	 */
@@ -65,6 +68,22 @@ public class JSParseRootNode extends ParseRootNode
 		return s.getScope();
 	}
 
+	/**
+	 * Returns the inference cache of this AST, a new one if the indices changed since the current one was created.
+	 * 
+	 * @param generation
+	 *            the current generation of the indices used for inference
+	 * @return
+	 */
+	public synchronized JSInferenceCache getInferenceCache(long generation)
+	{
+		if (inferenceCache == null || inferenceCache.getGeneration() != generation)
+		{
+			inferenceCache = new JSInferenceCache(this, generation);
+		}
+		return inferenceCache;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see com.aptana.parsing.ast.ParseNode#toString()
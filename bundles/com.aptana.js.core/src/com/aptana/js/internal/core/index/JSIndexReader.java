@@ -20,19 +20,46 @@ import com.aptana.core.util.RegexUtil;
 import com.aptana.core.util.StringUtil;
 import com.aptana.index.core.Index;
 import com.aptana.index.core.IndexReader;
+import com.aptana.index.core.IndexRecord;
 import com.aptana.index.core.QueryResult;
 import com.aptana.index.core.SearchPattern;
 import com.aptana.js.core.JSTypeConstants;
 import com.aptana.js.core.index.IJSIndexConstants;
+import com.aptana.js.core.model.BaseElement;
 import com.aptana.js.core.model.EventElement;
+import com.aptana.js.core.model.EventPropertyElement;
+import com.aptana.js.core.model.ExceptionElement;
 import com.aptana.js.core.model.FunctionElement;
+import com.aptana.js.core.model.ParameterElement;
 import com.aptana.js.core.model.PropertyElement;
+import com.aptana.js.core.model.ReturnTypeElement;
+import com.aptana.js.core.model.SinceElement;
 import com.aptana.js.core.model.TypeElement;
 import com.aptana.js.core.model.UserAgentElement;
 
 // TODO Combine with JSIndexQueryHelper! They're both doing the same thing, but Query helper adds the JS Core index in to calls!
 public class JSIndexReader extends IndexReader
 {
+	/**
+	 * Types are keyed by their name, members by their owning type and their name. See {@link JSIndexWriter}
+	 */
+	private static final int TYPE_KEY_COLUMNS = 1;
+	private static final int MEMBER_KEY_COLUMNS = 2;
+
+	/**
+	 * Adds the documents the query result was found in to the element
+	 * 
+	 * @param element
+	 * @param item
+	 */
+	private void addDocuments(BaseElement element, QueryResult item)
+	{
+		for (String document : item.getDocuments())
+		{
+			element.addDocument(document);
+		}
+	}
+
 	/**
 	 * attachMembers
 	 * 
@@ -75,7 +102,37 @@ public class JSIndexReader extends IndexReader
 	 */
 	protected EventElement createEvent(QueryResult event)
 	{
-		return this.populateElement(new EventElement(), event, 2);
+		IndexRecord record = this.getRecord(event, MEMBER_KEY_COLUMNS);
+		EventElement result = new EventElement();
+
+		result.setOwningType(record.getKeyColumn(0));
+		result.setName(record.getKeyColumn(1));
+
+		int field = this.readBaseFields(record, 0, result);
+
+		// properties
+		for (String item : record.getStringList(field++))
+		{
+			IndexRecord propertyRecord = new IndexRecord(item, this.getDelimiter(), 0);
+			EventPropertyElement property = new EventPropertyElement();
+
+			property.setName(propertyRecord.getString(0));
+
+			int propertyField = this.readBaseFields(propertyRecord, 1, property);
+
+			property.setType(propertyRecord.getString(propertyField++));
+
+			for (String constant : propertyRecord.getStringList(propertyField++))
+			{
+				property.addConstant(constant);
+			}
+
+			result.addProperty(property);
+		}
+
+		this.addDocuments(result, event);
+
+		return result;
 	}
 
 	/**
@@ -86,7 +143,68 @@ public class JSIndexReader extends IndexReader
 	 */
 	protected FunctionElement createFunction(QueryResult function)
 	{
-		return this.populateElement(new FunctionElement(), function, 2);
+		IndexRecord record = this.getRecord(function, MEMBER_KEY_COLUMNS);
+		FunctionElement result = new FunctionElement();
+
+		result.setOwningType(record.getKeyColumn(0));
+		result.setName(record.getKeyColumn(1));
+
+		int field = this.readPropertyFields(record, 0, result);
+
+		result.setIsConstructor(record.getBoolean(field++));
+		result.setIsMethod(record.getBoolean(field++));
+
+		// return types
+		for (String item : record.getStringList(field++))
+		{
+			result.addReturnType(this.createReturnType(item));
+		}
+
+		// references
+		for (String reference : record.getStringList(field++))
+		{
+			result.addReference(reference);
+		}
+
+		// exceptions
+		for (String item : record.getStringList(field++))
+		{
+			IndexRecord exceptionRecord = new IndexRecord(item, this.getDelimiter(), 0);
+			ExceptionElement exception = new ExceptionElement();
+
+			exception.setType(exceptionRecord.getString(0));
+			exception.setDescription(exceptionRecord.getString(1));
+
+			result.addException(exception);
+		}
+
+		// parameters
+		for (String item : record.getStringList(field++))
+		{
+			IndexRecord parameterRecord = new IndexRecord(item, this.getDelimiter(), 0);
+			ParameterElement parameter = new ParameterElement();
+
+			parameter.setName(parameterRecord.getString(0));
+
+			for (String type : parameterRecord.getStringList(1))
+			{
+				parameter.addType(type);
+			}
+
+			parameter.setUsage(parameterRecord.getString(2));
+			parameter.setDescription(parameterRecord.getString(3));
+
+			for (String constant : parameterRecord.getStringList(4))
+			{
+				parameter.addConstant(constant);
+			}
+
+			result.addParameter(parameter);
+		}
+
+		this.addDocuments(result, function);
+
+		return result;
 	}
 
 	/**
@@ -97,7 +215,33 @@ public class JSIndexReader extends IndexReader
 	 */
 	protected PropertyElement createProperty(QueryResult property)
 	{
-		return this.populateElement(new PropertyElement(), property, 2);
+		IndexRecord record = this.getRecord(property, MEMBER_KEY_COLUMNS);
+		PropertyElement result = new PropertyElement();
+
+		result.setOwningType(record.getKeyColumn(0));
+		result.setName(record.getKeyColumn(1));
+
+		this.readPropertyFields(record, 0, result);
+		this.addDocuments(result, property);
+
+		return result;
+	}
+
+	/**
+	 * createReturnType
+	 * 
+	 * @param item
+	 * @return
+	 */
+	private ReturnTypeElement createReturnType(String item)
+	{
+		IndexRecord record = new IndexRecord(item, this.getDelimiter(), 0);
+		ReturnTypeElement result = new ReturnTypeElement();
+
+		result.setType(record.getString(0));
+		result.setDescription(record.getString(1));
+
+		return result;
 	}
 
 	/**
@@ -109,75 +253,44 @@ public class JSIndexReader extends IndexReader
 	 */
 	protected TypeElement createType(QueryResult type)
 	{
-		TypeElement result;
-		String[] columns = this.getDelimiterPattern().split(type.getWord());
-		int column = 0;
+		IndexRecord record = this.getRecord(type, TYPE_KEY_COLUMNS);
+		int field = 0;
 
 		// create type
-		result = new TypeElement();
+		TypeElement result = new TypeElement();
 
 		// name
-		result.setName(columns[column]);
-		column++;
+		result.setName(record.getKeyColumn(0));
 
 		// super types
-		if (column < columns.length)
+		for (String parentType : record.getStringList(field++))
 		{
-			for (String parentType : this.getSubDelimiterPattern().split(columns[column]))
-			{
-				result.addParentType(parentType);
-			}
+			result.addParentType(parentType);
 		}
-		column++;
 
 		// description
-		if (column < columns.length)
-		{
-			result.setDescription(columns[column]);
-		}
-		column++;
+		result.setDescription(record.getString(field++));
 
 		// deprecated
-		if (column < columns.length)
-		{
-			result.setIsDeprecated(columns[column].equals("1")); //$NON-NLS-1$
-		}
-		column++;
+		result.setIsDeprecated(record.getBoolean(field++));
 
 		// isInternal
-		if (column < columns.length)
-		{
-			result.setIsInternal(columns[column].equals("1")); //$NON-NLS-1$
-		}
-		column++;
+		result.setIsInternal(record.getBoolean(field++));
 
 		// user agents
-		if (column < columns.length)
+		if (record.getBoolean(field++))
 		{
-			String value = columns[column];
-			if (IJSIndexConstants.ALL_AGENTS.equals(value))
-			{
-				result.setHasAllUserAgents();
-			}
-			else
-			{
-				String[] agents = value.split(IJSIndexConstants.SUB_DELIMITER);
-				for (String agent : agents)
-				{
-					UserAgentElement uaElement = new UserAgentElement();
-					uaElement.setPlatform(agent);
-					result.addUserAgent(uaElement);
-				}
-			}
+			result.setHasAllUserAgents();
 		}
-		column++;
-
-		// documents
-		for (String document : type.getDocuments())
+		for (String agent : record.getStringList(field++))
 		{
-			result.addDocument(document);
+			UserAgentElement uaElement = new UserAgentElement();
+			uaElement.setPlatform(agent);
+			result.addUserAgent(uaElement);
 		}
 
+		this.addDocuments(result, type);
+
 		return result;
 	}
 
@@ -589,6 +702,96 @@ public class JSIndexReader extends IndexReader
 		return result;
 	}
 
+	/**
+	 * Reads the fields shared by all members, starting at the specified field, and returns the index of the field
+	 * following them. See {@link JSIndexWriter}
+	 * 
+	 * @param record
+	 * @param field
+	 * @param element
+	 * @return
+	 */
+	private int readBaseFields(IndexRecord record, int field, BaseElement element)
+	{
+		// description
+		element.setDescription(record.getString(field++));
+
+		// deprecated
+		element.setIsDeprecated(record.getBoolean(field++));
+
+		// user agents
+		if (record.getBoolean(field++))
+		{
+			element.setHasAllUserAgents();
+		}
+		for (String item : record.getStringList(field++))
+		{
+			IndexRecord userAgent = new IndexRecord(item, this.getDelimiter(), 0);
+
+			// @formatter:off
+			element.addUserAgent(UserAgentElement.createUserAgentElement(
+				userAgent.getString(0),
+				userAgent.getString(1),
+				userAgent.getString(2),
+				userAgent.getString(3),
+				userAgent.getString(4)
+			));
+			// @formatter:on
+		}
+
+		// since
+		for (String item : record.getStringList(field++))
+		{
+			IndexRecord sinceRecord = new IndexRecord(item, this.getDelimiter(), 0);
+			SinceElement since = new SinceElement();
+
+			since.setName(sinceRecord.getString(0));
+			since.setVersion(sinceRecord.getString(1));
+
+			element.addSince(since);
+		}
+
+		return field;
+	}
+
+	/**
+	 * Reads the fields of a property, starting at the specified field, and returns the index of the field following
+	 * them. See {@link JSIndexWriter}
+	 * 
+	 * @param record
+	 * @param field
+	 * @param property
+	 * @return
+	 */
+	private int readPropertyFields(IndexRecord record, int field, PropertyElement property)
+	{
+		field = this.readBaseFields(record, field, property);
+
+		property.setIsInstanceProperty(record.getBoolean(field++));
+		property.setIsClassProperty(record.getBoolean(field++));
+		property.setIsInternal(record.getBoolean(field++));
+
+		// types
+		for (String item : record.getStringList(field++))
+		{
+			property.addType(this.createReturnType(item));
+		}
+
+		// examples
+		for (String example : record.getStringList(field++))
+		{
+			property.addExample(example);
+		}
+
+		// constants
+		for (String constant : record.getStringList(field++))
+		{
+			property.addConstant(constant);
+		}
+
+		return field;
+	}
+
 	/**
 	 * Convert a list of types into a regular expression. Note that this method assumes that list is non-empty
 	 * 
@@ -9,23 +9,203 @@ package com.aptana.js.internal.core.index;
 
 import java.net.URI;
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.List;
 
 import com.aptana.core.logging.IdeLog;
-import com.aptana.core.util.StringUtil;
+import com.aptana.core.util.CollectionsUtil;
 import com.aptana.index.core.Index;
+import com.aptana.index.core.IndexRecord;
 import com.aptana.index.core.IndexWriter;
 import com.aptana.js.core.IDebugScopes;
 import com.aptana.js.core.JSCorePlugin;
 import com.aptana.js.core.JSTypeConstants;
 import com.aptana.js.core.index.IJSIndexConstants;
+import com.aptana.js.core.model.BaseElement;
 import com.aptana.js.core.model.EventElement;
+import com.aptana.js.core.model.EventPropertyElement;
+import com.aptana.js.core.model.ExceptionElement;
 import com.aptana.js.core.model.FunctionElement;
+import com.aptana.js.core.model.ParameterElement;
 import com.aptana.js.core.model.PropertyElement;
+import com.aptana.js.core.model.ReturnTypeElement;
+import com.aptana.js.core.model.SinceElement;
 import com.aptana.js.core.model.TypeElement;
+import com.aptana.js.core.model.UserAgentElement;
 
 public class JSIndexWriter extends IndexWriter
 {
+	/**
+	 * Adds the fields shared by all members: description, deprecated, all user agents flag, user agents and since
+	 * list. Each user agent and since entry is a nested record without key columns.
+	 * 
+	 * @param record
+	 * @param element
+	 * @return
+	 */
+	private IndexRecord.Writer addBaseFields(IndexRecord.Writer record, BaseElement element)
+	{
+		List<String> userAgents = null;
+
+		if (!element.hasAllUserAgents())
+		{
+			userAgents = new ArrayList<String>();
+
+			for (UserAgentElement userAgent : element.getUserAgents())
+			{
+				// @formatter:off
+				userAgents.add(this.createRecord(IJSIndexConstants.DELIMITER)
+					.addString(userAgent.getPlatform())
+					.addString(userAgent.getVersion())
+					.addString(userAgent.getOS())
+					.addString(userAgent.getOSVersion())
+					.addString(userAgent.getDescription())
+					.toString());
+				// @formatter:on
+			}
+		}
+
+		List<String> sinceList = new ArrayList<String>();
+
+		for (SinceElement since : element.getSinceList())
+		{
+			// @formatter:off
+			sinceList.add(this.createRecord(IJSIndexConstants.DELIMITER)
+				.addString(since.getName())
+				.addString(since.getVersion())
+				.toString());
+			// @formatter:on
+		}
+
+		// @formatter:off
+		return record
+			.addString(element.getDescription())
+			.addBoolean(element.isDeprecated())
+			.addBoolean(element.hasAllUserAgents())
+			.addStringList(userAgents)
+			.addStringList(sinceList);
+		// @formatter:on
+	}
+
+	/**
+	 * Adds an event's fields: the base fields followed by its properties, each a nested record of name, base fields,
+	 * type and constants
+	 * 
+	 * @param record
+	 * @param event
+	 * @return
+	 */
+	private IndexRecord.Writer addEventFields(IndexRecord.Writer record, EventElement event)
+	{
+		List<String> properties = new ArrayList<String>();
+
+		for (EventPropertyElement property : event.getProperties())
+		{
+			IndexRecord.Writer propertyRecord = this.createRecord(IJSIndexConstants.DELIMITER);
+
+			propertyRecord.addString(property.getName());
+			this.addBaseFields(propertyRecord, property);
+			propertyRecord.addString(property.getType());
+			propertyRecord.addStringList(property.getConstants());
+
+			properties.add(propertyRecord.toString());
+		}
+
+		return this.addBaseFields(record, event).addStringList(properties);
+	}
+
+	/**
+	 * Adds a function's fields: the property fields followed by the constructor and method flags, return types,
+	 * references, exceptions and parameters
+	 * 
+	 * @param record
+	 * @param function
+	 * @return
+	 */
+	private IndexRecord.Writer addFunctionFields(IndexRecord.Writer record, FunctionElement function)
+	{
+		List<String> exceptions = new ArrayList<String>();
+
+		for (ExceptionElement exception : function.getExceptions())
+		{
+			// @formatter:off
+			exceptions.add(this.createRecord(IJSIndexConstants.DELIMITER)
+				.addString(exception.getType())
+				.addString(exception.getDescription())
+				.toString());
+			// @formatter:on
+		}
+
+		List<String> parameters = new ArrayList<String>();
+
+		for (ParameterElement parameter : function.getParameters())
+		{
+			// @formatter:off
+			parameters.add(this.createRecord(IJSIndexConstants.DELIMITER)
+				.addString(parameter.getName())
+				.addStringList(parameter.getTypes())
+				.addString(parameter.getUsage())
+				.addString(parameter.getDescription())
+				.addStringList(parameter.getConstants())
+				.toString());
+			// @formatter:on
+		}
+
+		// @formatter:off
+		return this.addPropertyFields(record, function)
+			.addBoolean(function.isConstructor())
+			.addBoolean(function.isMethod())
+			.addStringList(this.createReturnTypeRecords(function.getReturnTypes()))
+			.addStringList(function.getReferences())
+			.addStringList(exceptions)
+			.addStringList(parameters);
+		// @formatter:on
+	}
+
+	/**
+	 * Adds a property's fields: the base fields followed by the instance, class and internal flags, types, examples
+	 * and constants
+	 * 
+	 * @param record
+	 * @param property
+	 * @return
+	 */
+	private IndexRecord.Writer addPropertyFields(IndexRecord.Writer record, PropertyElement property)
+	{
+		// @formatter:off
+		return this.addBaseFields(record, property)
+			.addBoolean(property.isInstanceProperty())
+			.addBoolean(property.isClassProperty())
+			.addBoolean(property.isInternal())
+			.addStringList(this.createReturnTypeRecords(property.getTypes()))
+			.addStringList(property.getExamples())
+			.addStringList(property.getConstants());
+		// @formatter:on
+	}
+
+	/**
+	 * createReturnTypeRecords
+	 * 
+	 * @param types
+	 * @return
+	 */
+	private List<String> createReturnTypeRecords(List<ReturnTypeElement> types)
+	{
+		List<String> result = new ArrayList<String>(types.size());
+
+		for (ReturnTypeElement type : types)
+		{
+			// @formatter:off
+			result.add(this.createRecord(IJSIndexConstants.DELIMITER)
+				.addString(type.getType())
+				.addString(type.getDescription())
+				.toString());
+			// @formatter:on
+		}
+
+		return result;
+	}
+
 	/**
 	 * getDocumentPath
 	 * 
@@ -46,13 +226,13 @@ public class JSIndexWriter extends IndexWriter
 	protected void writeEvent(Index index, EventElement event, URI location)
 	{
 		// @formatter:off
-		String value = StringUtil.join(
+		IndexRecord.Writer record = this.createRecord(
 			IJSIndexConstants.DELIMITER,
 			event.getOwningType(),
-			event.getName(),
-			this.serialize(event)
+			event.getName()
 		);
 		// @formatter:on
+		String value = this.addEventFields(record, event).toString();
 
 		if (IdeLog.isTraceEnabled(JSCorePlugin.getDefault(), IDebugScopes.INDEX_WRITES))
 		{
@@ -82,13 +262,13 @@ public class JSIndexWriter extends IndexWriter
 	protected void writeFunction(Index index, FunctionElement function, URI location)
 	{
 		// @formatter:off
-		String value = StringUtil.join(
+		IndexRecord.Writer record = this.createRecord(
 			IJSIndexConstants.DELIMITER,
 			function.getOwningType(),
-			function.getName(),
-			this.serialize(function)
+			function.getName()
 		);
 		// @formatter:on
+		String value = this.addFunctionFields(record, function).toString();
 
 		if (IdeLog.isTraceEnabled(JSCorePlugin.getDefault(), IDebugScopes.INDEX_WRITES))
 		{
@@ -118,13 +298,13 @@ public class JSIndexWriter extends IndexWriter
 	public void writeProperty(Index index, PropertyElement property, URI location)
 	{
 		// @formatter:off
-		String value = StringUtil.join(
+		IndexRecord.Writer record = this.createRecord(
 			IJSIndexConstants.DELIMITER,
 			property.getOwningType(),
-			property.getName(),
-			this.serialize(property)
+			property.getName()
 		);
 		// @formatter:on
+		String value = this.addPropertyFields(record, property).toString();
 
 		if (IdeLog.isTraceEnabled(JSCorePlugin.getDefault(), IDebugScopes.INDEX_WRITES))
 		{
@@ -167,33 +347,22 @@ public class JSIndexWriter extends IndexWriter
 		if (index != null && type != null && location != null)
 		{
 			List<String> parentTypes = type.getParentTypes();
-			String parentType;
 
-			if (!parentTypes.isEmpty())
+			if (parentTypes.isEmpty() && !type.getName().equals(JSTypeConstants.OBJECT_TYPE))
 			{
-				parentType = StringUtil.join(IJSIndexConstants.SUB_DELIMITER, parentTypes);
-			}
-			else if (!type.getName().equals(JSTypeConstants.OBJECT_TYPE))
-			{
-				parentType = JSTypeConstants.OBJECT_TYPE;
-			}
-			else
-			{
-				//
-				parentType = StringUtil.EMPTY;
+				parentTypes = CollectionsUtil.newList(JSTypeConstants.OBJECT_TYPE);
 			}
 
 			// calculate key value and add to index
 			// @formatter:off
-			String value = StringUtil.join(
-				IJSIndexConstants.DELIMITER,
-				type.getName(),
-				parentType,
-				type.getDescription(),
-				type.isDeprecated() ? '1' : '0',
-				type.isInternal() ? '1' : '0',
-				type.hasAllUserAgents() ? IJSIndexConstants.ALL_AGENTS : StringUtil.join(IJSIndexConstants.SUB_DELIMITER, type.getUserAgentNames())
-			);
+			String value = this.createRecord(IJSIndexConstants.DELIMITER, type.getName())
+				.addStringList(parentTypes)
+				.addString(type.getDescription())
+				.addBoolean(type.isDeprecated())
+				.addBoolean(type.isInternal())
+				.addBoolean(type.hasAllUserAgents())
+				.addStringList(type.hasAllUserAgents() ? null : type.getUserAgentNames())
+				.toString();
 			// @formatter:on
 
 			if (IdeLog.isTraceEnabled(JSCorePlugin.getDefault(), IDebugScopes.INDEX_WRITES))
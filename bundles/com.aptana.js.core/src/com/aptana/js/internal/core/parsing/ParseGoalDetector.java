@@ -0,0 +1,509 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.js.internal.core.parsing;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+
+import com.aptana.core.util.IOUtil;
+
+/**
+ * Picks the goal (module or script) a JS file should be parsed with, so that most files are parsed only once:
+ * <ol>
+ * <li>*.mjs files are always modules and *.cjs files always scripts.</li>
+ * <li>The goal a file was last parsed with successfully.</li>
+ * <li>The "type" of the nearest package.json ("module" or "commonjs").</li>
+ * <li>A scan of the source for top-level import/export statements.</li>
+ * </ol>
+ * Only the first rule is definitive, otherwise the parser falls back to the other goal when the predicted one fails.
+ * The fallbacks are counted so that we can tell how well the prediction works.
+ */
+public class ParseGoalDetector
+{
+	public enum Goal
+	{
+		MODULE, SCRIPT;
+
+		public Goal other()
+		{
+			return (this == MODULE) ? SCRIPT : MODULE;
+		}
+	}
+
+	private static final String MODULE_EXTENSION = ".mjs"; //$NON-NLS-1$
+	private static final String COMMONJS_EXTENSION = ".cjs"; //$NON-NLS-1$
+	private static final String PACKAGE_JSON = "package.json"; //$NON-NLS-1$
+	private static final String TYPE = "type"; //$NON-NLS-1$
+	private static final String TYPE_MODULE = "module"; //$NON-NLS-1$
+	private static final String TYPE_COMMONJS = "commonjs"; //$NON-NLS-1$
+	private static final String IMPORT = "import"; //$NON-NLS-1$
+	private static final String EXPORT = "export"; //$NON-NLS-1$
+
+	/**
+	 * Maximum number of files whose goal is remembered.
+	 */
+	private static final int MAX_FILES = 2000;
+
+	/**
+	 * Maximum number of package.json files whose type is remembered.
+	 */
+	private static final int MAX_PACKAGES = 200;
+
+	private static ParseGoalDetector INSTANCE;
+
+	/**
+	 * The goal each file was last parsed with successfully. Access should be synchronized on the map.
+	 */
+	private final Map<String, Goal> fFileGoals = new LinkedHashMap<String, Goal>(16, 0.75f, true)
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Goal> eldest)
+		{
+			return size() > MAX_FILES;
+		}
+	};
+
+	/**
+	 * The "type" of the package.json files read most recently, re-read when they change. Access should be synchronized
+	 * on the map.
+	 */
+	private final Map<File, PackageType> fPackageTypes = new LinkedHashMap<File, PackageType>(16, 0.75f, true)
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<File, PackageType> eldest)
+		{
+			return size() > MAX_PACKAGES;
+		}
+	};
+
+	private final AtomicInteger fModuleParses = new AtomicInteger();
+	private final AtomicInteger fScriptParses = new AtomicInteger();
+	private final AtomicInteger fFallbacks = new AtomicInteger();
+
+	private static class PackageType
+	{
+		final long lastModified;
+		final Goal goal;
+
+		PackageType(long lastModified, Goal goal)
+		{
+			this.lastModified = lastModified;
+			this.goal = goal;
+		}
+	}
+
+	/**
+	 * getInstance
+	 * 
+	 * @return
+	 */
+	public static synchronized ParseGoalDetector getInstance()
+	{
+		if (INSTANCE == null)
+		{
+			INSTANCE = new ParseGoalDetector();
+		}
+		return INSTANCE;
+	}
+
+	/**
+	 * Returns the goal required by the file's extension, null if the extension doesn't decide it.
+	 * 
+	 * @param filename
+	 * @return
+	 */
+	public Goal getRequiredGoal(String filename)
+	{
+		if (filename == null)
+		{
+			return null;
+		}
+		String lowerCase = filename.toLowerCase();
+		if (lowerCase.endsWith(MODULE_EXTENSION))
+		{
+			return Goal.MODULE;
+		}
+		if (lowerCase.endsWith(COMMONJS_EXTENSION))
+		{
+			return Goal.SCRIPT;
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the goal to parse with first.
+	 * 
+	 * @param filename
+	 *            the path of the file, may be null
+	 * @param source
+	 * @return
+	 */
+	public Goal predictGoal(String filename, String source)
+	{
+		Goal goal = getRequiredGoal(filename);
+		if (goal != null)
+		{
+			return goal;
+		}
+
+		if (filename != null)
+		{
+			synchronized (fFileGoals)
+			{
+				goal = fFileGoals.get(filename);
+			}
+			if (goal != null)
+			{
+				return goal;
+			}
+
+			goal = getPackageGoal(new File(filename));
+			if (goal != null)
+			{
+				return goal;
+			}
+		}
+
+		return hasModuleSyntax(source) ? Goal.MODULE : Goal.SCRIPT;
+	}
+
+	/**
+	 * Records a parse. Successful parses of a file are remembered so that the next parse of it uses the same goal.
+	 * 
+	 * @param filename
+	 * @param goal
+	 * @param success
+	 */
+	public void parsed(String filename, Goal goal, boolean success)
+	{
+		if (goal == Goal.MODULE)
+		{
+			fModuleParses.incrementAndGet();
+		}
+		else
+		{
+			fScriptParses.incrementAndGet();
+		}
+		if (success && filename != null)
+		{
+			synchronized (fFileGoals)
+			{
+				fFileGoals.put(filename, goal);
+			}
+		}
+	}
+
+	/**
+	 * Records that the predicted goal failed and the file is parsed again with the other one.
+	 */
+	public void fellBack()
+	{
+		fFallbacks.incrementAndGet();
+	}
+
+	/**
+	 * Returns the number of parses done with the module goal.
+	 * 
+	 * @return
+	 */
+	public int getModuleParseCount()
+	{
+		return fModuleParses.get();
+	}
+
+	/**
+	 * Returns the number of parses done with the script goal.
+	 * 
+	 * @return
+	 */
+	public int getScriptParseCount()
+	{
+		return fScriptParses.get();
+	}
+
+	/**
+	 * Returns the number of times the predicted goal failed and the other goal was tried.
+	 * 
+	 * @return
+	 */
+	public int getFallbackCount()
+	{
+		return fFallbacks.get();
+	}
+
+	/**
+	 * Forgets the remembered goals and resets the counters.
+	 */
+	public void reset()
+	{
+		synchronized (fFileGoals)
+		{
+			fFileGoals.clear();
+		}
+		synchronized (fPackageTypes)
+		{
+			fPackageTypes.clear();
+		}
+		fModuleParses.set(0);
+		fScriptParses.set(0);
+		fFallbacks.set(0);
+	}
+
+	/**
+	 * Returns the goal implied by the "type" of the nearest package.json, null if there's none or it has no type.
+	 * 
+	 * @param file
+	 * @return
+	 */
+	private Goal getPackageGoal(File file)
+	{
+		File directory = file.getParentFile();
+		while (directory != null)
+		{
+			File packageJSON = new File(directory, PACKAGE_JSON);
+			if (packageJSON.isFile())
+			{
+				return getPackageType(packageJSON);
+			}
+			directory = directory.getParentFile();
+		}
+		return null;
+	}
+
+	private Goal getPackageType(File packageJSON)
+	{
+		long lastModified = packageJSON.lastModified();
+		synchronized (fPackageTypes)
+		{
+			PackageType type = fPackageTypes.get(packageJSON);
+			if (type != null && type.lastModified == lastModified)
+			{
+				return type.goal;
+			}
+		}
+
+		Goal goal = null;
+		try
+		{
+			Object json = new JSONParser().parse(IOUtil.read(new FileInputStream(packageJSON)));
+			if (json instanceof JSONObject)
+			{
+				Object type = ((JSONObject) json).get(TYPE);
+				if (TYPE_MODULE.equals(type))
+				{
+					goal = Goal.MODULE;
+				}
+				else if (TYPE_COMMONJS.equals(type))
+				{
+					goal = Goal.SCRIPT;
+				}
+			}
+		}
+		catch (Exception e)
+		{
+			// unreadable or invalid package.json, decide on the source
+		}
+
+		synchronized (fPackageTypes)
+		{
+			fPackageTypes.put(packageJSON, new PackageType(lastModified, goal));
+		}
+		return goal;
+	}
+
+	/**
+	 * Scans the source for import or export statements outside of any block, skipping comments, strings, template
+	 * literals and regular expressions. Dynamic imports ("import(") don't count, "import.meta" does.
+	 * 
+	 * @param source
+	 * @return
+	 */
+	public static boolean hasModuleSyntax(String source)
+	{
+		if (source == null)
+		{
+			return false;
+		}
+
+		int length = source.length();
+		int depth = 0;
+		// the last character that isn't whitespace or part of a comment, used to tell regexps from divisions and
+		// keywords from property names
+		char previous = ';';
+		int i = 0;
+		while (i < length)
+		{
+			char c = source.charAt(i);
+			if (Character.isWhitespace(c))
+			{
+				i++;
+				continue;
+			}
+
+			if (c == '/' && i + 1 < length && source.charAt(i + 1) == '/')
+			{
+				i = skipTo(source, i + 2, '\n');
+				continue;
+			}
+			if (c == '/' && i + 1 < length && source.charAt(i + 1) == '*')
+			{
+				int end = source.indexOf("*/", i + 2); //$NON-NLS-1$
+				i = (end == -1) ? length : end + 2;
+				continue;
+			}
+
+			switch (c)
+			{
+				case '\'':
+				case '"':
+				case '`':
+					i = skipQuoted(source, i, c);
+					break;
+
+				case '/':
+					i = isRegexpStart(previous) ? skipRegexp(source, i) : i + 1;
+					break;
+
+				case '{':
+				case '(':
+				case '[':
+					depth++;
+					i++;
+					break;
+
+				case '}':
+				case ')':
+				case ']':
+					depth = Math.max(depth - 1, 0);
+					i++;
+					break;
+
+				default:
+					if (Character.isJavaIdentifierStart(c))
+					{
+						int start = i;
+						while (i < length && Character.isJavaIdentifierPart(source.charAt(i)))
+						{
+							i++;
+						}
+						if (depth == 0 && previous != '.' && isModuleKeyword(source, start, i))
+						{
+							return true;
+						}
+						c = source.charAt(i - 1);
+					}
+					else
+					{
+						i++;
+					}
+					break;
+			}
+			previous = c;
+		}
+		return false;
+	}
+
+	private static boolean isModuleKeyword(String source, int start, int end)
+	{
+		int length = end - start;
+		if (length != IMPORT.length())
+		{
+			return false;
+		}
+		if (source.regionMatches(start, EXPORT, 0, length))
+		{
+			return true;
+		}
+		if (!source.regionMatches(start, IMPORT, 0, length))
+		{
+			return false;
+		}
+
+		// import(...) is a dynamic import which is allowed in scripts
+		int i = end;
+		while (i < source.length() && Character.isWhitespace(source.charAt(i)))
+		{
+			i++;
+		}
+		return i < source.length() && source.charAt(i) != '(';
+	}
+
+	private static boolean isRegexpStart(char previous)
+	{
+		return "(,=:[!&|?{};+-*%<>~^".indexOf(previous) != -1; //$NON-NLS-1$
+	}
+
+	private static int skipTo(String source, int from, char c)
+	{
+		int end = source.indexOf(c, from);
+		return (end == -1) ? source.length() : end + 1;
+	}
+
+	private static int skipQuoted(String source, int start, char quote)
+	{
+		int i = start + 1;
+		while (i < source.length())
+		{
+			char c = source.charAt(i);
+			if (c == '\\')
+			{
+				i += 2;
+				continue;
+			}
+			i++;
+			if (c == quote || (c == '\n' && quote != '`'))
+			{
+				break;
+			}
+		}
+		return i;
+	}
+
+	private static int skipRegexp(String source, int start)
+	{
+		boolean inClass = false;
+		int i = start + 1;
+		while (i < source.length())
+		{
+			char c = source.charAt(i);
+			if (c == '\\')
+			{
+				i += 2;
+				continue;
+			}
+			i++;
+			if (c == '\n')
+			{
+				break;
+			}
+			if (c == '[')
+			{
+				inClass = true;
+			}
+			else if (c == ']')
+			{
+				inClass = false;
+			}
+			else if (c == '/' && !inClass)
+			{
+				break;
+			}
+		}
+		return i;
+	}
+}
@@ -0,0 +1,433 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.internal.parsing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import com.aptana.core.build.IProblem.Severity;
+import com.aptana.core.logging.IdeLog;
+import com.aptana.core.util.ArrayUtil;
+import com.aptana.parsing.IDebugScopes;
+import com.aptana.parsing.IParseResultCodec;
+import com.aptana.parsing.IParseState;
+import com.aptana.parsing.ParseResult;
+import com.aptana.parsing.ParsingPlugin;
+import com.aptana.parsing.ast.IParseError;
+import com.aptana.parsing.ast.IParseRootNode;
+import com.aptana.parsing.ast.ParseError;
+
+/**
+ * A second level cache for the {@link com.aptana.parsing.ParsingEngine} which keeps parse results on disk between
+ * sessions. Entries are keyed by content type and a SHA-1 of the parse state (source included), stamped with the
+ * version of the parser that produced them and evicted least recently used first once the cache grows over its
+ * maximum size.
+ */
+public class ParseResultDiskCache
+{
+	private static final int MAGIC = 0x41535443; // "ASTC"
+	private static final int FORMAT_VERSION = 1;
+	private static final String ENTRY_EXTENSION = ".ast"; //$NON-NLS-1$
+	private static final String TEMP_EXTENSION = ".tmp"; //$NON-NLS-1$
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray(); //$NON-NLS-1$
+
+	private final File fDirectory;
+	private final long fMaximumSize;
+
+	/**
+	 * Total size of the entries on disk, computed when first needed. Access should be synchronized on this.
+	 */
+	private long fSize = -1;
+
+	/**
+	 * ParseResultDiskCache
+	 * 
+	 * @param directory
+	 *            the directory holding the entries, created when the first entry is written
+	 * @param maximumSize
+	 *            the maximum number of bytes used by the entries
+	 */
+	public ParseResultDiskCache(File directory, long maximumSize)
+	{
+		fDirectory = directory;
+		fMaximumSize = maximumSize;
+	}
+
+	/**
+	 * Returns the cached result for the given key, or null if there is no usable entry.
+	 * 
+	 * @param key
+	 *            see {@link #getKey(String, IParseState)}
+	 * @param contentTypeId
+	 * @param version
+	 *            the version stamp of the parser and codec
+	 * @param codec
+	 * @return
+	 */
+	public ParseResult get(String key, String contentTypeId, String version, IParseResultCodec codec)
+	{
+		File file = new File(fDirectory, key + ENTRY_EXTENSION);
+		if (!file.isFile())
+		{
+			return null;
+		}
+
+		ParseResult result = null;
+		DataInputStream input = null;
+		try
+		{
+			input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if (input.readInt() == MAGIC && input.readInt() == FORMAT_VERSION
+					&& contentTypeId.equals(input.readUTF()) && version.equals(input.readUTF()))
+			{
+				IParseRootNode rootNode = codec.read(input);
+				result = new ParseResult(rootNode, readErrors(input));
+			}
+		}
+		catch (IOException e)
+		{
+			logTrace(MessageFormat.format("Discarding unreadable parse cache entry {0}: {1}", file, e.getMessage())); //$NON-NLS-1$
+		}
+		catch (RuntimeException e)
+		{
+			logTrace(MessageFormat.format("Discarding unreadable parse cache entry {0}: {1}", file, e.getMessage())); //$NON-NLS-1$
+		}
+		finally
+		{
+			close(input);
+		}
+
+		if (result == null)
+		{
+			// stale or corrupt
+			remove(file);
+		}
+		else
+		{
+			// keeps the least recently used order for the eviction
+			file.setLastModified(System.currentTimeMillis());
+		}
+		return result;
+	}
+
+	/**
+	 * Writes a parse result to the cache.
+	 * 
+	 * @param key
+	 *            see {@link #getKey(String, IParseState)}
+	 * @param contentTypeId
+	 * @param version
+	 *            the version stamp of the parser and codec
+	 * @param codec
+	 * @param result
+	 */
+	public void put(String key, String contentTypeId, String version, IParseResultCodec codec, ParseResult result)
+	{
+		if (result == null || result.getRootNode() == null)
+		{
+			return;
+		}
+		if (!fDirectory.isDirectory() && !fDirectory.mkdirs())
+		{
+			return;
+		}
+
+		File temp = null;
+		DataOutputStream output = null;
+		try
+		{
+			// write to a temporary file first so that readers never see a partial entry
+			temp = File.createTempFile(key, TEMP_EXTENSION, fDirectory);
+			output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+			output.writeInt(MAGIC);
+			output.writeInt(FORMAT_VERSION);
+			output.writeUTF(contentTypeId);
+			output.writeUTF(version);
+			codec.write(result.getRootNode(), output);
+			writeErrors(result.getErrors(), output);
+			output.close();
+			output = null;
+
+			File file = new File(fDirectory, key + ENTRY_EXTENSION);
+			synchronized (this)
+			{
+				// makes sure the size is known before the new entry shows up in the directory
+				getSize();
+				long oldLength = file.length();
+				if ((file.exists() && !file.delete()) || !temp.renameTo(file))
+				{
+					return;
+				}
+				temp = null;
+				updateSize(file.length() - oldLength);
+			}
+		}
+		catch (IOException e)
+		{
+			logTrace(MessageFormat.format("Failed to write parse cache entry for {0}: {1}", contentTypeId, e.getMessage())); //$NON-NLS-1$
+		}
+		catch (RuntimeException e)
+		{
+			logTrace(MessageFormat.format("Failed to write parse cache entry for {0}: {1}", contentTypeId, e.getMessage())); //$NON-NLS-1$
+		}
+		finally
+		{
+			close(output);
+			if (temp != null)
+			{
+				temp.delete();
+			}
+		}
+	}
+
+	/**
+	 * Removes all the entries.
+	 */
+	public synchronized void clear()
+	{
+		for (File file : listEntries())
+		{
+			file.delete();
+		}
+		fSize = 0;
+	}
+
+	/**
+	 * Returns the number of bytes used by the entries.
+	 * 
+	 * @return
+	 */
+	public synchronized long getSize()
+	{
+		if (fSize < 0)
+		{
+			fSize = 0;
+			for (File file : listEntries())
+			{
+				fSize += file.length();
+			}
+		}
+		return fSize;
+	}
+
+	/**
+	 * Adds delta to the size and evicts the least recently used entries when the cache has grown too big. The cache is
+	 * trimmed to three quarters of its maximum size so that eviction doesn't run on every write.
+	 * 
+	 * @param delta
+	 */
+	private synchronized void updateSize(long delta)
+	{
+		fSize += delta;
+		if (fSize <= fMaximumSize)
+		{
+			return;
+		}
+
+		File[] files = listEntries();
+		final long[] lastModified = new long[files.length];
+		List<Integer> order = new ArrayList<Integer>(files.length);
+		for (int i = 0; i < files.length; i++)
+		{
+			lastModified[i] = files[i].lastModified();
+			order.add(i);
+		}
+		Collections.sort(order, new Comparator<Integer>()
+		{
+			public int compare(Integer o1, Integer o2)
+			{
+				long l1 = lastModified[o1];
+				long l2 = lastModified[o2];
+				return (l1 < l2) ? -1 : ((l1 == l2) ? 0 : 1);
+			}
+		});
+
+		long target = fMaximumSize / 4 * 3;
+		for (Integer index : order)
+		{
+			if (fSize <= target)
+			{
+				break;
+			}
+			File file = files[index];
+			long length = file.length();
+			if (file.delete())
+			{
+				fSize -= length;
+			}
+		}
+	}
+
+	private synchronized void remove(File file)
+	{
+		long length = file.length();
+		if (file.delete() && fSize >= 0)
+		{
+			fSize -= length;
+		}
+	}
+
+	private File[] listEntries()
+	{
+		File[] files = fDirectory.listFiles(new FileFilter()
+		{
+			public boolean accept(File file)
+			{
+				return file.getName().endsWith(ENTRY_EXTENSION);
+			}
+		});
+		return (files == null) ? new File[0] : files;
+	}
+
+	/**
+	 * Returns the hex SHA-1 of everything that can change the result of a parse, null if the state can't be cached.
+	 * Must be computed before parsing, parsers may clear or change the state.
+	 * 
+	 * @param contentTypeId
+	 * @param parseState
+	 * @return
+	 */
+	public String getKey(String contentTypeId, IParseState parseState)
+	{
+		String source = parseState.getSource();
+		if (source == null || !ArrayUtil.isEmpty(parseState.getSkippedRanges()))
+		{
+			return null;
+		}
+
+		try
+		{
+			MessageDigest digest = MessageDigest.getInstance("SHA-1"); //$NON-NLS-1$
+			update(digest, contentTypeId);
+			update(digest, parseState.getClass().getName());
+			update(digest, String.valueOf(parseState.getCacheKey(contentTypeId)));
+			update(digest, Integer.toString(parseState.getStartingOffset()));
+			update(digest, source);
+
+			byte[] bytes = digest.digest();
+			char[] chars = new char[bytes.length * 2];
+			for (int i = 0; i < bytes.length; i++)
+			{
+				chars[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+				chars[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xF];
+			}
+			return new String(chars);
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			return null;
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			return null;
+		}
+	}
+
+	private static void update(MessageDigest digest, String value) throws UnsupportedEncodingException
+	{
+		digest.update(value.getBytes("UTF-8")); //$NON-NLS-1$
+		digest.update((byte) 0);
+	}
+
+	private static void writeErrors(List<IParseError> errors, DataOutputStream output) throws IOException
+	{
+		output.writeInt(errors.size());
+		for (IParseError error : errors)
+		{
+			writeNullableString(error.getLangauge(), output);
+			writeNullableString(error.getMessage(), output);
+			output.writeInt(error.getSeverity().intValue());
+			output.writeInt(error.getOffset());
+			output.writeInt(error.getLength());
+			output.writeInt(error.getLineNumber());
+		}
+	}
+
+	private static List<IParseError> readErrors(DataInputStream input) throws IOException
+	{
+		int count = input.readInt();
+		if (count < 0)
+		{
+			throw new IOException(MessageFormat.format("Invalid number of parse errors: {0}", count)); //$NON-NLS-1$
+		}
+		IParseError[] errors = new IParseError[count];
+		for (int i = 0; i < count; i++)
+		{
+			String language = readNullableString(input);
+			String message = readNullableString(input);
+			Severity severity = Severity.create(input.readInt());
+			int offset = input.readInt();
+			int length = input.readInt();
+			int line = input.readInt();
+			if (offset < 0 && line >= 0)
+			{
+				errors[i] = new ParseError(language, line, message, severity);
+			}
+			else
+			{
+				errors[i] = new ParseError(language, offset, length, message, severity);
+			}
+		}
+		return Arrays.asList(errors);
+	}
+
+	private static void writeNullableString(String value, DataOutputStream output) throws IOException
+	{
+		output.writeBoolean(value != null);
+		if (value != null)
+		{
+			output.writeUTF(value);
+		}
+	}
+
+	private static String readNullableString(DataInputStream input) throws IOException
+	{
+		return input.readBoolean() ? input.readUTF() : null;
+	}
+
+	private static void close(Closeable closeable)
+	{
+		if (closeable != null)
+		{
+			try
+			{
+				closeable.close();
+			}
+			catch (IOException e)
+			{
+				// ignore
+			}
+		}
+	}
+
+	private static void logTrace(String message)
+	{
+		ParsingPlugin plugin = ParsingPlugin.getDefault();
+		if (plugin != null)
+		{
+			IdeLog.logTrace(plugin, message, IDebugScopes.PARSING);
+		}
+	}
+}
@@ -0,0 +1,37 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.parsing;
+
+/**
+ * A parser able to update the result of a previous parse after an edit, parsing only the part of the source the edit
+ * affects. See {@link ParsingEngine#reparse(String, IParseState, ParseResult, int, int, int)}.
+ */
+public interface IIncrementalParser extends IParser
+{
+	/**
+	 * Parses the source of the parse state, which differs from the source of the previous result by a single edit.
+	 * Nodes of the previous result outside of the statements affected by the edit are moved into the returned result
+	 * and their offsets shifted in place, so the previous result mustn't be used anymore once a result is returned. If
+	 * the edit can't be handled incrementally, null is returned and the previous result is left untouched.
+	 * 
+	 * @param parseState
+	 *            holds the new source
+	 * @param previous
+	 *            the result of parsing the previous source, with the same starting offset
+	 * @param offset
+	 *            where the edit starts
+	 * @param removedLength
+	 *            the number of characters of the previous source that were replaced
+	 * @param insertedLength
+	 *            the number of characters that replaced them
+	 * @return the new result, or null
+	 * @throws Exception
+	 */
+	public ParseResult reparse(IParseState parseState, ParseResult previous, int offset, int removedLength,
+			int insertedLength) throws Exception; // $codepro.audit.disable declaredExceptions
+}
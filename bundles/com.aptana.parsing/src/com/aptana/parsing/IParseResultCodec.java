@@ -0,0 +1,48 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.parsing;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import com.aptana.parsing.ast.IParseRootNode;
+
+/**
+ * Writes and reads the ASTs of a language so that parse results can be kept in the disk cache between sessions.
+ * Contributed through the "cacheCodec" attribute of the parser extension; languages without a codec are only cached in
+ * memory. Parse errors are stored by the cache itself.
+ */
+public interface IParseResultCodec
+{
+	/**
+	 * The version of the format written by this codec. Entries written with another version (or by another version of
+	 * the bundle contributing the parser) are discarded.
+	 * 
+	 * @return
+	 */
+	public int getVersion();
+
+	/**
+	 * write
+	 * 
+	 * @param rootNode
+	 * @param output
+	 * @throws IOException
+	 */
+	public void write(IParseRootNode rootNode, DataOutput output) throws IOException;
+
+	/**
+	 * read
+	 * 
+	 * @param input
+	 * @return
+	 * @throws IOException
+	 */
+	public IParseRootNode read(DataInput input) throws IOException;
+}
@@ -0,0 +1,21 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.parsing;
+
+public interface IPreferenceConstants
+{
+	/**
+	 * Boolean preference enabling the disk cache of parse results kept under the workspace metadata. Defaults to false.
+	 */
+	public static final String ENABLE_DISK_PARSE_CACHE = "ENABLE_DISK_PARSE_CACHE"; //$NON-NLS-1$
+
+	/**
+	 * Integer preference for the maximum size of the disk cache of parse results, in megabytes. Defaults to 64.
+	 */
+	public static final String DISK_PARSE_CACHE_SIZE = "DISK_PARSE_CACHE_SIZE"; //$NON-NLS-1$
+}
@@ -7,31 +7,42 @@
  */
 package com.aptana.parsing;
 
+import java.io.File;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 
+import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IConfigurationElement;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.content.IContentType;
 import org.eclipse.core.runtime.content.IContentTypeManager;
+import org.eclipse.core.runtime.preferences.IPreferencesService;
+import org.osgi.framework.Bundle;
 
+import com.aptana.core.logging.IdeLog;
 import com.aptana.core.util.CollectionsUtil;
 import com.aptana.core.util.EclipseUtil;
 import com.aptana.core.util.IConfigurationElementProcessor;
+import com.aptana.internal.parsing.ParseResultDiskCache;
 import com.aptana.internal.parsing.ParserPool;
 
-public class ParserPoolFactory implements ParsingEngine.IParserPoolProvider
+public class ParserPoolFactory implements ParsingEngine.IParserPoolProvider, ParsingEngine.IParseResultCodecProvider
 {
 	// extension point constants
 	private static final String PARSER_ID = "parser"; //$NON-NLS-1$
 	private static final String ELEMENT_PARSER = "parser"; //$NON-NLS-1$
 	private static final String ATTR_CONTENT_TYPE = "content-type"; //$NON-NLS-1$
+	private static final String ATTR_CACHE_CODEC = "cacheCodec"; //$NON-NLS-1$
+
+	private static final String DISK_CACHE_DIRECTORY = "parseCache"; //$NON-NLS-1$
+	private static final int DEFAULT_DISK_CACHE_SIZE = 64; // MB
 
 	private static ParserPoolFactory INSTANCE;
 	private Map<String, IConfigurationElement> parsers;
 	private Map<String, IParserPool> pools;
+	private Map<String, IParseResultCodec> codecs;
 	private final ParsingEngine fParsingEngine;
 
 	/**
@@ -89,6 +100,30 @@ public class ParserPoolFactory implements ParsingEngine.IParserPoolProvider
 	private ParserPoolFactory()
 	{
 		fParsingEngine = new ParsingEngine(this);
+		fParsingEngine.setDiskCache(createDiskCache());
+	}
+
+	/**
+	 * Creates the disk cache of parse results under the plugin's state location if it's turned on in the preferences.
+	 * 
+	 * @return
+	 */
+	private static ParseResultDiskCache createDiskCache()
+	{
+		ParsingPlugin plugin = ParsingPlugin.getDefault();
+		if (plugin == null)
+		{
+			return null;
+		}
+		IPreferencesService service = Platform.getPreferencesService();
+		if (!service.getBoolean(ParsingPlugin.PLUGIN_ID, IPreferenceConstants.ENABLE_DISK_PARSE_CACHE, false, null))
+		{
+			return null;
+		}
+		int size = service.getInt(ParsingPlugin.PLUGIN_ID, IPreferenceConstants.DISK_PARSE_CACHE_SIZE,
+				DEFAULT_DISK_CACHE_SIZE, null);
+		File directory = plugin.getStateLocation().append(DISK_CACHE_DIRECTORY).toFile();
+		return new ParseResultDiskCache(directory, Math.max(size, 1) * 1024L * 1024L);
 	}
 
 	/**
@@ -115,6 +150,12 @@ public class ParserPoolFactory implements ParsingEngine.IParserPoolProvider
 			parsers.clear();
 			parsers = null;
 		}
+
+		if (codecs != null)
+		{
+			codecs.clear();
+			codecs = null;
+		}
 	}
 
 	/**
@@ -173,6 +214,82 @@ public class ParserPoolFactory implements ParsingEngine.IParserPoolProvider
 		return result;
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.parsing.ParsingEngine.IParseResultCodecProvider#getParseResultCodec(java.lang.String)
+	 */
+	public synchronized IParseResultCodec getParseResultCodec(String contentTypeId)
+	{
+		if (codecs == null)
+		{
+			codecs = new HashMap<String, IParseResultCodec>();
+		}
+		if (codecs.containsKey(contentTypeId))
+		{
+			return codecs.get(contentTypeId);
+		}
+
+		IParseResultCodec codec = null;
+		IConfigurationElement parserExtension = getParserExtension(contentTypeId);
+		if (parserExtension != null && parserExtension.getAttribute(ATTR_CACHE_CODEC) != null)
+		{
+			try
+			{
+				codec = (IParseResultCodec) parserExtension.createExecutableExtension(ATTR_CACHE_CODEC);
+			}
+			catch (CoreException e)
+			{
+				IdeLog.logError(ParsingPlugin.getDefault(), e);
+			}
+		}
+		// remember the content types without a codec too
+		codecs.put(contentTypeId, codec);
+		return codec;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see com.aptana.parsing.ParsingEngine.IParseResultCodecProvider#getParserVersion(java.lang.String)
+	 */
+	public synchronized String getParserVersion(String contentTypeId)
+	{
+		IConfigurationElement parserExtension = getParserExtension(contentTypeId);
+		if (parserExtension == null)
+		{
+			return null;
+		}
+		String bundleName = parserExtension.getContributor().getName();
+		Bundle bundle = Platform.getBundle(bundleName);
+		if (bundle == null)
+		{
+			return null;
+		}
+		return bundleName + '_' + bundle.getVersion();
+	}
+
+	/**
+	 * Returns the parser extension for a content type, working up the base content types like
+	 * {@link #getParserPool(String)}.
+	 * 
+	 * @param contentTypeId
+	 * @return
+	 */
+	private IConfigurationElement getParserExtension(String contentTypeId)
+	{
+		if (parsers == null)
+		{
+			parsers = getParsers();
+		}
+		IConfigurationElement result = parsers.get(contentTypeId);
+		IContentType contentType = Platform.getContentTypeManager().getContentType(contentTypeId);
+		while (result == null && contentType != null)
+		{
+			result = parsers.get(contentType.getId());
+			contentType = contentType.getBaseType();
+		}
+		return result;
+	}
+
 	/**
 	 * parse
 	 * 
@@ -230,6 +347,55 @@ public class ParserPoolFactory implements ParsingEngine.IParserPoolProvider
 		return getInstance().fParsingEngine.parse(contentTypeId, parseState);
 	}
 
+	/**
+	 * parseUncached
+	 * 
+	 * @param contentTypeId
+	 * @param parseState
+	 * @return
+	 * @see ParsingEngine#parseUncached(String, IParseState)
+	 */
+	public static ParseResult parseUncached(String contentTypeId, IParseState parseState)
+			throws Exception // $codepro.audit.disable declaredExceptions
+	{
+		return getInstance().fParsingEngine.parseUncached(contentTypeId, parseState);
+	}
+
+	/**
+	 * reparse
+	 * 
+	 * @param contentTypeId
+	 * @param parseState
+	 * @param previousSource
+	 * @param previous
+	 * @return
+	 * @see ParsingEngine#reparse(String, IParseState, String, ParseResult)
+	 */
+	public static ParseResult reparse(String contentTypeId, IParseState parseState, String previousSource,
+			ParseResult previous) throws Exception // $codepro.audit.disable declaredExceptions
+	{
+		return getInstance().fParsingEngine.reparse(contentTypeId, parseState, previousSource, previous);
+	}
+
+	/**
+	 * reparse
+	 * 
+	 * @param contentTypeId
+	 * @param parseState
+	 * @param previous
+	 * @param offset
+	 * @param removedLength
+	 * @param insertedLength
+	 * @return
+	 * @see ParsingEngine#reparse(String, IParseState, ParseResult, int, int, int)
+	 */
+	public static ParseResult reparse(String contentTypeId, IParseState parseState, ParseResult previous, int offset,
+			int removedLength, int insertedLength) throws Exception // $codepro.audit.disable declaredExceptions
+	{
+		return getInstance().fParsingEngine.reparse(contentTypeId, parseState, previous, offset, removedLength,
+				insertedLength);
+	}
+
 	/**
 	 * To be used to force the cache to be cleaned. Primarily used for testing, but also if some settings/prefs change
 	 * and we need to wipe cached parse results that conatin markers/warnings/etc.
@@ -15,6 +15,7 @@ import com.aptana.core.epl.util.ILRUCacheable;
 import com.aptana.core.epl.util.LRUCacheWithSoftPrunedValues;
 import com.aptana.core.logging.IdeLog;
 import com.aptana.core.util.StringUtil;
+import com.aptana.internal.parsing.ParseResultDiskCache;
 
 /**
  * This class is responsible for actually calling the parsing. It'll use the ParseState#getCacheKey() to know if an
@@ -31,6 +32,22 @@ public class ParsingEngine
 		IParserPool getParserPool(String contentTypeId);
 	}
 
+	/**
+	 * Implemented by parser pool providers that can keep parse results in the disk cache.
+	 */
+	public static interface IParseResultCodecProvider
+	{
+		/**
+		 * @return the codec for the ASTs of the given content type, or null if they can't be stored on disk.
+		 */
+		IParseResultCodec getParseResultCodec(String contentTypeId);
+
+		/**
+		 * @return a stamp identifying the version of the parser used for the given content type.
+		 */
+		String getParserVersion(String contentTypeId);
+	}
+
 	/**
 	 * Internal class to help in the synchronization of the parsing results.
 	 */
@@ -157,6 +174,17 @@ public class ParsingEngine
 	public static final int MAXIMUM_NUMBER_OF_CHARS_IN_STRONG_REFERENCES_CACHE = 400 * 1024; // a 400kb file (with
 																								// strong references)
 
+	/**
+	 * Sources smaller than this are parsed faster than their AST is read back from disk, so they're kept out of the disk
+	 * cache.
+	 */
+	public static final int MINIMUM_NUMBER_OF_CHARS_TO_ENTER_DISK_CACHE = 16 * 1024;
+
+	/**
+	 * Optional second level cache keeping parse results between sessions.
+	 */
+	private volatile ParseResultDiskCache fDiskCache;
+
 	/**
 	 * If the parse would be too fast, don't even add it to the cache, as the cost of having it in the cache and having
 	 * many misses is higher than not having it at the cache in the first place.
@@ -188,6 +216,18 @@ public class ParsingEngine
 	public void dispose()
 	{
 		fParseCache = null;
+		fDiskCache = null;
+	}
+
+	/**
+	 * Sets the disk cache consulted before parsing content types whose parser pool provider supplies a
+	 * {@link IParseResultCodec}. Null turns it off.
+	 * 
+	 * @param diskCache
+	 */
+	public void setDiskCache(ParseResultDiskCache diskCache)
+	{
+		fDiskCache = diskCache;
 	}
 
 	/**
@@ -365,7 +405,7 @@ public class ParsingEngine
 									IDebugScopes.PARSING);
 						}
 
-						result = parser.parse(parseState);
+						result = diskCacheParse(contentTypeId, parseState, parser);
 
 					}
 					finally
@@ -397,6 +437,197 @@ public class ParsingEngine
 
 	}
 
+	/**
+	 * Looks the parse up in the disk cache (when there's one and the content type can be stored), otherwise parses
+	 * and stores the result.
+	 */
+	private ParseResult diskCacheParse(String contentTypeId, IParseState parseState, IParser parser) throws Exception
+	{
+		ParseResultDiskCache diskCache = fDiskCache;
+		if (diskCache == null || parseState.getSource().length() < MINIMUM_NUMBER_OF_CHARS_TO_ENTER_DISK_CACHE
+				|| !(fParserPoolProvider instanceof IParseResultCodecProvider))
+		{
+			return parser.parse(parseState);
+		}
+
+		IParseResultCodecProvider codecProvider = (IParseResultCodecProvider) fParserPoolProvider;
+		IParseResultCodec codec = codecProvider.getParseResultCodec(contentTypeId);
+		String parserVersion = codecProvider.getParserVersion(contentTypeId);
+		if (codec == null || parserVersion == null)
+		{
+			return parser.parse(parseState);
+		}
+
+		String key = diskCache.getKey(contentTypeId, parseState);
+		if (key == null)
+		{
+			return parser.parse(parseState);
+		}
+
+		String version = parserVersion + '/' + codec.getVersion();
+		ParseResult result = diskCache.get(key, contentTypeId, version, codec);
+		if (result != null)
+		{
+			ParsingPlugin plugin = ParsingPlugin.getDefault();
+			if (plugin != null && IdeLog.isTraceEnabled(plugin, IDebugScopes.PARSING))
+			{
+				IdeLog.logTrace(plugin, MessageFormat.format("Parsing disk cache hit for content type {0}, length {1}", //$NON-NLS-1$
+						contentTypeId, parseState.getSource().length()), IDebugScopes.PARSING);
+			}
+			return result;
+		}
+
+		result = parser.parse(parseState);
+		diskCache.put(key, contentTypeId, version, codec, result);
+		return result;
+	}
+
+	/**
+	 * Parses the source of the parse state, which replaces a previously parsed source. The edit between both sources is
+	 * whatever lies between their common prefix and their common suffix. See
+	 * {@link #reparse(String, IParseState, ParseResult, int, int, int)}.
+	 * 
+	 * @param contentTypeId
+	 * @param parseState
+	 * @param previousSource
+	 *            the source of the previous result, may be null
+	 * @param previous
+	 *            the result of the last call to this method for the previous source, may be null
+	 * @return
+	 * @throws Exception
+	 */
+	public ParseResult reparse(String contentTypeId, IParseState parseState, String previousSource,
+			ParseResult previous) throws Exception // $codepro.audit.disable declaredExceptions
+	{
+		String source = parseState.getSource();
+		if (previousSource == null || source == null)
+		{
+			return reparse(contentTypeId, parseState, null, 0, 0, 0);
+		}
+
+		int oldLength = previousSource.length();
+		int newLength = source.length();
+		int maxPrefix = Math.min(oldLength, newLength);
+		int prefix = 0;
+		while (prefix < maxPrefix && previousSource.charAt(prefix) == source.charAt(prefix))
+		{
+			prefix++;
+		}
+		int maxSuffix = maxPrefix - prefix;
+		int suffix = 0;
+		while (suffix < maxSuffix
+				&& previousSource.charAt(oldLength - suffix - 1) == source.charAt(newLength - suffix - 1))
+		{
+			suffix++;
+		}
+		return reparse(contentTypeId, parseState, previous, prefix, oldLength - prefix - suffix,
+				newLength - prefix - suffix);
+	}
+
+	/**
+	 * Parses the source of the parse state, which differs from a previously parsed source by the given edit, as
+	 * reported by the document. When the parser of the content type is an {@link IIncrementalParser}, only the part of
+	 * the source affected by the edit is parsed again and the other nodes of the previous result are reused. Otherwise
+	 * this is the same as {@link #parse(String, IParseState)}.<br>
+	 * Incremental parsers take the previous result over, so it mustn't be used once this returns. For the same reason
+	 * their results are never cached, the caller passes them back as the previous result of the next call.
+	 * 
+	 * @param contentTypeId
+	 * @param parseState
+	 * @param previous
+	 *            the result of the last call to this method for the previous source, may be null
+	 * @param offset
+	 *            where the edit starts
+	 * @param removedLength
+	 *            the number of characters of the previous source that were replaced
+	 * @param insertedLength
+	 *            the number of characters that replaced them
+	 * @return
+	 * @throws Exception
+	 */
+	public ParseResult reparse(String contentTypeId, IParseState parseState, ParseResult previous, int offset,
+			int removedLength, int insertedLength) throws Exception // $codepro.audit.disable declaredExceptions
+	{
+		String source = parseState.getSource();
+		IParserPool pool = (contentTypeId == null || source == null) ? null : fParserPoolProvider
+				.getParserPool(contentTypeId);
+		IParser parser = (pool == null) ? null : pool.checkOut();
+		if (!(parser instanceof IIncrementalParser))
+		{
+			if (parser != null)
+			{
+				pool.checkIn(parser);
+			}
+			return parse(contentTypeId, parseState);
+		}
+
+		ParsingPlugin plugin = ParsingPlugin.getDefault();
+		boolean traceEnabled = plugin != null && IdeLog.isTraceEnabled(plugin, IDebugScopes.PARSING);
+		try
+		{
+			if (previous != null && previous.getRootNode() != null)
+			{
+				if (removedLength == 0 && insertedLength == 0)
+				{
+					return previous;
+				}
+				ParseResult result = ((IIncrementalParser) parser).reparse(parseState, previous, offset,
+						removedLength, insertedLength);
+				if (result != null)
+				{
+					if (traceEnabled)
+					{
+						IdeLog.logTrace(plugin, MessageFormat.format(
+								"Incremental parse of content type {0} at offset {1}, {2} chars removed, {3} inserted", //$NON-NLS-1$
+								contentTypeId, offset, removedLength, insertedLength), IDebugScopes.PARSING);
+					}
+					return result;
+				}
+				if (traceEnabled)
+				{
+					IdeLog.logTrace(plugin, MessageFormat.format(
+							"Incremental parse of content type {0} at offset {1} not possible, parsing everything", //$NON-NLS-1$
+							contentTypeId, offset), IDebugScopes.PARSING);
+				}
+			}
+
+			// Not cached in memory: the caller hands the result back to us and its nodes get reused. Entries of the disk
+			// cache are read into new nodes every time, so those can be used for the first parse.
+			if (previous == null)
+			{
+				return diskCacheParse(contentTypeId, parseState, parser);
+			}
+			return parser.parse(parseState);
+		}
+		finally
+		{
+			pool.checkIn(parser);
+			parseState.clearEditState();
+		}
+	}
+
+	/**
+	 * Parses the source without going through the parse cache, for callers that modify the result afterwards (i.e.
+	 * shift its offsets in place), so that they neither get a result others may hold nor hand theirs to others.
+	 * 
+	 * @param contentTypeId
+	 * @param parseState
+	 * @return
+	 * @throws Exception
+	 */
+	public ParseResult parseUncached(String contentTypeId, IParseState parseState)
+			throws Exception // $codepro.audit.disable declaredExceptions
+	{
+		try
+		{
+			return noCacheParse(contentTypeId, parseState);
+		}
+		finally
+		{
+			parseState.clearEditState();
+		}
+	}
+
 	private ParseResult noCacheParse(String contentTypeId, IParseState parseState) throws Exception
 	{
 		IParserPool pool = null;
@@ -22,7 +22,7 @@ import com.aptana.parsing.ParsingPlugin;
 import com.aptana.parsing.lexer.IRange;
 import com.aptana.parsing.lexer.Range;
 
-public abstract class ParseNode extends Node implements IParseNode
+public abstract class ParseNode extends Node implements IParseNode, Cloneable
 {
 	protected static final class NameNode implements INameNode
 	{
@@ -119,6 +119,47 @@ public abstract class ParseNode extends Node implements IParseNode
 		setLocation(getStart() + offset, getEnd() + offset);
 	}
 
+	/**
+	 * Returns a copy of this node and of its descendants. The copy has no parent, so it can be moved into another tree
+	 * or have its offsets shifted while this node stays as it is. Other fields, such as documentation, are shared.
+	 * 
+	 * @return the copy
+	 */
+	@Override
+	public ParseNode clone()
+	{
+		ParseNode copy;
+		try
+		{
+			copy = (ParseNode) super.clone();
+		}
+		catch (CloneNotSupportedException e)
+		{
+			throw new IllegalStateException(e);
+		}
+		copy.fParent = null;
+		if (fChildrenCount == 0)
+		{
+			copy.fChildren = NO_CHILDREN;
+		}
+		else
+		{
+			copy.fChildren = new IParseNode[fChildrenCount];
+			for (int i = 0; i < fChildrenCount; i++)
+			{
+				IParseNode child = fChildren[i];
+				if (child instanceof ParseNode)
+				{
+					ParseNode childCopy = ((ParseNode) child).clone();
+					childCopy.fParent = copy;
+					child = childCopy;
+				}
+				copy.fChildren[i] = child;
+			}
+		}
+		return copy;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see com.aptana.parsing.lexer.IRange#contains(int)
@@ -0,0 +1,372 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.parsing.query;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.aptana.parsing.ast.IParseNode;
+
+/**
+ * A compiled selector over parse nodes, for the simple paths we used to evaluate as XPath expressions through Jaxen.
+ * The selector is parsed once; evaluating it walks the children of the nodes directly, without creating iterators or
+ * any other object per node visited.
+ * 
+ * <pre>
+ * selector := path ('|' path)*
+ * path     := ('/' | '//')? step (('/' | '//') step)*
+ * step     := (name | '*') ('[' position ']')?
+ * </pre>
+ * 
+ * Names are matched against {@link IParseNode#getElementName()}. A path starting with '/' or '//' is evaluated from the
+ * root of the context node's tree, any other one from the context node. '/' selects children and '//' descendants, as
+ * in XPath. A position selects the nth (starting at 1) child matching the step among the children of each node, i.e.
+ * "invoke[1]" is XPath's "invoke[position() = 1]". Results are returned in document order, without duplicates.
+ */
+public final class ParseNodeQuery
+{
+	private static final String UNION = "|"; //$NON-NLS-1$
+	private static final String ANY = "*"; //$NON-NLS-1$
+
+	/**
+	 * Orders nodes by offset, ancestors before their descendants.
+	 */
+	private static final Comparator<IParseNode> DOCUMENT_ORDER = new Comparator<IParseNode>()
+	{
+		public int compare(IParseNode o1, IParseNode o2)
+		{
+			int diff = o1.getStartingOffset() - o2.getStartingOffset();
+			if (diff != 0)
+			{
+				return diff;
+			}
+			return getDepth(o1) - getDepth(o2);
+		}
+
+		private int getDepth(IParseNode node)
+		{
+			int depth = 0;
+			for (IParseNode parent = node.getParent(); parent != null; parent = parent.getParent())
+			{
+				depth++;
+			}
+			return depth;
+		}
+	};
+
+	/**
+	 * One step of a path.
+	 */
+	private static final class Step
+	{
+		final boolean descendant;
+		final String name;
+		final int position;
+
+		Step(boolean descendant, String name, int position)
+		{
+			this.descendant = descendant;
+			this.name = name;
+			this.position = position;
+		}
+	}
+
+	/**
+	 * The steps of a path.
+	 */
+	private static final class Path
+	{
+		final boolean absolute;
+		final Step[] steps;
+
+		Path(boolean absolute, Step[] steps)
+		{
+			this.absolute = absolute;
+			this.steps = steps;
+		}
+
+		/**
+		 * Whether walking the path may not find the nodes in document order, or may find some twice. That is the case
+		 * when a '//' step isn't the last one, since the nodes it matches may be nested.
+		 */
+		boolean isUnordered()
+		{
+			for (int i = 0; i < steps.length - 1; i++)
+			{
+				if (steps[i].descendant)
+				{
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	private final String selector;
+	private final Path[] paths;
+	private final boolean caseInsensitive;
+	private final boolean needsSort;
+
+	/**
+	 * Compiles a case-sensitive selector.
+	 * 
+	 * @param selector
+	 * @return
+	 * @throws IllegalArgumentException
+	 *             if the selector isn't valid
+	 */
+	public static ParseNodeQuery compile(String selector)
+	{
+		return compile(selector, false);
+	}
+
+	/**
+	 * Compiles a selector.
+	 * 
+	 * @param selector
+	 * @param caseInsensitive
+	 *            whether names are matched ignoring case, e.g. for HTML
+	 * @return
+	 * @throws IllegalArgumentException
+	 *             if the selector isn't valid
+	 */
+	public static ParseNodeQuery compile(String selector, boolean caseInsensitive)
+	{
+		if (selector == null)
+		{
+			throw new IllegalArgumentException("Selector can't be null"); //$NON-NLS-1$
+		}
+		List<Path> paths = new ArrayList<Path>();
+		int start = 0;
+		while (true)
+		{
+			int end = selector.indexOf(UNION, start);
+			paths.add(parsePath(selector, start, (end == -1) ? selector.length() : end));
+			if (end == -1)
+			{
+				break;
+			}
+			start = end + UNION.length();
+		}
+		return new ParseNodeQuery(selector, paths.toArray(new Path[paths.size()]), caseInsensitive);
+	}
+
+	private static Path parsePath(String selector, int start, int end)
+	{
+		String path = selector.substring(start, end).trim();
+		if (path.length() == 0)
+		{
+			throw invalid(selector, "empty path"); //$NON-NLS-1$
+		}
+
+		boolean absolute = path.charAt(0) == '/';
+		boolean descendant = path.startsWith("//"); //$NON-NLS-1$
+		List<Step> steps = new ArrayList<Step>();
+		int i = descendant ? 2 : (absolute ? 1 : 0);
+
+		while (i <= path.length())
+		{
+			int next = path.indexOf('/', i);
+			String step = path.substring(i, (next == -1) ? path.length() : next).trim();
+			steps.add(parseStep(selector, step, descendant));
+			if (next == -1)
+			{
+				break;
+			}
+			descendant = next + 1 < path.length() && path.charAt(next + 1) == '/';
+			i = next + (descendant ? 2 : 1);
+		}
+		return new Path(absolute, steps.toArray(new Step[steps.size()]));
+	}
+
+	private static Step parseStep(String selector, String step, boolean descendant)
+	{
+		String name = step;
+		int position = 0;
+		int bracket = step.indexOf('[');
+		if (bracket != -1)
+		{
+			if (!step.endsWith("]")) //$NON-NLS-1$
+			{
+				throw invalid(selector, step);
+			}
+			name = step.substring(0, bracket).trim();
+			try
+			{
+				position = Integer.parseInt(step.substring(bracket + 1, step.length() - 1).trim());
+			}
+			catch (NumberFormatException e)
+			{
+				throw invalid(selector, step);
+			}
+			if (position < 1)
+			{
+				throw invalid(selector, step);
+			}
+		}
+		if (ANY.equals(name))
+		{
+			return new Step(descendant, null, position);
+		}
+		if (name.length() == 0)
+		{
+			throw invalid(selector, step);
+		}
+		for (int i = 0; i < name.length(); i++)
+		{
+			char c = name.charAt(i);
+			if (!Character.isLetterOrDigit(c) && c != '_' && c != '-' && c != '!')
+			{
+				throw invalid(selector, step);
+			}
+		}
+		return new Step(descendant, name, position);
+	}
+
+	private static IllegalArgumentException invalid(String selector, String detail)
+	{
+		return new IllegalArgumentException(MessageFormat.format(
+				"Invalid selector ''{0}'': {1}", selector, detail)); //$NON-NLS-1$
+	}
+
+	private ParseNodeQuery(String selector, Path[] paths, boolean caseInsensitive)
+	{
+		this.selector = selector;
+		this.paths = paths;
+		this.caseInsensitive = caseInsensitive;
+
+		boolean unordered = paths.length > 1;
+		for (Path path : paths)
+		{
+			unordered |= path.isUnordered();
+		}
+		this.needsSort = unordered;
+	}
+
+	/**
+	 * Returns the nodes selected from the given context node.
+	 * 
+	 * @param context
+	 * @return
+	 */
+	public List<IParseNode> select(IParseNode context)
+	{
+		return select(context, IParseNode.class);
+	}
+
+	/**
+	 * Returns the nodes of the given type selected from the given context node. Nodes of other types are skipped.
+	 * 
+	 * @param context
+	 * @param type
+	 * @return
+	 */
+	public <T extends IParseNode> List<T> select(IParseNode context, Class<T> type)
+	{
+		if (context == null)
+		{
+			return Collections.emptyList();
+		}
+
+		List<T> result = new ArrayList<T>();
+		IParseNode root = null;
+		for (Path path : paths)
+		{
+			IParseNode start = context;
+			if (path.absolute)
+			{
+				if (root == null)
+				{
+					root = context;
+					while (root.getParent() != null)
+					{
+						root = root.getParent();
+					}
+				}
+				start = root;
+			}
+			select(start, path.steps, 0, type, result);
+		}
+
+		if (needsSort && result.size() > 1)
+		{
+			Map<IParseNode, Boolean> seen = new IdentityHashMap<IParseNode, Boolean>(result.size());
+			List<T> unique = new ArrayList<T>(result.size());
+			for (T node : result)
+			{
+				if (seen.put(node, Boolean.TRUE) == null)
+				{
+					unique.add(node);
+				}
+			}
+			Collections.sort(unique, DOCUMENT_ORDER);
+			result = unique;
+		}
+		return result;
+	}
+
+	/**
+	 * Applies the step at the given index to the children (or descendants) of the given node.
+	 */
+	private <T extends IParseNode> void select(IParseNode node, Step[] steps, int index, Class<T> type, List<T> result)
+	{
+		Step step = steps[index];
+		boolean last = index == steps.length - 1;
+		int matches = 0;
+		int count = node.getChildCount();
+		for (int i = 0; i < count; i++)
+		{
+			IParseNode child = node.getChild(i);
+			if (matches(step, child))
+			{
+				matches++;
+				if (step.position == 0 || matches == step.position)
+				{
+					if (!last)
+					{
+						select(child, steps, index + 1, type, result);
+					}
+					else if (type.isInstance(child))
+					{
+						result.add(type.cast(child));
+					}
+				}
+			}
+			if (step.descendant)
+			{
+				// keeps document order, since the child's descendants come before its following siblings
+				select(child, steps, index, type, result);
+			}
+		}
+	}
+
+	private boolean matches(Step step, IParseNode node)
+	{
+		if (step.name == null)
+		{
+			return true;
+		}
+		String name = node.getElementName();
+		return caseInsensitive ? step.name.equalsIgnoreCase(name) : step.name.equals(name);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString()
+	{
+		return selector;
+	}
+}
@@ -0,0 +1,287 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.ide.syncing.core.old;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.text.MessageFormat;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import org.eclipse.core.filesystem.IFileInfo;
+import org.eclipse.core.filesystem.IFileStore;
+
+import com.aptana.core.logging.IdeLog;
+import com.aptana.ide.syncing.core.SyncingPlugin;
+
+/**
+ * Records, for a pair of client and server roots, the size and modification time of both sides of the files that were
+ * last found identical, along with the CRC of their contents. Comparing a pair of files by CRC then only needs to read
+ * the sides that changed since, which usually means the local one. The manifest is stored in the state location of
+ * the plug-in.
+ */
+/* package */class SyncManifest
+{
+
+	private static final String DIRECTORY = "manifests"; //$NON-NLS-1$
+	private static final String EXTENSION = ".manifest"; //$NON-NLS-1$
+	private static final String ENCODING = "UTF-8"; //$NON-NLS-1$
+	private static final char SEPARATOR = '\t';
+
+	/**
+	 * The state of a pair of files as of the last time they were found identical.
+	 */
+	static class Entry
+	{
+		final long clientLength;
+		final long clientModified;
+		final long serverLength;
+		final long serverModified;
+		final long crc;
+
+		Entry(long clientLength, long clientModified, long serverLength, long serverModified, long crc)
+		{
+			this.clientLength = clientLength;
+			this.clientModified = clientModified;
+			this.serverLength = serverLength;
+			this.serverModified = serverModified;
+			this.crc = crc;
+		}
+
+		/**
+		 * @return whether the client file is unchanged since, so still has the recorded CRC
+		 */
+		boolean matchesClient(IFileInfo info)
+		{
+			return info.getLength() == clientLength && info.getLastModified() == clientModified;
+		}
+
+		/**
+		 * @return whether the server file is unchanged since, so still has the recorded CRC
+		 */
+		boolean matchesServer(IFileInfo info)
+		{
+			return info.getLength() == serverLength && info.getLastModified() == serverModified;
+		}
+	}
+
+	private final File file;
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+	private boolean dirty;
+
+	/**
+	 * Loads the manifest of the given roots.
+	 * 
+	 * @param clientRoot
+	 * @param serverRoot
+	 * @return the manifest, or null if the plug-in isn't running
+	 */
+	static SyncManifest load(IFileStore clientRoot, IFileStore serverRoot)
+	{
+		SyncingPlugin plugin = SyncingPlugin.getDefault();
+		if (plugin == null)
+		{
+			return null;
+		}
+		File directory = plugin.getStateLocation().append(DIRECTORY).toFile();
+		String key = clientRoot.toURI().toString() + '\n' + serverRoot.toURI().toString();
+		try
+		{
+			String name = UUID.nameUUIDFromBytes(key.getBytes(ENCODING)).toString();
+			SyncManifest manifest = new SyncManifest(new File(directory, name + EXTENSION));
+			manifest.read();
+			return manifest;
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			// UTF-8 is always supported
+			return null;
+		}
+	}
+
+	SyncManifest(File file)
+	{
+		this.file = file;
+	}
+
+	/**
+	 * @param relativePath
+	 * @return the entry of the file with the given path, or null if there is none
+	 */
+	synchronized Entry get(String relativePath)
+	{
+		return entries.get(relativePath);
+	}
+
+	/**
+	 * Records that the client and server files with the given path are identical.
+	 * 
+	 * @param relativePath
+	 * @param clientInfo
+	 * @param serverInfo
+	 * @param crc
+	 *            the CRC of their contents
+	 */
+	synchronized void put(String relativePath, IFileInfo clientInfo, IFileInfo serverInfo, long crc)
+	{
+		entries.put(relativePath, new Entry(clientInfo.getLength(), clientInfo.getLastModified(),
+				serverInfo.getLength(), serverInfo.getLastModified(), crc));
+		dirty = true;
+	}
+
+	/**
+	 * Forgets the files with the given path, e.g. when one of them is deleted.
+	 * 
+	 * @param relativePath
+	 */
+	synchronized void remove(String relativePath)
+	{
+		if (entries.remove(relativePath) != null)
+		{
+			dirty = true;
+		}
+	}
+
+	private void read()
+	{
+		if (!file.isFile())
+		{
+			return;
+		}
+		BufferedReader reader = null;
+		try
+		{
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), ENCODING));
+			String line;
+			while ((line = reader.readLine()) != null)
+			{
+				// path, client length, client time, server length, server time, crc; the path may contain tabs
+				String[] fields = new String[6];
+				int end = line.length();
+				for (int i = fields.length - 1; i > 0; i--)
+				{
+					int start = line.lastIndexOf(SEPARATOR, end - 1);
+					if (start == -1)
+					{
+						break;
+					}
+					fields[i] = line.substring(start + 1, end);
+					end = start;
+				}
+				if (fields[1] == null)
+				{
+					continue;
+				}
+				fields[0] = line.substring(0, end);
+				try
+				{
+					entries.put(fields[0], new Entry(Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+							Long.parseLong(fields[3]), Long.parseLong(fields[4]), Long.parseLong(fields[5])));
+				}
+				catch (NumberFormatException e)
+				{
+					// skips the corrupted line
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			IdeLog.logWarning(SyncingPlugin.getDefault(),
+					MessageFormat.format("Failed to read the sync manifest {0}", file), e); //$NON-NLS-1$
+			entries.clear();
+		}
+		finally
+		{
+			if (reader != null)
+			{
+				try
+				{
+					reader.close();
+				}
+				catch (IOException e)
+				{
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the manifest if it changed since it was loaded or last saved.
+	 */
+	synchronized void save()
+	{
+		if (!dirty)
+		{
+			return;
+		}
+		File directory = file.getParentFile();
+		if (!directory.isDirectory() && !directory.mkdirs())
+		{
+			return;
+		}
+
+		// writes a copy first, so that a failure doesn't lose the previous manifest
+		File temp = new File(directory, file.getName() + ".tmp"); //$NON-NLS-1$
+		BufferedWriter writer = null;
+		try
+		{
+			writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), ENCODING));
+			for (Map.Entry<String, Entry> mapEntry : entries.entrySet())
+			{
+				Entry entry = mapEntry.getValue();
+				writer.write(mapEntry.getKey());
+				writer.write(SEPARATOR);
+				writer.write(Long.toString(entry.clientLength));
+				writer.write(SEPARATOR);
+				writer.write(Long.toString(entry.clientModified));
+				writer.write(SEPARATOR);
+				writer.write(Long.toString(entry.serverLength));
+				writer.write(SEPARATOR);
+				writer.write(Long.toString(entry.serverModified));
+				writer.write(SEPARATOR);
+				writer.write(Long.toString(entry.crc));
+				writer.newLine();
+			}
+			writer.close();
+			writer = null;
+			if ((file.exists() && !file.delete()) || !temp.renameTo(file))
+			{
+				temp.delete();
+				return;
+			}
+			dirty = false;
+		}
+		catch (IOException e)
+		{
+			IdeLog.logWarning(SyncingPlugin.getDefault(),
+					MessageFormat.format("Failed to save the sync manifest {0}", file), e); //$NON-NLS-1$
+		}
+		finally
+		{
+			if (writer != null)
+			{
+				try
+				{
+					writer.close();
+				}
+				catch (IOException e)
+				{
+				}
+				temp.delete();
+			}
+		}
+	}
+}
@@ -38,6 +38,7 @@ import com.aptana.core.io.vfs.Policy;
 import com.aptana.core.logging.IdeLog;
 import com.aptana.core.util.FileUtil;
 import com.aptana.filewatcher.FileWatcher;
+import com.aptana.ide.core.io.IBaseRemoteConnectionPoint;
 import com.aptana.ide.core.io.IConnectionPoint;
 import com.aptana.ide.core.io.preferences.PermissionDirection;
 import com.aptana.ide.core.io.preferences.PreferenceUtils;
@@ -54,10 +55,13 @@ public class Synchronizer implements ILoggable
 			"SYNC_IN_PROGRESS"); //$NON-NLS-1$
 
 	private static final int DEFAULT_TIME_TOLERANCE = 1000;
+	private static final int DEFAULT_CONCURRENCY = 4;
+	private static final String TRANSFER_TYPE_BINARY = "BINARY"; //$NON-NLS-1$
 
 	private boolean _useCRC;
 	private boolean _includeCloakedFiles = false;
 	private long _timeTolerance;
+	private int _concurrency = DEFAULT_CONCURRENCY;
 
 	private int _clientDirectoryCreatedCount;
 	private int _clientDirectoryDeletedCount;
@@ -78,6 +82,11 @@ public class Synchronizer implements ILoggable
 	private List<IFileStore> _newFilesDownloaded;
 	private List<IFileStore> _newFilesUploaded;
 
+	/**
+	 * The manifest of the client and server roots, loaded when comparing files by CRC.
+	 */
+	private SyncManifest _manifest;
+
 	/**
 	 * Constructs a Synchronizer with default parameters.
 	 */
@@ -300,11 +309,19 @@ public class Synchronizer implements ILoggable
 
 	public void setClientFileRoot(IFileStore client)
 	{
+		if (client == null || !client.equals(_clientFileRoot))
+		{
+			_manifest = null;
+		}
 		_clientFileRoot = client;
 	}
 
 	public void setServerFileRoot(IFileStore server)
 	{
+		if (server == null || !server.equals(_serverFileRoot))
+		{
+			_manifest = null;
+		}
 		_serverFileRoot = server;
 	}
 
@@ -430,11 +447,12 @@ public class Synchronizer implements ILoggable
 			monitor.worked(1);
 
 			IFileStore clientFile = clientFiles[i];
-			if (clientFile.fetchInfo().getAttribute(EFS.ATTRIBUTE_SYMLINK))
-				continue;
-
 			String relativePath = getCanonicalPath(_clientFileRoot, clientFile);
 			VirtualFileSyncPair item = new VirtualFileSyncPair(clientFile, null, relativePath, SyncState.ClientItemOnly);
+			// the item keeps the info for the comparison and the transfer
+			if (item.getSourceFileInfo(monitor).getAttribute(EFS.ATTRIBUTE_SYMLINK))
+				continue;
+
 			fileList.put(item.getRelativePath(), item);
 		}
 
@@ -472,7 +490,7 @@ public class Synchronizer implements ILoggable
 			VirtualFileSyncPair item = fileList.get(relativePath);
 
 			// associate this server file with that sync item
-			item.setDestinationFile(serverFile);
+			item.setDestinationFile(serverFile, serverFileInfo);
 
 			IFileInfo clientFileInfo = item.getSourceFileInfo(monitor);
 			if (clientFileInfo == null && item.getSyncState() == SyncState.ServerItemOnly)
@@ -549,6 +567,7 @@ public class Synchronizer implements ILoggable
 		}
 		// long end = System.currentTimeMillis();
 		// System.out.println(end - start);
+		saveManifest();
 
 		// return results
 		return syncItems;
@@ -617,7 +636,44 @@ public class Synchronizer implements ILoggable
 	}
 
 	/**
-	 * compareCRC
+	 * Returns the maximum number of files transferred at the same time. Only local, FTP and FTPS connections transfer
+	 * several files at a time; the files of other connections are transferred one at a time.
+	 * 
+	 * @return the maximum number of concurrent transfers
+	 */
+	public int getConcurrency()
+	{
+		return this._concurrency;
+	}
+
+	/**
+	 * Sets the maximum number of files transferred at the same time.
+	 * 
+	 * @param concurrency
+	 *            the maximum number of concurrent transfers; 1 transfers the files one at a time
+	 */
+	public void setConcurrency(int concurrency)
+	{
+		this._concurrency = Math.max(1, concurrency);
+	}
+
+	/**
+	 * Sizes can only tell files apart if neither side converts line endings on transfer, which remote connections
+	 * do for ASCII transfers (and for text files in AUTO mode).
+	 * 
+	 * @param connectionPoint
+	 * @return true if the size of a file on this connection is the size of the bytes it transfers
+	 */
+	static boolean isSizeComparable(IConnectionPoint connectionPoint)
+	{
+		return !(connectionPoint instanceof IBaseRemoteConnectionPoint)
+				|| TRANSFER_TYPE_BINARY.equals(((IBaseRemoteConnectionPoint) connectionPoint).getTransferType());
+	}
+
+	/**
+	 * compareCRC. Files of different sizes are different, unless a side converts line endings. Otherwise the CRC of a
+	 * side that hasn't changed since the files were last found identical is taken from the manifest, so only the
+	 * sides that changed are read.
 	 * 
 	 * @param item
 	 * @return SyncState
@@ -625,38 +681,242 @@ public class Synchronizer implements ILoggable
 	 */
 	private int compareCRC(VirtualFileSyncPair item) throws CoreException
 	{
-		InputStream clientStream = item.getSourceInputStream();
-		InputStream serverStream = item.getDestinationInputStream();
-		int result;
+		IFileInfo clientInfo = item.getSourceFileInfo();
+		IFileInfo serverInfo = item.getDestinationFileInfo();
+		if (clientInfo != null && serverInfo != null && clientInfo.getLength() != serverInfo.getLength()
+				&& clientInfo.getLength() != EFS.NONE && serverInfo.getLength() != EFS.NONE
+				&& isSizeComparable(_clientFileManager) && isSizeComparable(_serverFileManager))
+		{
+			return SyncState.CRCMismatch;
+		}
 
-		if (clientStream != null && serverStream != null)
+		SyncManifest manifest = getManifest();
+		SyncManifest.Entry entry = (manifest == null || clientInfo == null || serverInfo == null) ? null : manifest
+				.get(item.getRelativePath());
+		boolean clientKnown = entry != null && entry.matchesClient(clientInfo);
+		boolean serverKnown = entry != null && entry.matchesServer(serverInfo);
+		if (clientKnown && serverKnown)
 		{
-			// get individual CRC's
-			long clientCRC = getCRC(clientStream);
-			long serverCRC = getCRC(serverStream);
+			return SyncState.ItemsMatch;
+		}
 
-			// close streams
+		Long clientCRC = clientKnown ? Long.valueOf(entry.crc) : getCRC(item, item.getSourceInputStream());
+		Long serverCRC = serverKnown ? Long.valueOf(entry.crc) : getCRC(item, item.getDestinationInputStream());
+		if (clientCRC == null || serverCRC == null)
+		{
+			// NOTE: clientCRC can only equal serverCRC if both streams are null,
+			// so we assume the files match in that case
+			return (clientCRC == serverCRC) ? SyncState.ItemsMatch : SyncState.CRCMismatch;
+		}
+		if (!clientCRC.equals(serverCRC))
+		{
+			return SyncState.CRCMismatch;
+		}
+		if (manifest != null && clientInfo != null && serverInfo != null)
+		{
+			manifest.put(item.getRelativePath(), clientInfo, serverInfo, clientCRC);
+		}
+		return SyncState.ItemsMatch;
+	}
+
+	/**
+	 * Computes the CRC of a stream of the item and closes it.
+	 * 
+	 * @param item
+	 * @param stream
+	 * @return the CRC, or null if the stream is null
+	 */
+	private Long getCRC(VirtualFileSyncPair item, InputStream stream)
+	{
+		if (stream == null)
+		{
+			return null;
+		}
+		try
+		{
+			return getCRC(stream);
+		}
+		finally
+		{
 			try
 			{
-				clientStream.close();
-				serverStream.close();
+				stream.close();
 			}
 			catch (IOException e)
 			{
 				IdeLog.logError(SyncingPlugin.getDefault(),
 						MessageFormat.format(Messages.Synchronizer_ErrorClosingStreams, item.getRelativePath()), e);
 			}
+		}
+	}
 
-			result = (clientCRC == serverCRC) ? SyncState.ItemsMatch : SyncState.CRCMismatch;
+	/**
+	 * Returns the manifest of the client and server roots, if files are compared by CRC.
+	 * 
+	 * @return the manifest, or null if there is none
+	 */
+	private synchronized SyncManifest getManifest()
+	{
+		if (!_useCRC || _clientFileRoot == null || _serverFileRoot == null)
+		{
+			return null;
 		}
-		else
+		if (_manifest == null)
 		{
-			// NOTE: clientStream can only equal serverStream if both are null,
-			// so we assume the files match in that case
-			result = (clientStream == serverStream) ? SyncState.ItemsMatch : SyncState.CRCMismatch;
+			_manifest = SyncManifest.load(_clientFileRoot, _serverFileRoot);
 		}
+		return _manifest;
+	}
 
-		return result;
+	private void saveManifest()
+	{
+		if (_manifest != null)
+		{
+			_manifest.save();
+		}
+	}
+
+	/**
+	 * Records in the manifest that the client and server files of the item are identical after a transfer.
+	 * 
+	 * @param item
+	 * @param clientFile
+	 * @param serverFile
+	 * @param monitor
+	 */
+	private void fileTransferred(VirtualFileSyncPair item, IFileStore clientFile, IFileStore serverFile,
+			IProgressMonitor monitor)
+	{
+		SyncManifest manifest = getManifest();
+		if (manifest == null)
+		{
+			return;
+		}
+		try
+		{
+			// the copy sets the modification time, but the server may round it
+			IFileInfo clientInfo = clientFile.fetchInfo(IExtendedFileStore.DETAILED, monitor);
+			IFileInfo serverInfo = serverFile.fetchInfo(IExtendedFileStore.DETAILED, monitor);
+			Long crc = getCRC(item, clientFile.openInputStream(EFS.NONE, monitor));
+			if (crc != null)
+			{
+				manifest.put(item.getRelativePath(), clientInfo, serverInfo, crc);
+			}
+		}
+		catch (CoreException e)
+		{
+			// compares the files again next time
+			manifest.remove(item.getRelativePath());
+		}
+	}
+
+	private void fileDeleted(VirtualFileSyncPair item)
+	{
+		if (_manifest != null)
+		{
+			_manifest.remove(item.getRelativePath());
+		}
+	}
+
+	/**
+	 * Schedules the copy of a file of the item from one side to the other.
+	 * 
+	 * @param scheduler
+	 * @param item
+	 * @param clientFile
+	 *            the file on the client
+	 * @param serverFile
+	 *            the file on the server
+	 * @param upload
+	 *            true to copy the client file to the server, false to copy the server file to the client
+	 * @param created
+	 *            whether the target file is created by the copy, as opposed to overwritten
+	 * @param exists
+	 *            whether the target file already existed, in which case its permissions are left alone
+	 * @param logFile
+	 *            the file to name in the sync log, which is written once the transfer is done or failed so that the
+	 *            result follows the file it belongs to
+	 * @param monitor
+	 *            the monitor of the item
+	 * @throws CoreException
+	 */
+	private void transferFile(final TransferScheduler scheduler, final VirtualFileSyncPair item,
+			final IFileStore clientFile, final IFileStore serverFile, final boolean upload, final boolean created,
+			final boolean exists, final IFileStore logFile, IProgressMonitor monitor) throws CoreException
+	{
+		final IFileStore source = upload ? clientFile : serverFile;
+		final IFileStore target = upload ? serverFile : clientFile;
+		final IFileInfo sourceInfo = upload ? item.getSourceFileInfo(monitor) : item.getDestinationFileInfo(monitor);
+		scheduler.schedule(new TransferScheduler.Transfer()
+		{
+			@Override
+			void run(IProgressMonitor monitor) throws CoreException
+			{
+				SyncUtils.copy(source, sourceInfo, target, EFS.NONE, monitor);
+				fileTransferred(item, clientFile, serverFile, monitor);
+				// update permissions for the newly created file
+				if (!exists)
+				{
+					updatePermissions(source, target, true, upload ? PermissionDirection.UPLOAD
+							: PermissionDirection.DOWNLOAD, monitor);
+				}
+			}
+
+			@Override
+			void done(IProgressMonitor monitor)
+			{
+				if (upload)
+				{
+					Synchronizer.this._clientFileTransferedCount++;
+					if (created)
+					{
+						_newFilesUploaded.add(target);
+					}
+				}
+				else
+				{
+					Synchronizer.this._serverFileTransferedCount++;
+					if (created)
+					{
+						_newFilesDownloaded.add(target);
+					}
+				}
+				logTransfer();
+				logSuccess();
+				syncDone(item, monitor);
+			}
+
+			@Override
+			void failed(Exception e, IProgressMonitor monitor)
+			{
+				logTransfer();
+				if (e instanceof CoreException)
+				{
+					logError(e);
+					if (!syncError(item, e, monitor))
+					{
+						scheduler.fail(true);
+					}
+				}
+				else
+				{
+					IdeLog.logError(SyncingPlugin.getDefault(), Messages.Synchronizer_ErrorDuringSync, e);
+					scheduler.fail(!syncError(item, e, monitor));
+				}
+			}
+
+			private void logTransfer()
+			{
+				if (upload)
+				{
+					logUploading(logFile);
+				}
+				else
+				{
+					logDownloading(logFile);
+				}
+			}
+		}, monitor);
 	}
 
 	/**
@@ -739,6 +999,8 @@ public class Synchronizer implements ILoggable
 	 */
 	public boolean downloadAndDelete(VirtualFileSyncPair[] fileList, boolean delete, IProgressMonitor monitor)
 	{
+		TransferScheduler scheduler = new TransferScheduler(getClientFileManager(), getServerFileManager(),
+				_concurrency, monitor);
 		FileWatcher.avoidNotify();
 		try
 		{
@@ -758,6 +1020,11 @@ public class Synchronizer implements ILoggable
 
 			FILE_LOOP: for (int i = 0; i < fileList.length; i++)
 			{
+				if (scheduler.isStopped())
+				{
+					break;
+				}
+
 				final VirtualFileSyncPair item = fileList[i];
 				final IFileStore clientFile = item.getSourceFile();
 				final IFileStore serverFile = item.getDestinationFile();
@@ -790,6 +1057,7 @@ public class Synchronizer implements ILoggable
 								// Need to query first because deletion makes isDirectory always return false
 								boolean wasDirectory = clientFileInfo.isDirectory();
 								clientFile.delete(EFS.NONE, null);
+								fileDeleted(item);
 								if (wasDirectory)
 								{
 									this._clientDirectoryDeletedCount++;
@@ -825,40 +1093,17 @@ public class Synchronizer implements ILoggable
 							}
 							else
 							{
-								logDownloading(serverFile);
-								try
-								{
-									SyncUtils
-											.copy(serverFile, serverFileInfo, targetClientFile, EFS.NONE, childMonitor);
-									Synchronizer.this._serverFileTransferedCount++;
-									_newFilesDownloaded.add(targetClientFile);
-									// update permissions for the newly created file
-									if (!exists)
-									{
-										updatePermissions(serverFile, targetClientFile, true,
-												PermissionDirection.DOWNLOAD, childMonitor);
-									}
-									logSuccess();
-									syncDone(item, childMonitor);
-								}
-								catch (CoreException e)
-								{
-									logError(e);
-									if (!syncError(item, e, childMonitor))
-									{
-										result = false;
-										break FILE_LOOP;
-									}
-								}
+								transferFile(scheduler, item, targetClientFile, serverFile, false, true, exists,
+										serverFile, childMonitor);
 							}
 							break;
 
 						case SyncState.ServerItemIsNewer:
 						case SyncState.CRCMismatch:
 							// exists on both sides, but the server item is newer
-							logDownloading(serverFile);
 							if (serverFileInfo.isDirectory())
 							{
+								logDownloading(serverFile);
 								try
 								{
 									EFSUtils.setModificationTime(serverFileInfo.getLastModified(), clientFile);
@@ -873,22 +1118,8 @@ public class Synchronizer implements ILoggable
 							}
 							else
 							{
-								try
-								{
-									SyncUtils.copy(serverFile, serverFileInfo, clientFile, EFS.NONE, childMonitor);
-									Synchronizer.this._serverFileTransferedCount++;
-									logSuccess();
-									syncDone(item, childMonitor);
-								}
-								catch (CoreException e)
-								{
-									logError(e);
-									if (!syncError(item, e, childMonitor))
-									{
-										result = false;
-										break FILE_LOOP;
-									}
-								}
+								transferFile(scheduler, item, clientFile, serverFile, false, false, true, serverFile,
+										childMonitor);
 							}
 							break;
 
@@ -909,11 +1140,15 @@ public class Synchronizer implements ILoggable
 				}
 			}
 
-			return result;
+			// waits for the last transfers
+			scheduler.join();
+			return result && !scheduler.hasFailed();
 		}
 		finally
 		{
+			scheduler.dispose();
 			FileWatcher.resumeNotify();
+			saveManifest();
 		}
 	}
 
@@ -968,6 +1203,8 @@ public class Synchronizer implements ILoggable
 	public boolean fullSyncAndDelete(VirtualFileSyncPair[] fileList, boolean deleteLocal, boolean deleteRemote,
 			IProgressMonitor monitor)
 	{
+		TransferScheduler scheduler = new TransferScheduler(getClientFileManager(), getServerFileManager(),
+				_concurrency, monitor);
 		FileWatcher.avoidNotify();
 		try
 		{
@@ -986,6 +1223,11 @@ public class Synchronizer implements ILoggable
 			// process all items in our list
 			FILE_LOOP: for (int i = 0; i < fileList.length; i++)
 			{
+				if (scheduler.isStopped())
+				{
+					break;
+				}
+
 				final VirtualFileSyncPair item = fileList[i];
 				final IFileStore clientFile = item.getSourceFile();
 				final IFileStore serverFile = item.getDestinationFile();
@@ -1013,33 +1255,17 @@ public class Synchronizer implements ILoggable
 					{
 						case SyncState.ClientItemIsNewer:
 							// item exists on both ends, but the client one is newer
-							logUploading(serverFile);
 							if (clientFileInfo.isDirectory())
 							{
+								logUploading(serverFile);
 								EFSUtils.setModificationTime(clientFileInfo.getLastModified(), serverFile);
 								logSuccess();
 								syncDone(item, childMonitor);
 							}
 							else
 							{
-								try
-								{
-									SyncUtils.copy(clientFile, clientFileInfo, serverFile, EFS.NONE, childMonitor);
-									Synchronizer.this._clientFileTransferedCount++;
-									logSuccess();
-									syncDone(item, childMonitor);
-								}
-								catch (CoreException e)
-								{
-									logError(e);
-
-									if (!syncError(item, e, childMonitor))
-									{
-										result = false;
-										break FILE_LOOP;
-									}
-								}
-
+								transferFile(scheduler, item, clientFile, serverFile, true, false, true, serverFile,
+										childMonitor);
 							}
 							break;
 
@@ -1051,6 +1277,7 @@ public class Synchronizer implements ILoggable
 								boolean wasDirectory = clientFileInfo.isDirectory();
 								// deletes the item
 								clientFile.delete(EFS.NONE, null);
+								fileDeleted(item);
 								if (wasDirectory)
 								{
 									this._clientDirectoryDeletedCount++;
@@ -1087,41 +1314,17 @@ public class Synchronizer implements ILoggable
 								}
 								else
 								{
-									logUploading(clientFile);
-									try
-									{
-										SyncUtils.copy(clientFile, clientFileInfo, targetServerFile, EFS.NONE,
-												childMonitor);
-										Synchronizer.this._clientFileTransferedCount++;
-										_newFilesUploaded.add(targetServerFile);
-										// update permissions for the newly created file
-										if (!exists)
-										{
-											updatePermissions(clientFile, targetServerFile, true,
-													PermissionDirection.UPLOAD, childMonitor);
-										}
-										logSuccess();
-										syncDone(item, childMonitor);
-									}
-									catch (CoreException e)
-									{
-										logError(e);
-
-										if (!syncError(item, e, childMonitor))
-										{
-											result = false;
-											break FILE_LOOP;
-										}
-									}
+									transferFile(scheduler, item, clientFile, targetServerFile, true, true, exists,
+											clientFile, childMonitor);
 								}
 							}
 							break;
 
 						case SyncState.ServerItemIsNewer:
 							// item exists on both ends, but the server one is newer
-							logDownloading(clientFile);
 							if (serverFileInfo.isDirectory())
 							{
+								logDownloading(clientFile);
 								// just needs to set the modification time for directory
 								EFSUtils.setModificationTime(serverFileInfo.getLastModified(), clientFile);
 
@@ -1130,24 +1333,8 @@ public class Synchronizer implements ILoggable
 							}
 							else
 							{
-								try
-								{
-									SyncUtils.copy(serverFile, serverFileInfo, clientFile, EFS.NONE, childMonitor);
-									Synchronizer.this._serverFileTransferedCount++;
-									logSuccess();
-									syncDone(item, childMonitor);
-								}
-								catch (CoreException e)
-								{
-									logError(e);
-
-									if (!syncError(item, e, childMonitor))
-									{
-										result = false;
-										break FILE_LOOP;
-									}
-								}
-
+								transferFile(scheduler, item, clientFile, serverFile, false, false, true, clientFile,
+										childMonitor);
 							}
 							break;
 
@@ -1159,6 +1346,7 @@ public class Synchronizer implements ILoggable
 								boolean wasDirectory = serverFileInfo.isDirectory();
 								// deletes the item
 								serverFile.delete(EFS.NONE, null); // server.deleteFile(serverFile);
+								fileDeleted(item);
 								if (wasDirectory)
 								{
 									this._serverDirectoryDeletedCount++;
@@ -1195,33 +1383,8 @@ public class Synchronizer implements ILoggable
 								}
 								else
 								{
-									logDownloading(targetClientFile);
-
-									try
-									{
-										SyncUtils.copy(serverFile, serverFileInfo, targetClientFile, EFS.NONE,
-												childMonitor);
-										Synchronizer.this._serverFileTransferedCount++;
-										_newFilesDownloaded.add(targetClientFile);
-										// update permissions for the newly created file
-										if (!exists)
-										{
-											updatePermissions(serverFile, targetClientFile, true,
-													PermissionDirection.DOWNLOAD, childMonitor);
-										}
-										logSuccess();
-										syncDone(item, childMonitor);
-									}
-									catch (CoreException e)
-									{
-										logError(e);
-
-										if (!syncError(item, e, childMonitor))
-										{
-											result = false;
-											break FILE_LOOP;
-										}
-									}
+									transferFile(scheduler, item, targetClientFile, serverFile, false, true, exists,
+											targetClientFile, childMonitor);
 								}
 							}
 							break;
@@ -1258,11 +1421,15 @@ public class Synchronizer implements ILoggable
 				}
 			}
 
-			return result;
+			// waits for the last transfers
+			scheduler.join();
+			return result && !scheduler.hasFailed();
 		}
 		finally
 		{
+			scheduler.dispose();
 			FileWatcher.resumeNotify();
+			saveManifest();
 		}
 	}
 
@@ -1323,6 +1490,8 @@ public class Synchronizer implements ILoggable
 	 */
 	public boolean uploadAndDelete(VirtualFileSyncPair[] fileList, boolean delete, IProgressMonitor monitor)
 	{
+		TransferScheduler scheduler = new TransferScheduler(getClientFileManager(), getServerFileManager(),
+				_concurrency, monitor);
 		FileWatcher.avoidNotify();
 		try
 		{
@@ -1340,6 +1509,11 @@ public class Synchronizer implements ILoggable
 
 			FILE_LOOP: for (int i = 0; i < fileList.length; i++)
 			{
+				if (scheduler.isStopped())
+				{
+					break;
+				}
+
 				final VirtualFileSyncPair item = fileList[i];
 				final IFileStore clientFile = item.getSourceFile();
 				final IFileStore serverFile = item.getDestinationFile();
@@ -1386,34 +1560,8 @@ public class Synchronizer implements ILoggable
 							}
 							else
 							{
-								logUploading(clientFile);
-
-								try
-								{
-									SyncUtils
-											.copy(clientFile, clientFileInfo, targetServerFile, EFS.NONE, childMonitor);
-									Synchronizer.this._clientFileTransferedCount++;
-									_newFilesUploaded.add(targetServerFile);
-									// update permissions for the newly created file
-									if (!exists)
-									{
-										updatePermissions(clientFile, targetServerFile, true,
-												PermissionDirection.UPLOAD, childMonitor);
-									}
-									logSuccess();
-									syncDone(item, childMonitor);
-								}
-								catch (CoreException e)
-								{
-									logError(e);
-
-									if (!syncError(item, e, childMonitor))
-									{
-										result = false;
-										break FILE_LOOP;
-									}
-								}
-
+								transferFile(scheduler, item, clientFile, targetServerFile, true, true, exists,
+										clientFile, childMonitor);
 							}
 							break;
 
@@ -1425,6 +1573,7 @@ public class Synchronizer implements ILoggable
 								// false.
 								boolean wasDirectory = serverFileInfo.isDirectory();
 								serverFile.delete(EFS.NONE, childMonitor);
+								fileDeleted(item);
 								if (wasDirectory)
 								{
 									this._serverDirectoryDeletedCount++;
@@ -1440,9 +1589,9 @@ public class Synchronizer implements ILoggable
 						case SyncState.ClientItemIsNewer:
 						case SyncState.CRCMismatch:
 							// exists on both sides, but the client item is newer
-							logUploading(clientFile);
 							if (clientFileInfo.isDirectory())
 							{
+								logUploading(clientFile);
 								// just needs to set the modification time for directory
 								try
 								{
@@ -1464,24 +1613,8 @@ public class Synchronizer implements ILoggable
 							}
 							else
 							{
-								try
-								{
-									SyncUtils.copy(clientFile, clientFileInfo, serverFile, EFS.NONE, childMonitor);
-									Synchronizer.this._clientFileTransferedCount++;
-									logSuccess();
-									syncDone(item, childMonitor);
-								}
-								catch (CoreException e)
-								{
-									logError(e);
-
-									if (!syncError(item, e, childMonitor))
-									{
-										result = false;
-										break FILE_LOOP;
-									}
-								}
-
+								transferFile(scheduler, item, clientFile, serverFile, true, false, true, clientFile,
+										childMonitor);
 							}
 							break;
 
@@ -1502,11 +1635,15 @@ public class Synchronizer implements ILoggable
 				}
 			}
 
-			return result;
+			// waits for the last transfers
+			scheduler.join();
+			return result && !scheduler.hasFailed();
 		}
 		finally
 		{
+			scheduler.dispose();
 			FileWatcher.resumeNotify();
+			saveManifest();
 		}
 	}
 
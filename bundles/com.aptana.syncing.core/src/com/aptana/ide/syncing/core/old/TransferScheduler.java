@@ -0,0 +1,416 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.ide.syncing.core.old;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+
+import com.aptana.core.logging.IdeLog;
+import com.aptana.ide.core.io.IBaseRemoteConnectionPoint;
+import com.aptana.ide.core.io.IConnectionPoint;
+import com.aptana.ide.core.io.PermissionDeniedException;
+import com.aptana.ide.syncing.core.IDebugScopes;
+import com.aptana.ide.syncing.core.SyncingPlugin;
+
+/**
+ * Runs the file transfers of a synchronization, several at a time when both connections allow it. Transfers that fail
+ * with an I/O error are retried a couple of times before the failure is reported.
+ * <p>
+ * The transfers run on worker threads, but they're reported done or failed on the thread that schedules them, so the
+ * event handler and the statistics of the {@link Synchronizer} are only ever used from that thread. With a concurrency
+ * of one, the transfers run on the scheduling thread right away, as they always did.
+ * </p>
+ */
+/* package */class TransferScheduler
+{
+
+	/**
+	 * The types of remote connections whose transfers can run concurrently: FTP and FTPS check a client out of their
+	 * pool for every transfer, while the transfers of an SFTP connection all go through its single session.
+	 */
+	private static final Set<String> CONCURRENT_TYPES = new HashSet<String>(Arrays.asList(
+			"ftp", "ftps")); //$NON-NLS-1$ //$NON-NLS-2$
+
+	/**
+	 * The maximum number of transfers with the same host at any time, across all synchronizations, since servers
+	 * commonly limit the number of connections per client.
+	 */
+	static final int MAX_TRANSFERS_PER_HOST = 4;
+
+	static final int MAX_RETRIES = 2;
+	static final long RETRY_DELAY = 250;
+
+	private static final Map<String, Semaphore> hostPermits = new HashMap<String, Semaphore>();
+
+	/**
+	 * A file transfer. {@link #run(IProgressMonitor)} is called on a worker thread, and may be called again after a
+	 * transient failure; {@link #done(IProgressMonitor)} or {@link #failed(Exception, IProgressMonitor)} are then
+	 * called on the thread that scheduled it.
+	 */
+	abstract static class Transfer
+	{
+		private Exception error;
+
+		abstract void run(IProgressMonitor monitor) throws CoreException;
+
+		abstract void done(IProgressMonitor monitor);
+
+		abstract void failed(Exception e, IProgressMonitor monitor);
+	}
+
+	private final int concurrency;
+	private final Semaphore permits;
+	private final IProgressMonitor monitor;
+	private final BlockingQueue<Transfer> completed = new LinkedBlockingQueue<Transfer>();
+	private ExecutorService executor;
+	private int pending;
+	private volatile boolean stopped;
+	private boolean failed;
+
+	/**
+	 * @param client
+	 *            the client connection
+	 * @param server
+	 *            the server connection
+	 * @param concurrency
+	 *            the maximum number of concurrent transfers, if the connections allow more than one
+	 * @param monitor
+	 *            the monitor of the synchronization, checked for cancellation by the transfers
+	 */
+	TransferScheduler(IConnectionPoint client, IConnectionPoint server, int concurrency, final IProgressMonitor monitor)
+	{
+		this.concurrency = (isConcurrent(client) && isConcurrent(server)) ? Math.max(1, concurrency) : 1;
+		this.permits = getHostPermits(server);
+		this.monitor = new NullProgressMonitor()
+		{
+			@Override
+			public boolean isCanceled()
+			{
+				return stopped || (monitor != null && monitor.isCanceled());
+			}
+		};
+	}
+
+	private static boolean isConcurrent(IConnectionPoint connectionPoint)
+	{
+		return !(connectionPoint instanceof IBaseRemoteConnectionPoint)
+				|| CONCURRENT_TYPES.contains(connectionPoint.getType());
+	}
+
+	private static Semaphore getHostPermits(IConnectionPoint connectionPoint)
+	{
+		if (!(connectionPoint instanceof IBaseRemoteConnectionPoint))
+		{
+			return null;
+		}
+		String host = ((IBaseRemoteConnectionPoint) connectionPoint).getHost();
+		if (host == null)
+		{
+			return null;
+		}
+		synchronized (hostPermits)
+		{
+			Semaphore permits = hostPermits.get(host);
+			if (permits == null)
+			{
+				permits = new Semaphore(MAX_TRANSFERS_PER_HOST, true);
+				hostPermits.put(host, permits);
+			}
+			return permits;
+		}
+	}
+
+	/**
+	 * @return the number of transfers that can run at the same time
+	 */
+	int getConcurrency()
+	{
+		return concurrency;
+	}
+
+	/**
+	 * Schedules a transfer. Reports the transfers that completed in the meantime, and waits for some to complete when
+	 * enough are already queued, so that the progress of the synchronization doesn't run too far ahead.
+	 * 
+	 * @param transfer
+	 * @param itemMonitor
+	 *            the monitor of the item, used when the transfer runs right away
+	 */
+	void schedule(final Transfer transfer, IProgressMonitor itemMonitor)
+	{
+		if (stopped)
+		{
+			return;
+		}
+		if (concurrency == 1)
+		{
+			execute(transfer, itemMonitor);
+			report(transfer, itemMonitor);
+			return;
+		}
+
+		drain();
+		while (pending >= 2 * concurrency && !stopped)
+		{
+			if (!await())
+			{
+				return;
+			}
+		}
+		if (stopped)
+		{
+			return;
+		}
+		if (executor == null)
+		{
+			executor = Executors.newFixedThreadPool(concurrency, new TransferThreadFactory());
+		}
+		pending++;
+		executor.execute(new Runnable()
+		{
+			public void run()
+			{
+				try
+				{
+					if (stopped)
+					{
+						transfer.error = new OperationCanceledException();
+						return;
+					}
+					if (permits != null)
+					{
+						permits.acquire();
+					}
+					try
+					{
+						execute(transfer, monitor);
+					}
+					finally
+					{
+						if (permits != null)
+						{
+							permits.release();
+						}
+					}
+				}
+				catch (InterruptedException e)
+				{
+					transfer.error = new OperationCanceledException();
+				}
+				finally
+				{
+					completed.add(transfer);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Waits for all the scheduled transfers to complete and reports them.
+	 */
+	void join()
+	{
+		while (pending > 0)
+		{
+			if (!await())
+			{
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Records that the synchronization failed.
+	 * 
+	 * @param stop
+	 *            whether to stop it as well: the transfers not started yet are dropped and the running ones are
+	 *            canceled
+	 */
+	void fail(boolean stop)
+	{
+		failed = true;
+		if (stop)
+		{
+			stopped = true;
+		}
+	}
+
+	/**
+	 * @return whether the synchronization was stopped
+	 */
+	boolean isStopped()
+	{
+		return stopped;
+	}
+
+	/**
+	 * @return whether any transfer failed in a way that fails the synchronization
+	 */
+	boolean hasFailed()
+	{
+		return failed;
+	}
+
+	/**
+	 * Releases the worker threads, dropping the transfers that didn't start yet.
+	 */
+	void dispose()
+	{
+		if (pending > 0)
+		{
+			stopped = true;
+		}
+		if (executor != null)
+		{
+			executor.shutdown();
+			executor = null;
+		}
+	}
+
+	private void execute(Transfer transfer, IProgressMonitor monitor)
+	{
+		for (int attempt = 0;; attempt++)
+		{
+			try
+			{
+				transfer.run(monitor);
+				transfer.error = null;
+				return;
+			}
+			catch (CoreException e)
+			{
+				transfer.error = e;
+				if (attempt >= MAX_RETRIES || !isTransient(e) || monitor.isCanceled())
+				{
+					return;
+				}
+				IdeLog.logInfo(SyncingPlugin.getDefault(),
+						MessageFormat.format("Retrying a failed transfer, attempt {0}", attempt + 2), e, //$NON-NLS-1$
+						IDebugScopes.DEBUG);
+			}
+			catch (Exception e)
+			{
+				transfer.error = e;
+				return;
+			}
+			try
+			{
+				Thread.sleep(RETRY_DELAY * (attempt + 1));
+			}
+			catch (InterruptedException e)
+			{
+				return;
+			}
+		}
+	}
+
+	/**
+	 * A failure is transient when it comes from an I/O error, such as a dropped connection or a timeout, rather than a
+	 * missing file or a lack of permissions.
+	 */
+	private static boolean isTransient(CoreException e)
+	{
+		Throwable cause = e.getStatus().getException();
+		while (cause != null)
+		{
+			if (cause instanceof FileNotFoundException || cause instanceof PermissionDeniedException)
+			{
+				return false;
+			}
+			if (cause instanceof IOException)
+			{
+				return true;
+			}
+			cause = (cause instanceof CoreException) ? ((CoreException) cause).getStatus().getException() : cause
+					.getCause();
+		}
+		return false;
+	}
+
+	/**
+	 * Reports the transfers that completed so far.
+	 */
+	private void drain()
+	{
+		Transfer transfer;
+		while ((transfer = completed.poll()) != null)
+		{
+			pending--;
+			report(transfer, monitor);
+		}
+	}
+
+	/**
+	 * Waits for a transfer to complete and reports it.
+	 * 
+	 * @return false if interrupted
+	 */
+	private boolean await()
+	{
+		try
+		{
+			Transfer transfer = completed.take();
+			pending--;
+			report(transfer, monitor);
+			return true;
+		}
+		catch (InterruptedException e)
+		{
+			stopped = true;
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	private void report(Transfer transfer, IProgressMonitor monitor)
+	{
+		if (transfer.error == null)
+		{
+			transfer.done(monitor);
+		}
+		else if (!stopped)
+		{
+			// once stopped, failures are just the cancellation of the running transfers
+			transfer.failed(transfer.error, monitor);
+		}
+	}
+
+	/**
+	 * Creates the daemon worker threads of a synchronization.
+	 */
+	private static class TransferThreadFactory implements ThreadFactory
+	{
+		private static final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread(Runnable runnable)
+		{
+			Thread thread = new Thread(runnable, MessageFormat.format(
+					"File Transfer #{0}", count.incrementAndGet())); //$NON-NLS-1$
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
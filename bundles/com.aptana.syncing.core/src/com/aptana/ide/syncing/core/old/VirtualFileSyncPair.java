@@ -113,7 +113,7 @@ public class VirtualFileSyncPair
 	{
 		InputStream result = null;
 
-		if (this._sourceFile != null && !this._sourceFile.fetchInfo().isDirectory())
+		if (this._sourceFile != null && !getSourceFileInfo(null).isDirectory())
 		{
 			result = this._sourceFile.openInputStream(EFS.NONE, null);
 		}
@@ -192,7 +192,7 @@ public class VirtualFileSyncPair
 	{
 		InputStream result = null;
 
-		if (this._destinationFile != null && !this._destinationFile.fetchInfo().isDirectory())
+		if (this._destinationFile != null && !getDestinationFileInfo(null).isDirectory())
 		{
 			result = this._destinationFile.openInputStream(EFS.NONE, null);
 		}
@@ -206,9 +206,21 @@ public class VirtualFileSyncPair
 	 * @param destinationFile
 	 */
 	public void setDestinationFile(IFileStore destinationFile)
+	{
+		setDestinationFile(destinationFile, null);
+	}
+
+	/**
+	 * setServerFile
+	 * 
+	 * @param destinationFile
+	 * @param destinationFileInfo
+	 *            the info already fetched for the file, or null to fetch it when needed
+	 */
+	public void setDestinationFile(IFileStore destinationFile, IFileInfo destinationFileInfo)
 	{
 		this._destinationFile = destinationFile;
-		this._destinationFileInfo = null;
+		this._destinationFileInfo = destinationFileInfo;
 	}
 
 	/**
@@ -28,6 +28,16 @@ public interface IWebServerPreferenceConstants {
 	 */
 	String PREF_HTTP_SERVER_PORTS = PREFIX + ".http_server_ports"; //$NON-NLS-1$
 
+	/**
+	 * Whether the built-in HTTP server gzips text files for clients accepting it
+	 */
+	String PREF_HTTP_SERVER_COMPRESSION = PREFIX + ".http_server_compression"; //$NON-NLS-1$
+
+	/**
+	 * Whether the built-in HTTP server pushes file changes to the pages it serves
+	 */
+	String PREF_HTTP_SERVER_LIVE_RELOAD = PREFIX + ".http_server_live_reload"; //$NON-NLS-1$
+
 	/**
 	 * Default IP address
 	 */
@@ -37,4 +47,14 @@ public interface IWebServerPreferenceConstants {
 	 * Default ports range
 	 */
 	int[] DEFAULT_HTTP_SERVER_PORTS_RANGE = new int[] { 8020, 8079 };
+
+	/**
+	 * Default compression setting
+	 */
+	boolean DEFAULT_HTTP_SERVER_COMPRESSION = true;
+
+	/**
+	 * Default live reload setting
+	 */
+	boolean DEFAULT_HTTP_SERVER_LIVE_RELOAD = false;
 }
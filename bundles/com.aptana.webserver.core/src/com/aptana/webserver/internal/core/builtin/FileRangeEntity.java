@@ -0,0 +1,204 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+// $codepro.audit.disable unnecessaryExceptions
+
+package com.aptana.webserver.internal.core.builtin;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentEncoder;
+import org.apache.http.nio.FileContentEncoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.entity.HttpAsyncContentProducer;
+
+/**
+ * A non-blocking entity sending a range of bytes of a file, for partial content responses.
+ */
+/* package */class FileRangeEntity extends AbstractHttpEntity implements HttpAsyncContentProducer
+{
+
+	private static final int BUFFER_SIZE = 8 * 1024;
+
+	private final File file;
+	private final long start;
+	private final long length;
+
+	private FileChannel channel;
+	private ByteBuffer buffer;
+	private long sent;
+
+	/**
+	 * @param file
+	 * @param start
+	 *            the offset of the first byte to send
+	 * @param length
+	 *            the number of bytes to send
+	 * @param contentType
+	 */
+	FileRangeEntity(File file, long start, long length, ContentType contentType)
+	{
+		this.file = file;
+		this.start = start;
+		this.length = length;
+		if (contentType != null)
+		{
+			setContentType(contentType.toString());
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.http.nio.entity.HttpAsyncContentProducer#produceContent(org.apache.http.nio.ContentEncoder,
+	 * org.apache.http.nio.IOControl)
+	 */
+	public void produceContent(ContentEncoder encoder, IOControl ioctrl) throws IOException
+	{
+		if (channel == null)
+		{
+			channel = new RandomAccessFile(file, "r").getChannel(); //$NON-NLS-1$
+			sent = 0;
+		}
+		long remaining = length - sent;
+		long transferred;
+		if (encoder instanceof FileContentEncoder)
+		{
+			transferred = ((FileContentEncoder) encoder).transfer(channel, start + sent, remaining);
+		}
+		else
+		{
+			if (buffer == null)
+			{
+				buffer = ByteBuffer.allocate(BUFFER_SIZE);
+			}
+			buffer.clear();
+			if (remaining < buffer.capacity())
+			{
+				buffer.limit((int) remaining);
+			}
+			int read = channel.read(buffer, start + sent);
+			if (read < 0)
+			{
+				throw new IOException("Unexpected end of file " + file); //$NON-NLS-1$
+			}
+			buffer.flip();
+			transferred = encoder.write(buffer);
+		}
+		if (transferred > 0)
+		{
+			sent += transferred;
+		}
+		if (sent >= length)
+		{
+			encoder.complete();
+			close();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.io.Closeable#close()
+	 */
+	public void close() throws IOException
+	{
+		if (channel != null)
+		{
+			try
+			{
+				channel.close();
+			}
+			finally
+			{
+				channel = null;
+			}
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.http.HttpEntity#isRepeatable()
+	 */
+	public boolean isRepeatable()
+	{
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.http.HttpEntity#getContentLength()
+	 */
+	public long getContentLength()
+	{
+		return length;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.http.HttpEntity#isStreaming()
+	 */
+	public boolean isStreaming()
+	{
+		return false;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.http.HttpEntity#getContent()
+	 */
+	public InputStream getContent() throws IOException
+	{
+		InputStream in = new FileInputStream(file);
+		long skipped = 0;
+		while (skipped < start)
+		{
+			long n = in.skip(start - skipped);
+			if (n <= 0)
+			{
+				break;
+			}
+			skipped += n;
+		}
+		return in;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.http.HttpEntity#writeTo(java.io.OutputStream)
+	 */
+	public void writeTo(OutputStream out) throws IOException
+	{
+		InputStream in = getContent();
+		try
+		{
+			byte[] bytes = new byte[BUFFER_SIZE];
+			long remaining = length;
+			while (remaining > 0)
+			{
+				int n = in.read(bytes, 0, (int) Math.min(bytes.length, remaining));
+				if (n < 0)
+				{
+					break;
+				}
+				out.write(bytes, 0, n);
+				remaining -= n;
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,435 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+// $codepro.audit.disable unnecessaryExceptions
+
+package com.aptana.webserver.internal.core.builtin;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.http.HttpConnection;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.entity.AbstractHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentEncoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.entity.HttpAsyncContentProducer;
+import org.apache.http.nio.entity.NStringEntity;
+import org.apache.http.nio.protocol.BasicAsyncRequestConsumer;
+import org.apache.http.nio.protocol.HttpAsyncExchange;
+import org.apache.http.nio.protocol.HttpAsyncRequestConsumer;
+import org.apache.http.nio.protocol.HttpAsyncRequestHandler;
+import org.apache.http.protocol.ExecutionContext;
+import org.apache.http.protocol.HttpContext;
+import org.eclipse.core.filesystem.EFS;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IResourceChangeListener;
+import org.eclipse.core.resources.IResourceDelta;
+import org.eclipse.core.resources.IResourceDeltaVisitor;
+import org.eclipse.core.runtime.CoreException;
+
+import com.aptana.core.IURIMapper;
+import com.aptana.core.logging.IdeLog;
+import com.aptana.core.util.IOUtil;
+import com.aptana.webserver.core.WebServerCorePlugin;
+
+/**
+ * Pushes the paths of changed files to the pages served by the built-in server, so that they can reload themselves
+ * (or just the changed stylesheet). Pages get a small script, injected by the request handler, which listens to a
+ * server-sent events stream served from {@link #EVENTS_PATH}.
+ * <p>
+ * The streams are plain responses of the server's I/O reactor: a stream with nothing to send suspends its output until
+ * the next event, so no thread is tied to a client.
+ * </p>
+ */
+/* package */class LiveReloadChannel implements HttpAsyncRequestHandler<HttpRequest>, IResourceChangeListener
+{
+
+	/**
+	 * The requests handled by the channel rather than mapped to files.
+	 */
+	static final String PATH_PATTERN = "/__livereload/*"; //$NON-NLS-1$
+
+	static final String EVENTS_PATH = "/__livereload/events"; //$NON-NLS-1$
+	static final String SCRIPT_PATH = "/__livereload/livereload.js"; //$NON-NLS-1$
+
+	/**
+	 * Injected into HTML pages.
+	 */
+	static final String SCRIPT_TAG = MessageFormat.format(
+			"<script type=\"text/javascript\" src=\"{0}\"></script>", SCRIPT_PATH); //$NON-NLS-1$
+
+	private static final String SCRIPT_RESOURCE = "livereload.js"; //$NON-NLS-1$
+	private static final String EVENT_STREAM_TYPE = "text/event-stream"; //$NON-NLS-1$
+	private static final String SCRIPT_TYPE = "text/javascript"; //$NON-NLS-1$
+	private static final String NO_CACHE = "no-cache"; //$NON-NLS-1$
+
+	/**
+	 * Sent when a stream opens: how long the browser waits before reconnecting, e.g. while the server restarts.
+	 */
+	private static final String OPENING = "retry: 2000\n\n"; //$NON-NLS-1$
+	private static final String CHANGE_EVENT = "event: change\ndata: {0}\n\n"; //$NON-NLS-1$
+
+	private final IURIMapper uriMapper;
+	private final List<EventStream> streams = new ArrayList<EventStream>();
+	private String script;
+	private boolean closed;
+
+	/**
+	 * @param uriMapper
+	 *            maps changed files to the paths they're served from
+	 */
+	LiveReloadChannel(IURIMapper uriMapper)
+	{
+		this.uriMapper = uriMapper;
+	}
+
+	/**
+	 * Sends a change event for the given path to all the connected pages.
+	 * 
+	 * @param path
+	 *            the absolute path of the changed file on the server
+	 */
+	public void broadcast(String path)
+	{
+		byte[] event;
+		try
+		{
+			event = MessageFormat.format(CHANGE_EVENT, path).getBytes(IOUtil.UTF_8);
+		}
+		catch (UnsupportedEncodingException e)
+		{
+			IdeLog.logError(WebServerCorePlugin.getDefault(), e);
+			return;
+		}
+		for (EventStream stream : getStreams())
+		{
+			stream.send(event);
+		}
+	}
+
+	/**
+	 * Ends all the event streams. Pages will try to reconnect after a while.
+	 */
+	public void close()
+	{
+		List<EventStream> open;
+		synchronized (streams)
+		{
+			closed = true;
+			open = new ArrayList<EventStream>(streams);
+			streams.clear();
+		}
+		for (EventStream stream : open)
+		{
+			stream.end();
+		}
+	}
+
+	/**
+	 * Returns the number of pages currently connected.
+	 * 
+	 * @return
+	 */
+	int getStreamCount()
+	{
+		synchronized (streams)
+		{
+			return streams.size();
+		}
+	}
+
+	private List<EventStream> getStreams()
+	{
+		synchronized (streams)
+		{
+			return new ArrayList<EventStream>(streams);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.eclipse.core.resources.IResourceChangeListener#resourceChanged(org.eclipse.core.resources.
+	 * IResourceChangeEvent)
+	 */
+	public void resourceChanged(IResourceChangeEvent event)
+	{
+		IResourceDelta delta = event.getDelta();
+		if (delta == null || getStreamCount() == 0)
+		{
+			return;
+		}
+		final Set<String> paths = new LinkedHashSet<String>();
+		try
+		{
+			delta.accept(new IResourceDeltaVisitor()
+			{
+				public boolean visit(IResourceDelta delta) throws CoreException
+				{
+					IResource resource = delta.getResource();
+					if (resource.getType() != IResource.FILE)
+					{
+						return true;
+					}
+					if (delta.getKind() == IResourceDelta.CHANGED && (delta.getFlags() & IResourceDelta.CONTENT) == 0)
+					{
+						return false;
+					}
+					URI location = resource.getLocationURI();
+					if (location != null)
+					{
+						URI uri = uriMapper.resolve(EFS.getStore(location));
+						if (uri != null && uri.getRawPath() != null)
+						{
+							paths.add(uri.getRawPath());
+						}
+					}
+					return false;
+				}
+			});
+		}
+		catch (CoreException e)
+		{
+			IdeLog.logWarning(WebServerCorePlugin.getDefault(), e);
+		}
+		for (String path : paths)
+		{
+			broadcast(path);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.http.nio.protocol.HttpAsyncRequestHandler#processRequest(org.apache.http.HttpRequest,
+	 * org.apache.http.protocol.HttpContext)
+	 */
+	public HttpAsyncRequestConsumer<HttpRequest> processRequest(HttpRequest request, HttpContext context)
+			throws HttpException, IOException
+	{
+		return new BasicAsyncRequestConsumer();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see org.apache.http.nio.protocol.HttpAsyncRequestHandler#handle(java.lang.Object,
+	 * org.apache.http.nio.protocol.HttpAsyncExchange, org.apache.http.protocol.HttpContext)
+	 */
+	public void handle(HttpRequest request, HttpAsyncExchange exchange, HttpContext context) throws HttpException,
+			IOException
+	{
+		String path = URI.create(request.getRequestLine().getUri()).getPath();
+		HttpResponse response = exchange.getResponse();
+		if (EVENTS_PATH.equals(path))
+		{
+			EventStream stream = new EventStream();
+			synchronized (streams)
+			{
+				if (closed)
+				{
+					response.setStatusCode(HttpStatus.SC_SERVICE_UNAVAILABLE);
+					exchange.submitResponse();
+					return;
+				}
+				streams.add(stream);
+			}
+			// the stream stays quiet until something changes, don't time the connection out
+			Object connection = context.getAttribute(ExecutionContext.HTTP_CONNECTION);
+			if (connection instanceof HttpConnection)
+			{
+				((HttpConnection) connection).setSocketTimeout(0);
+			}
+			response.setStatusCode(HttpStatus.SC_OK);
+			response.setHeader(HttpHeaders.CACHE_CONTROL, NO_CACHE);
+			response.setEntity(stream);
+		}
+		else if (SCRIPT_PATH.equals(path))
+		{
+			response.setStatusCode(HttpStatus.SC_OK);
+			response.setHeader(HttpHeaders.CACHE_CONTROL, NO_CACHE);
+			response.setEntity(new NStringEntity(getScript(), ContentType.create(SCRIPT_TYPE, IOUtil.UTF_8)));
+		}
+		else
+		{
+			response.setStatusCode(HttpStatus.SC_NOT_FOUND);
+		}
+		exchange.submitResponse();
+	}
+
+	private synchronized String getScript() throws IOException
+	{
+		if (script == null)
+		{
+			InputStream stream = LiveReloadChannel.class.getResourceAsStream(SCRIPT_RESOURCE);
+			if (stream == null)
+			{
+				throw new IOException(MessageFormat.format("Missing resource {0}", SCRIPT_RESOURCE)); //$NON-NLS-1$
+			}
+			script = IOUtil.read(stream, IOUtil.UTF_8);
+		}
+		return script;
+	}
+
+	private void remove(EventStream stream)
+	{
+		synchronized (streams)
+		{
+			streams.remove(stream);
+		}
+	}
+
+	/**
+	 * The endless body of an event stream response. Events are queued by other threads and written by the reactor;
+	 * when the queue is empty, output is suspended until the next event.
+	 */
+	private class EventStream extends AbstractHttpEntity implements HttpAsyncContentProducer
+	{
+		private final LinkedList<ByteBuffer> queue = new LinkedList<ByteBuffer>();
+		private IOControl ioControl;
+		private boolean ended;
+
+		EventStream()
+		{
+			setContentType(ContentType.create(EVENT_STREAM_TYPE, IOUtil.UTF_8).toString());
+			setChunked(true);
+			try
+			{
+				queue.add(ByteBuffer.wrap(OPENING.getBytes(IOUtil.UTF_8)));
+			}
+			catch (UnsupportedEncodingException e)
+			{
+				IdeLog.logError(WebServerCorePlugin.getDefault(), e);
+			}
+		}
+
+		synchronized void send(byte[] event)
+		{
+			if (ended)
+			{
+				return;
+			}
+			queue.add(ByteBuffer.wrap(event));
+			if (ioControl != null)
+			{
+				ioControl.requestOutput();
+			}
+		}
+
+		synchronized void end()
+		{
+			ended = true;
+			if (ioControl != null)
+			{
+				ioControl.requestOutput();
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.apache.http.nio.entity.HttpAsyncContentProducer#produceContent(org.apache.http.nio.ContentEncoder,
+		 * org.apache.http.nio.IOControl)
+		 */
+		public synchronized void produceContent(ContentEncoder encoder, IOControl ioctrl) throws IOException
+		{
+			ioControl = ioctrl;
+			while (!queue.isEmpty())
+			{
+				ByteBuffer buffer = queue.getFirst();
+				encoder.write(buffer);
+				if (buffer.hasRemaining())
+				{
+					// the socket is full, we'll be called again
+					return;
+				}
+				queue.removeFirst();
+			}
+			if (ended)
+			{
+				encoder.complete();
+			}
+			else
+			{
+				ioctrl.suspendOutput();
+			}
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see java.io.Closeable#close()
+		 */
+		public void close() throws IOException
+		{
+			synchronized (this)
+			{
+				ended = true;
+				queue.clear();
+				ioControl = null;
+			}
+			remove(this);
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.apache.http.HttpEntity#isRepeatable()
+		 */
+		public boolean isRepeatable()
+		{
+			return false;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.apache.http.HttpEntity#getContentLength()
+		 */
+		public long getContentLength()
+		{
+			return -1;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.apache.http.HttpEntity#isStreaming()
+		 */
+		public boolean isStreaming()
+		{
+			return true;
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.apache.http.HttpEntity#getContent()
+		 */
+		public InputStream getContent() throws IOException
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		/*
+		 * (non-Javadoc)
+		 * @see org.apache.http.HttpEntity#writeTo(java.io.OutputStream)
+		 */
+		public void writeTo(OutputStream out) throws IOException
+		{
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -0,0 +1,137 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.webserver.internal.core.builtin;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.filesystem.EFS;
+import org.eclipse.core.filesystem.IFileInfo;
+import org.eclipse.core.filesystem.IFileStore;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.NullProgressMonitor;
+
+/**
+ * Maps the file stores served by the built-in server to local files. Stores of non-local file systems are copied to a
+ * temporary file the first time they're served; the copy is reused until the store changes (by modification time or
+ * length) or it drops out of the cache, at which point it is deleted.
+ */
+/* package */class LocalFileCache
+{
+
+	private static final int MAX_ENTRIES = 64;
+
+	private static class Entry
+	{
+		final File file;
+		final long lastModified;
+		final long length;
+
+		Entry(File file, long lastModified, long length)
+		{
+			this.file = file;
+			this.lastModified = lastModified;
+			this.length = length;
+		}
+
+		boolean isValid(IFileInfo fileInfo)
+		{
+			return fileInfo.getLastModified() == lastModified && fileInfo.getLength() == length && file.isFile();
+		}
+	}
+
+	private final Map<URI, Entry> entries = new LinkedHashMap<URI, Entry>(16, 0.75f, true)
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<URI, Entry> eldest)
+		{
+			if (size() > MAX_ENTRIES)
+			{
+				delete(eldest.getValue().file);
+				return true;
+			}
+			return false;
+		}
+	};
+
+	/**
+	 * Returns a local file with the contents of the store.
+	 * 
+	 * @param fileStore
+	 * @param fileInfo
+	 *            the current info of the store
+	 * @return
+	 * @throws CoreException
+	 */
+	public File getLocalFile(IFileStore fileStore, IFileInfo fileInfo) throws CoreException
+	{
+		File file = fileStore.toLocalFile(EFS.NONE, new NullProgressMonitor());
+		if (file != null)
+		{
+			return file;
+		}
+
+		URI uri = fileStore.toURI();
+		synchronized (entries)
+		{
+			Entry entry = entries.get(uri);
+			if (entry != null && entry.isValid(fileInfo))
+			{
+				return entry.file;
+			}
+		}
+
+		// copies outside of the lock, so that a slow remote doesn't hold up requests for other files
+		file = fileStore.toLocalFile(EFS.CACHE, new NullProgressMonitor());
+		if (file == null)
+		{
+			return null;
+		}
+		synchronized (entries)
+		{
+			Entry previous = entries.put(uri, new Entry(file, fileInfo.getLastModified(), fileInfo.getLength()));
+			if (previous != null && !previous.file.equals(file))
+			{
+				delete(previous.file);
+			}
+		}
+		return file;
+	}
+
+	/**
+	 * Deletes all the temporary files.
+	 */
+	public void clear()
+	{
+		List<Entry> removed;
+		synchronized (entries)
+		{
+			removed = new ArrayList<Entry>(entries.values());
+			entries.clear();
+		}
+		for (Entry entry : removed)
+		{
+			delete(entry.file);
+		}
+	}
+
+	private static void delete(File file)
+	{
+		if (!file.delete())
+		{
+			// still being sent on Windows
+			file.deleteOnExit();
+		}
+	}
+}
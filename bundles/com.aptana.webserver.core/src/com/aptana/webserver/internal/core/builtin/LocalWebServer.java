@@ -24,7 +24,6 @@ import org.apache.http.impl.nio.DefaultHttpServerIODispatch;
 import org.apache.http.impl.nio.reactor.DefaultListeningIOReactor;
 import org.apache.http.impl.nio.reactor.IOReactorConfig;
 import org.apache.http.nio.protocol.BasicAsyncRequestHandler;
-import org.apache.http.nio.protocol.HttpAsyncRequestHandler;
 import org.apache.http.nio.protocol.HttpAsyncRequestHandlerRegistry;
 import org.apache.http.nio.protocol.HttpAsyncService;
 import org.apache.http.nio.reactor.IOReactorException;
@@ -39,6 +38,9 @@ import org.apache.http.protocol.ResponseConnControl;
 import org.apache.http.protocol.ResponseContent;
 import org.apache.http.protocol.ResponseDate;
 import org.apache.http.protocol.ResponseServer;
+import org.eclipse.core.resources.IResourceChangeEvent;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -73,6 +75,9 @@ public class LocalWebServer extends SimpleWebServer
 
 	private Thread thread;
 	private ListeningIOReactor reactor;
+	private LocalWebServerHttpRequestHandler requestHandler;
+	private LiveReloadChannel liveReloadChannel;
+	private boolean liveReload;
 
 	protected int port;
 	private String hostName;
@@ -90,6 +95,7 @@ public class LocalWebServer extends SimpleWebServer
 		setDocumentRoot(documentRoot);
 		setName(NAME);
 		this.host = host;
+		this.liveReload = WebServerPreferences.isLiveReloadEnabled();
 		this.port = SocketUtil.findFreePort(host, portRange[0], portRange[1]);
 		if (this.port <= 0)
 		{
@@ -141,13 +147,23 @@ public class LocalWebServer extends SimpleWebServer
 	private void startServer(final InetAddress host, final int port)
 	{
 		updateState(State.STARTING);
+		requestHandler = new LocalWebServerHttpRequestHandler(this, WebServerPreferences.isCompressionEnabled(),
+				liveReload);
+		final HttpAsyncRequestHandlerRegistry handlerRegistry = new HttpAsyncRequestHandlerRegistry();
+		handlerRegistry.register("*", new BasicAsyncRequestHandler(requestHandler)); //$NON-NLS-1$
+		if (liveReload)
+		{
+			liveReloadChannel = new LiveReloadChannel(this);
+			handlerRegistry.register(LiveReloadChannel.PATH_PATTERN, liveReloadChannel);
+			IWorkspace workspace = ResourcesPlugin.getWorkspace();
+			workspace.addResourceChangeListener(liveReloadChannel, IResourceChangeEvent.POST_CHANGE);
+		}
 		thread = new Thread()
 		{
 			@Override
 			public void run()
 			{
-				runServer(new InetSocketAddress(host, port), new BasicAsyncRequestHandler(
-						new LocalWebServerHttpRequestHandler(LocalWebServer.this)));
+				runServer(new InetSocketAddress(host, port), handlerRegistry);
 			}
 		};
 		thread.setDaemon(true);
@@ -173,7 +189,7 @@ public class LocalWebServer extends SimpleWebServer
 		}
 	}
 
-	private void runServer(InetSocketAddress socketAddress, HttpAsyncRequestHandler httpRequestHandler)
+	private void runServer(InetSocketAddress socketAddress, HttpAsyncRequestHandlerRegistry handlerRegistry)
 	{
 		HttpParams params = new BasicHttpParams();
 		params.setIntParameter(CoreConnectionPNames.SO_TIMEOUT, SOCKET_TIMEOUT)
@@ -189,9 +205,6 @@ public class LocalWebServer extends SimpleWebServer
 		httpProcessor.addInterceptor(new ResponseContent());
 		httpProcessor.addInterceptor(new ResponseConnControl());
 
-		HttpAsyncRequestHandlerRegistry handlerRegistry = new HttpAsyncRequestHandlerRegistry();
-		handlerRegistry.register("*", httpRequestHandler); //$NON-NLS-1$
-
 		HttpAsyncService serviceHandler = new HttpAsyncService(httpProcessor, new DefaultConnectionReuseStrategy(),
 				handlerRegistry, params);
 		// serviceHandler.setEventListener(new LocalWebServerLogger());
@@ -225,6 +238,13 @@ public class LocalWebServer extends SimpleWebServer
 
 	public IStatus stop(boolean force, IProgressMonitor monitor)
 	{
+		if (liveReloadChannel != null)
+		{
+			// ends the event streams, otherwise the reactor waits for them to complete
+			ResourcesPlugin.getWorkspace().removeResourceChangeListener(liveReloadChannel);
+			liveReloadChannel.close();
+			liveReloadChannel = null;
+		}
 		if (thread != null && thread.isAlive())
 		{
 			if (reactor != null)
@@ -249,6 +269,11 @@ public class LocalWebServer extends SimpleWebServer
 				// ignore
 			}
 		}
+		if (requestHandler != null)
+		{
+			requestHandler.dispose();
+			requestHandler = null;
+		}
 		return Status.OK_STATUS;
 	}
 
@@ -270,6 +295,26 @@ public class LocalWebServer extends SimpleWebServer
 		return Status.OK_STATUS;
 	}
 
+	/**
+	 * Sets whether pages are pushed the changes made to the files they're served from. Only applies to the next start.
+	 * 
+	 * @param liveReload
+	 */
+	public void setLiveReloadEnabled(boolean liveReload)
+	{
+		this.liveReload = liveReload;
+	}
+
+	/**
+	 * Returns the channel pushing changes to the pages, null if live reload is disabled or the server isn't running.
+	 * 
+	 * @return
+	 */
+	LiveReloadChannel getLiveReloadChannel()
+	{
+		return liveReloadChannel;
+	}
+
 	public boolean isPersistent()
 	{
 		return false;
@@ -9,23 +9,35 @@
 
 package com.aptana.webserver.internal.core.builtin;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URLDecoder;
 import java.text.MessageFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.Locale;
+import java.util.TimeZone;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
 
+import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpException;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.MethodNotSupportedException;
 import org.apache.http.entity.ContentType;
+import org.apache.http.nio.entity.NByteArrayEntity;
 import org.apache.http.nio.entity.NFileEntity;
 import org.apache.http.nio.entity.NStringEntity;
 import org.apache.http.protocol.HTTP;
@@ -57,15 +69,52 @@ import com.aptana.webserver.core.WebServerCorePlugin;
 	private final static String HTML_TEXT_TYPE = "text/html"; //$NON-NLS-1$
 
 	private final static Pattern PATTERN_INDEX = Pattern.compile("(index|default)\\.x?html?"); //$NON-NLS-1$
+	private final static Pattern PATTERN_RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)"); //$NON-NLS-1$
+
+	private static final String HTTP_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz"; //$NON-NLS-1$
+	private static final String BYTES = "bytes"; //$NON-NLS-1$
+	private static final String GZIP = "gzip"; //$NON-NLS-1$
+	private static final String ANY_ETAG = "*"; //$NON-NLS-1$
+	private static final String LIVE_RELOAD = "live"; //$NON-NLS-1$
+	private static final String BODY_END = "</body"; //$NON-NLS-1$
+	private static final String LATIN_1 = "ISO-8859-1"; //$NON-NLS-1$
+
+	/**
+	 * Text files outside of this range of sizes are sent as is.
+	 */
+	private static final long MIN_COMPRESSED_LENGTH = 256;
+	private static final long MAX_COMPRESSED_LENGTH = 1024 * 1024;
+
+	/**
+	 * Stands for a range that lies outside of the file.
+	 */
+	private static final long[] UNSATISFIABLE_RANGE = new long[0];
 
 	private IURIMapper uriMapper;
+	private final boolean compress;
+	private final boolean liveReload;
+	private final LocalFileCache fileCache = new LocalFileCache();
 
 	/**
-	 * @param documentRoot
+	 * @param uriMapper
+	 * @param compress
+	 *            whether text files are gzipped for clients accepting it
+	 * @param liveReload
+	 *            whether the live reload script is injected into HTML pages
 	 */
-	protected LocalWebServerHttpRequestHandler(IURIMapper uriMapper)
+	protected LocalWebServerHttpRequestHandler(IURIMapper uriMapper, boolean compress, boolean liveReload)
 	{
 		this.uriMapper = uriMapper;
+		this.compress = compress;
+		this.liveReload = liveReload;
+	}
+
+	/**
+	 * Deletes the local copies of remote files.
+	 */
+	public void dispose()
+	{
+		fileCache.clear();
 	}
 
 	private void handleRequest(HttpRequest request, HttpResponse response, boolean head) throws HttpException,
@@ -95,38 +144,339 @@ import com.aptana.webserver.core.WebServerCorePlugin;
 			response.setEntity(createTextEntity(Messages.LocalWebServerHttpRequestHandler_FORBIDDEN));
 		}
 		else
+		{
+			handleFile(request, response, fileStore, fileInfo, head);
+		}
+	}
+
+	private void handleFile(HttpRequest request, HttpResponse response, IFileStore fileStore, IFileInfo fileInfo,
+			boolean head) throws IOException, CoreException
+	{
+		long length = fileInfo.getLength();
+		long lastModified = fileInfo.getLastModified();
+		String etag = getETag(fileInfo);
+		ContentType contentType = getMimeType(fileStore.getName());
+
+		// pages with the injected script don't match the file byte for byte, so they aren't served by ranges
+		boolean inject = liveReload && contentType != null
+				&& HTML_TEXT_TYPE.equals(contentType.getMimeType());
+		long[] range = inject ? null : getRange(request, length, etag, lastModified);
+		boolean compressible = compress && isCompressible(contentType, length);
+		boolean gzip = compressible && range == null && acceptsGzip(request);
+		// the modified representations are different entities as far as caches are concerned
+		if (inject)
+		{
+			etag = getVariantETag(etag, LIVE_RELOAD);
+		}
+		if (gzip)
+		{
+			etag = getVariantETag(etag, GZIP);
+		}
+
+		response.setHeader(HttpHeaders.ETAG, etag);
+		response.setHeader(HttpHeaders.LAST_MODIFIED, formatDate(lastModified));
+		if (!inject)
+		{
+			response.setHeader(HttpHeaders.ACCEPT_RANGES, BYTES);
+		}
+		if (compressible)
+		{
+			response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+		}
+
+		if (isNotModified(request, etag, lastModified))
+		{
+			response.setStatusCode(HttpStatus.SC_NOT_MODIFIED);
+			response.setEntity(null);
+			return;
+		}
+		if (range == UNSATISFIABLE_RANGE)
+		{
+			response.setStatusCode(HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+			response.setHeader(HttpHeaders.CONTENT_RANGE, BYTES + " */" + length); //$NON-NLS-1$
+			response.setEntity(null);
+			return;
+		}
+		if (head)
 		{
 			response.setStatusCode(HttpStatus.SC_OK);
-			if (head)
+			response.setEntity(null);
+			return;
+		}
+
+		File file = fileCache.getLocalFile(fileStore, fileInfo);
+		if (range != null)
+		{
+			response.setStatusCode(HttpStatus.SC_PARTIAL_CONTENT);
+			response.setHeader(HttpHeaders.CONTENT_RANGE,
+					MessageFormat.format("{0} {1}-{2}/{3}", BYTES, Long.toString(range[0]), //$NON-NLS-1$
+							Long.toString(range[1]), Long.toString(length)));
+			response.setEntity(new FileRangeEntity(file, range[0], range[1] - range[0] + 1, contentType));
+		}
+		else if (inject || gzip)
+		{
+			response.setStatusCode(HttpStatus.SC_OK);
+			byte[] content = read(file);
+			if (inject)
+			{
+				content = injectScript(content);
+			}
+			if (gzip)
+			{
+				content = gzip(content);
+			}
+			NByteArrayEntity entity = new NByteArrayEntity(content, contentType);
+			if (gzip)
+			{
+				entity.setContentEncoding(GZIP);
+			}
+			response.setEntity(entity);
+		}
+		else
+		{
+			response.setStatusCode(HttpStatus.SC_OK);
+			response.setEntity(new NFileEntity(file, contentType));
+		}
+	}
+
+	/**
+	 * Returns whether the client's cached copy is still current. A matching If-None-Match wins over If-Modified-Since,
+	 * which is only looked at when there's no If-None-Match.
+	 */
+	private static boolean isNotModified(HttpRequest request, String etag, long lastModified)
+	{
+		Header ifNoneMatch = request.getFirstHeader(HttpHeaders.IF_NONE_MATCH);
+		if (ifNoneMatch != null)
+		{
+			for (String tag : ifNoneMatch.getValue().split(",")) //$NON-NLS-1$
+			{
+				tag = tag.trim();
+				if (ANY_ETAG.equals(tag) || etag.equals(tag) || ("W/" + etag).equals(tag)) //$NON-NLS-1$
+				{
+					return true;
+				}
+			}
+			return false;
+		}
+		Header ifModifiedSince = request.getFirstHeader(HttpHeaders.IF_MODIFIED_SINCE);
+		if (ifModifiedSince != null)
+		{
+			Date since = parseDate(ifModifiedSince.getValue());
+			// HTTP dates have a one second precision
+			return since != null && lastModified / 1000 <= since.getTime() / 1000;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the first and last offsets of the single byte range requested, null if no range was requested, the
+	 * If-Range condition doesn't hold, or several ranges were requested (which we answer with the whole file), and
+	 * {@link #UNSATISFIABLE_RANGE} if the range lies outside of the file.
+	 */
+	private static long[] getRange(HttpRequest request, long length, String etag, long lastModified)
+	{
+		Header rangeHeader = request.getFirstHeader(HttpHeaders.RANGE);
+		if (rangeHeader == null)
+		{
+			return null;
+		}
+		Header ifRange = request.getFirstHeader(HttpHeaders.IF_RANGE);
+		if (ifRange != null)
+		{
+			String value = ifRange.getValue().trim();
+			if (value.startsWith("\"")) //$NON-NLS-1$
+			{
+				if (!value.equals(etag))
+				{
+					return null;
+				}
+			}
+			else
+			{
+				Date date = parseDate(value);
+				if (date == null || date.getTime() / 1000 != lastModified / 1000)
+				{
+					return null;
+				}
+			}
+		}
+
+		Matcher matcher = PATTERN_RANGE.matcher(rangeHeader.getValue().trim());
+		if (!matcher.matches())
+		{
+			return null;
+		}
+		String first = matcher.group(1);
+		String last = matcher.group(2);
+		try
+		{
+			long start;
+			long end;
+			if (first.length() == 0)
 			{
-				response.setEntity(null);
+				if (last.length() == 0)
+				{
+					return null;
+				}
+				// suffix range, i.e. the last n bytes
+				long suffix = Long.parseLong(last);
+				if (suffix == 0)
+				{
+					return UNSATISFIABLE_RANGE;
+				}
+				start = Math.max(0, length - suffix);
+				end = length - 1;
 			}
 			else
 			{
-				File file = fileStore.toLocalFile(EFS.NONE, new NullProgressMonitor());
-				final File temporaryFile = (file == null) ? fileStore.toLocalFile(EFS.CACHE, new NullProgressMonitor())
-						: null;
-				response.setEntity(new NFileEntity((file != null) ? file : temporaryFile, getMimeType(fileStore
-						.getName()))
+				start = Long.parseLong(first);
+				end = length - 1;
+				if (last.length() > 0)
+				{
+					long requested = Long.parseLong(last);
+					if (requested < start)
+					{
+						// syntactically invalid, ignored
+						return null;
+					}
+					end = Math.min(requested, end);
+				}
+			}
+			if (start >= length)
+			{
+				return UNSATISFIABLE_RANGE;
+			}
+			return new long[] { start, end };
+		}
+		catch (NumberFormatException e)
+		{
+			return null;
+		}
+	}
+
+	private static boolean acceptsGzip(HttpRequest request)
+	{
+		Header acceptEncoding = request.getFirstHeader(HttpHeaders.ACCEPT_ENCODING);
+		if (acceptEncoding == null)
+		{
+			return false;
+		}
+		for (String coding : acceptEncoding.getValue().split(",")) //$NON-NLS-1$
+		{
+			String[] parts = coding.split(";"); //$NON-NLS-1$
+			if (GZIP.equalsIgnoreCase(parts[0].trim()))
+			{
+				for (int i = 1; i < parts.length; i++)
 				{
-					@Override
-					public void close() throws IOException
+					String parameter = parts[i].trim();
+					if (parameter.startsWith("q=")) //$NON-NLS-1$
 					{
 						try
 						{
-							super.close();
+							return Float.parseFloat(parameter.substring(2)) > 0;
 						}
-						finally
+						catch (NumberFormatException e)
 						{
-							if (temporaryFile != null && !temporaryFile.delete())
-							{
-								temporaryFile.deleteOnExit();
-							}
+							return false;
 						}
 					}
-				});
+				}
+				return true;
 			}
 		}
+		return false;
+	}
+
+	private static boolean isCompressible(ContentType contentType, long length)
+	{
+		if (contentType == null || length < MIN_COMPRESSED_LENGTH || length > MAX_COMPRESSED_LENGTH)
+		{
+			return false;
+		}
+		String mimeType = contentType.getMimeType();
+		return mimeType.startsWith("text/") //$NON-NLS-1$
+				|| mimeType.endsWith("xml") //$NON-NLS-1$
+				|| mimeType.endsWith("/json") //$NON-NLS-1$
+				|| mimeType.endsWith("javascript"); //$NON-NLS-1$
+	}
+
+	private static byte[] read(File file) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) file.length());
+		InputStream in = new FileInputStream(file);
+		try
+		{
+			IOUtil.pipe(in, bytes);
+		}
+		finally
+		{
+			in.close();
+		}
+		return bytes.toByteArray();
+	}
+
+	private static byte[] gzip(byte[] content) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length / 3);
+		GZIPOutputStream out = new GZIPOutputStream(bytes);
+		out.write(content);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Adds the live reload script before the end of the body of the page, or at its end if there's no closing body tag.
+	 * The tag is looked up in the page decoded as Latin-1, which maps each byte to one char and so gives byte offsets
+	 * whatever the actual (ASCII compatible) encoding of the page.
+	 */
+	private static byte[] injectScript(byte[] content) throws UnsupportedEncodingException
+	{
+		String page = new String(content, LATIN_1);
+		int index = page.toLowerCase(Locale.ENGLISH).lastIndexOf(BODY_END);
+		if (index == -1)
+		{
+			index = content.length;
+		}
+		byte[] script = LiveReloadChannel.SCRIPT_TAG.getBytes(LATIN_1);
+		byte[] result = new byte[content.length + script.length];
+		System.arraycopy(content, 0, result, 0, index);
+		System.arraycopy(script, 0, result, index, script.length);
+		System.arraycopy(content, index, result, index + script.length, content.length - index);
+		return result;
+	}
+
+	/**
+	 * The entity tag of a file, derived from its length and modification time.
+	 */
+	private static String getETag(IFileInfo fileInfo)
+	{
+		return '"' + Long.toHexString(fileInfo.getLength()) + '-' + Long.toHexString(fileInfo.getLastModified()) + '"';
+	}
+
+	private static String getVariantETag(String etag, String variant)
+	{
+		return etag.substring(0, etag.length() - 1) + '-' + variant + '"';
+	}
+
+	private static String formatDate(long time)
+	{
+		SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
+		format.setTimeZone(TimeZone.getTimeZone("GMT")); //$NON-NLS-1$
+		return format.format(new Date(time));
+	}
+
+	private static Date parseDate(String value)
+	{
+		SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
+		format.setTimeZone(TimeZone.getTimeZone("GMT")); //$NON-NLS-1$
+		try
+		{
+			return format.parse(value.trim());
+		}
+		catch (ParseException e)
+		{
+			return null;
+		}
 	}
 
 	/*
@@ -0,0 +1,46 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ *
+ * Injected by the built-in server into the HTML pages it serves. Listens to the server's change events: a changed
+ * stylesheet used by the page is swapped in place, any other change reloads the page.
+ */
+(function () {
+	if (!window.EventSource) {
+		return;
+	}
+
+	function pathOf(url) {
+		var a = document.createElement("a");
+		a.href = url;
+		var path = a.pathname;
+		return (path.charAt(0) === "/") ? path : "/" + path;
+	}
+
+	function swapStylesheets(path) {
+		var links = document.getElementsByTagName("link"),
+			swapped = false,
+			i, link;
+		for (i = 0; i < links.length; i++) {
+			link = links[i];
+			if (/\bstylesheet\b/i.test(link.rel) && link.href && pathOf(link.href) === path) {
+				link.href = link.href.replace(/[?#].*$/, "") + "?livereload=" + new Date().getTime();
+				swapped = true;
+			}
+		}
+		return swapped;
+	}
+
+	var source = new EventSource("/__livereload/events");
+	source.addEventListener("change", function (e) {
+		var path = e.data;
+		if (/\.css$/i.test(path) && swapStylesheets(path)) {
+			return;
+		}
+		source.close();
+		window.location.reload();
+	}, false);
+}());
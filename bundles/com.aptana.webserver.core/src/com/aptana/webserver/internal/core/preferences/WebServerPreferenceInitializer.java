@@ -34,6 +34,10 @@ public class WebServerPreferenceInitializer extends AbstractPreferenceInitialize
 		node.put(IWebServerPreferenceConstants.PREF_HTTP_SERVER_PORTS,
 				IWebServerPreferenceConstants.DEFAULT_HTTP_SERVER_PORTS_RANGE[0]
 						+ "-" + IWebServerPreferenceConstants.DEFAULT_HTTP_SERVER_PORTS_RANGE[1]); //$NON-NLS-1$
+		node.putBoolean(IWebServerPreferenceConstants.PREF_HTTP_SERVER_COMPRESSION,
+				IWebServerPreferenceConstants.DEFAULT_HTTP_SERVER_COMPRESSION);
+		node.putBoolean(IWebServerPreferenceConstants.PREF_HTTP_SERVER_LIVE_RELOAD,
+				IWebServerPreferenceConstants.DEFAULT_HTTP_SERVER_LIVE_RELOAD);
 	}
 
 }
@@ -103,4 +103,30 @@ public class WebServerPreferences
 		return new int[] { portsStart, portsEnd };
 	}
 
+	/**
+	 * Returns whether the local webserver gzips text files
+	 * 
+	 * @return
+	 */
+	public static boolean isCompressionEnabled()
+	{
+		return Platform.getPreferencesService().getBoolean(WebServerCorePlugin.PLUGIN_ID,
+				IWebServerPreferenceConstants.PREF_HTTP_SERVER_COMPRESSION,
+				IWebServerPreferenceConstants.DEFAULT_HTTP_SERVER_COMPRESSION,
+				new IScopeContext[] { InstanceScope.INSTANCE, DefaultScope.INSTANCE });
+	}
+
+	/**
+	 * Returns whether the local webserver pushes file changes to the pages it serves
+	 * 
+	 * @return
+	 */
+	public static boolean isLiveReloadEnabled()
+	{
+		return Platform.getPreferencesService().getBoolean(WebServerCorePlugin.PLUGIN_ID,
+				IWebServerPreferenceConstants.PREF_HTTP_SERVER_LIVE_RELOAD,
+				IWebServerPreferenceConstants.DEFAULT_HTTP_SERVER_LIVE_RELOAD,
+				new IScopeContext[] { InstanceScope.INSTANCE, DefaultScope.INSTANCE });
+	}
+
 }
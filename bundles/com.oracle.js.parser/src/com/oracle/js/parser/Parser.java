@@ -188,6 +188,29 @@ public class Parser extends AbstractParser {
 
     private RecompilableScriptFunctionData reparsedFunction;
 
+    /** Receives the top level statements of a script as soon as they are parsed, may be null. */
+    private StatementHandler statementHandler;
+
+    /** Body of the script while its statements are passed to the {@link #statementHandler}. */
+    private ParserContextBlockNode handledBody;
+
+    /**
+     * Callback for the top level statements of a script.
+     *
+     * When set, each top level statement (including hoisted function declarations) is passed to the handler as soon
+     * as it has been parsed and is not added to the body of the resulting script function node. This allows callers
+     * to build their own tree statement by statement without keeping the whole IR in memory. The order in which the
+     * statements are passed is not necessarily the source order. Modules are not affected.
+     */
+    public interface StatementHandler {
+        /**
+         * Called for each top level statement of a script.
+         *
+         * @param statement the parsed statement
+         */
+        void handle(Statement statement);
+    }
+
     /**
      * Constructor
      *
@@ -252,6 +275,15 @@ public class Parser extends AbstractParser {
         defaultNames.push(createIdentNode(0, 0, name));
     }
 
+    /**
+     * Sets the handler that receives the top level statements of scripts parsed from now on.
+     *
+     * @param handler the handler, or null to keep the statements in the script's body
+     */
+    public void setStatementHandler(final StatementHandler handler) {
+        this.statementHandler = handler;
+    }
+
     /**
      * Execute parse and return the resulting function node.
      * Errors will be thrown and the error manager will contain information
@@ -830,7 +862,15 @@ loop:
         final ParserContextBlockNode body = newBlock();
 
         functionDeclarations = new ArrayList<>();
-        sourceElements(allowPropertyFunction);
+        if (statementHandler != null) {
+            handledBody = body;
+        }
+        try {
+            sourceElements(allowPropertyFunction);
+            handleStatements();
+        } finally {
+            handledBody = null;
+        }
         addFunctionDeclarations(script);
         functionDeclarations = null;
 
@@ -953,6 +993,8 @@ loop:
                     appendStatement(expressionStatement);
                 }
 
+                handleStatements();
+
                 // No backtracking from here on.
                 stream.commit(k);
             }
@@ -961,6 +1003,29 @@ loop:
         }
     }
 
+    /**
+     * Passes the statements parsed so far at the top level of the script to the {@link #statementHandler} and removes
+     * them from the script's body.
+     */
+    private void handleStatements() {
+        if (handledBody == null || lc.getCurrentBlock() != handledBody) {
+            return;
+        }
+        if (!functionDeclarations.isEmpty()) {
+            for (final Statement statement : functionDeclarations) {
+                statementHandler.handle(statement);
+            }
+            functionDeclarations.clear();
+        }
+        final List<Statement> statements = handledBody.getStatements();
+        if (!statements.isEmpty()) {
+            for (final Statement statement : statements) {
+                statementHandler.handle(statement);
+            }
+            statements.clear();
+        }
+    }
+
     /**
      * Parse any of the basic statement types.
      *
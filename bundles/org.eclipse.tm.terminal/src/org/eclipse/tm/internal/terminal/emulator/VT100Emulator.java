@@ -1040,25 +1040,25 @@ public class VT100Emulator implements ControlListener {
 	 * This method processes a contiguous sequence of non-control characters.
 	 * This is a performance optimization, so that we don't have to insert or
 	 * append each non-control character individually to the StyledText widget.
-	 * A non-control character is any character that passes the condition in the
-	 * below while loop.
+	 * The sequence is taken out of {@link #fReadBuffer} a block at a time, by
+	 * scanning ahead for the next control character (see
+	 * {@link #isControlCharacter(char)}).
 	 * @throws IOException
 	 */
 	private void processNonControlCharacters(char character) throws IOException {
 		StringBuffer buffer=new StringBuffer();
 		buffer.append(character);
-		// Identify a contiguous sequence of non-control characters, starting at
-		// firstNonControlCharacterIndex in newText.
-		while(hasNextChar()) {
-			character=getNextChar();
-			if(character == '\u0000' || character == '\b' || character == '\t'
-				|| character == '\u0007' || character == '\n'
-				|| character == '\r' || character == '\u001b'
-				|| character == '\u000e' || character == '\u000f') {
-				pushBackChar(character);
-				break;
+		// Identify a contiguous sequence of non-control characters, which may
+		// continue in the next blocks read.
+		while(fReadPos<fReadEnd || (fReader.ready() && fillReadBuffer())) {
+			int end=fReadPos;
+			while(end<fReadEnd && !isControlCharacter(fReadBuffer[end])) {
+				end++;
 			}
-			buffer.append(character);
+			buffer.append(fReadBuffer, fReadPos, end-fReadPos);
+			fReadPos=end;
+			if(end<fReadEnd)
+				break;
 		}
 
 		// Now insert the sequence of non-control characters in the StyledText widget
@@ -1067,6 +1067,16 @@ public class VT100Emulator implements ControlListener {
 		displayNewText(buffer.toString());
 	}
 
+	/**
+	 * @return whether the character ends a sequence of non-control characters
+	 */
+	private static boolean isControlCharacter(char character) {
+		return character == '\u0000' || character == '\b' || character == '\t'
+			|| character == '\u0007' || character == '\n'
+			|| character == '\r' || character == '\u001b'
+			|| character == '\u000e' || character == '\u000f';
+	}
+
 	/**
 	 * This method displays a subset of the newly-received text in the Terminal
 	 * view, wrapping text at the right edge of the screen and overwriting text
@@ -1260,43 +1270,49 @@ public class VT100Emulator implements ControlListener {
 //	}
 
 	/**
-	 * Buffer for {@link #pushBackChar(char)}.
+	 * The characters read from {@link #fReader} and not processed yet go from
+	 * {@link #fReadPos} (inclusive) to {@link #fReadEnd} (exclusive). Reading
+	 * blocks rather than single characters saves a call to the reader per
+	 * character, and lets {@link #processNonControlCharacters(char)} take
+	 * whole runs of text at once.
 	 */
-	private int fNextChar=-1;
+	private final char[] fReadBuffer=new char[8*1024];
+	private int fReadPos;
+	private int fReadEnd;
 	private char getNextChar() throws IOException {
-		int c=-1;
-		if(fNextChar!=-1) {
-			c= fNextChar;
-			fNextChar=-1;
-		} else {
-			c = fReader.read();
+		if(fReadPos==fReadEnd && !fillReadBuffer()) {
+			// TODO: better end of file handling
+			return 0;
 		}
-		// workaround for unicode characters (for some reasons they appear as 137 63 63)
-		if (c == 137) {
-			c = ' ';
+		return fReadBuffer[fReadPos++];
+	}
+
+	/**
+	 * Reads the next block of characters into {@link #fReadBuffer}. Must only
+	 * be called once the buffer has been processed.
+	 * @return false at the end of the stream
+	 * @throws IOException
+	 */
+	private boolean fillReadBuffer() throws IOException {
+		int n=fReader.read(fReadBuffer, 0, fReadBuffer.length);
+		if(n<=0)
+			return false;
+		for (int i = 0; i < n; i++) {
+			// workaround for unicode characters (for some reasons they appear as 137 63 63)
+			if(fReadBuffer[i]==137)
+				fReadBuffer[i]=' ';
 		}
-		// TODO: better end of file handling
-		if(c==-1)
-			c=0;
-		return (char)c;
+		fReadPos=0;
+		fReadEnd=n;
+		return true;
 	}
 
 	private boolean hasNextChar() throws IOException  {
-		if(fNextChar>=0)
+		if(fReadPos<fReadEnd)
 			return true;
 		return fReader.ready();
 	}
 
-	/**
-	 * Put back one character to the stream. This method can push
-	 * back exactly one character. The character is the next character
-	 * returned by {@link #getNextChar}
-	 * @param c the character to be pushed back.
-	 */
-	void pushBackChar(char c) {
-		//assert fNextChar!=-1: "Already a character waiting:"+fNextChar; //$NON-NLS-1$
-		fNextChar=c;
-	}
 	private int getCursorColumn() {
 		return text.getCursorColumn();
 	}
@@ -0,0 +1,474 @@
+/*******************************************************************************
+ * Copyright (c) 2007 Wind River Systems, Inc. and others.
+ * All rights reserved. This program and the accompanying materials 
+ * are made available under the terms of the Eclipse Public License v1.0 
+ * which accompanies this distribution, and is available at 
+ * http://www.eclipse.org/legal/epl-v10.html 
+ * 
+ * Contributors: 
+ * Michael Scharf (Wind River) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tm.internal.terminal.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.tm.terminal.model.ITerminalTextData;
+import org.eclipse.tm.terminal.model.ITerminalTextDataSnapshot;
+import org.eclipse.tm.terminal.model.LineSegment;
+import org.eclipse.tm.terminal.model.Style;
+
+/**
+ * An alternative to {@link TerminalTextDataStore} (and to wrapping it into a
+ * {@link TerminalTextDataFastScroll}) for large scrollback buffers.
+ * <p>
+ * The lines are kept in a ring: scrolling the entire {@link #getHeight()}
+ * moves the index of the first line instead of moving the lines, so it only
+ * costs the lines scrolled in or out. A line only holds the characters
+ * written to it, and its styles as runs of equal styles rather than one
+ * {@link Style} per character. Styles are compared by identity, since
+ * {@link Style} interns them.
+ * <p>
+ * Lines beyond {@link #getHeight()} are always <code>null</code>, so that
+ * the memory used follows the content rather than the capacity of the ring.
+ *
+ */
+public class TerminalTextDataRingStore implements ITerminalTextData {
+	/**
+	 * A line: its characters and the runs of styles covering them.
+	 */
+	static class Line {
+		static final Line EMPTY=new Line(new char[0],new int[0],new Style[0],0);
+		private char[] fChars;
+		/**
+		 * The (exclusive) end of each run. The last run ends at the end of the line.
+		 */
+		private int[] fRunEnds;
+		private Style[] fRunStyles;
+		private int fRunCount;
+		private Line(char[] chars, int[] runEnds, Style[] runStyles, int runCount) {
+			fChars=chars;
+			fRunEnds=runEnds;
+			fRunStyles=runStyles;
+			fRunCount=runCount;
+		}
+		Line() {
+			this(new char[0],new int[2],new Style[2],0);
+		}
+		/**
+		 * @return a line with the given content, or <code>null</code> if there is none
+		 */
+		static Line valueOf(char[] chars, Style[] styles) {
+			if(chars==null && styles==null)
+				return null;
+			int length=Math.max(chars==null?0:chars.length, styles==null?0:styles.length);
+			Line line=new Line();
+			line.fChars=new char[length];
+			if(chars!=null)
+				System.arraycopy(chars, 0, line.fChars, 0, chars.length);
+			for (int i = 0; i < length; i++) {
+				line.appendRun(i+1, (styles!=null && i<styles.length)?styles[i]:null);
+			}
+			return line;
+		}
+		Line copy() {
+			return new Line((char[]) fChars.clone(),(int[]) fRunEnds.clone(),(Style[]) fRunStyles.clone(),fRunCount);
+		}
+		char getChar(int column) {
+			if(column>=fChars.length)
+				return 0;
+			return fChars[column];
+		}
+		Style getStyle(int column) {
+			int run=findRun(column);
+			if(run==fRunCount)
+				return null;
+			return fRunStyles[run];
+		}
+		char[] getChars() {
+			return (char[]) fChars.clone();
+		}
+		Style[] getStyles() {
+			Style[] styles=new Style[fChars.length];
+			int start=0;
+			for (int i = 0; i < fRunCount; i++) {
+				for (int j = start; j < fRunEnds[i]; j++) {
+					styles[j]=fRunStyles[i];
+				}
+				start=fRunEnds[i];
+			}
+			return styles;
+		}
+		/**
+		 * @return the index of the run containing the column, or the number
+		 * of runs if the column is beyond the end of the line
+		 */
+		private int findRun(int column) {
+			int low=0;
+			int high=fRunCount;
+			while(low<high) {
+				int mid=(low+high)>>>1;
+				if(fRunEnds[mid]<=column)
+					low=mid+1;
+				else
+					high=mid;
+			}
+			return low;
+		}
+		void setChar(int column, char c, Style style) {
+			prepare(column, column+1, style);
+			fChars[column]=c;
+		}
+		void setChars(int column, char[] chars, int start, int len, Style style) {
+			prepare(column, column+len, style);
+			System.arraycopy(chars, start, fChars, column, len);
+		}
+		/**
+		 * Makes room for the columns from <code>from</code> (inclusive) to
+		 * <code>to</code> (exclusive), and sets their style.
+		 */
+		private void prepare(int from, int to, Style style) {
+			int length=fChars.length;
+			if(to>length) {
+				char[] chars=new char[to];
+				System.arraycopy(fChars, 0, chars, 0, length);
+				fChars=chars;
+			}
+			if(from>=length) {
+				// the common case: writing at the end of the line
+				if(from>length)
+					appendRun(from, null);
+				appendRun(to, style);
+			} else {
+				if(to>length)
+					appendRun(to, null);
+				setStyle(from, to, style);
+			}
+		}
+		/**
+		 * Adds a run ending at the given column, or extends the last run
+		 * if it has the same style. Empty runs are ignored.
+		 */
+		private void appendRun(int end, Style style) {
+			if(end<=(fRunCount>0?fRunEnds[fRunCount-1]:0))
+				return;
+			if(fRunCount>0 && fRunStyles[fRunCount-1]==style) {
+				fRunEnds[fRunCount-1]=end;
+				return;
+			}
+			if(fRunCount==fRunEnds.length) {
+				int size=Math.max(2, 2*fRunCount);
+				int[] ends=new int[size];
+				Style[] styles=new Style[size];
+				System.arraycopy(fRunEnds, 0, ends, 0, fRunCount);
+				System.arraycopy(fRunStyles, 0, styles, 0, fRunCount);
+				fRunEnds=ends;
+				fRunStyles=styles;
+			}
+			fRunEnds[fRunCount]=end;
+			fRunStyles[fRunCount]=style;
+			fRunCount++;
+		}
+		/**
+		 * Sets the style of the columns from <code>from</code> (inclusive) to
+		 * <code>to</code> (exclusive), which must be within the line.
+		 */
+		private void setStyle(int from, int to, Style style) {
+			int run=findRun(from);
+			if(fRunStyles[run]==style && fRunEnds[run]>=to)
+				return;
+			int[] runEnds=fRunEnds;
+			Style[] runStyles=fRunStyles;
+			int runCount=fRunCount;
+			fRunEnds=new int[runCount+2];
+			fRunStyles=new Style[runCount+2];
+			fRunCount=0;
+			int start=0;
+			for (int i = 0; i < runCount && start<from; i++) {
+				appendRun(Math.min(runEnds[i], from), runStyles[i]);
+				start=runEnds[i];
+			}
+			appendRun(to, style);
+			for (int i = run; i < runCount; i++) {
+				if(runEnds[i]>to)
+					appendRun(runEnds[i], runStyles[i]);
+			}
+		}
+		LineSegment[] getLineSegments(int column, int len) {
+			List segments=new ArrayList();
+			int n=column+len;
+			int run=findRun(column);
+			// the pending segment goes from start to col
+			int start=column;
+			int col=column;
+			Style style=null;
+			while(col<n) {
+				int end=n;
+				Style s=null;
+				if(run<fRunCount) {
+					end=Math.min(fRunEnds[run], n);
+					s=fRunStyles[run];
+					run++;
+				}
+				if(s!=style && col>start) {
+					segments.add(new LineSegment(start,getText(start, col),style));
+					start=col;
+				}
+				style=s;
+				col=end;
+			}
+			if(col>start)
+				segments.add(new LineSegment(start,getText(start, col),style));
+			return (LineSegment[]) segments.toArray(new LineSegment[segments.size()]);
+		}
+		private String getText(int start, int end) {
+			if(end<=fChars.length)
+				return new String(fChars,start,end-start);
+			char[] text=new char[end-start];
+			if(start<fChars.length)
+				System.arraycopy(fChars, start, text, 0, fChars.length-start);
+			return new String(text);
+		}
+	}
+
+	/**
+	 * The ring of lines. Line <code>i</code> is at <code>(fFirst+i)%fLines.length</code>.
+	 */
+	private Line[] fLines;
+	private int fFirst;
+	private int fWidth;
+	private int fHeight;
+	private int fMaxHeight;
+	private int fCursorColumn;
+	private int fCursorLine;
+	public TerminalTextDataRingStore() {
+		fLines=new Line[0];
+	}
+	/**
+	 * This is used in asserts to throw an {@link RuntimeException}.
+	 * This is useful for tests.
+	 * @return never -- throws an exception
+	 */
+	private boolean throwRuntimeException() {
+		throw new RuntimeException();
+	}
+	/**
+	 * @param line
+	 * @return the position of the line in {@link #fLines}
+	 */
+	private int getPositionOfLine(int line) {
+		int pos=fFirst+line;
+		return pos<fLines.length?pos:pos-fLines.length;
+	}
+	private Line getLine(int line) {
+		assert line>=0 && line<fHeight || throwRuntimeException();
+		Line l=fLines[getPositionOfLine(line)];
+		return l==null?Line.EMPTY:l;
+	}
+	private Line getWritableLine(int line, int length) {
+		if(length>fWidth)
+			throw new RuntimeException();
+		int pos=getPositionOfLine(line);
+		if(fLines[pos]==null)
+			fLines[pos]=new Line();
+		return fLines[pos];
+	}
+	private void putLine(int line, Line l) {
+		assert line>=0 && line<fHeight || throwRuntimeException();
+		fLines[getPositionOfLine(line)]=l;
+	}
+
+	public int getWidth() {
+		return fWidth;
+	}
+	public int getHeight() {
+		return fHeight;
+	}
+	public void setDimensions(int height, int width) {
+		assert height>=0 || throwRuntimeException();
+		assert width>=0  || throwRuntimeException();
+		if(height>fLines.length) {
+			// grow in steps, so that adding lines one by one doesn't copy the ring each time
+			int capacity=Math.max(height, 3*fLines.length/2);
+			if(fMaxHeight>=height && capacity>fMaxHeight)
+				capacity=fMaxHeight;
+			Line[] lines=new Line[capacity];
+			for (int i = 0; i < fHeight; i++) {
+				lines[i]=fLines[getPositionOfLine(i)];
+			}
+			fLines=lines;
+			fFirst=0;
+		}
+		// drop the lines cut off, and clean the new ones
+		for (int i = Math.min(height, fHeight); i < Math.max(height, fHeight); i++) {
+			fLines[getPositionOfLine(i)]=null;
+		}
+		fWidth=width;
+		fHeight=height;
+	}
+	public LineSegment[] getLineSegments(int line, int column, int len) {
+		return getLine(line).getLineSegments(column, len);
+	}
+	public char getChar(int line, int column) {
+		assert column<fWidth || throwRuntimeException();
+		return getLine(line).getChar(column);
+	}
+	public Style getStyle(int line, int column) {
+		assert column<fWidth || throwRuntimeException();
+		return getLine(line).getStyle(column);
+	}
+	public void setChar(int line, int column, char c, Style style) {
+		getWritableLine(line, column+1).setChar(column, c, style);
+	}
+	public void setChars(int line, int column, char[] chars, Style style) {
+		setChars(line,column,chars,0,chars.length,style);
+	}
+	public void setChars(int line, int column, char[] chars, int start, int len, Style style) {
+		getWritableLine(line, column+len).setChars(column, chars, start, len, style);
+	}
+	public void scroll(int startLine, int size, int shift) {
+		assert startLine+size <= getHeight() || throwRuntimeException();
+		if(startLine==0 && size==fHeight && shift!=0 && Math.abs(shift)<size) {
+			rotate(shift);
+		} else if(shift<0) {
+			// move the region up
+			// shift is negative!!
+			for (int i = startLine; i < startLine+size+shift; i++) {
+				putLine(i, fLines[getPositionOfLine(i-shift)]);
+			}
+			// then clean the opened lines
+			cleanLines(Math.max(startLine, startLine+size+shift),Math.min(-shift, getHeight()-startLine));
+		} else {
+			for (int i = startLine+size-1; i >=startLine && i-shift>=0; i--) {
+				putLine(i, fLines[getPositionOfLine(i-shift)]);
+			}
+			cleanLines(startLine, Math.min(shift, getHeight()-startLine));
+		}
+	}
+	/**
+	 * Scrolls all the lines by moving the first line of the ring.
+	 * The lines scrolled out are dropped first: since the lines beyond
+	 * the height are <code>null</code>, the lines scrolled in are then
+	 * empty.
+	 * @param shift
+	 */
+	private void rotate(int shift) {
+		if(shift<0) {
+			cleanLines(0, -shift);
+			fFirst=getPositionOfLine(-shift);
+		} else {
+			cleanLines(fHeight-shift, shift);
+			fFirst=getPositionOfLine(fLines.length-shift);
+		}
+	}
+	/**
+	 * Replaces the lines with new empty data
+	 * @param line
+	 * @param len
+	 */
+	private void cleanLines(int line, int len) {
+		for (int i = line; i < line+len; i++) {
+			putLine(i, null);
+		}
+	}
+
+	/*
+	 * @return a text representation of the object.
+	 * Lines are separated by '\n'. No style information is returned.
+	 */
+	public String toString() {
+		StringBuffer buff=new StringBuffer();
+		for (int line = 0; line < getHeight(); line++) {
+			if(line>0)
+				buff.append("\n"); //$NON-NLS-1$
+			for (int column = 0; column < fWidth; column++) {
+				buff.append(getChar(line, column));
+			}
+		}
+		return buff.toString();
+	}
+
+	public ITerminalTextDataSnapshot makeSnapshot() {
+		throw new UnsupportedOperationException();
+	}
+
+	public void addLine() {
+		if(fMaxHeight>0 && getHeight()<fMaxHeight) {
+			setDimensions(getHeight()+1, getWidth());
+		} else {
+			scroll(0,getHeight(),-1);
+		}
+	}
+
+	public void copy(ITerminalTextData source) {
+		int n=source.getHeight();
+		if(fLines.length<n) {
+			fLines=new Line[n];
+			fFirst=0;
+		} else {
+			for (int i = n; i < fHeight; i++) {
+				fLines[getPositionOfLine(i)]=null;
+			}
+		}
+		fWidth=source.getWidth();
+		fHeight=n;
+		for (int i = 0; i < n; i++) {
+			putLine(i, copyOf(source, i));
+		}
+		fCursorLine=source.getCursorLine();
+		fCursorColumn=source.getCursorColumn();
+	}
+	public void copyRange(ITerminalTextData source, int sourceStartLine, int destStartLine,int length) {
+		for (int i = 0; i < length; i++) {
+			putLine(i+destStartLine, copyOf(source, i+sourceStartLine));
+		}
+	}
+	public void copyLine(ITerminalTextData source, int sourceLine, int destLine) {
+		putLine(destLine, copyOf(source, sourceLine));
+	}
+	private Line copyOf(ITerminalTextData source, int line) {
+		if(source instanceof TerminalTextDataRingStore) {
+			TerminalTextDataRingStore ring=(TerminalTextDataRingStore) source;
+			Line l=ring.fLines[ring.getPositionOfLine(line)];
+			return l==null?null:l.copy();
+		}
+		return Line.valueOf(source.getChars(line), source.getStyles(line));
+	}
+
+	public char[] getChars(int line) {
+		Line l=fLines[getPositionOfLine(line)];
+		if(l==null)
+			return null;
+		return l.getChars();
+	}
+	public Style[] getStyles(int line) {
+		Line l=fLines[getPositionOfLine(line)];
+		if(l==null)
+			return null;
+		return l.getStyles();
+	}
+	public void setLine(int line, char[] chars, Style[] styles) {
+		putLine(line, Line.valueOf(chars, styles));
+	}
+	public void setMaxHeight(int height) {
+		fMaxHeight=height;
+	}
+	public int getMaxHeight() {
+		return fMaxHeight;
+	}
+	public void cleanLine(int line) {
+		putLine(line, null);
+	}
+	public int getCursorColumn() {
+		return fCursorColumn;
+	}
+	public int getCursorLine() {
+		return fCursorLine;
+	}
+	public void setCursorColumn(int column) {
+		fCursorColumn=column;
+	}
+	public void setCursorLine(int line) {
+		fCursorLine=line;
+	}
+}
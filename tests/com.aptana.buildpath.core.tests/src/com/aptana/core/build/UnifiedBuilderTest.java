@@ -2,13 +2,16 @@ package com.aptana.core.build;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IFolder;
@@ -36,6 +39,7 @@ import com.aptana.core.build.IBuildParticipant.BuildType;
 import com.aptana.core.internal.build.BuildParticipantManager;
 import com.aptana.core.resources.IMarkerConstants;
 import com.aptana.core.util.CollectionsUtil;
+import com.aptana.core.util.StringUtil;
 import com.aptana.index.core.build.BuildContext;
 import com.aptana.testing.utils.ProjectCreator;
 
@@ -553,4 +557,73 @@ public class UnifiedBuilderTest
 		builder.build(IncrementalProjectBuilder.FULL_BUILD, null, new NullProgressMonitor());
 		context.assertIsSatisfied();
 	}
+
+	@Test
+	public void testParallelBuildRunsThreadSafeParticipants() throws Exception
+	{
+		final int fileCount = 150;
+		for (int i = 0; i < fileCount; i++)
+		{
+			IFile file = project.getFile("file" + i + ".txt");
+			file.create(new ByteArrayInputStream(("TODO " + i).getBytes()), true, null);
+		}
+
+		final Set<String> builtFiles = Collections.synchronizedSet(new HashSet<String>());
+		final Set<String> threadNames = Collections.synchronizedSet(new HashSet<String>());
+		participant = new RequiredBuildParticipant()
+		{
+			@Override
+			public boolean isThreadSafe()
+			{
+				return true;
+			}
+
+			public void deleteFile(BuildContext context, IProgressMonitor monitor)
+			{
+			}
+
+			public void buildFile(BuildContext context, IProgressMonitor monitor)
+			{
+				builtFiles.add(context.getName());
+				threadNames.add(Thread.currentThread().getName());
+
+				Collection<IProblem> problems = new ArrayList<IProblem>();
+				problems.add(createTask(context.getURI().toString(), context.getContents(), IMarker.PRIORITY_HIGH, 1,
+						0, 4));
+				context.putProblems(IMarkerConstants.TASK_MARKER, problems);
+			}
+		};
+		builder = new UnifiedBuilder()
+		{
+			@Override
+			protected IProject getProjectHandle()
+			{
+				return project;
+			}
+
+			@Override
+			protected IBuildParticipantManager getBuildParticipantManager()
+			{
+				return manager;
+			}
+
+			@Override
+			protected int getBuildThreadCount()
+			{
+				return 4;
+			}
+		};
+		builder.build(IncrementalProjectBuilder.FULL_BUILD, null, new NullProgressMonitor());
+
+		// all the files plus .project
+		assertEquals(fileCount + 1, builtFiles.size());
+		assertTrue(StringUtil.join(", ", threadNames), !threadNames.contains(Thread.currentThread().getName()));
+		for (int i = 0; i < fileCount; i++)
+		{
+			IMarker[] markers = project.getFile("file" + i + ".txt").findMarkers(IMarkerConstants.TASK_MARKER, true,
+					IResource.DEPTH_ZERO);
+			assertEquals(1, markers.length);
+			assertEquals("TODO " + i, markers[0].getAttribute(IMarker.MESSAGE));
+		}
+	}
 }
@@ -10,13 +10,17 @@ package com.aptana.core.io.tests;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
+import com.aptana.core.io.vfs.BaseConnectionFileManagerTest;
+import com.aptana.core.io.vfs.PersistedFileInfosTest;
+import com.aptana.core.io.vfs.PersistentFileInfoCacheTest;
 import com.aptana.ide.core.io.downloader.CoreIODownloaderTests;
 import com.aptana.ide.core.io.internal.auth.InternalAuthTests;
 import com.aptana.ide.core.io.preferences.CloakingUtilsTest;
 
 @RunWith(Suite.class)
 @Suite.SuiteClasses({ EFSUtilsTest.class, WorkspaceFileSystemTest.class, WorkspaceConnectionPointTest.class,
-		ConnectionPointManagerTest.class, CloakingUtilsTest.class, CoreIODownloaderTests.class, InternalAuthTests.class })
+		ConnectionPointManagerTest.class, CloakingUtilsTest.class, CoreIODownloaderTests.class, InternalAuthTests.class,
+		BaseConnectionFileManagerTest.class, PersistentFileInfoCacheTest.class, PersistedFileInfosTest.class })
 public class AllTests
 {
 }
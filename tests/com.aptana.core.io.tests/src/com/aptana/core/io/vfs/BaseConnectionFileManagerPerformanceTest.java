@@ -0,0 +1,59 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.core.io.vfs;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Map;
+
+import org.eclipse.core.filesystem.EFS;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.aptana.testing.categories.PerformanceTests;
+
+/**
+ * Reports how many entries per second are fetched from a {@link LatencyFileManager}, listing one directory at a time
+ * and several at a time.
+ */
+@Category({ PerformanceTests.class })
+@SuppressWarnings("nls")
+public class BaseConnectionFileManagerPerformanceTest
+{
+
+	private static void fetchTree(String label, int concurrency) throws CoreException
+	{
+		LatencyFileManager fileManager = new LatencyFileManager(concurrency);
+		long start = System.currentTimeMillis();
+		Map<IPath, IExtendedFileInfo[]> tree = fileManager.fetchTree(Path.ROOT, EFS.NONE, null, null);
+		long time = System.currentTimeMillis() - start;
+
+		assertEquals(LatencyFileManager.countDirectories(), tree.size());
+		int entries = 0;
+		for (IExtendedFileInfo[] fileInfos : tree.values())
+		{
+			entries += fileInfos.length;
+		}
+		System.out.println(label + ": " + (entries * 1000 / Math.max(1, time)) + " entries/sec");
+	}
+
+	@Test
+	public void testSequentialThroughput() throws CoreException
+	{
+		fetchTree("Sequential", 1);
+	}
+
+	@Test
+	public void testConcurrentThroughput() throws CoreException
+	{
+		fetchTree("Concurrent", 4);
+	}
+}
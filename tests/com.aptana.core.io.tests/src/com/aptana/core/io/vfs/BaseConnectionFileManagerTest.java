@@ -0,0 +1,102 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.core.io.vfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import static com.aptana.core.io.vfs.LatencyFileManager.DEPTH;
+import static com.aptana.core.io.vfs.LatencyFileManager.WIDTH;
+import static com.aptana.core.io.vfs.LatencyFileManager.countDirectories;
+
+import java.util.Map;
+
+import org.eclipse.core.filesystem.EFS;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.junit.Test;
+
+import com.aptana.core.IFilter;
+
+/**
+ * Fetches the tree of a {@link LatencyFileManager}.
+ */
+@SuppressWarnings("nls")
+public class BaseConnectionFileManagerTest
+{
+
+	@Test
+	public void testSequentialTree() throws CoreException
+	{
+		LatencyFileManager fileManager = new LatencyFileManager(1);
+		Map<IPath, IExtendedFileInfo[]> tree = fileManager.fetchTree(Path.ROOT, EFS.NONE, null, null);
+
+		assertEquals(countDirectories(), tree.size());
+		assertEquals(countDirectories(), fileManager.listings.get());
+		assertEquals(1, fileManager.maxActive.get());
+		assertEquals(2 * WIDTH, tree.get(Path.ROOT).length);
+		assertEquals(WIDTH, tree.get(new Path("dir0/dir1/dir2")).length);
+	}
+
+	@Test
+	public void testConcurrentTree() throws CoreException
+	{
+		LatencyFileManager fileManager = new LatencyFileManager(4);
+		Map<IPath, IExtendedFileInfo[]> tree = fileManager.fetchTree(Path.ROOT, EFS.NONE, null, null);
+
+		assertEquals(countDirectories(), tree.size());
+		assertEquals(countDirectories(), fileManager.listings.get());
+		assertEquals(4, fileManager.maxActive.get());
+		assertEquals(0, fileManager.openSessions.get());
+
+		IExtendedFileInfo[] fileInfos = tree.get(new Path("dir3/dir0"));
+		assertEquals(2 * WIDTH, fileInfos.length);
+		assertEquals("file1", fileInfos[1].getName());
+		assertFalse(fileInfos[1].isDirectory());
+		assertEquals(2, fileInfos[1].getLength());
+		assertTrue(fileInfos[WIDTH].isDirectory());
+	}
+
+	@Test
+	public void testFilteredTree() throws CoreException
+	{
+		LatencyFileManager fileManager = new LatencyFileManager(4);
+		Map<IPath, IExtendedFileInfo[]> tree = fileManager.fetchTree(Path.ROOT, EFS.NONE,
+				new IFilter<IPath>()
+				{
+					public boolean include(IPath item)
+					{
+						return !"dir0".equals(item.lastSegment());
+					}
+				}, null);
+
+		int directories = 0;
+		for (int level = 0, count = 1; level <= DEPTH; ++level, count *= WIDTH - 1)
+		{
+			directories += count;
+		}
+		assertEquals(directories, tree.size());
+		assertEquals(directories, fileManager.listings.get());
+		assertEquals(2 * WIDTH - 1, tree.get(Path.ROOT).length);
+		assertFalse(tree.containsKey(new Path("dir0")));
+	}
+
+	@Test
+	public void testConcurrencyWithoutSessions() throws CoreException
+	{
+		LatencyFileManager fileManager = new LatencyFileManager(4, false);
+		Map<IPath, IExtendedFileInfo[]> tree = fileManager.fetchTree(Path.ROOT, EFS.NONE, null, null);
+
+		// lists everything with the main connection instead
+		assertEquals(countDirectories(), tree.size());
+		assertEquals(countDirectories(), fileManager.listings.get());
+		assertEquals(1, fileManager.maxActive.get());
+	}
+}
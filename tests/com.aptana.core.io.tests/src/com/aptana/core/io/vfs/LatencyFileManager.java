@@ -0,0 +1,273 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.core.io.vfs;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.Path;
+
+/**
+ * A connection to a tree of {@link #DEPTH} levels of {@link #WIDTH} directories and files each, whose directory
+ * listings each take as long as a round trip to a remote host.
+ */
+@SuppressWarnings("nls")
+/* package */class LatencyFileManager extends BaseConnectionFileManager
+{
+
+	static final int DEPTH = 3;
+	static final int WIDTH = 4;
+	static final long LATENCY = 20;
+
+	final AtomicInteger active = new AtomicInteger();
+	final AtomicInteger maxActive = new AtomicInteger();
+	final AtomicInteger listings = new AtomicInteger();
+	final AtomicInteger openSessions = new AtomicInteger();
+	final AtomicInteger mainConnectionFetches = new AtomicInteger();
+	private final int concurrency;
+	private final boolean sessions;
+	private boolean connected;
+
+	/**
+	 * The modification time of every directory in the tree.
+	 */
+	volatile long directoriesModified;
+
+	LatencyFileManager(int concurrency)
+	{
+		this(concurrency, true);
+	}
+
+	LatencyFileManager(int concurrency, boolean sessions)
+	{
+		this.concurrency = concurrency;
+		this.sessions = sessions;
+		this.basePath = Path.ROOT;
+	}
+
+	/**
+	 * @return the number of directories in the tree, including the root
+	 */
+	static int countDirectories()
+	{
+		int count = 0;
+		for (int level = 0, directories = 1; level <= DEPTH; ++level, directories *= WIDTH)
+		{
+			count += directories;
+		}
+		return count;
+	}
+
+	ExtendedFileInfo[] list(IPath path)
+	{
+		int count = active.incrementAndGet();
+		synchronized (maxActive)
+		{
+			maxActive.set(Math.max(count, maxActive.get()));
+		}
+		try
+		{
+			Thread.sleep(LATENCY);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			active.decrementAndGet();
+		}
+		listings.incrementAndGet();
+		ExtendedFileInfo[] fileInfos = new ExtendedFileInfo[(path.segmentCount() < DEPTH) ? 2 * WIDTH : WIDTH];
+		for (int i = 0; i < fileInfos.length; ++i)
+		{
+			boolean directory = i >= WIDTH;
+			fileInfos[i] = new ExtendedFileInfo((directory ? "dir" : "file") + (i % WIDTH));
+			fileInfos[i].setExists(true);
+			fileInfos[i].setDirectory(directory);
+			fileInfos[i].setLength(directory ? 0 : i + 1);
+			if (directory)
+			{
+				fileInfos[i].setLastModified(directoriesModified);
+			}
+		}
+		return fileInfos;
+	}
+
+	public void connect(IProgressMonitor monitor) throws CoreException
+	{
+		connected = true;
+	}
+
+	public boolean isConnected()
+	{
+		return connected;
+	}
+
+	public void disconnect(IProgressMonitor monitor) throws CoreException
+	{
+		connected = false;
+	}
+
+	public URI getCanonicalURI(IPath path)
+	{
+		return URI.create("test:" + path.toPortableString());
+	}
+
+	@Override
+	protected int getListingConcurrency()
+	{
+		return concurrency;
+	}
+
+	@Override
+	protected IListingSession openListingSession(IProgressMonitor monitor) throws CoreException
+	{
+		if (!sessions)
+		{
+			return super.openListingSession(monitor);
+		}
+		openSessions.incrementAndGet();
+		return new IListingSession()
+		{
+			public ExtendedFileInfo[] fetchFiles(IPath path, int options, IProgressMonitor monitor)
+			{
+				return list(path);
+			}
+
+			public ExtendedFileInfo fetchFile(IPath path, int options, IProgressMonitor monitor)
+			{
+				return fetchDirectory(path);
+			}
+
+			public void close()
+			{
+				openSessions.decrementAndGet();
+			}
+		};
+	}
+
+	@Override
+	protected void testConnection(boolean force)
+	{
+	}
+
+	@Override
+	protected boolean canUseTemporaryFile(IPath path, ExtendedFileInfo fileInfo, IProgressMonitor monitor)
+	{
+		return false;
+	}
+
+	@Override
+	protected void changeCurrentDir(IPath path)
+	{
+	}
+
+	@Override
+	protected ExtendedFileInfo fetchFile(IPath path, int options, IProgressMonitor monitor)
+	{
+		mainConnectionFetches.incrementAndGet();
+		return fetchDirectory(path);
+	}
+
+	/**
+	 * Only fetched for the directories whose listings are persisted.
+	 */
+	private ExtendedFileInfo fetchDirectory(IPath path)
+	{
+		ExtendedFileInfo fileInfo = new ExtendedFileInfo((path.segmentCount() > 0) ? path.lastSegment()
+				: Path.ROOT.toPortableString());
+		fileInfo.setExists(true);
+		fileInfo.setDirectory(true);
+		fileInfo.setLastModified(directoriesModified);
+		return fileInfo;
+	}
+
+	@Override
+	protected ExtendedFileInfo[] fetchFiles(IPath path, int options, IProgressMonitor monitor)
+	{
+		return list(path);
+	}
+
+	@Override
+	protected String[] listDirectory(IPath path, IProgressMonitor monitor)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	protected InputStream readFile(IPath path, IProgressMonitor monitor)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	protected OutputStream writeFile(IPath path, boolean useTemporary, long permissions, IProgressMonitor monitor)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	protected void createFile(IPath path, IProgressMonitor monitor)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	protected void createDirectory(IPath path, IProgressMonitor monitor)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	protected void renameFile(IPath sourcePath, IPath destinationPath, IProgressMonitor monitor)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	protected void renameDirectory(IPath sourcePath, IPath destinationPath, IProgressMonitor monitor)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	protected void deleteFile(IPath path, IProgressMonitor monitor)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	protected void deleteDirectory(IPath path, IProgressMonitor monitor)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	protected void setModificationTime(IPath path, long modificationTime, IProgressMonitor monitor)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	protected void changeFilePermissions(IPath path, long permissions, IProgressMonitor monitor)
+	{
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	protected void changeFileGroup(IPath path, String group, IProgressMonitor monitor)
+	{
+		throw new UnsupportedOperationException();
+	}
+}
@@ -0,0 +1,154 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.core.io.vfs;
+
+import static org.junit.Assert.assertEquals;
+
+import static com.aptana.core.io.vfs.LatencyFileManager.WIDTH;
+import static com.aptana.core.io.vfs.LatencyFileManager.countDirectories;
+
+import java.net.URI;
+import java.util.Map;
+
+import org.eclipse.core.filesystem.EFS;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.aptana.ide.core.io.preferences.PreferenceUtils;
+
+/**
+ * Fetches the tree of a {@link LatencyFileManager} in one session, and again in the next one from the file infos the
+ * first one persisted.
+ */
+@SuppressWarnings("nls")
+public class PersistedFileInfosTest
+{
+
+	private static final String ROOT = "test://persisted";
+	private static final long RESOLUTION = 60000;
+	private static final long HOUR = 3600000;
+
+	/**
+	 * A file manager whose directories are modified at the given time, with a resolution of a minute like FTP.
+	 */
+	private static class PersistedFileManager extends LatencyFileManager
+	{
+		PersistedFileManager(long directoriesModified)
+		{
+			super(4);
+			this.directoriesModified = directoriesModified;
+		}
+
+		@Override
+		public URI getCanonicalURI(IPath path)
+		{
+			return URI.create(ROOT + path.makeAbsolute().toPortableString());
+		}
+
+		@Override
+		protected long getModificationTimeResolution()
+		{
+			return RESOLUTION;
+		}
+	}
+
+	private boolean persistent;
+
+	@Before
+	public void setUp()
+	{
+		persistent = PreferenceUtils.getPersistentFileInfoCache();
+		PreferenceUtils.setPersistentFileInfoCache(true);
+		clearPersistedFileInfos();
+	}
+
+	@After
+	public void tearDown()
+	{
+		clearPersistedFileInfos();
+		PreferenceUtils.setPersistentFileInfoCache(persistent);
+	}
+
+	private static void clearPersistedFileInfos()
+	{
+		PersistentFileInfoCache cache = PersistentFileInfoCache.load(URI.create(ROOT + "/"));
+		cache.invalidate(Path.ROOT);
+		cache.save();
+	}
+
+	private static void fetchTreeToPersist(long directoriesModified) throws CoreException
+	{
+		LatencyFileManager fileManager = new PersistedFileManager(directoriesModified);
+		fileManager.fetchTree(Path.ROOT, EFS.NONE, null, null);
+		assertEquals(countDirectories(), fileManager.listings.get());
+	}
+
+	@Test
+	public void testUnchangedTree() throws CoreException
+	{
+		long modified = System.currentTimeMillis() - HOUR;
+		fetchTreeToPersist(modified);
+
+		LatencyFileManager fileManager = new PersistedFileManager(modified);
+		Map<IPath, IExtendedFileInfo[]> tree = fileManager.fetchTree(Path.ROOT, EFS.NONE, null, null);
+
+		assertEquals(0, fileManager.listings.get());
+		// only the root is fetched with the main connection, the directories below with the listing sessions
+		assertEquals(1, fileManager.mainConnectionFetches.get());
+		assertEquals(countDirectories(), tree.size());
+		assertEquals(2 * WIDTH, tree.get(Path.ROOT).length);
+		assertEquals(WIDTH, tree.get(new Path("dir0/dir1/dir2")).length);
+	}
+
+	@Test
+	public void testUnchangedDirectory() throws CoreException
+	{
+		long modified = System.currentTimeMillis() - HOUR;
+		fetchTreeToPersist(modified);
+
+		LatencyFileManager fileManager = new PersistedFileManager(modified);
+		IExtendedFileInfo[] fileInfos = fileManager.childInfos(new Path("dir1/dir2"), EFS.NONE, null);
+
+		assertEquals(0, fileManager.listings.get());
+		assertEquals(2 * WIDTH, fileInfos.length);
+		assertEquals("file3", fileInfos[3].getName());
+		assertEquals(4, fileInfos[3].getLength());
+	}
+
+	@Test
+	public void testChangedTree() throws CoreException
+	{
+		long modified = System.currentTimeMillis() - HOUR;
+		fetchTreeToPersist(modified);
+
+		LatencyFileManager fileManager = new PersistedFileManager(modified + RESOLUTION);
+		fileManager.childInfos(Path.ROOT, EFS.NONE, null);
+		assertEquals(1, fileManager.listings.get());
+
+		Map<IPath, IExtendedFileInfo[]> tree = fileManager.fetchTree(Path.ROOT, EFS.NONE, null, null);
+		assertEquals(countDirectories(), fileManager.listings.get());
+		assertEquals(countDirectories(), tree.size());
+	}
+
+	@Test
+	public void testRecentlyModifiedTree() throws CoreException
+	{
+		// a change later in the same minute would leave the modification times as they are
+		long modified = System.currentTimeMillis() - RESOLUTION / 2;
+		fetchTreeToPersist(modified);
+
+		LatencyFileManager fileManager = new PersistedFileManager(modified);
+		fileManager.fetchTree(Path.ROOT, EFS.NONE, null, null);
+
+		assertEquals(countDirectories(), fileManager.listings.get());
+	}
+}
@@ -0,0 +1,112 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.core.io.vfs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.eclipse.core.filesystem.EFS;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+@SuppressWarnings("nls")
+public class PersistentFileInfoCacheTest
+{
+
+	private static final IPath DIR = Path.ROOT.append("dir");
+
+	private File file;
+
+	@Before
+	public void setUp() throws IOException
+	{
+		file = File.createTempFile("fileinfos", ".cache");
+		file.delete();
+	}
+
+	@After
+	public void tearDown()
+	{
+		file.delete();
+	}
+
+	private static ExtendedFileInfo directory(long lastModified)
+	{
+		ExtendedFileInfo fileInfo = new ExtendedFileInfo("dir");
+		fileInfo.setExists(true);
+		fileInfo.setDirectory(true);
+		fileInfo.setLastModified(lastModified);
+		fileInfo.setPermissions(0755);
+		return fileInfo;
+	}
+
+	private static ExtendedFileInfo file(String name, long length)
+	{
+		ExtendedFileInfo fileInfo = new ExtendedFileInfo(name);
+		fileInfo.setExists(true);
+		fileInfo.setLength(length);
+		fileInfo.setLastModified(1000);
+		fileInfo.setPermissions(0644);
+		fileInfo.setOwner("owner");
+		return fileInfo;
+	}
+
+	@Test
+	public void testSavedCacheIsReadBack()
+	{
+		PersistentFileInfoCache cache = new PersistentFileInfoCache(file);
+		ExtendedFileInfo link = file("link", 0);
+		link.setAttribute(EFS.ATTRIBUTE_SYMLINK, true);
+		link.setStringAttribute(EFS.ATTRIBUTE_LINK_TARGET, "target.txt");
+		cache.put(DIR, directory(5000), true, new ExtendedFileInfo[] { file("a.txt", 10), link });
+		cache.save();
+		assertTrue(file.isFile());
+
+		PersistentFileInfoCache.Directory directory = PersistentFileInfoCache.load(file).get(DIR);
+		assertNotNull(directory);
+		assertTrue(directory.detailed);
+		assertTrue(directory.matches(directory(5000)));
+		assertFalse(directory.matches(directory(6000)));
+
+		ExtendedFileInfo[] fileInfos = directory.getFileInfos();
+		assertEquals(2, fileInfos.length);
+		assertEquals("a.txt", fileInfos[0].getName());
+		assertEquals(10, fileInfos[0].getLength());
+		assertEquals(0644, fileInfos[0].getPermissions());
+		assertEquals("owner", fileInfos[0].getOwner());
+		assertNull(fileInfos[0].getGroup());
+		assertTrue(fileInfos[1].getAttribute(EFS.ATTRIBUTE_SYMLINK));
+		assertEquals("target.txt", fileInfos[1].getStringAttribute(EFS.ATTRIBUTE_LINK_TARGET));
+	}
+
+	@Test
+	public void testInvalidateForgetsParentAndSubtree()
+	{
+		PersistentFileInfoCache cache = new PersistentFileInfoCache(file);
+		ExtendedFileInfo[] fileInfos = new ExtendedFileInfo[] { file("a.txt", 10) };
+		cache.put(Path.ROOT, directory(1), false, fileInfos);
+		cache.put(DIR, directory(2), false, fileInfos);
+		cache.put(DIR.append("sub"), directory(3), false, fileInfos);
+		cache.put(Path.ROOT.append("other"), directory(4), false, fileInfos);
+
+		cache.invalidate(DIR);
+		assertNull(cache.get(Path.ROOT));
+		assertNull(cache.get(DIR));
+		assertNull(cache.get(DIR.append("sub")));
+		assertNotNull(cache.get(Path.ROOT.append("other")));
+	}
+}
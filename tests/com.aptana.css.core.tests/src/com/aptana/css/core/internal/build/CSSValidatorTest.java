@@ -112,11 +112,7 @@ public class CSSValidatorTest extends AbstractValidatorTestCase
 		String text = "@font-face {\nsrc: url(\"\");\n}";
 
 		List<IProblem> items = getParseErrors(text);
-		assertEquals(1, items.size());
-
-		// makes sure it's just a warning unrelated to the src
-		IProblem item = items.get(0);
-		assertEquals(IMarker.SEVERITY_WARNING, item.getSeverity().intValue());
+		assertEquals(0, items.size());
 	}
 
 	@Test
@@ -255,4 +251,61 @@ public class CSSValidatorTest extends AbstractValidatorTestCase
 		List<IProblem> items = getParseErrors(text);
 		assertEquals(0, items.size());
 	}
+
+	@Test
+	public void testUnknownProperty() throws CoreException
+	{
+		String text = "div {\ncolour: red;\n}";
+
+		List<IProblem> items = getParseErrors(text);
+		assertEquals(1, items.size());
+
+		IProblem item = items.get(0);
+		assertEquals(IMarker.SEVERITY_ERROR, item.getSeverity().intValue());
+		assertEquals("Property colour doesn't exist", item.getMessage());
+		assertEquals(2, item.getLineNumber());
+		assertEquals(text.indexOf("colour"), item.getOffset());
+		assertEquals("colour".length(), item.getLength());
+	}
+
+	@Test
+	public void testInvalidKeyword() throws CoreException
+	{
+		String text = "div {\ndisplay: blok;\nposition: relative;\nfloat: inherit;\n}";
+
+		List<IProblem> items = getParseErrors(text);
+		assertEquals(1, items.size());
+
+		IProblem item = items.get(0);
+		assertEquals(IMarker.SEVERITY_WARNING, item.getSeverity().intValue());
+		assertEquals("Value Error : display blok is not a display value", item.getMessage());
+		assertEquals(text.indexOf("blok"), item.getOffset());
+	}
+
+	@Test
+	public void testCSS3DisplayFlex() throws CoreException
+	{
+		String text = "div {\ndisplay: flex;\n}";
+
+		List<IProblem> items = getParseErrors(text);
+		assertEquals(0, items.size());
+	}
+
+	@Test
+	public void testRepeatedBlocksAreEachReported() throws CoreException
+	{
+		String text = "a {\ncolour: red;\n}\nb {\ncolour: red;\n}\n@media print {\ni {\ncolour: red;\n}\n}";
+
+		List<IProblem> items = getParseErrors(text);
+		assertEquals(3, items.size());
+
+		int[] lines = { 2, 5, 9 };
+		int offset = -1;
+		for (int i = 0; i < items.size(); i++)
+		{
+			offset = text.indexOf("colour", offset + 1);
+			assertEquals(offset, items.get(i).getOffset());
+			assertEquals(lines[i], items.get(i).getLineNumber());
+		}
+	}
 }
@@ -9,6 +9,7 @@ package com.aptana.editor.html.parsing;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import java.text.MessageFormat;
 import java.util.List;
@@ -388,6 +389,74 @@ public class HTMLParserTest
 		assertEquals(1, errors.size());
 		
 	}
+
+	@Test
+	public void testIdenticalEventHandlersGetTheirOwnNodes() throws Exception
+	{
+		String source = "<div onclick=\"go();\"></div><div onclick=\"go();\"></div>";
+		fParseState = new HTMLParseState(source);
+
+		IParseNode[] children = parse().getChildren();
+		assertEquals(2, children.length);
+		IParseNode[] first = ((HTMLElementNode) children[0]).getJSAttributeNodes();
+		IParseNode[] second = ((HTMLElementNode) children[1]).getJSAttributeNodes();
+		assertEquals(1, first.length);
+		assertEquals(1, second.length);
+		assertEquals(source.indexOf("go();"), first[0].getStartingOffset());
+		assertEquals(source.lastIndexOf("go();"), second[0].getStartingOffset());
+		assertTrue(first[0] != second[0]);
+		assertEquals(source.indexOf("go"), first[0].getChild(0).getStartingOffset());
+		assertEquals(source.lastIndexOf("go"), second[0].getChild(0).getStartingOffset());
+	}
+
+	@Test
+	public void testIdenticalStyleAttributesGetTheirOwnNodes() throws Exception
+	{
+		String source = "<p style=\"color:red\"></p><p style=\"color:red\"></p><p style=\"color:red\"></p>";
+		fParseState = new HTMLParseState(source);
+
+		IParseNode[] children = parse().getChildren();
+		assertEquals(3, children.length);
+		IParseNode first = ((HTMLElementNode) children[0]).getCSSStyleNodes()[0];
+		int offset = source.indexOf("color");
+		for (IParseNode child : children)
+		{
+			IParseNode[] declarations = ((HTMLElementNode) child).getCSSStyleNodes();
+			assertEquals(1, declarations.length);
+			// shifted by as much as the attribute
+			int shift = source.indexOf("color", offset) - source.indexOf("color");
+			assertEquals(first.getStartingOffset() + shift, declarations[0].getStartingOffset());
+			assertTrue(child == children[0] || declarations[0] != first);
+			offset = source.indexOf("color", offset) + 1;
+		}
+	}
+
+	@Test
+	public void testScriptErrorsKeepDocumentOrder() throws Exception
+	{
+		StringBuilder source = new StringBuilder();
+		String filler = "var a = 1;" + StringUtil.repeat(' ', 1024);
+		for (int i = 0; i < 4; i++)
+		{
+			source.append("<script>").append(filler).append("var x = function( {};</script></span>");
+		}
+		fParseState = new HTMLParseState(source.toString());
+		ParseResult result = fParser.parse(fParseState);
+
+		IParseNode[] children = result.getRootNode().getChildren();
+		assertEquals(4, children.length);
+		assertEquals(JSParseRootNode.class, children[0].getChild(0).getClass());
+		assertEquals(JSParseRootNode.class, children[3].getChild(0).getClass());
+
+		List<IParseError> errors = result.getErrors();
+		assertEquals(8, errors.size());
+		for (int i = 0; i < errors.size(); i += 2)
+		{
+			assertEquals(IJSConstants.CONTENT_TYPE_JS, errors.get(i).getLangauge());
+			assertEquals(IHTMLConstants.CONTENT_TYPE_HTML, errors.get(i + 1).getLangauge());
+			assertTrue(errors.get(i).getOffset() < errors.get(i + 1).getOffset());
+		}
+	}
 	
 	/**
 	 * This method is not being used for formal testing, but it's useful to determine how effective
@@ -12,6 +12,7 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Map;
 
 import org.eclipse.core.runtime.NullProgressMonitor;
@@ -186,6 +187,41 @@ public class JSFoldingComputerTest
 		assertFalse(annotations.keySet().iterator().next().isCollapsed());
 	}
 
+	@Test
+	public void testFoldingAfterEdits() throws Exception
+	{
+		String src = "/*\n * one\n */\nfunction a() {\n  return 1;\n}\n"
+				+ "var b = {\n  c: function () {\n    return 2;\n  }\n};\n"
+				+ "function d() {\n  if (b) {\n    a();\n  }\n}\n// two\nfunction e() {\n  d();\n}\n";
+		Document document = new Document(src);
+		folder = new JSFoldingComputer(null, document);
+		emitFoldingRegions(document, true);
+
+		// edits inside a node, adding lines, joining lines and removing a node, each checked against a new computer
+		String[][] edits = new String[][] { { "return 2;", "return 2 + 2;" }, { "  a();\n", "  a();\n  a();\n" },
+				{ "}\nvar b", "} var b" }, { "// two\n", "/*\n * two\n */\n" },
+				{ "function e() {\n  d();\n}\n", "" }, { "/*\n * one\n */\n", "" } };
+		for (String[] edit : edits)
+		{
+			src = src.replace(edit[0], edit[1]);
+			document.set(src);
+			Collection<Position> positions = emitFoldingRegions(document, false).values();
+
+			Document expectedDocument = new Document(src);
+			Collection<Position> expected = new JSFoldingComputer(null, expectedDocument).emitFoldingRegions(false,
+					new NullProgressMonitor(), parse(new ParseState(src))).values();
+			assertEquals(edit[1], new HashSet<Position>(expected), new HashSet<Position>(positions));
+			assertEquals(expected.size(), positions.size());
+		}
+	}
+
+	private Map<ProjectionAnnotation, Position> emitFoldingRegions(Document document, boolean initialReconcile)
+			throws Exception
+	{
+		return folder.emitFoldingRegions(initialReconcile, new NullProgressMonitor(),
+				parse(new ParseState(document.get())));
+	}
+
 	private ProjectionAnnotation getByPosition(Map<ProjectionAnnotation, Position> annotations, Position position)
 	{
 		for (Map.Entry<ProjectionAnnotation, Position> entry : annotations.entrySet())
@@ -12,8 +12,9 @@ import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
-@SuiteClasses({ GitExecutableTest.class, GitIndexRefreshJobTest.class, GitIndexTest.class, GitRefTest.class,
-		GitRevSpecifierTest.class, GitRepositoryTest.class })
+@SuiteClasses({ GitExecutableTest.class, GitIndexRefreshJobTest.class, GitIndexFileTest.class, GitIndexTest.class,
+		GitRefTest.class, GitRefsReaderTest.class, GitRevListTest.class, GitRevSpecifierTest.class,
+		GitRepositoryTest.class })
 public class CoreModelTests
 {
 }
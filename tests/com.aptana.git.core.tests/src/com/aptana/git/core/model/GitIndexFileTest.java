@@ -0,0 +1,150 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.git.core.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.runtime.IStatus;
+import org.junit.Test;
+
+import com.aptana.core.util.StringUtil;
+
+@SuppressWarnings("nls")
+public class GitIndexFileTest extends GitTestCase
+{
+	@Test
+	public void testReadMatchesLsFiles() throws Exception
+	{
+		GitRepository repo = createRepoWithFiles();
+		for (String version : new String[] { "2", "3", "4" })
+		{
+			IStatus result = repo.execute(GitRepository.ReadWrite.WRITE, "update-index", "--index-version", version);
+			assertTrue(result.getMessage(), result.isOK());
+
+			GitIndexFile indexFile = GitIndexFile.read(repo.indexFile());
+			assertEquals(Integer.parseInt(version), indexFile.getVersion());
+			assertEquals(lsFiles(repo), toLines(indexFile));
+		}
+	}
+
+	@Test
+	public void testStatData() throws Exception
+	{
+		GitRepository repo = createRepoWithFiles();
+		GitIndexFile indexFile = GitIndexFile.read(repo.indexFile());
+		GitIndexFile.Entry entry = indexFile.getEntries().get(0);
+		File file = repo.workingDirectory().append(entry.path).toFile();
+		assertTrue(entry.isStatClean(file, false));
+
+		writeFile(file, "something longer than before");
+		assertFalse(entry.isStatClean(file, false));
+
+		assertTrue(file.delete());
+		assertFalse(entry.isStatClean(file, false));
+	}
+
+	@Test
+	public void testRefreshReportsModifiedAndDeletedFiles() throws Exception
+	{
+		GitRepository repo = createRepoWithFiles();
+		GitIndex index = repo.index();
+		File modified = repo.workingDirectory().append("a.txt").toFile();
+		writeFile(modified, "changed");
+		assertTrue(repo.workingDirectory().append("dir/b.txt").toFile().delete());
+		assertRefresh(index);
+
+		List<ChangedFile> changed = index.changedFiles();
+		assertEquals(changed.toString(), 2, changed.size());
+		for (ChangedFile file : changed)
+		{
+			if ("a.txt".equals(file.getRelativePath().toPortableString()))
+			{
+				assertModifiedUnstagedFile(file);
+			}
+			else
+			{
+				assertEquals("dir/b.txt", file.getRelativePath().toPortableString());
+				assertDeletedUnstagedFile(file);
+			}
+		}
+	}
+
+	@Test
+	public void testNotAnIndex() throws Exception
+	{
+		try
+		{
+			GitIndexFile.parse("DIRX0000000000000000000000000000".getBytes(), 0);
+			fail("Expected an exception");
+		}
+		catch (IOException e)
+		{
+			// expected
+		}
+	}
+
+	private GitRepository createRepoWithFiles() throws Exception
+	{
+		GitRepository repo = getRepo();
+		writeFile(repo.workingDirectory().append("a.txt").toFile(), "a");
+		File dir = repo.workingDirectory().append("dir").toFile();
+		assertTrue(dir.mkdirs());
+		writeFile(new File(dir, "b.txt"), "b");
+		writeFile(new File(dir, "c.txt"), "c");
+		// so that git doesn't consider the entries racily clean and smudge them
+		long past = System.currentTimeMillis() - 10000;
+		repo.workingDirectory().append("a.txt").toFile().setLastModified(past);
+		new File(dir, "b.txt").setLastModified(past);
+		new File(dir, "c.txt").setLastModified(past);
+
+		GitIndex index = repo.index();
+		assertRefresh(index);
+		assertStageFiles(index, index.changedFiles());
+		assertCommit(index, "Initial commit");
+		return repo;
+	}
+
+	private List<String> lsFiles(GitRepository repo)
+	{
+		IStatus result = repo.execute(GitRepository.ReadWrite.READ, "ls-files", "-s");
+		assertTrue(result.getMessage(), result.isOK());
+		return StringUtil.tokenize(result.getMessage(), "\n");
+	}
+
+	private List<String> toLines(GitIndexFile indexFile)
+	{
+		List<String> lines = new ArrayList<String>();
+		for (GitIndexFile.Entry entry : indexFile.getEntries())
+		{
+			lines.add(entry.getModeString() + ' ' + entry.sha + ' ' + entry.stage + '\t' + entry.path);
+		}
+		return lines;
+	}
+
+	private void writeFile(File file, String contents) throws IOException
+	{
+		FileWriter writer = new FileWriter(file);
+		try
+		{
+			writer.write(contents);
+		}
+		finally
+		{
+			writer.close();
+		}
+	}
+}
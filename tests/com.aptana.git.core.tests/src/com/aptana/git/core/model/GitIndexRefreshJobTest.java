@@ -1,7 +1,12 @@
 package com.aptana.git.core.model;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
 
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -15,6 +20,9 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.aptana.core.util.CollectionsUtil;
+
+@SuppressWarnings("nls")
 public class GitIndexRefreshJobTest
 {
 
@@ -70,6 +78,50 @@ public class GitIndexRefreshJobTest
 		context.assertIsSatisfied();
 	}
 
+	@Test
+	public void testCoalesceDropsPathsInsideRequestedFolders() throws Exception
+	{
+		Collection<IPath> paths = new ArrayList<IPath>();
+		paths.add(Path.fromPortableString("src/a/b.js"));
+		paths.add(Path.fromPortableString("src/a"));
+		paths.add(Path.fromPortableString("src/c.js"));
+		paths.add(Path.fromPortableString("srcfile.js"));
+
+		List<IPath> coalesced = GitIndexRefreshJob.coalesce(paths);
+		assertEquals(3, coalesced.size());
+		assertTrue(coalesced.contains(Path.fromPortableString("src/a")));
+		assertTrue(coalesced.contains(Path.fromPortableString("src/c.js")));
+		assertTrue(coalesced.contains(Path.fromPortableString("srcfile.js")));
+	}
+
+	@Test
+	public void testCoalesceCollapsesToParentFolders() throws Exception
+	{
+		Collection<IPath> paths = new ArrayList<IPath>();
+		for (int i = 0; i < GitIndexRefreshJob.MAX_PATHS * 3; i++)
+		{
+			paths.add(Path.fromPortableString("node_modules/module" + i + "/index.js"));
+		}
+		paths.add(Path.fromPortableString("src/app.js"));
+
+		List<IPath> coalesced = GitIndexRefreshJob.coalesce(paths);
+		assertEquals(2, coalesced.size());
+		assertEquals(new HashSet<IPath>(coalesced), new HashSet<IPath>(CollectionsUtil.newList(
+				Path.fromPortableString("node_modules"), Path.fromPortableString("src"))));
+	}
+
+	@Test
+	public void testCoalesceKeepsTopLevelPaths() throws Exception
+	{
+		Collection<IPath> paths = new ArrayList<IPath>();
+		for (int i = 0; i < GitIndexRefreshJob.MAX_PATHS + 1; i++)
+		{
+			paths.add(Path.fromPortableString("file" + i + ".txt"));
+		}
+
+		assertEquals(GitIndexRefreshJob.MAX_PATHS + 1, GitIndexRefreshJob.coalesce(paths).size());
+	}
+
 	// TODO Uncomment when CGILIB doesn't f--k up here. It actually calls refresh on the real GitIndex class, which
 	// doesn't work, since we didn't actually set it up
 	// @Test
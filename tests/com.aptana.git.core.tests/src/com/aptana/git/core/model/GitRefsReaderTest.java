@@ -0,0 +1,106 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.git.core.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.runtime.IStatus;
+import org.junit.Test;
+
+import com.aptana.core.util.StringUtil;
+
+@SuppressWarnings("nls")
+public class GitRefsReaderTest extends GitTestCase
+{
+	@Test
+	public void testLooseAndPackedRefs() throws Exception
+	{
+		GitRepository repo = createRepoWithCommit();
+		git(repo, "tag", "light");
+		git(repo, "tag", "-a", "annotated", "-m", "annotated");
+		git(repo, "branch", "feature");
+		GitRefsReader reader = new GitRefsReader(repo.gitFile(""));
+		assertEquals(forEachRef(repo), reader.readRefs());
+
+		git(repo, "pack-refs", "--all");
+		assertEquals(forEachRef(repo), reader.readRefs());
+
+		// a loose ref overrides the packed one
+		git(repo, "tag", "-a", "-f", "annotated", "-m", "again");
+		assertEquals(forEachRef(repo), reader.readRefs());
+	}
+
+	@Test
+	public void testSymbolicRefs() throws Exception
+	{
+		GitRepository repo = createRepoWithCommit();
+		GitRefsReader reader = new GitRefsReader(repo.gitFile(""));
+		assertEquals(git(repo, "symbolic-ref", GitRepository.HEAD).trim(), reader.readSymbolicRef(GitRepository.HEAD));
+
+		String sha = git(repo, "rev-parse", "HEAD").trim();
+		File origin = repo.gitFile("refs/remotes/origin");
+		assertTrue(origin.mkdirs());
+		write(new File(origin, "master"), sha + "\n");
+		write(new File(origin, "HEAD"), "ref: refs/remotes/origin/master\n");
+		assertEquals(forEachRef(repo), reader.readRefs());
+		assertEquals("refs/remotes/origin/master", reader.readSymbolicRef("refs/remotes/origin/HEAD"));
+
+		git(repo, "checkout", "-q", "--detach");
+		assertNull(reader.readSymbolicRef(GitRepository.HEAD));
+	}
+
+	private GitRepository createRepoWithCommit() throws Exception
+	{
+		GitRepository repo = getRepo();
+		write(repo.workingDirectory().append("a.txt").toFile(), "a");
+		GitIndex index = repo.index();
+		assertRefresh(index);
+		assertStageFiles(index, index.changedFiles());
+		assertCommit(index, "Initial commit");
+		return repo;
+	}
+
+	private List<String> forEachRef(GitRepository repo)
+	{
+		String output = git(repo, "for-each-ref",
+				"--format=%(refname) %(objecttype) %(objectname) %(*objectname)", "refs");
+		List<String> lines = new ArrayList<String>();
+		for (String line : StringUtil.tokenize(output, "\n"))
+		{
+			lines.add(line.trim());
+		}
+		return lines;
+	}
+
+	private String git(GitRepository repo, String... args)
+	{
+		IStatus result = repo.execute(GitRepository.ReadWrite.WRITE, args);
+		assertTrue(result.getMessage(), result.isOK());
+		return result.getMessage();
+	}
+
+	private void write(File file, String contents) throws Exception
+	{
+		FileWriter writer = new FileWriter(file);
+		try
+		{
+			writer.write(contents);
+		}
+		finally
+		{
+			writer.close();
+		}
+	}
+}
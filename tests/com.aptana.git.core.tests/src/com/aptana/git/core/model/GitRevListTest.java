@@ -0,0 +1,141 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.git.core.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.FileWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.junit.Test;
+
+@SuppressWarnings("nls")
+public class GitRevListTest extends GitTestCase
+{
+	@Test
+	public void testWalkInBatches() throws Exception
+	{
+		GitRepository repo = createRepoWithCommits(5);
+		final List<Integer> sizes = new ArrayList<Integer>();
+		final List<GitCommit> all = new ArrayList<GitCommit>();
+		IStatus status = new GitRevList(repo).walkRevisionListWithSpecifier(null, GitRevList.NO_LIMIT, 2,
+				new IGitRevListListener()
+				{
+					public boolean commitsLoaded(List<GitCommit> commits)
+					{
+						sizes.add(commits.size());
+						all.addAll(commits);
+						return true;
+					}
+				}, new NullProgressMonitor());
+		assertTrue(status.getMessage(), status.isOK());
+		assertEquals("[2, 2, 1]", sizes.toString());
+
+		// newest first, with the details loaded on demand
+		for (int i = 0; i < 5; i++)
+		{
+			GitCommit commit = all.get(i);
+			assertEquals("Commit " + (4 - i), commit.getSubject());
+			assertEquals("Commit " + (4 - i) + "\n\nBody\n", commit.getComment());
+			assertEquals(i < 4 ? 1 : 0, commit.parentCount());
+			if (i < 4)
+			{
+				assertEquals(all.get(i + 1).sha(), commit.parents().get(0));
+			}
+		}
+	}
+
+	@Test
+	public void testStopWalk() throws Exception
+	{
+		GitRepository repo = createRepoWithCommits(5);
+		final List<GitCommit> all = new ArrayList<GitCommit>();
+		IStatus status = new GitRevList(repo).walkRevisionListWithSpecifier(null, GitRevList.NO_LIMIT, 2,
+				new IGitRevListListener()
+				{
+					public boolean commitsLoaded(List<GitCommit> commits)
+					{
+						all.addAll(commits);
+						return false;
+					}
+				}, new NullProgressMonitor());
+		assertTrue(status.getMessage(), status.isOK());
+		assertEquals(2, all.size());
+		assertEquals("Commit 3", all.get(1).getSubject());
+	}
+
+	@Test
+	public void testLimit() throws Exception
+	{
+		GitRepository repo = createRepoWithCommits(3);
+		GitRevList list = new GitRevList(repo);
+		IStatus status = list.walkRevisionListWithSpecifier(null, 2, new NullProgressMonitor());
+		assertTrue(status.getMessage(), status.isOK());
+		assertEquals(2, list.getCommits().size());
+		assertEquals("Commit 2", list.getCommits().get(0).getSubject());
+	}
+
+	@Test
+	public void testWalkInWindows() throws Exception
+	{
+		GitRepository repo = createRepoWithCommits(5);
+		final List<GitCommit> all = new ArrayList<GitCommit>();
+		IGitRevListListener listener = new IGitRevListListener()
+		{
+			public boolean commitsLoaded(List<GitCommit> commits)
+			{
+				all.addAll(commits);
+				return true;
+			}
+		};
+		GitRevList list = new GitRevList(repo);
+		for (int skip = 0; skip < 5; skip += 2)
+		{
+			IStatus status = list.walkRevisionListWithSpecifier(null, skip, 2, 10, listener,
+					new NullProgressMonitor());
+			assertTrue(status.getMessage(), status.isOK());
+			assertEquals(Math.min(skip + 2, 5), all.size());
+		}
+
+		for (GitCommit commit : all)
+		{
+			assertFalse(commit.hasDetails());
+		}
+		// loads the window of the first commit only
+		all.get(0).loadDetails();
+		assertTrue(all.get(1).hasDetails());
+		assertFalse(all.get(2).hasDetails());
+		for (int i = 0; i < 5; i++)
+		{
+			all.get(i).loadDetails();
+			assertTrue(all.get(i).hasDetails());
+			assertEquals("Commit " + (4 - i), all.get(i).getSubject());
+		}
+	}
+
+	private GitRepository createRepoWithCommits(int count) throws Exception
+	{
+		GitRepository repo = getRepo();
+		GitIndex index = repo.index();
+		for (int i = 0; i < count; i++)
+		{
+			FileWriter writer = new FileWriter(repo.workingDirectory().append("file.txt").toOSString());
+			writer.write("Version " + i);
+			writer.close();
+			assertRefresh(index);
+			assertStageFiles(index, index.changedFiles());
+			assertCommit(index, "Commit " + i + "\n\nBody\n");
+		}
+		return repo;
+	}
+}
@@ -0,0 +1,107 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.index.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+@SuppressWarnings("nls")
+public class IndexRecordTest
+{
+	private static final String DELIMITER = "\0";
+
+	@Test
+	public void testKeyColumnsComeFirst()
+	{
+		String word = new IndexRecord.Writer(DELIMITER, "Ti.UI", "createWindow").addString("{}").toString();
+
+		assertTrue(word.startsWith("Ti.UI\0createWindow\0"));
+		IndexRecord record = new IndexRecord(word, DELIMITER, 2);
+		assertEquals("Ti.UI", record.getKeyColumn(0));
+		assertEquals("createWindow", record.getKeyColumn(1));
+		assertNull(record.getKeyColumn(2));
+		assertEquals("{}", record.getString(0));
+	}
+
+	@Test
+	public void testTypedFields()
+	{
+		// @formatter:off
+		String word = new IndexRecord.Writer(DELIMITER, "Window")
+			.addStringList(Arrays.asList("Global", "EventTarget"))
+			.addString("The window, with a \0 and a , in it")
+			.addBoolean(true)
+			.addBoolean(false)
+			.addString(null)
+			.addStringList(Collections.<String> emptyList())
+			.addString("")
+			.toString();
+		// @formatter:on
+
+		IndexRecord record = new IndexRecord(word, DELIMITER, 1);
+		assertEquals("Window", record.getKeyColumn(0));
+		assertEquals(Arrays.asList("Global", "EventTarget"), record.getStringList(0));
+		assertEquals("The window, with a \0 and a , in it", record.getString(1));
+		assertTrue(record.getBoolean(2));
+		assertFalse(record.getBoolean(3));
+		assertNull(record.getString(4));
+		assertTrue(record.getStringList(5).isEmpty());
+		assertEquals("", record.getString(6));
+
+		// past the last field
+		assertNull(record.getString(7));
+		assertFalse(record.getBoolean(7));
+		assertTrue(record.getStringList(7).isEmpty());
+	}
+
+	@Test
+	public void testFieldsReadOutOfOrder()
+	{
+		String word = new IndexRecord.Writer(DELIMITER, "key").addString("a").addString("b").addString("c").toString();
+		IndexRecord record = new IndexRecord(word, DELIMITER, 1);
+
+		assertEquals("c", record.getString(2));
+		assertEquals("a", record.getString(0));
+		assertEquals("b", record.getString(1));
+	}
+
+	@Test
+	public void testLongString()
+	{
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < 60000; i++)
+		{
+			builder.append((char) ('a' + (i % 26)));
+		}
+		String value = builder.toString();
+
+		String word = new IndexRecord.Writer(DELIMITER, "key").addString(value).addBoolean(true).toString();
+		IndexRecord record = new IndexRecord(word, DELIMITER, 1);
+
+		assertEquals(value, record.getString(0));
+		assertTrue(record.getBoolean(1));
+	}
+
+	@Test
+	public void testWordWhichIsNotARecord()
+	{
+		IndexRecord record = new IndexRecord("Type\0Object\0description\0" + "0", DELIMITER, 1);
+
+		assertEquals("Type", record.getKeyColumn(0));
+		assertNull(record.getString(0));
+		assertTrue(record.getStringList(0).isEmpty());
+		assertFalse(record.getBoolean(3));
+	}
+}
@@ -12,6 +12,8 @@ import java.net.URI;
 import java.util.ConcurrentModificationException;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.After;
 import org.junit.Test;
@@ -275,4 +277,62 @@ public class IndexTest
 		assertEntryAdded();
 	}
 
+	@Test
+	public void testAddEntryAfterSave() throws Exception
+	{
+		testSave();
+		index.addEntry("category", "key2", new URI("relative_path.rb"));
+
+		List<QueryResult> result = index.query(new String[] { "category" }, "key*", SearchPattern.PATTERN_MATCH
+				| SearchPattern.CASE_SENSITIVE);
+		assertNotNull(result);
+		assertEquals(2, result.size());
+
+		index.save();
+		result = index.query(new String[] { "category" }, "key*", SearchPattern.PATTERN_MATCH
+				| SearchPattern.CASE_SENSITIVE);
+		assertNotNull(result);
+		assertEquals(2, result.size());
+	}
+
+	@Test
+	public void testQueryDoesNotWaitForWriter() throws Exception
+	{
+		testAddEntry();
+
+		final CountDownLatch locked = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(1);
+		Thread writer = new Thread()
+		{
+			public void run()
+			{
+				index.monitor.writeLock().lock();
+				try
+				{
+					locked.countDown();
+					done.await();
+				}
+				catch (InterruptedException e)
+				{
+					// ignore
+				}
+				finally
+				{
+					index.monitor.writeLock().unlock();
+				}
+			}
+		};
+		writer.start();
+		try
+		{
+			assertTrue(locked.await(5, TimeUnit.SECONDS));
+			assertEntryAdded();
+		}
+		finally
+		{
+			done.countDown();
+			writer.join();
+		}
+	}
+
 }
@@ -12,6 +12,7 @@ import static org.junit.Assert.*;
 import junit.framework.TestCase;
 
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.content.IContentType;
 
 import beaver.Symbol;
 
@@ -84,4 +85,62 @@ public class BuildContextTest
 		assertEquals(parseRootNode, ast);
 		assertEquals(2, reparses[0]);
 	}
+
+	@Test
+	public void testParsesOnceForAllParticipants() throws Exception
+	{
+		final int[] parses = new int[] { 0 };
+		BuildContext buildContext = new BuildContext(null)
+		{
+			@Override
+			public String getContentType() throws CoreException
+			{
+				return "test";
+			}
+
+			@Override
+			protected ParseResult parse(String contentType, IParseState parseState, WorkingParseResult working)
+					throws Exception
+			{
+				parses[0] += 1;
+				working.setParseResult(new ParseRootNode(new Symbol[0], 0, 0));
+				return working.getImmutableResult();
+			}
+
+			@Override
+			public synchronized String getContents()
+			{
+				return "var x = 1;";
+			}
+		};
+
+		IParseRootNode ast = buildContext.getAST();
+		assertSame(ast, buildContext.getAST());
+		assertSame(ast, buildContext.getAST(new ParseState(buildContext.getContents())).getRootNode());
+		assertEquals(1, parses[0]);
+		assertEquals(1, buildContext.getParseCount());
+
+		buildContext.resetAST();
+		buildContext.getAST();
+		assertEquals(2, buildContext.getParseCount());
+	}
+
+	@Test
+	public void testContentTypeIsResolvedOnce() throws Exception
+	{
+		final int[] lookups = new int[] { 0 };
+		BuildContext buildContext = new BuildContext(null)
+		{
+			@Override
+			protected IContentType[] getContentTypes() throws CoreException
+			{
+				lookups[0] += 1;
+				return NO_CONTENT_TYPES;
+			}
+		};
+
+		assertNull(buildContext.getContentType());
+		assertNull(buildContext.getContentType());
+		assertEquals(1, lookups[0]);
+	}
 }
@@ -7,19 +7,26 @@
  */
 package com.aptana.internal.index.core;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.util.Map;
 
 import org.eclipse.core.runtime.FileLocator;
 import org.eclipse.core.runtime.Path;
 import org.eclipse.core.runtime.Platform;
 import org.junit.Test;
 
+import com.aptana.core.util.IOUtil;
 import com.aptana.core.util.ResourceUtil;
+import com.aptana.index.core.QueryResult;
+import com.aptana.index.core.SearchPattern;
 
 @SuppressWarnings("nls")
 public class DiskIndexTest
@@ -47,4 +54,81 @@ public class DiskIndexTest
 			fail("Expected an IOException, so that we'd catch it up the stack and clean up the index. Instead we got a NegativeArraySizeException!");
 		}
 	}
+
+	@Test
+	public void testMigratesLegacyFormat() throws Exception
+	{
+		URL url = FileLocator.find(Platform.getBundle("com.aptana.index.core.tests"),
+				Path.fromPortableString("files/legacy_v01.index"), null);
+		File file = File.createTempFile("legacy", ".index");
+		file.deleteOnExit();
+		IOUtil.copyFile(ResourceUtil.resourcePathToFile(url), file);
+
+		DiskIndex index = new DiskIndex(file.getAbsolutePath());
+		index.initialize(true);
+
+		assertEquals(300, index.getDocuments().size());
+		assertEquals(3, index.getCategories().size());
+
+		Map<String, QueryResult> results = index.addQueryResults(new String[] { "type" }, "Array",
+				SearchPattern.EXACT_MATCH | SearchPattern.CASE_SENSITIVE, null);
+		assertEquals(300, results.get("Array").getDocuments().size());
+
+		results = index.addQueryResults(new String[] { "function" }, "foo",
+				SearchPattern.PREFIX_MATCH | SearchPattern.CASE_SENSITIVE, null);
+		assertEquals(10, results.size());
+		assertEquals(30, results.get("foo3").getDocuments().size());
+
+		// the file has been rewritten, so it can be opened again without migrating
+		index = new DiskIndex(file.getAbsolutePath());
+		index.initialize(true);
+		assertEquals(300, index.getDocuments().size());
+	}
+
+	@Test
+	public void testExactAndPrefixQueriesAcrossBlocks() throws Exception
+	{
+		File file = File.createTempFile("blocks", ".index");
+		file.deleteOnExit();
+
+		DiskIndex index = new DiskIndex(file.getAbsolutePath());
+		index.initialize(false);
+
+		MemoryIndex memoryIndex = new MemoryIndex();
+		for (int i = 0; i < 200; i++)
+		{
+			memoryIndex.addEntry("category", "word" + i, "doc" + (i % 7) + ".js");
+		}
+		index = index.mergeWith(memoryIndex);
+
+		int exact = SearchPattern.EXACT_MATCH | SearchPattern.CASE_SENSITIVE;
+		for (int i = 0; i < 200; i++)
+		{
+			Map<String, QueryResult> results = index.addQueryResults(new String[] { "category" }, "word" + i, exact,
+					null);
+			assertEquals(1, results.size());
+			assertTrue(results.get("word" + i).getDocuments().contains("doc" + (i % 7) + ".js"));
+		}
+		assertNull(index.addQueryResults(new String[] { "category" }, "word", exact, null));
+		assertNull(index.addQueryResults(new String[] { "category" }, "word1000", exact, null));
+		assertNull(index.addQueryResults(new String[] { "unknown" }, "word1", exact, null));
+
+		Map<String, QueryResult> results = index.addQueryResults(new String[] { "category" }, "word1",
+				SearchPattern.PREFIX_MATCH | SearchPattern.CASE_SENSITIVE, null);
+		// word1, word10-19, word100-199
+		assertEquals(111, results.size());
+
+		results = index.addQueryResults(new String[] { "category" }, "WORD19", SearchPattern.PREFIX_MATCH, null);
+		// word19, word190-199
+		assertEquals(11, results.size());
+
+		// remove a document and make sure its words are gone after merging
+		memoryIndex = new MemoryIndex();
+		memoryIndex.remove("doc0.js");
+		index = index.mergeWith(memoryIndex);
+
+		assertNull(index.addQueryResults(new String[] { "category" }, "word0", exact, null));
+		assertFalse(index.getDocuments().contains("doc0.js"));
+		assertEquals(6, index.getDocuments().size());
+	}
 }
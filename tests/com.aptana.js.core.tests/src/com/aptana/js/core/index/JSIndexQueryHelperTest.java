@@ -1,8 +1,11 @@
 package com.aptana.js.core.index;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import org.eclipse.core.runtime.jobs.Job;
@@ -14,10 +17,12 @@ import com.aptana.index.core.Index;
 import com.aptana.index.core.IndexManager;
 import com.aptana.index.core.IndexPlugin;
 import com.aptana.js.core.model.TypeElement;
+import com.aptana.js.internal.core.index.JSIndexReader;
 import com.aptana.js.internal.core.index.JSIndexWriter;
 import com.aptana.js.internal.core.index.JSMetadataLoader;
 import com.aptana.testing.utils.TestProject;
 
+@SuppressWarnings("nls")
 public class JSIndexQueryHelperTest
 {
 
@@ -74,4 +79,71 @@ public class JSIndexQueryHelperTest
 		assertTrue("ancestors contains Object", ancestors.contains("Object"));
 	}
 
+	@Test
+	public void testParallelQueryMatchesSequentialQuery() throws Exception
+	{
+		TypeElement type = new TypeElement();
+		type.setName("Array");
+		type.addParentType("MadeUpParent");
+
+		JSIndexWriter writer = new JSIndexWriter();
+		writer.writeType(index, type);
+
+		Job job = new JSMetadataLoader()
+		{
+			protected void postRebuild()
+			{
+				// do nothing
+			}
+		};
+		job.schedule();
+		job.join();
+
+		// the indices the helper queries for a project without build paths, in order
+		JSIndexReader reader = new JSIndexReader();
+		List<TypeElement> expected = new ArrayList<TypeElement>();
+		expected.addAll(reader.getType(index, "Array", false));
+		expected.addAll(reader.getType(JSIndexQueryHelper.getJSCoreIndex(), "Array", false));
+		assertEquals("types found", 2, expected.size());
+
+		for (int i = 0; i < 20; i++)
+		{
+			assertEquals(describe(expected), describe(helper.getTypes("Array", false)));
+		}
+	}
+
+	@Test
+	public void testGetTypeAncestorNamesAfterIndexChanged() throws Exception
+	{
+		TypeElement type = new TypeElement();
+		type.setName("MadeUpType");
+		type.addParentType("FirstParent");
+
+		JSIndexWriter writer = new JSIndexWriter();
+		writer.writeType(index, type);
+
+		List<String> ancestors = helper.getTypeAncestorNames(type.getName());
+		assertTrue("ancestors contains FirstParent", ancestors.contains("FirstParent"));
+		assertFalse("ancestors contains SecondParent", ancestors.contains("SecondParent"));
+
+		long generation = index.getGeneration();
+		type = new TypeElement();
+		type.setName("MadeUpType");
+		type.addParentType("SecondParent");
+		writer.writeType(index, type);
+		assertFalse("generation changed", generation == index.getGeneration());
+
+		ancestors = helper.getTypeAncestorNames(type.getName());
+		assertTrue("ancestors contains SecondParent", ancestors.contains("SecondParent"));
+	}
+
+	private static List<String> describe(Collection<TypeElement> types)
+	{
+		List<String> result = new ArrayList<String>();
+		for (TypeElement type : types)
+		{
+			result.add(type.getName() + " : " + type.getParentTypes());
+		}
+		return result;
+	}
 }
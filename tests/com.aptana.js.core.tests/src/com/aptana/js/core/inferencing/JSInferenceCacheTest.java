@@ -0,0 +1,87 @@
+package com.aptana.js.core.inferencing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.aptana.core.util.CollectionsUtil;
+import com.aptana.js.core.parsing.GraalJSParser;
+import com.aptana.js.core.parsing.ast.JSNode;
+import com.aptana.js.core.parsing.ast.JSParseRootNode;
+import com.aptana.parsing.ParseState;
+
+@SuppressWarnings("nls")
+public class JSInferenceCacheTest
+{
+	private JSParseRootNode root;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		root = (JSParseRootNode) new GraalJSParser().parse(new ParseState("var a = 1;\nfunction f() { var b = a; }"))
+				.getRootNode();
+	}
+
+	@Test
+	public void testSameGenerationReusesCache() throws Exception
+	{
+		JSInferenceCache cache = root.getInferenceCache(1);
+		assertSame(cache, root.getInferenceCache(1));
+		assertSame(cache.getGlobals(), root.getInferenceCache(1).getGlobals());
+	}
+
+	@Test
+	public void testNewGenerationDropsCache() throws Exception
+	{
+		JSInferenceCache cache = root.getInferenceCache(1);
+		JSNode node = (JSNode) root.getFirstChild();
+		cache.putTypes(node, cache.getGlobals(), CollectionsUtil.newList("Number"));
+
+		JSInferenceCache newCache = root.getInferenceCache(2);
+		assertNotSame(cache, newCache);
+		assertNull(newCache.getTypes(node, newCache.getGlobals()));
+	}
+
+	@Test
+	public void testTypesAreKeyedByScope() throws Exception
+	{
+		JSInferenceCache cache = root.getInferenceCache(1);
+		JSNode node = (JSNode) root.getFirstChild();
+		JSScope globals = cache.getGlobals();
+		cache.putTypes(node, globals, CollectionsUtil.newList("Number"));
+
+		assertEquals(CollectionsUtil.newList("Number"), cache.getTypes(node, globals));
+		assertNull(cache.getTypes(node, new JSScope()));
+		assertNull(cache.getTypes((JSNode) root.getLastChild(), globals));
+	}
+
+	@Test
+	public void testScopeAtOffset() throws Exception
+	{
+		JSInferenceCache cache = root.getInferenceCache(1);
+		JSScope functionScope = cache.getScopeAtOffset(root.getLastChild().getEndingOffset() - 2);
+		assertNotSame(cache.getGlobals(), functionScope);
+		assertTrue(functionScope.hasLocalSymbol("b"));
+		assertSame(cache.getGlobals(), cache.getScopeAtOffset(0));
+	}
+
+	@Test
+	public void testModuleTypes() throws Exception
+	{
+		JSInferenceCache cache = root.getInferenceCache(1);
+		assertFalse(cache.hasModuleType("missing"));
+
+		cache.putModuleType("missing", null);
+		cache.putModuleType("found", "found.exports");
+
+		assertTrue(cache.hasModuleType("missing"));
+		assertNull(cache.getModuleType("missing"));
+		assertEquals("found.exports", cache.getModuleType("found"));
+	}
+}
@@ -5,7 +5,8 @@ import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
-@SuiteClasses({ JSFlexScannerTest.class, GraalJSParserTest.class, SDocNodeAttachmentTest.class, })
+@SuiteClasses({ JSFlexScannerTest.class, GraalJSParserTest.class, GraalJSParserTwoTreeTest.class,
+		GraalJSParserIncrementalTest.class, JSParseResultCodecTest.class, SDocNodeAttachmentTest.class, })
 public class CoreParsingTests
 {
 }
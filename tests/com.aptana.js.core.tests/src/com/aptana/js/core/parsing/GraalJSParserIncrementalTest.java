@@ -0,0 +1,266 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.js.core.parsing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.aptana.parsing.ParseResult;
+import com.aptana.parsing.ParseState;
+import com.aptana.parsing.ast.IParseNode;
+import com.aptana.parsing.ast.IParseRootNode;
+
+@SuppressWarnings("nls")
+public class GraalJSParserIncrementalTest
+{
+	private static final String SOURCE = "var a = 1;\nfunction f() {\n  return a;\n}\n// one\nvar b = 2;\n/* two */\nb++;\nif (a) {\n  b--;\n}\nvar c = 3;\n";
+
+	private GraalJSParser parser;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		parser = new GraalJSParser();
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		parser = null;
+	}
+
+	@Test
+	public void testInsertStatement() throws Exception
+	{
+		assertReparse(SOURCE, SOURCE.indexOf("var b"), 0, "var x = f();\n");
+	}
+
+	@Test
+	public void testDeleteStatement() throws Exception
+	{
+		assertReparse(SOURCE, SOURCE.indexOf("b++;"), "b++;\n".length(), "");
+	}
+
+	@Test
+	public void testEditInsideFunction() throws Exception
+	{
+		assertReparse(SOURCE, SOURCE.indexOf("return a") + 7, 1, "a + b");
+	}
+
+	@Test
+	public void testEditLastStatement() throws Exception
+	{
+		assertReparse(SOURCE, SOURCE.indexOf("3;"), 1, "42");
+	}
+
+	@Test
+	public void testEditComments() throws Exception
+	{
+		assertReparse(SOURCE, SOURCE.indexOf("two"), 3, "three");
+		assertReparse(SOURCE, SOURCE.indexOf("b++"), 0, "// new\n");
+		assertReparse(SOURCE, SOURCE.indexOf("// one"), "// one\n".length(), "");
+	}
+
+	@Test
+	public void testStatementsWithoutSemicolons() throws Exception
+	{
+		String source = "var z = 0;\nvar a = 1\nvar b = a\nfoo()\nbar();\nbaz();\nqux();\n";
+		// the call now continues the previous line
+		assertReparse(source, source.indexOf("foo"), 3, "(b)");
+		assertReparse(source, source.indexOf("bar"), 0, "x\n");
+	}
+
+	@Test
+	public void testJoinStatements() throws Exception
+	{
+		String source = "var a = 1;\nvar b = 2;\nb = a;\n(function () {})();\nvar c = 3;\n";
+		// removing the semicolon makes "a" get called
+		assertReparse(source, source.indexOf("a;\n("), 2, "a\n");
+	}
+
+	@Test
+	public void testSameSourceAfterPreviousEdit() throws Exception
+	{
+		ParseResult previous = parse(SOURCE);
+		String source = SOURCE.replace("var c = 3;", "var c = 4;");
+		int offset = SOURCE.indexOf("3;");
+		ParseResult result = parser.reparse(new ParseState(source), previous, offset, 1, 1);
+		assertNotNull(result);
+
+		// and again, reusing the result
+		String source2 = source.replace("var a = 1;", "var a = 0;");
+		ParseResult result2 = parser.reparse(new ParseState(source2), result, source.indexOf("1;"), 1, 1);
+		assertNotNull(result2);
+		assertSameAST(parse(source2), result2);
+	}
+
+	@Test
+	public void testReusesPreviousNodes() throws Exception
+	{
+		ParseResult previous = parse(SOURCE);
+		IParseNode[] statements = previous.getRootNode().getChildren();
+		int end = statements[5].getEndingOffset();
+
+		int offset = SOURCE.indexOf("b++");
+		String source = SOURCE.substring(0, offset) + "var x = f();\n" + SOURCE.substring(offset);
+		ParseResult result = parser.reparse(new ParseState(source), previous, offset, 0, 13);
+		assertNotNull(result);
+		assertSameAST(parse(source), result);
+
+		// the statements around the region are moved over, the ones after it shifted in place
+		IParseNode[] children = result.getRootNode().getChildren();
+		assertSame(statements[0], children[0]);
+		assertSame(statements[1], children[1]);
+		assertSame(statements[5], children[children.length - 1]);
+		assertEquals(end + 13, statements[5].getEndingOffset());
+	}
+
+	@Test
+	public void testEditInsideIIFE() throws Exception
+	{
+		String source = "(function () {\n  var a = 1;\n  function f() {\n    return a;\n  }\n  a++;\n})();\n";
+		assertReparse(source, source.indexOf("a++"), 0, "f();\n  ");
+		assertReparse(source, source.indexOf("return a") + 7, 1, "a + 1");
+		assertReparse(source, source.indexOf("a++"), "a++;".length(), "");
+	}
+
+	@Test
+	public void testEditInsideUMD() throws Exception
+	{
+		String source = "(function (root, factory) {\n  if (typeof define === 'function') {\n    define([], factory);\n"
+				+ "  } else {\n    root.lib = factory();\n  }\n}(this, function () {\n  var x = 1;\n"
+				+ "  return { x: x };\n}));\n";
+		assertReparse(source, source.indexOf("1;"), 1, "2");
+		assertReparse(source, source.indexOf("return"), 0, "x++;\n  ");
+	}
+
+	@Test
+	public void testEditInsideGenerator() throws Exception
+	{
+		String source = "function* g() {\n  yield 1;\n  yield 2;\n}\nvar a = 1;\n";
+		assertReparse(source, source.indexOf("2;"), 1, "a");
+	}
+
+	@Test
+	public void testEditEmptyBody() throws Exception
+	{
+		String source = "(function () {\n})();\n";
+		assertReparse(source, source.indexOf('}'), 0, "  var a = 1;\n");
+
+		String source2 = "var a = 1;\nfunction f() {\n  return a;\n}\n";
+		assertReparse(source2, source2.indexOf("return"), "return a;".length(), "");
+	}
+
+	@Test
+	public void testStartingOffset() throws Exception
+	{
+		ParseResult previous = parser.parse(new ParseState(SOURCE, 100));
+		int offset = SOURCE.indexOf("var b");
+		String source = SOURCE.substring(0, offset) + "var x = f();\n" + SOURCE.substring(offset);
+		ParseResult result = parser.reparse(new ParseState(source, 100), previous, offset, 0, 13);
+		assertNotNull(result);
+		assertSameAST(parser.parse(new ParseState(source, 100)), result);
+	}
+
+	@Test
+	public void testRegionWithErrors() throws Exception
+	{
+		ParseResult previous = parse(SOURCE);
+		String source = SOURCE.replace("b++;", "b++ +;");
+		assertNull(parser.reparse(new ParseState(source), previous, SOURCE.indexOf("b++") + 3, 0, 2));
+		// the previous result is untouched
+		assertSameAST(parse(SOURCE), previous);
+	}
+
+	@Test
+	public void testUseStrict() throws Exception
+	{
+		String source = "'use strict';\nvar a = 1;\nvar b = 2;\nvar c = 3;\n";
+		assertReparse(source, source.indexOf("var c"), 0, "var d;\n");
+
+		// the region is parsed in strict mode too
+		ParseResult previous = parse(source);
+		int offset = source.indexOf("var c");
+		String newSource = source.substring(0, offset) + "with (a) {}\n" + source.substring(offset);
+		assertNull(parser.reparse(new ParseState(newSource), previous, offset, 0, 12));
+
+		String iife = "(function () {\n  'use strict';\n  var a = 1;\n  var b = 2;\n})();\n";
+		previous = parse(iife);
+		offset = iife.indexOf("var b");
+		newSource = iife.substring(0, offset) + "with (a) {}\n" + iife.substring(offset);
+		assertNull(parser.reparse(new ParseState(newSource), previous, offset, 0, 12));
+	}
+
+	@Test
+	public void testPreviousWithErrors() throws Exception
+	{
+		String source = "var a = 1;\nvar b = +;\nvar c = 3;\n";
+		ParseResult previous = parse(source);
+		assertTrue(!previous.getErrors().isEmpty());
+		String newSource = source.replace("3", "4");
+		assertNull(parser.reparse(new ParseState(newSource), previous, source.indexOf('3'), 1, 1));
+	}
+
+	private ParseResult parse(String source) throws Exception
+	{
+		return parser.parse(new ParseState(source));
+	}
+
+	private void assertReparse(String source, int offset, int removedLength, String inserted) throws Exception
+	{
+		String newSource = source.substring(0, offset) + inserted + source.substring(offset + removedLength);
+		ParseResult expected = parse(newSource);
+		assertTrue(expected.getErrors().isEmpty());
+
+		ParseResult result = parser.reparse(new ParseState(newSource), parse(source), offset, removedLength,
+				inserted.length());
+		assertNotNull("Expected the edit to be reparsed incrementally", result);
+		assertSameAST(expected, result);
+	}
+
+	private void assertSameAST(ParseResult expected, ParseResult actual)
+	{
+		IParseRootNode expectedRoot = expected.getRootNode();
+		IParseRootNode actualRoot = actual.getRootNode();
+		assertEquals(expectedRoot.toString(), actualRoot.toString());
+		assertEquals(toRangeString(expectedRoot), toRangeString(actualRoot));
+		assertEquals(toRangeString(expectedRoot.getCommentNodes()), toRangeString(actualRoot.getCommentNodes()));
+		assertParents(actualRoot);
+	}
+
+	private void assertParents(IParseNode node)
+	{
+		for (IParseNode child : node.getChildren())
+		{
+			assertSame(node, child.getParent());
+			assertParents(child);
+		}
+	}
+
+	private String toRangeString(IParseNode... nodes)
+	{
+		StringBuilder builder = new StringBuilder();
+		for (IParseNode node : nodes)
+		{
+			builder.append(node.getNodeType()).append('[').append(node.getStartingOffset()).append(',')
+					.append(node.getEndingOffset()).append(']');
+			if (node.hasChildren())
+			{
+				builder.append('(').append(toRangeString(node.getChildren())).append(')');
+			}
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,17 @@
+package com.aptana.js.core.parsing;
+
+import com.aptana.parsing.IParser;
+
+/**
+ * Runs the parser tests against the Graal parser converting the whole Graal tree once parsed.
+ */
+public class GraalJSParserTwoTreeTest extends GraalJSParserTest
+{
+
+	@Override
+	protected IParser createParser()
+	{
+		return new GraalJSParser(false);
+	}
+
+}
@@ -0,0 +1,195 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.js.core.parsing;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.reflect.Method;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.FileLocator;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.Platform;
+import org.junit.experimental.categories.Category;
+
+import com.aptana.core.util.IOUtil;
+import com.aptana.js.core.JSCorePlugin;
+import com.aptana.js.core.tests.ITestFiles;
+import com.aptana.parsing.IParser;
+import com.aptana.parsing.ParseResult;
+import com.aptana.testing.categories.PerformanceTests;
+
+/**
+ * Compares time, allocation and peak heap of the Graal parser converting scripts while parsing them against building
+ * the whole Graal tree first, on the inputs of {@link JSParserPerformanceTest}. Allocation is only reported on VMs
+ * that can count allocated bytes per thread.
+ */
+@SuppressWarnings("nls")
+@Category({ PerformanceTests.class })
+public class GraalParserMemoryPerformanceTest extends TestCase
+{
+	private static final int RUNS = 5;
+
+	private static class Measurement
+	{
+		long nanos;
+		long allocated;
+		long peak;
+	}
+
+	public void testDojo() throws Exception
+	{
+		compare(ITestFiles.DOJO_FILES);
+	}
+
+	public void testExt() throws Exception
+	{
+		compare(ITestFiles.EXT_FILES);
+	}
+
+	public void testJaxerFiles() throws Exception
+	{
+		compare(ITestFiles.JAXER_FILES);
+	}
+
+	public void testTiMobile() throws Exception
+	{
+		compare(ITestFiles.TIMOBILE_FILES);
+	}
+
+	public void testTinyMce() throws Exception
+	{
+		compare(ITestFiles.TINY_MCE_FILES);
+	}
+
+	private void compare(String... resources) throws Exception
+	{
+		for (String resourceName : resources)
+		{
+			String source = getSource(resourceName);
+
+			// both modes have to build the same AST
+			ParseResult twoTree = new GraalJSParser(false).parse(new JSParseState(source));
+			ParseResult direct = new GraalJSParser(true).parse(new JSParseState(source));
+			assertEquals(resourceName, String.valueOf(twoTree.getRootNode()), String.valueOf(direct.getRootNode()));
+			assertEquals(resourceName, twoTree.getErrors().size(), direct.getErrors().size());
+			twoTree = null;
+			direct = null;
+
+			Measurement twoTreeMeasurement = measure(new GraalJSParser(false), source);
+			Measurement directMeasurement = measure(new GraalJSParser(true), source);
+			System.out.println(MessageFormat.format(
+					"{0} ({1} chars): two trees {2} ms, {3} KB allocated, {4} KB peak; direct {5} ms, {6} KB allocated, {7} KB peak",
+					resourceName, source.length(), twoTreeMeasurement.nanos / 1000000,
+					twoTreeMeasurement.allocated / 1024, twoTreeMeasurement.peak / 1024,
+					directMeasurement.nanos / 1000000, directMeasurement.allocated / 1024,
+					directMeasurement.peak / 1024));
+		}
+	}
+
+	private Measurement measure(IParser parser, String source) throws Exception
+	{
+		// warm up
+		parser.parse(new JSParseState(source));
+
+		Measurement result = new Measurement();
+		for (int i = 0; i < RUNS; i++)
+		{
+			JSParseState parseState = new JSParseState(source);
+			System.gc();
+			long baseline = resetPeakHeapUsage();
+			long allocated = getAllocatedBytes();
+			long start = System.nanoTime();
+
+			ParseResult parseResult = parser.parse(parseState);
+
+			result.nanos += System.nanoTime() - start;
+			result.allocated += getAllocatedBytes() - allocated;
+			result.peak += getPeakHeapUsage() - baseline;
+			assertNotNull(parseResult.getRootNode());
+		}
+		result.nanos /= RUNS;
+		result.allocated /= RUNS;
+		result.peak /= RUNS;
+		return result;
+	}
+
+	/**
+	 * Resets the peak usage of the heap pools and returns the current usage.
+	 * 
+	 * @return
+	 */
+	private long resetPeakHeapUsage()
+	{
+		long used = 0;
+		for (MemoryPoolMXBean pool : getHeapPools())
+		{
+			pool.resetPeakUsage();
+			used += pool.getUsage().getUsed();
+		}
+		return used;
+	}
+
+	private long getPeakHeapUsage()
+	{
+		long peak = 0;
+		for (MemoryPoolMXBean pool : getHeapPools())
+		{
+			peak += pool.getPeakUsage().getUsed();
+		}
+		return peak;
+	}
+
+	private List<MemoryPoolMXBean> getHeapPools()
+	{
+		List<MemoryPoolMXBean> pools = new ArrayList<MemoryPoolMXBean>();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+		{
+			if (pool.getType() == MemoryType.HEAP)
+			{
+				pools.add(pool);
+			}
+		}
+		return pools;
+	}
+
+	/**
+	 * Returns the number of bytes allocated by the current thread so far, 0 if the VM can't tell.
+	 * 
+	 * @return
+	 */
+	private long getAllocatedBytes()
+	{
+		Object threads = ManagementFactory.getThreadMXBean();
+		try
+		{
+			// com.sun.management.ThreadMXBean isn't available on all VMs
+			Method method = threads.getClass().getMethod("getThreadAllocatedBytes", long.class);
+			method.setAccessible(true);
+			return (Long) method.invoke(threads, Thread.currentThread().getId());
+		}
+		catch (Exception e)
+		{
+			return 0;
+		}
+	}
+
+	private String getSource(String resourceName) throws IOException
+	{
+		InputStream stream = FileLocator.openStream(Platform.getBundle(JSCorePlugin.PLUGIN_ID), new Path(resourceName),
+				false);
+		return IOUtil.read(stream);
+	}
+}
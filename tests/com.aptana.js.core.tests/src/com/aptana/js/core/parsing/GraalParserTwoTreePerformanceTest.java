@@ -0,0 +1,17 @@
+package com.aptana.js.core.parsing;
+
+import com.aptana.parsing.IParser;
+
+/**
+ * Times the Graal parser when it builds the whole Graal tree before converting it, to compare with
+ * {@link GraalParserPerformanceTest} which converts scripts while parsing them.
+ */
+public class GraalParserTwoTreePerformanceTest extends JSParserPerformanceTest
+{
+	@Override
+	protected IParser createParser()
+	{
+		return new GraalJSParser(false);
+	}
+
+}
@@ -0,0 +1,238 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.js.core.parsing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import beaver.Symbol;
+
+import com.aptana.js.core.parsing.ast.JSForNode;
+import com.aptana.js.core.parsing.ast.JSFunctionNode;
+import com.aptana.js.core.parsing.ast.JSNode;
+import com.aptana.js.core.parsing.ast.JSPrimitiveNode;
+import com.aptana.parsing.ParseState;
+import com.aptana.parsing.ast.IParseNode;
+import com.aptana.parsing.ast.IParseRootNode;
+import com.aptana.parsing.ast.ParseRootNode;
+
+@SuppressWarnings("nls")
+public class JSParseResultCodecTest
+{
+	private GraalJSParser parser;
+	private JSParseResultCodec codec;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		parser = new GraalJSParser();
+		codec = new JSParseResultCodec();
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		parser = null;
+		codec = null;
+	}
+
+	@Test
+	public void testStatements() throws Exception
+	{
+		// @formatter:off
+		assertRoundTrip(
+			"// leading comment\n" +
+			"var a = 1, b = 'two', c = null, d = /x+/g;\n" +
+			"/* block */\n" +
+			"for (var i = 0; i < 10; i++) { a += i; if (!a) continue; else break; }\n" +
+			"for (var k in obj) { delete obj[k]; }\n" +
+			"do { a--; } while (a > 0 && b || c);\n" +
+			"switch (a) { case 1: a = -a; break; default: a = typeof a; }\n" +
+			"try { throw new Error('x'); } catch (e) { a = e; } finally { a = void 0; }\n" +
+			"outer: while (true) { with (obj) { a = a ? b : c; } break outer; }\n" +
+			";\n");
+		// @formatter:on
+	}
+
+	@Test
+	public void testFunctionsAndObjects() throws Exception
+	{
+		// @formatter:off
+		assertRoundTrip(
+			"function f(x, y) { return x * y + this.z; }\n" +
+			"var o = { a: 1, 'b': [1, , 3], get c() { return 1; }, set c(v) {}, m: function () { return; } };\n" +
+			"(function () { 'use strict'; var q = f(1, 2); }());\n" +
+			"var arrow = (x) => x + 1;\n" +
+			"var g = function* () { yield 1; yield* [2, 3]; };\n");
+		// @formatter:on
+	}
+
+	@Test
+	public void testClassesAndModules() throws Exception
+	{
+		// @formatter:off
+		assertRoundTrip(
+			"import def, { a as b, c } from 'mod';\n" +
+			"import * as ns from 'other';\n" +
+			"export class A extends B { constructor() { super(); } static s() {} get g() { return 1; } }\n" +
+			"export const [x, ...rest] = [1, 2, 3];\n" +
+			"export default function () {}\n" +
+			"export { a, c as d };\n" +
+			"let { p, q } = { p: 1, [c]: 2 };\n" +
+			"for (const v of rest) { f(...rest); }\n");
+		// @formatter:on
+	}
+
+	@Test
+	public void testStartingOffset() throws Exception
+	{
+		IParseRootNode expected = parser.parse(new ParseState("var a = 1;\n// c\nf(a);\n", 100)).getRootNode();
+		assertSameTree(expected, roundTrip(expected));
+	}
+
+	@Test
+	public void testPunctuationSymbols() throws Exception
+	{
+		IParseRootNode expected = parse("for (var i = 0; i < 1; i++) {}\n");
+		JSForNode expectedFor = (JSForNode) expected.getFirstChild();
+		JSForNode actualFor = (JSForNode) roundTrip(expected).getFirstChild();
+		assertSameSymbol(expectedFor.getLeftParenthesis(), actualFor.getLeftParenthesis());
+		assertSameSymbol(expectedFor.getSemicolon1(), actualFor.getSemicolon1());
+		assertSameSymbol(expectedFor.getSemicolon2(), actualFor.getSemicolon2());
+		assertSameSymbol(expectedFor.getRightParenthesis(), actualFor.getRightParenthesis());
+	}
+
+	@Test
+	public void testStringsOverUTFLimit() throws Exception
+	{
+		StringBuilder builder = new StringBuilder("var s = '");
+		for (int i = 0; i < 70000; i++)
+		{
+			builder.append('\u00e9');
+		}
+		builder.append("';\n");
+		assertRoundTrip(builder.toString());
+	}
+
+	@Test
+	public void testOtherRootNodes() throws Exception
+	{
+		ParseRootNode root = new ParseRootNode(new Symbol[0], 0, 0)
+		{
+			public String getLanguage()
+			{
+				return "test";
+			}
+		};
+		try
+		{
+			codec.write(root, new DataOutputStream(new ByteArrayOutputStream()));
+			fail("Only JS trees can be written");
+		}
+		catch (IOException e)
+		{
+			// expected
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void testTruncatedInput() throws Exception
+	{
+		byte[] bytes = write(parse("var a = 1;\nf(a);\n"));
+		byte[] truncated = new byte[bytes.length / 2];
+		System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+		codec.read(new DataInputStream(new ByteArrayInputStream(truncated)));
+	}
+
+	private IParseRootNode parse(String source) throws Exception
+	{
+		return parser.parse(new ParseState(source)).getRootNode();
+	}
+
+	private void assertRoundTrip(String source) throws Exception
+	{
+		IParseRootNode expected = parse(source);
+		assertSameTree(expected, roundTrip(expected));
+	}
+
+	private IParseRootNode roundTrip(IParseRootNode root) throws IOException
+	{
+		return codec.read(new DataInputStream(new ByteArrayInputStream(write(root))));
+	}
+
+	private byte[] write(IParseRootNode root) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream output = new DataOutputStream(bytes);
+		codec.write(root, output);
+		output.close();
+		return bytes.toByteArray();
+	}
+
+	private void assertSameTree(IParseRootNode expected, IParseRootNode actual)
+	{
+		assertEquals(expected.toString(), actual.toString());
+		assertSameNode(expected, actual);
+
+		IParseNode[] expectedComments = expected.getCommentNodes();
+		IParseNode[] actualComments = actual.getCommentNodes();
+		assertEquals(expectedComments.length, actualComments.length);
+		for (int i = 0; i < expectedComments.length; i++)
+		{
+			assertSameNode(expectedComments[i], actualComments[i]);
+		}
+	}
+
+	private void assertSameNode(IParseNode expected, IParseNode actual)
+	{
+		assertSame(expected.getClass(), actual.getClass());
+		assertEquals(expected.getNodeType(), actual.getNodeType());
+		assertEquals(expected.getStartingOffset(), actual.getStartingOffset());
+		assertEquals(expected.getEndingOffset(), actual.getEndingOffset());
+		if (expected instanceof JSNode)
+		{
+			assertEquals(((JSNode) expected).getSemicolonIncluded(), ((JSNode) actual).getSemicolonIncluded());
+		}
+		if (expected instanceof JSFunctionNode)
+		{
+			assertEquals(((JSFunctionNode) expected).isStatic(), ((JSFunctionNode) actual).isStatic());
+		}
+		if (expected instanceof JSPrimitiveNode)
+		{
+			assertEquals(((JSPrimitiveNode) expected).getText(), ((JSPrimitiveNode) actual).getText());
+		}
+
+		IParseNode[] expectedChildren = expected.getChildren();
+		IParseNode[] actualChildren = actual.getChildren();
+		assertEquals(expectedChildren.length, actualChildren.length);
+		for (int i = 0; i < expectedChildren.length; i++)
+		{
+			assertSame(actual, actualChildren[i].getParent());
+			assertSameNode(expectedChildren[i], actualChildren[i]);
+		}
+	}
+
+	private void assertSameSymbol(Symbol expected, Symbol actual)
+	{
+		assertEquals(expected.getId(), actual.getId());
+		assertEquals(expected.getStart(), actual.getStart());
+		assertEquals(expected.getEnd(), actual.getEnd());
+		assertEquals(expected.value, actual.value);
+	}
+}
@@ -0,0 +1,161 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.js.core.parsing;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.runtime.FileLocator;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.test.performance.Performance;
+import org.jaxen.XPath;
+import org.junit.experimental.categories.Category;
+
+import com.aptana.core.tests.GlobalTimePerformanceTestCase;
+import com.aptana.core.util.IOUtil;
+import com.aptana.js.core.JSCorePlugin;
+import com.aptana.js.core.parsing.ast.IJSNodeTypes;
+import com.aptana.js.core.tests.ITestFiles;
+import com.aptana.parsing.ast.IParseNode;
+import com.aptana.parsing.query.ParseNodeQuery;
+import com.aptana.parsing.xpath.ParseNodeXPath;
+import com.aptana.testing.categories.PerformanceTests;
+
+/**
+ * Compares evaluating the selector JSFileIndexingParticipant uses to find lambdas through Jaxen and through a compiled
+ * {@link ParseNodeQuery}, the way the indexer does: from the root and from every function.
+ */
+@Category({ PerformanceTests.class })
+@SuppressWarnings("nls")
+public class ParseNodeQueryPerformanceTest extends GlobalTimePerformanceTestCase
+{
+	private static final String LAMBDAS_XPATH = "invoke[position() = 1]/group/function|invoke[position() = 1]/function";
+	private static final String LAMBDAS_QUERY = "invoke[1]/group/function|invoke[1]/function";
+
+	private interface Selector
+	{
+		List<?> select(IParseNode node) throws Exception;
+	}
+
+	private List<IParseNode> getContextNodes(String resourceName) throws Exception
+	{
+		InputStream stream = FileLocator.openStream(Platform.getBundle(JSCorePlugin.PLUGIN_ID), new Path(resourceName),
+				false);
+		String source = IOUtil.read(stream);
+		IParseNode root = new GraalJSParser().parse(new JSParseState(source)).getRootNode();
+
+		List<IParseNode> nodes = new ArrayList<IParseNode>();
+		nodes.add(root);
+		collectFunctions(root, nodes);
+		return nodes;
+	}
+
+	private void collectFunctions(IParseNode node, List<IParseNode> nodes)
+	{
+		for (IParseNode child : node.getChildren())
+		{
+			if (child.getNodeType() == IJSNodeTypes.FUNCTION)
+			{
+				nodes.add(child);
+			}
+			collectFunctions(child, nodes);
+		}
+	}
+
+	private void time(Selector selector, int numRuns, String... resources) throws Exception
+	{
+		for (String resourceName : resources)
+		{
+			if (fPerformanceMeter != null)
+			{
+				fPerformanceMeter.dispose();
+			}
+			fPerformanceMeter = Performance.getDefault().createPerformanceMeter(resourceName);
+
+			List<IParseNode> nodes = getContextNodes(resourceName);
+			for (int i = 0; i < numRuns; i++)
+			{
+				startMeasuring();
+				for (IParseNode node : nodes)
+				{
+					selector.select(node);
+				}
+				stopMeasuring();
+			}
+
+			commitMeasurements();
+			assertPerformance();
+		}
+	}
+
+	private Selector jaxen() throws Exception
+	{
+		final XPath xpath = new ParseNodeXPath(LAMBDAS_XPATH);
+		return new Selector()
+		{
+			public List<?> select(IParseNode node) throws Exception
+			{
+				return (List<?>) xpath.evaluate(node);
+			}
+		};
+	}
+
+	private Selector compiled()
+	{
+		final ParseNodeQuery query = ParseNodeQuery.compile(LAMBDAS_QUERY);
+		return new Selector()
+		{
+			public List<?> select(IParseNode node)
+			{
+				return query.select(node);
+			}
+		};
+	}
+
+	public void testSameResults() throws Exception
+	{
+		Selector jaxen = jaxen();
+		Selector compiled = compiled();
+		for (IParseNode node : getContextNodes(ITestFiles.DOJO_FILES[0]))
+		{
+			assertEquals(jaxen.select(node), compiled.select(node));
+		}
+	}
+
+	public void testDojoJaxen() throws Exception
+	{
+		time(jaxen(), 20, ITestFiles.DOJO_FILES);
+	}
+
+	public void testDojoCompiled() throws Exception
+	{
+		time(compiled(), 20, ITestFiles.DOJO_FILES);
+	}
+
+	public void testExtJaxen() throws Exception
+	{
+		time(jaxen(), 5, ITestFiles.EXT_FILES);
+	}
+
+	public void testExtCompiled() throws Exception
+	{
+		time(compiled(), 5, ITestFiles.EXT_FILES);
+	}
+
+	public void testTinyMceJaxen() throws Exception
+	{
+		time(jaxen(), 50, ITestFiles.TINY_MCE_FILES);
+	}
+
+	public void testTinyMceCompiled() throws Exception
+	{
+		time(compiled(), 50, ITestFiles.TINY_MCE_FILES);
+	}
+}
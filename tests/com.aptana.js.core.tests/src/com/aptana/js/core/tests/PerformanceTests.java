@@ -4,12 +4,17 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
+import com.aptana.js.core.parsing.GraalParserMemoryPerformanceTest;
+import com.aptana.js.core.parsing.GraalParserPerformanceTest;
+import com.aptana.js.core.parsing.GraalParserTwoTreePerformanceTest;
 import com.aptana.js.core.parsing.JSFlexScannerPerformanceTest;
-import com.aptana.js.core.parsing.JSParserPerformanceTest;
+import com.aptana.js.core.parsing.ParseNodeQueryPerformanceTest;
 import com.aptana.js.internal.core.parsing.sdoc.SDocParserPerformanceTest;
 
 @RunWith(Suite.class)
-@SuiteClasses({ JSFlexScannerPerformanceTest.class, JSParserPerformanceTest.class, SDocParserPerformanceTest.class, })
+@SuiteClasses({ JSFlexScannerPerformanceTest.class, GraalParserPerformanceTest.class,
+		GraalParserTwoTreePerformanceTest.class, GraalParserMemoryPerformanceTest.class, SDocParserPerformanceTest.class,
+		ParseNodeQueryPerformanceTest.class, })
 public class PerformanceTests
 {
 }
@@ -9,7 +9,6 @@ package com.aptana.js.internal.core.index;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
-import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -37,21 +36,22 @@ import com.aptana.core.util.StringUtil;
 import com.aptana.index.core.Index;
 import com.aptana.index.core.IndexManager;
 import com.aptana.index.core.IndexPlugin;
-import com.aptana.index.core.IndexReader;
+import com.aptana.index.core.IndexRecord;
 import com.aptana.index.core.QueryResult;
 import com.aptana.index.core.SearchPattern;
 import com.aptana.index.core.build.BuildContext;
-import com.aptana.jetty.util.epl.ajax.JSON;
 import com.aptana.js.core.JSCorePlugin;
 import com.aptana.js.core.index.IJSIndexConstants;
 import com.aptana.js.core.index.JSFileIndexingParticipant;
 import com.aptana.js.core.index.JSIndexQueryHelper;
 import com.aptana.js.core.model.EventElement;
 import com.aptana.js.core.model.EventPropertyElement;
+import com.aptana.js.core.model.ExceptionElement;
 import com.aptana.js.core.model.FunctionElement;
 import com.aptana.js.core.model.IHasPredefinedValues;
 import com.aptana.js.core.model.ParameterElement;
 import com.aptana.js.core.model.PropertyElement;
+import com.aptana.js.core.model.SinceElement;
 import com.aptana.js.core.model.TypeElement;
 import com.aptana.js.core.model.UserAgentElement;
 import com.aptana.parsing.ast.IParseRootNode;
@@ -483,22 +483,137 @@ public class JSIndexTest
 		assertNotNull(properties);
 		assertEquals(1, properties.size());
 
-		// split result into columns
-		String word = properties.get(0).getWord();
-		String[] columns = IndexReader.DELIMITER_PATTERN.split(word);
-		assertEquals(3, columns.length);
+		// the flag follows the description and deprecated fields, and leaves the user agent list null
+		IndexRecord record = new IndexRecord(properties.get(0).getWord(), IJSIndexConstants.DELIMITER, 2);
+		assertEquals(type.getName(), record.getKeyColumn(0));
+		assertEquals(property.getName(), record.getKeyColumn(1));
+		assertTrue("Expected the all user agents flag to be set", record.getBoolean(2));
+		assertTrue("Expected no user agents to be listed", record.getStringList(3).isEmpty());
 
-		// grab last column and parse as JSON
-		String json = columns[2];
-		Object m = JSON.parse(json);
+		// and reads back as all user agents
+		JSIndexReader reader = new JSIndexReader();
+		List<PropertyElement> retrieved = reader.getProperties(getIndex(), type.getName());
+		assertEquals(1, retrieved.size());
+		assertTrue(retrieved.get(0).hasAllUserAgents());
+	}
+
+	@Test
+	public void testRetainsMemberFields()
+	{
+		TypeElement type = new TypeElement();
+		type.setName("Testing");
 
-		// make sure we have a map
-		assertTrue("Expected a Map from the JSON string", m instanceof Map);
-		Map<?, ?> map = (Map<?, ?>) m;
+		// property
+		PropertyElement property = new PropertyElement();
+		property.setName("property");
+		property.setDescription("A property");
+		property.setIsClassProperty(true);
+		property.setIsInternal(true);
+		property.addType("String");
+		property.addExample("Testing.property");
+		property.addUserAgent(UserAgentElement.createUserAgentElement("chrome", "4.0", null, null, null));
+		type.addProperty(property);
 
-		// test userAgents for "special value" which is really just a null value.
-		assertTrue("Expected a userAgents property", map.containsKey("userAgents"));
-		assertNull("Expected userAgents property to be null", map.get("userAgents"));
+		// function
+		FunctionElement function = new FunctionElement();
+		function.setName("function");
+		function.setDescription("A function");
+		function.setIsDeprecated(true);
+		function.setIsMethod(true);
+		function.setHasAllUserAgents();
+		function.addReturnType("Number");
+		function.addReference("Testing.property");
+
+		ParameterElement parameter = new ParameterElement();
+		parameter.setName("value");
+		parameter.addType("String");
+		parameter.addType("Number");
+		parameter.setUsage("optional");
+		parameter.setDescription("A parameter");
+		function.addParameter(parameter);
+
+		ExceptionElement exception = new ExceptionElement();
+		exception.setType("Error");
+		exception.setDescription("An exception");
+		function.addException(exception);
+
+		SinceElement since = new SinceElement();
+		since.setName("JavaScript");
+		since.setVersion("1.5");
+		function.addSince(since);
+		type.addProperty(function);
+
+		// event
+		EventElement event = new EventElement();
+		event.setName("event");
+		event.setDescription("An event");
+
+		EventPropertyElement eventProperty = new EventPropertyElement();
+		eventProperty.setName("source");
+		eventProperty.setType("Object");
+		eventProperty.setDescription("An event property");
+		eventProperty.addConstant("Testing.SOURCE");
+		event.addProperty(eventProperty);
+		type.addEvent(event);
+
+		// write type and its members, then read them back again
+		JSIndexWriter writer = new JSIndexWriter();
+		writer.writeType(getIndex(), type);
+
+		JSIndexReader reader = new JSIndexReader();
+		List<PropertyElement> properties = reader.getProperties(getIndex(), type.getName());
+		List<FunctionElement> functions = reader.getFunctions(getIndex(), type.getName());
+		List<EventElement> events = reader.getEvents(getIndex(), type.getName());
+
+		// property
+		assertEquals(1, properties.size());
+		PropertyElement retrievedProperty = properties.get(0);
+		assertEquals("Testing", retrievedProperty.getOwningType());
+		assertEquals("property", retrievedProperty.getName());
+		assertEquals("A property", retrievedProperty.getDescription());
+		assertTrue(retrievedProperty.isClassProperty());
+		assertTrue(retrievedProperty.isInternal());
+		assertEquals(CollectionsUtil.newList("String"), retrievedProperty.getTypeNames());
+		assertEquals(CollectionsUtil.newList("Testing.property"), retrievedProperty.getExamples());
+		assertEquals(1, retrievedProperty.getUserAgents().size());
+		UserAgentElement userAgent = retrievedProperty.getUserAgents().get(0);
+		assertEquals("chrome", userAgent.getPlatform());
+		assertEquals("4.0", userAgent.getVersion());
+		assertTrue(retrievedProperty.getDocuments().contains(IJSIndexConstants.METADATA_FILE_LOCATION));
+
+		// function
+		assertEquals(1, functions.size());
+		FunctionElement retrievedFunction = functions.get(0);
+		assertEquals("function", retrievedFunction.getName());
+		assertEquals("A function", retrievedFunction.getDescription());
+		assertTrue(retrievedFunction.isDeprecated());
+		assertTrue(retrievedFunction.isMethod());
+		assertTrue(retrievedFunction.hasAllUserAgents());
+		assertEquals(CollectionsUtil.newList("Number"), retrievedFunction.getReturnTypeNames());
+		assertEquals(CollectionsUtil.newList("Testing.property"), retrievedFunction.getReferences());
+		assertEquals(1, retrievedFunction.getParameters().size());
+		ParameterElement retrievedParameter = retrievedFunction.getParameters().get(0);
+		assertEquals("value", retrievedParameter.getName());
+		assertEquals(CollectionsUtil.newList("String", "Number"), retrievedParameter.getTypes());
+		assertEquals("optional", retrievedParameter.getUsage());
+		assertEquals("A parameter", retrievedParameter.getDescription());
+		assertEquals(CollectionsUtil.newList("Error"), retrievedFunction.getExceptionTypes());
+		assertEquals("An exception", retrievedFunction.getExceptions().get(0).getDescription());
+		assertEquals(1, retrievedFunction.getSinceList().size());
+		assertEquals("JavaScript", retrievedFunction.getSinceList().get(0).getName());
+		assertEquals("1.5", retrievedFunction.getSinceList().get(0).getVersion());
+
+		// event
+		assertEquals(1, events.size());
+		EventElement retrievedEvent = events.get(0);
+		assertEquals("event", retrievedEvent.getName());
+		assertEquals("An event", retrievedEvent.getDescription());
+		assertEquals(1, retrievedEvent.getProperties().size());
+		EventPropertyElement retrievedEventProperty = retrievedEvent.getProperties().get(0);
+		assertEquals("source", retrievedEventProperty.getName());
+		assertEquals("Object", retrievedEventProperty.getType());
+		assertEquals("An event property", retrievedEventProperty.getDescription());
+		assertEquals(CollectionsUtil.newList("Testing.SOURCE"), retrievedEventProperty.getConstants());
 	}
 
 	/**
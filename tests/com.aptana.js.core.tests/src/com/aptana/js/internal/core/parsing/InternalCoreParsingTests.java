@@ -15,7 +15,7 @@ import org.junit.runners.Suite.SuiteClasses;
  * @author klindsey
  */
 @RunWith(Suite.class)
-@SuiteClasses({ VSDocNodeAttachmentTest.class, VSDocReaderTest.class, })
+@SuiteClasses({ ParseGoalDetectorTest.class, VSDocNodeAttachmentTest.class, VSDocReaderTest.class, })
 public class InternalCoreParsingTests
 {
 
@@ -0,0 +1,218 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.js.internal.core.parsing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.aptana.core.util.FileUtil;
+import com.aptana.js.core.parsing.GraalJSParser;
+import com.aptana.js.internal.core.parsing.ParseGoalDetector.Goal;
+import com.aptana.parsing.ParseResult;
+import com.aptana.parsing.ParseState;
+
+@SuppressWarnings("nls")
+public class ParseGoalDetectorTest
+{
+	private ParseGoalDetector detector;
+	private File dir;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		detector = ParseGoalDetector.getInstance();
+		detector.reset();
+		dir = File.createTempFile("goal", "");
+		dir.delete();
+		dir.mkdirs();
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		FileUtil.deleteRecursively(dir);
+		detector.reset();
+		detector = null;
+	}
+
+	@Test
+	public void testTopLevelImportAndExport()
+	{
+		assertTrue(ParseGoalDetector.hasModuleSyntax("import a from 'a';"));
+		assertTrue(ParseGoalDetector.hasModuleSyntax("import {a, b} from 'a';"));
+		assertTrue(ParseGoalDetector.hasModuleSyntax("import 'a';"));
+		assertTrue(ParseGoalDetector.hasModuleSyntax("var x = 1;\nexport default x;"));
+		assertTrue(ParseGoalDetector.hasModuleSyntax("var url = import.meta.url;"));
+	}
+
+	@Test
+	public void testScriptSyntax()
+	{
+		assertFalse(ParseGoalDetector.hasModuleSyntax(null));
+		assertFalse(ParseGoalDetector.hasModuleSyntax(""));
+		assertFalse(ParseGoalDetector.hasModuleSyntax("var a = require('a');"));
+		assertFalse(ParseGoalDetector.hasModuleSyntax("import('a').then(function (a) {});"));
+		assertFalse(ParseGoalDetector.hasModuleSyntax("loader.import('a'); loader.export = 1;"));
+		assertFalse(ParseGoalDetector.hasModuleSyntax("var o = { export: 1, import: 2 };"));
+		assertFalse(ParseGoalDetector.hasModuleSyntax("function f() { export = 1; }"));
+		assertFalse(ParseGoalDetector.hasModuleSyntax("var exports = 1, importer = 2;"));
+	}
+
+	@Test
+	public void testIgnoresCommentsStringsAndRegexps()
+	{
+		assertFalse(ParseGoalDetector.hasModuleSyntax("// import a from 'a';\nvar a;"));
+		assertFalse(ParseGoalDetector.hasModuleSyntax("/* export default a; */ var a;"));
+		assertFalse(ParseGoalDetector.hasModuleSyntax("var s = 'import a from \\'a\\'';"));
+		assertFalse(ParseGoalDetector.hasModuleSyntax("var s = \"export {a}\";"));
+		assertFalse(ParseGoalDetector.hasModuleSyntax("var s = `\nimport a from 'a';\n`;"));
+		assertFalse(ParseGoalDetector.hasModuleSyntax("var r = /[/]import a/g;"));
+		assertTrue(ParseGoalDetector.hasModuleSyntax("var r = a / b; export {r};"));
+	}
+
+	@Test
+	public void testExtensionDecidesGoal()
+	{
+		assertEquals(Goal.MODULE, detector.getRequiredGoal("/a/b.mjs"));
+		assertEquals(Goal.SCRIPT, detector.getRequiredGoal("/a/b.cjs"));
+		assertNull(detector.getRequiredGoal("/a/b.js"));
+		assertNull(detector.getRequiredGoal(null));
+
+		assertEquals(Goal.MODULE, detector.predictGoal("/a/b.mjs", "var a;"));
+		assertEquals(Goal.SCRIPT, detector.predictGoal("/a/b.cjs", "export default 1;"));
+	}
+
+	@Test
+	public void testPackageJSONType() throws Exception
+	{
+		File lib = new File(dir, "lib");
+		lib.mkdirs();
+		String file = new File(lib, "a.js").getAbsolutePath();
+
+		assertEquals(Goal.SCRIPT, detector.predictGoal(file, "var a;"));
+
+		writePackageJSON("{ \"name\": \"a\", \"type\": \"module\" }");
+		assertEquals(Goal.MODULE, detector.predictGoal(file, "var a;"));
+
+		writePackageJSON("{ \"name\": \"a\", \"type\": \"commonjs\" }");
+		assertEquals(Goal.SCRIPT, detector.predictGoal(file, "export default 1;"));
+
+		writePackageJSON("{ \"name\": \"a\" }");
+		assertEquals(Goal.MODULE, detector.predictGoal(file, "export default 1;"));
+	}
+
+	@Test
+	public void testRemembersSuccessfulGoal()
+	{
+		String file = new File(dir, "a.js").getAbsolutePath();
+		detector.parsed(file, Goal.MODULE, false);
+		assertEquals(Goal.SCRIPT, detector.predictGoal(file, "var a;"));
+
+		detector.parsed(file, Goal.MODULE, true);
+		assertEquals(Goal.MODULE, detector.predictGoal(file, "var a;"));
+		assertEquals(2, detector.getModuleParseCount());
+		assertEquals(0, detector.getScriptParseCount());
+	}
+
+	@Test
+	public void testParserFallsBackToScript() throws Exception
+	{
+		writePackageJSON("{ \"type\": \"module\" }");
+		String file = new File(dir, "a.js").getAbsolutePath();
+
+		// "with" isn't allowed in strict mode and so not in modules
+		ParseResult result = new GraalJSParser().parse(new ParseState("var o = {}; with (o) {}", file));
+		assertNotNull(result.getRootNode());
+		assertTrue(result.getErrors().isEmpty());
+		assertEquals(1, detector.getFallbackCount());
+		assertEquals(1, detector.getModuleParseCount());
+		assertEquals(1, detector.getScriptParseCount());
+
+		// next time we know it's a script
+		result = new GraalJSParser().parse(new ParseState("var o = {}; with (o) {}", file));
+		assertNotNull(result.getRootNode());
+		assertEquals(1, detector.getFallbackCount());
+		assertEquals(2, detector.getScriptParseCount());
+	}
+
+	@Test
+	public void testParserFallsBackToModule() throws Exception
+	{
+		String file = new File(dir, "a.js").getAbsolutePath();
+		detector.parsed(file, Goal.SCRIPT, true);
+
+		// the script parse recovers from the error, but the module parse has none
+		ParseResult result = new GraalJSParser().parse(new ParseState("export var a = 1;", file));
+		assertNotNull(result.getRootNode());
+		assertTrue(result.getErrors().isEmpty());
+		assertEquals(1, detector.getFallbackCount());
+		assertEquals(Goal.MODULE, detector.predictGoal(file, "var a;"));
+	}
+
+	@Test
+	public void testParsesScriptOnce() throws Exception
+	{
+		ParseResult result = new GraalJSParser().parse(new ParseState("var a = require('a');"));
+		assertNotNull(result.getRootNode());
+		assertEquals(0, detector.getFallbackCount());
+		assertEquals(0, detector.getModuleParseCount());
+		assertEquals(1, detector.getScriptParseCount());
+	}
+
+	@Test
+	public void testScriptErrorDoesNotFallBack() throws Exception
+	{
+		// a syntax error which has nothing to do with modules isn't worth a module parse
+		ParseResult result = new GraalJSParser().parse(new ParseState("var a = ;", new File(dir, "a.js")
+				.getAbsolutePath()));
+		assertFalse(result.getErrors().isEmpty());
+		assertEquals(0, detector.getFallbackCount());
+		assertEquals(0, detector.getModuleParseCount());
+		assertEquals(1, detector.getScriptParseCount());
+	}
+
+	@Test
+	public void testModuleExtensionDoesNotFallBack() throws Exception
+	{
+		String file = new File(dir, "a.mjs").getAbsolutePath();
+		ParseResult result = new GraalJSParser().parse(new ParseState("var o = {}; with (o) {}", file));
+		assertNull(result.getRootNode());
+		assertFalse(result.getErrors().isEmpty());
+		assertEquals(0, detector.getFallbackCount());
+		assertEquals(1, detector.getModuleParseCount());
+		assertEquals(0, detector.getScriptParseCount());
+	}
+
+	private void writePackageJSON(String contents) throws IOException
+	{
+		File packageJSON = new File(dir, "package.json");
+		long lastModified = packageJSON.lastModified();
+		FileWriter writer = new FileWriter(packageJSON);
+		try
+		{
+			writer.write(contents);
+		}
+		finally
+		{
+			writer.close();
+		}
+		// make sure the change is noticed even on filesystems with coarse timestamps
+		packageJSON.setLastModified(Math.max(lastModified + 1000, System.currentTimeMillis()));
+	}
+}
@@ -0,0 +1,167 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.internal.parsing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import beaver.Symbol;
+
+import com.aptana.core.build.IProblem.Severity;
+import com.aptana.parsing.IParseResultCodec;
+import com.aptana.parsing.ParseResult;
+import com.aptana.parsing.ParseState;
+import com.aptana.parsing.ast.IParseError;
+import com.aptana.parsing.ast.IParseRootNode;
+import com.aptana.parsing.ast.ParseError;
+import com.aptana.parsing.ast.ParseRootNode;
+
+@SuppressWarnings("nls")
+public class ParseResultDiskCacheTest
+{
+	private static final String CONTENT_TYPE = "com.aptana.contenttype.test";
+
+	private static class TestRootNode extends ParseRootNode
+	{
+		TestRootNode(int start, int end)
+		{
+			super(new Symbol[0], start, end);
+		}
+
+		public String getLanguage()
+		{
+			return CONTENT_TYPE;
+		}
+	}
+
+	private static class TestCodec implements IParseResultCodec
+	{
+		public int getVersion()
+		{
+			return 1;
+		}
+
+		public void write(IParseRootNode rootNode, DataOutput output) throws IOException
+		{
+			output.writeInt(rootNode.getStartingOffset());
+			output.writeInt(rootNode.getEndingOffset());
+		}
+
+		public IParseRootNode read(DataInput input) throws IOException
+		{
+			return new TestRootNode(input.readInt(), input.readInt());
+		}
+	}
+
+	private File directory;
+	private ParseResultDiskCache cache;
+	private TestCodec codec;
+
+	@Before
+	public void setUp() throws Exception
+	{
+		directory = File.createTempFile("parseCache", "");
+		directory.delete();
+		cache = new ParseResultDiskCache(directory, 1024 * 1024);
+		codec = new TestCodec();
+	}
+
+	@After
+	public void tearDown() throws Exception
+	{
+		cache.clear();
+		directory.delete();
+		cache = null;
+	}
+
+	private ParseResult createResult(int length)
+	{
+		List<IParseError> errors = new ArrayList<IParseError>();
+		errors.add(new ParseError(CONTENT_TYPE, 3, 4, "Unexpected token", Severity.ERROR));
+		errors.add(new ParseError(CONTENT_TYPE, 7, "Missing semicolon", Severity.WARNING));
+		return new ParseResult(new TestRootNode(0, length - 1), errors);
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception
+	{
+		String source = "var x = 1;";
+		String key = cache.getKey(CONTENT_TYPE, new ParseState(source));
+		assertNull(cache.get(key, CONTENT_TYPE, "1.0", codec));
+
+		cache.put(key, CONTENT_TYPE, "1.0", codec, createResult(source.length()));
+		ParseResult result = cache.get(cache.getKey(CONTENT_TYPE, new ParseState(source)), CONTENT_TYPE, "1.0", codec);
+
+		assertNotNull(result);
+		assertEquals(0, result.getRootNode().getStartingOffset());
+		assertEquals(source.length() - 1, result.getRootNode().getEndingOffset());
+		assertEquals(2, result.getErrors().size());
+		IParseError error = result.getErrors().get(0);
+		assertEquals("Unexpected token", error.getMessage());
+		assertEquals(3, error.getOffset());
+		assertEquals(4, error.getLength());
+		assertEquals(Severity.ERROR, error.getSeverity());
+		assertEquals(CONTENT_TYPE, error.getLangauge());
+		error = result.getErrors().get(1);
+		assertEquals(7, error.getLineNumber());
+		assertEquals(Severity.WARNING, error.getSeverity());
+	}
+
+	@Test
+	public void testKeyDependsOnSourceContentTypeAndOffset() throws Exception
+	{
+		String key = cache.getKey(CONTENT_TYPE, new ParseState("var x = 1;"));
+		assertTrue(!key.equals(cache.getKey(CONTENT_TYPE, new ParseState("var x = 2;"))));
+		assertTrue(!key.equals(cache.getKey("com.aptana.contenttype.other", new ParseState("var x = 1;"))));
+		assertTrue(!key.equals(cache.getKey(CONTENT_TYPE, new ParseState("var x = 1;", 10))));
+	}
+
+	@Test
+	public void testOtherVersionIsDiscarded() throws Exception
+	{
+		String key = cache.getKey(CONTENT_TYPE, new ParseState("var x = 1;"));
+		cache.put(key, CONTENT_TYPE, "1.0", codec, createResult(10));
+		assertTrue(cache.getSize() > 0);
+
+		assertNull(cache.get(key, CONTENT_TYPE, "2.0", codec));
+		assertEquals(0, cache.getSize());
+		assertNull(cache.get(key, CONTENT_TYPE, "1.0", codec));
+	}
+
+	@Test
+	public void testEvictsLeastRecentlyUsed() throws Exception
+	{
+		String firstKey = cache.getKey(CONTENT_TYPE, new ParseState("first"));
+		cache.put(firstKey, CONTENT_TYPE, "1.0", codec, createResult(5));
+		long entrySize = cache.getSize();
+
+		cache = new ParseResultDiskCache(directory, entrySize * 4);
+		new File(directory, firstKey + ".ast").setLastModified(System.currentTimeMillis() - 60000);
+		for (int i = 0; i < 4; i++)
+		{
+			String key = cache.getKey(CONTENT_TYPE, new ParseState("source" + i));
+			cache.put(key, CONTENT_TYPE, "1.0", codec, createResult(7));
+		}
+
+		assertTrue(cache.getSize() <= entrySize * 4);
+		assertNull(cache.get(firstKey, CONTENT_TYPE, "1.0", codec));
+	}
+}
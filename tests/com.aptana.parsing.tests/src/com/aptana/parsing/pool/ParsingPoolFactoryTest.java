@@ -7,7 +7,10 @@
  */
 package com.aptana.parsing.pool;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 
 import java.lang.reflect.Constructor;
@@ -24,10 +27,12 @@ import beaver.Symbol;
 
 import com.aptana.core.epl.util.LRUCacheWithSoftPrunedValues;
 import com.aptana.parsing.AbstractParser;
+import com.aptana.parsing.IIncrementalParser;
 import com.aptana.parsing.IParseState;
 import com.aptana.parsing.IParseStateCacheKey;
 import com.aptana.parsing.IParser;
 import com.aptana.parsing.IParserPool;
+import com.aptana.parsing.ParseResult;
 import com.aptana.parsing.ParseState;
 import com.aptana.parsing.ParseStateCacheKey;
 import com.aptana.parsing.ParseStateCacheKeyWithComments;
@@ -447,4 +452,81 @@ public class ParsingPoolFactoryTest
 
 	}
 
+	private class IncrementalParser extends AbstractParser implements IIncrementalParser
+	{
+		int parses;
+		int[] edit;
+		boolean handle;
+
+		protected void parse(IParseState parseState, WorkingParseResult working) throws Exception
+		{
+			parses += 1;
+			working.setParseResult(new ParseRootNode(new Symbol[0], 0, 0)
+			{
+				public String getLanguage()
+				{
+					return "incremental";
+				}
+			});
+		}
+
+		public ParseResult reparse(IParseState parseState, ParseResult previous, int offset, int removedLength,
+				int insertedLength) throws Exception
+		{
+			edit = new int[] { offset, removedLength, insertedLength };
+			return handle ? parse(parseState) : null;
+		}
+	}
+
+	@Test
+	public void testReparse() throws Exception
+	{
+		IncrementalParser incrementalParser = new IncrementalParser();
+		HashMap<String, IParserPool> contentTypeToPool = new HashMap<String, IParserPool>();
+		contentTypeToPool.put("incremental", new ParserPool(incrementalParser));
+		contentTypeToPool.put("test", parserPool);
+		parsingEngine = new ParsingEngine(new ParserPoolProvider(contentTypeToPool), 200, 0)
+		{
+			// Note: empty body (class just created to access protected constructor).
+		};
+
+		// without a previous result it's a plain parse, which isn't cached
+		ParseResult first = parsingEngine.reparse("incremental", new ParseState("var a;"), null, null);
+		ParseResult second = parsingEngine.reparse("incremental", new ParseState("var a;"), null, null);
+		assertEquals(2, incrementalParser.parses);
+		assertNotSame(first.getRootNode(), second.getRootNode());
+
+		// same source, nothing to do
+		assertSame(second, parsingEngine.reparse("incremental", new ParseState("var a;"), "var a;", second));
+		assertEquals(2, incrementalParser.parses);
+
+		// the edit is found by comparing the sources
+		incrementalParser.handle = true;
+		parsingEngine.reparse("incremental", new ParseState("var ab = 1;"), "var a;", second);
+		assertArrayEquals(new int[] { 5, 0, 5 }, incrementalParser.edit);
+		parsingEngine.reparse("incremental", new ParseState("var b;"), "var ab;", second);
+		assertArrayEquals(new int[] { 4, 1, 0 }, incrementalParser.edit);
+		parsingEngine.reparse("incremental", new ParseState("a;"), "var a;", second);
+		assertArrayEquals(new int[] { 0, 4, 0 }, incrementalParser.edit);
+		assertEquals(5, incrementalParser.parses);
+
+		// when the parser can't handle the edit, everything is parsed
+		incrementalParser.handle = false;
+		parsingEngine.reparse("incremental", new ParseState("var c;"), "var a;", second);
+		assertArrayEquals(new int[] { 4, 1, 1 }, incrementalParser.edit);
+		assertEquals(6, incrementalParser.parses);
+
+		// the edit can also be given as the document reported it
+		incrementalParser.handle = true;
+		parsingEngine.reparse("incremental", new ParseState("var abc;"), second, 5, 0, 2);
+		assertArrayEquals(new int[] { 5, 0, 2 }, incrementalParser.edit);
+		assertSame(second, parsingEngine.reparse("incremental", new ParseState("var a;"), second, 0, 0, 0));
+		assertEquals(7, incrementalParser.parses);
+
+		// parsers that aren't incremental go through the cache
+		queue.add(parseRootNode);
+		assertEquals(parseRootNode, parsingEngine.reparse("test", new ParseState("b"), "a", first).getRootNode());
+		assertEquals(parseRootNode, parsingEngine.reparse("test", new ParseState("b"), "a", first).getRootNode());
+		assertEquals(1, parser.parses);
+	}
 }
@@ -0,0 +1,169 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2012 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.parsing.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.aptana.parsing.ast.IParseNode;
+import com.aptana.parsing.ast.ParseNode;
+import com.aptana.parsing.ast.ParseRootNode;
+
+@SuppressWarnings("nls")
+public class ParseNodeQueryTest
+{
+	static class NamedNode extends ParseNode
+	{
+		private String _name;
+
+		NamedNode(String name, int offset)
+		{
+			this._name = name;
+			this.setLocation(offset, offset);
+		}
+
+		public String getLanguage()
+		{
+			return "text/simple";
+		}
+
+		public String getElementName()
+		{
+			return _name;
+		}
+	}
+
+	private ParseRootNode root;
+	private NamedNode invoke1;
+	private NamedNode function1;
+	private NamedNode group;
+	private NamedNode function2;
+	private NamedNode invoke2;
+	private NamedNode function3;
+
+	/**
+	 * <pre>
+	 * root
+	 *   invoke1
+	 *     function1
+	 *       invoke2
+	 *         function3
+	 *     group
+	 *       function2
+	 * </pre>
+	 */
+	@Before
+	public void setUp() throws Exception
+	{
+		root = new ParseRootNode(new ParseNode[0], 0, 100)
+		{
+			public String getLanguage()
+			{
+				return "text/simple";
+			}
+		};
+		invoke1 = new NamedNode("invoke", 0);
+		function1 = new NamedNode("function", 1);
+		invoke2 = new NamedNode("invoke", 2);
+		function3 = new NamedNode("function", 3);
+		group = new NamedNode("group", 10);
+		function2 = new NamedNode("function", 11);
+
+		root.addChild(invoke1);
+		invoke1.addChild(function1);
+		function1.addChild(invoke2);
+		invoke2.addChild(function3);
+		invoke1.addChild(group);
+		group.addChild(function2);
+	}
+
+	private List<IParseNode> nodes(IParseNode... nodes)
+	{
+		List<IParseNode> result = new ArrayList<IParseNode>();
+		for (IParseNode node : nodes)
+		{
+			result.add(node);
+		}
+		return result;
+	}
+
+	@Test
+	public void testChildSteps()
+	{
+		assertEquals(nodes(function1), ParseNodeQuery.compile("invoke/function").select(root));
+		assertEquals(nodes(function2), ParseNodeQuery.compile("invoke/group/function").select(root));
+		assertTrue(ParseNodeQuery.compile("function").select(root).isEmpty());
+	}
+
+	@Test
+	public void testUnionIsInDocumentOrder()
+	{
+		assertEquals(nodes(function1, function2),
+				ParseNodeQuery.compile("invoke[1]/group/function|invoke[1]/function").select(root));
+	}
+
+	@Test
+	public void testDescendants()
+	{
+		assertEquals(nodes(function1, function3, function2), ParseNodeQuery.compile("//function").select(group));
+		assertEquals(nodes(function3), ParseNodeQuery.compile("invoke//invoke/function").select(root));
+		assertEquals(nodes(function1, function3, function2), ParseNodeQuery.compile("//invoke//function").select(root));
+	}
+
+	@Test
+	public void testAbsolutePathStartsAtRoot()
+	{
+		assertEquals(nodes(function1), ParseNodeQuery.compile("/invoke/function").select(function3));
+	}
+
+	@Test
+	public void testPosition()
+	{
+		assertEquals(nodes(group), ParseNodeQuery.compile("invoke/*[2]").select(root));
+		assertTrue(ParseNodeQuery.compile("invoke[2]/function").select(root).isEmpty());
+	}
+
+	@Test
+	public void testCaseInsensitive()
+	{
+		assertTrue(ParseNodeQuery.compile("INVOKE/Function").select(root).isEmpty());
+		assertEquals(nodes(function1), ParseNodeQuery.compile("INVOKE/Function", true).select(root));
+	}
+
+	@Test
+	public void testSelectByType()
+	{
+		assertEquals(2, ParseNodeQuery.compile("invoke/*").select(root, NamedNode.class).size());
+		assertTrue(ParseNodeQuery.compile("invoke/*").select(root, ParseRootNode.class).isEmpty());
+	}
+
+	@Test
+	public void testInvalidSelectors()
+	{
+		String[] selectors = { "", "a|", "a/", "a[0]", "a[x]", "a[1", "a b", "a///b" };
+		for (String selector : selectors)
+		{
+			try
+			{
+				ParseNodeQuery.compile(selector);
+				fail(selector);
+			}
+			catch (IllegalArgumentException e)
+			{
+				// expected
+			}
+		}
+	}
+}
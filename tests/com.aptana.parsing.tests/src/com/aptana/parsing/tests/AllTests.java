@@ -10,17 +10,20 @@ package com.aptana.parsing.tests;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 
+import com.aptana.internal.parsing.ParseResultDiskCacheTest;
 import com.aptana.parsing.ParseStateCacheKeyWithCommentsTest;
 
 @RunWith(Suite.class)
 // @formatter:off
 @Suite.SuiteClasses({
+	ParseResultDiskCacheTest.class,
 	ParseStateCacheKeyWithCommentsTest.class,
 	ParseStateTest.class,
 	com.aptana.json.AllTests.class,
 	com.aptana.parsing.ast.AllTests.class,
 	com.aptana.parsing.lexer.LexerTests.class,
 	com.aptana.parsing.pool.AllTests.class,
+	com.aptana.parsing.query.AllTests.class,
 	com.aptana.sax.AllTests.class
 })
 // @formatter:on
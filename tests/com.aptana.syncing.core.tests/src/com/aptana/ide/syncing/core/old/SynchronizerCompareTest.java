@@ -0,0 +1,164 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.ide.syncing.core.old;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URI;
+
+import org.eclipse.core.filesystem.IFileInfo;
+import org.eclipse.core.filesystem.IFileStore;
+import org.eclipse.core.filesystem.provider.FileInfo;
+import org.eclipse.core.filesystem.provider.FileStore;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.junit.Test;
+
+import com.aptana.filesystem.ftp.FTPConnectionPoint;
+import com.aptana.filesystem.ftp.IFTPConstants;
+import com.aptana.filesystem.secureftp.ISFTPConstants;
+import com.aptana.filesystem.secureftp.SFTPConnectionPoint;
+import com.aptana.ide.core.io.LocalConnectionPoint;
+
+/**
+ * Compares a file whose size on the server is the size before line endings are converted, as FTP lists it for ASCII
+ * transfers.
+ */
+@SuppressWarnings("nls")
+public class SynchronizerCompareTest
+{
+
+	private static final long MODIFIED = 1000000000000L;
+
+	/**
+	 * A file with the given contents that reports the given length.
+	 */
+	private static class MemoryFileStore extends FileStore
+	{
+		private final URI uri;
+		private final byte[] contents;
+		private final long length;
+		int reads;
+
+		MemoryFileStore(String path, String contents, long length)
+		{
+			this.uri = URI.create("memory:" + path);
+			this.contents = contents.getBytes();
+			this.length = length;
+		}
+
+		@Override
+		public String[] childNames(int options, IProgressMonitor monitor)
+		{
+			return new String[0];
+		}
+
+		@Override
+		public IFileInfo fetchInfo(int options, IProgressMonitor monitor)
+		{
+			FileInfo info = new FileInfo(getName());
+			info.setExists(true);
+			info.setLength(length);
+			info.setLastModified(MODIFIED);
+			return info;
+		}
+
+		@Override
+		public IFileStore getChild(String name)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public String getName()
+		{
+			String path = uri.getPath();
+			return path.substring(path.lastIndexOf('/') + 1);
+		}
+
+		@Override
+		public IFileStore getParent()
+		{
+			return null;
+		}
+
+		@Override
+		public InputStream openInputStream(int options, IProgressMonitor monitor)
+		{
+			reads++;
+			return new ByteArrayInputStream(contents);
+		}
+
+		@Override
+		public URI toURI()
+		{
+			return uri;
+		}
+	}
+
+	private MemoryFileStore server;
+
+	private int compare(FTPConnectionPoint serverPoint) throws CoreException
+	{
+		MemoryFileStore client = new MemoryFileStore("/client/file.txt", "a\nb\n", 4);
+		server = new MemoryFileStore("/server/file.txt", "a\nb\n", 6);
+
+		Synchronizer synchronizer = new Synchronizer(true, 1000);
+		synchronizer.setClientFileManager(new LocalConnectionPoint());
+		synchronizer.setServerFileManager(serverPoint);
+		synchronizer.setClientFileRoot(new MemoryFileStore("/client", "", 0));
+		synchronizer.setServerFileRoot(new MemoryFileStore("/server", "", 0));
+		VirtualFileSyncPair[] items = synchronizer.createSyncItems(new IFileStore[] { client },
+				new IFileStore[] { server }, new NullProgressMonitor());
+		assertEquals(1, items.length);
+		return items[0].getSyncState();
+	}
+
+	@Test
+	public void testASCIISizesDiffer() throws Exception
+	{
+		FTPConnectionPoint serverPoint = new FTPConnectionPoint();
+		serverPoint.setTransferType(IFTPConstants.TRANSFER_TYPE_ASCII);
+
+		assertEquals(SyncState.ItemsMatch, compare(serverPoint));
+	}
+
+	@Test
+	public void testBinarySizesDiffer() throws Exception
+	{
+		FTPConnectionPoint serverPoint = new FTPConnectionPoint();
+		serverPoint.setTransferType(IFTPConstants.TRANSFER_TYPE_BINARY);
+
+		assertEquals(SyncState.CRCMismatch, compare(serverPoint));
+		assertEquals(0, server.reads);
+	}
+
+	@Test
+	public void testIsSizeComparable() throws Exception
+	{
+		assertTrue(Synchronizer.isSizeComparable(new LocalConnectionPoint()));
+
+		FTPConnectionPoint ftp = new FTPConnectionPoint();
+		assertFalse(Synchronizer.isSizeComparable(ftp));
+		ftp.setTransferType(IFTPConstants.TRANSFER_TYPE_ASCII);
+		assertFalse(Synchronizer.isSizeComparable(ftp));
+		ftp.setTransferType(IFTPConstants.TRANSFER_TYPE_BINARY);
+		assertTrue(Synchronizer.isSizeComparable(ftp));
+
+		SFTPConnectionPoint sftp = new SFTPConnectionPoint();
+		sftp.setTransferType(ISFTPConstants.TRANSFER_TYPE_ASCII);
+		assertFalse(Synchronizer.isSizeComparable(sftp));
+		sftp.setTransferType(ISFTPConstants.TRANSFER_TYPE_BINARY);
+		assertTrue(Synchronizer.isSizeComparable(sftp));
+	}
+}
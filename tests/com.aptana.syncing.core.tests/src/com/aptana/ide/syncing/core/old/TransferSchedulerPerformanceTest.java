@@ -0,0 +1,100 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.ide.syncing.core.old;
+
+import static org.junit.Assert.assertEquals;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.aptana.filesystem.ftp.FTPConnectionPoint;
+import com.aptana.filesystem.secureftp.SFTPConnectionPoint;
+import com.aptana.ide.core.io.IConnectionPoint;
+import com.aptana.ide.core.io.LocalConnectionPoint;
+import com.aptana.testing.categories.PerformanceTests;
+
+/**
+ * Reports how many transfers per second go through the scheduler when each one takes as long as a round trip to a
+ * remote host.
+ */
+@Category({ PerformanceTests.class })
+@SuppressWarnings("nls")
+public class TransferSchedulerPerformanceTest
+{
+
+	private static final int FILES = 40;
+	private static final long LATENCY = 50;
+
+	private static class LatencyTransfer extends TransferScheduler.Transfer
+	{
+		int done;
+
+		@Override
+		void run(IProgressMonitor monitor)
+		{
+			try
+			{
+				Thread.sleep(LATENCY);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		@Override
+		void done(IProgressMonitor monitor)
+		{
+			done++;
+		}
+
+		@Override
+		void failed(Exception e, IProgressMonitor monitor)
+		{
+		}
+	}
+
+	private static void transfer(String label, IConnectionPoint server)
+	{
+		TransferScheduler scheduler = new TransferScheduler(new LocalConnectionPoint(), server, 4, null);
+		LatencyTransfer[] transfers = new LatencyTransfer[FILES];
+		long start = System.currentTimeMillis();
+		for (int i = 0; i < FILES; i++)
+		{
+			transfers[i] = new LatencyTransfer();
+			scheduler.schedule(transfers[i], new NullProgressMonitor());
+		}
+		scheduler.join();
+		long time = System.currentTimeMillis() - start;
+		scheduler.dispose();
+
+		for (LatencyTransfer transfer : transfers)
+		{
+			assertEquals(1, transfer.done);
+		}
+		System.out.println(label + ": " + (FILES * 1000 / Math.max(1, time)) + " files/sec");
+	}
+
+	@Test
+	public void testFTPThroughput()
+	{
+		FTPConnectionPoint server = new FTPConnectionPoint();
+		server.setHost("ftp.performance.test");
+		transfer("FTP", server);
+	}
+
+	@Test
+	public void testSFTPThroughput()
+	{
+		SFTPConnectionPoint server = new SFTPConnectionPoint();
+		server.setHost("sftp.performance.test");
+		transfer("SFTP", server);
+	}
+}
@@ -0,0 +1,287 @@
+/**
+ * Aptana Studio
+ * Copyright (c) 2005-2013 by Appcelerator, Inc. All Rights Reserved.
+ * Licensed under the terms of the GNU Public License (GPL) v3 (with exceptions).
+ * Please see the license.html included with this distribution for details.
+ * Any modifications to this file must keep this entire header intact.
+ */
+package com.aptana.ide.syncing.core.old;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Status;
+import org.junit.Test;
+
+import com.aptana.filesystem.ftp.FTPConnectionPoint;
+import com.aptana.filesystem.secureftp.SFTPConnectionPoint;
+import com.aptana.ide.core.io.IConnectionPoint;
+import com.aptana.ide.core.io.LocalConnectionPoint;
+import com.aptana.ide.syncing.core.SyncingPlugin;
+
+/**
+ * Runs transfers that stand in for the files of a server: each one takes as long as a round trip to a remote host.
+ */
+@SuppressWarnings("nls")
+public class TransferSchedulerTest
+{
+
+	private static final int FILES = 40;
+	private static final long LATENCY = 50;
+
+	/**
+	 * Counts the transfers that run at the same time, and the ones reported done or failed.
+	 */
+	private static class Counter
+	{
+		final AtomicInteger active = new AtomicInteger();
+		final AtomicInteger maxActive = new AtomicInteger();
+		int done;
+		int failed;
+	}
+
+	private static class LatencyTransfer extends TransferScheduler.Transfer
+	{
+		private final Counter counter;
+		private final Thread schedulingThread = Thread.currentThread();
+
+		LatencyTransfer(Counter counter)
+		{
+			this.counter = counter;
+		}
+
+		@Override
+		void run(IProgressMonitor monitor) throws CoreException
+		{
+			int active = counter.active.incrementAndGet();
+			synchronized (counter.maxActive)
+			{
+				counter.maxActive.set(Math.max(active, counter.maxActive.get()));
+			}
+			try
+			{
+				Thread.sleep(LATENCY);
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			finally
+			{
+				counter.active.decrementAndGet();
+			}
+		}
+
+		@Override
+		void done(IProgressMonitor monitor)
+		{
+			assertSame(schedulingThread, Thread.currentThread());
+			counter.done++;
+		}
+
+		@Override
+		void failed(Exception e, IProgressMonitor monitor)
+		{
+			assertSame(schedulingThread, Thread.currentThread());
+			counter.failed++;
+		}
+	}
+
+	/**
+	 * A transfer that fails with the given cause the first times it runs.
+	 */
+	private static class FailingTransfer extends TransferScheduler.Transfer
+	{
+		private final Throwable cause;
+		private final int failures;
+		int attempts;
+		boolean done;
+		Exception error;
+
+		FailingTransfer(Throwable cause, int failures)
+		{
+			this.cause = cause;
+			this.failures = failures;
+		}
+
+		@Override
+		void run(IProgressMonitor monitor) throws CoreException
+		{
+			if (attempts++ < failures)
+			{
+				throw new CoreException(new Status(IStatus.ERROR, SyncingPlugin.PLUGIN_ID, "transfer failed", cause));
+			}
+		}
+
+		@Override
+		void done(IProgressMonitor monitor)
+		{
+			done = true;
+		}
+
+		@Override
+		void failed(Exception e, IProgressMonitor monitor)
+		{
+			error = e;
+		}
+	}
+
+	private static IConnectionPoint ftp(String host)
+	{
+		FTPConnectionPoint connectionPoint = new FTPConnectionPoint();
+		connectionPoint.setHost(host);
+		return connectionPoint;
+	}
+
+	private static IConnectionPoint sftp(String host)
+	{
+		SFTPConnectionPoint connectionPoint = new SFTPConnectionPoint();
+		connectionPoint.setHost(host);
+		return connectionPoint;
+	}
+
+	@Test
+	public void testFTPTransfersRunConcurrently()
+	{
+		TransferScheduler scheduler = new TransferScheduler(new LocalConnectionPoint(), ftp("ftp.concurrent.test"), 4,
+				null);
+		assertEquals(4, scheduler.getConcurrency());
+
+		Counter counter = new Counter();
+		for (int i = 0; i < FILES; i++)
+		{
+			scheduler.schedule(new LatencyTransfer(counter), new NullProgressMonitor());
+		}
+		scheduler.join();
+		scheduler.dispose();
+
+		assertEquals(FILES, counter.done);
+		assertEquals(0, counter.failed);
+		assertEquals(4, counter.maxActive.get());
+	}
+
+	@Test
+	public void testSFTPTransfersRunOneAtATime()
+	{
+		TransferScheduler scheduler = new TransferScheduler(new LocalConnectionPoint(), sftp("sftp.serial.test"), 4,
+				null);
+		assertEquals(1, scheduler.getConcurrency());
+
+		Counter counter = new Counter();
+		for (int i = 0; i < FILES / 4; i++)
+		{
+			scheduler.schedule(new LatencyTransfer(counter), new NullProgressMonitor());
+			// runs right away
+			assertEquals(i + 1, counter.done);
+		}
+		scheduler.join();
+		scheduler.dispose();
+
+		assertEquals(FILES / 4, counter.done);
+		assertEquals(0, counter.failed);
+		assertEquals(1, counter.maxActive.get());
+	}
+
+	@Test
+	public void testTransfersPerHostAreLimited()
+	{
+		IConnectionPoint server = ftp("ftp.limit.test");
+		TransferScheduler first = new TransferScheduler(new LocalConnectionPoint(), server, 4, null);
+		TransferScheduler second = new TransferScheduler(new LocalConnectionPoint(), server, 4, null);
+
+		Counter counter = new Counter();
+		for (int i = 0; i < FILES / 2; i++)
+		{
+			first.schedule(new LatencyTransfer(counter), new NullProgressMonitor());
+			second.schedule(new LatencyTransfer(counter), new NullProgressMonitor());
+		}
+		first.join();
+		second.join();
+		first.dispose();
+		second.dispose();
+
+		assertEquals(FILES, counter.done);
+		assertEquals(TransferScheduler.MAX_TRANSFERS_PER_HOST, counter.maxActive.get());
+	}
+
+	@Test
+	public void testTransientFailureIsRetried()
+	{
+		TransferScheduler scheduler = new TransferScheduler(new LocalConnectionPoint(), ftp("ftp.retry.test"), 4,
+				null);
+		FailingTransfer transfer = new FailingTransfer(new IOException("Connection reset"), 1);
+		scheduler.schedule(transfer, new NullProgressMonitor());
+		scheduler.join();
+		scheduler.dispose();
+
+		assertEquals(2, transfer.attempts);
+		assertTrue(transfer.done);
+		assertFalse(scheduler.hasFailed());
+	}
+
+	@Test
+	public void testRetriesAreLimited()
+	{
+		TransferScheduler scheduler = new TransferScheduler(new LocalConnectionPoint(), ftp("ftp.retry.test"), 4,
+				null);
+		FailingTransfer transfer = new FailingTransfer(new IOException("Connection reset"), Integer.MAX_VALUE);
+		scheduler.schedule(transfer, new NullProgressMonitor());
+		scheduler.join();
+		scheduler.dispose();
+
+		assertEquals(TransferScheduler.MAX_RETRIES + 1, transfer.attempts);
+		assertFalse(transfer.done);
+		assertTrue(transfer.error instanceof CoreException);
+	}
+
+	@Test
+	public void testMissingFileIsNotRetried()
+	{
+		TransferScheduler scheduler = new TransferScheduler(new LocalConnectionPoint(), ftp("ftp.retry.test"), 4,
+				null);
+		FailingTransfer transfer = new FailingTransfer(new FileNotFoundException("/missing.txt"), 1);
+		scheduler.schedule(transfer, new NullProgressMonitor());
+		scheduler.join();
+		scheduler.dispose();
+
+		assertEquals(1, transfer.attempts);
+		assertFalse(transfer.done);
+		assertTrue(transfer.error instanceof CoreException);
+	}
+
+	@Test
+	public void testFailureStopsLaterTransfers()
+	{
+		final TransferScheduler scheduler = new TransferScheduler(new LocalConnectionPoint(), sftp("sftp.stop.test"),
+				4, null);
+		FailingTransfer failing = new FailingTransfer(new FileNotFoundException("/missing.txt"), 1)
+		{
+			@Override
+			void failed(Exception e, IProgressMonitor monitor)
+			{
+				super.failed(e, monitor);
+				scheduler.fail(true);
+			}
+		};
+		scheduler.schedule(failing, new NullProgressMonitor());
+		assertTrue(scheduler.isStopped());
+
+		Counter counter = new Counter();
+		scheduler.schedule(new LatencyTransfer(counter), new NullProgressMonitor());
+		scheduler.join();
+		scheduler.dispose();
+
+		assertEquals(0, counter.done);
+		assertTrue(scheduler.hasFailed());
+	}
+}
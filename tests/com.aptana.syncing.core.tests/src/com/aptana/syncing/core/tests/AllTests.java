@@ -11,10 +11,14 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
+import com.aptana.ide.syncing.core.old.SynchronizerCompareTest;
+import com.aptana.ide.syncing.core.old.TransferSchedulerTest;
+
 @RunWith(Suite.class)
 @SuiteClasses({ LocalSyncingTest.class, LocalSyncingWithSpacesTest.class, FTPSyncingTest.class,
 		FTPSyncingWithSpacesTest.class, SFTPSyncingTest.class, SFTPSyncingWithSpacesTest.class,
-		LocalLargeSampleSyncingTest.class, FTPLargeSampleSyncingTest.class, })
+		LocalLargeSampleSyncingTest.class, FTPLargeSampleSyncingTest.class, TransferSchedulerTest.class,
+		SynchronizerCompareTest.class, })
 public class AllTests
 {
 }
@@ -861,6 +861,56 @@ public abstract class SyncingTests
 		assertEquals(SyncState.ItemsMatch, items[0].getSyncState());
 	}
 
+	/**
+	 * testFilesCRCsMatchAfterUpload. The upload records the files in the sync manifest, which a new synchronizer loads.
+	 * 
+	 * @throws IOException
+	 * @throws CoreException
+	 */
+	@Test
+	public void testFilesCRCsMatchAfterUpload() throws IOException, CoreException
+	{
+		long currentTime = new Date().getTime();
+		this.createClientFile(fileName, currentTime, "abc123");
+		this.createServerFile(fileName, currentTime, "xyz789");
+
+		Synchronizer syncManager = new Synchronizer(true, 0);
+		VirtualFileSyncPair[] items = syncManager.getSyncItems(clientManager, serverManager, clientDirectory,
+				serverDirectory, null);
+		assertEquals(SyncState.CRCMismatch, items[0].getSyncState());
+		assertTrue(syncManager.upload(items, null));
+
+		items = this.getSyncItems(true, 0);
+
+		assertSyncPairLength(1, items);
+		assertEquals(SyncState.ItemsMatch, items[0].getSyncState());
+	}
+
+	/**
+	 * testFilesCRCsDifferAfterSync. The client file changed since the files were found identical, so is read again and
+	 * compared to the CRC recorded for the server file.
+	 * 
+	 * @throws IOException
+	 * @throws CoreException
+	 */
+	@Test
+	public void testFilesCRCsDifferAfterSync() throws IOException, CoreException
+	{
+		long currentTime = new Date().getTime();
+		this.createClientFile(fileName, currentTime, "abc123");
+		this.createServerFile(fileName, currentTime, "abc123");
+
+		VirtualFileSyncPair[] items = this.getSyncItems(true, 5000);
+		assertEquals(SyncState.ItemsMatch, items[0].getSyncState());
+
+		// same size, within the time tolerance
+		this.createClientFile(fileName, currentTime + 2000, "abc456");
+		items = this.getSyncItems(true, 5000);
+
+		assertSyncPairLength(1, items);
+		assertEquals(SyncState.CRCMismatch, items[0].getSyncState());
+	}
+
 	/**
 	 * testDirectoryCRCsMatch This confirms that turning on CRC checking doesn't involve directories
 	 * 
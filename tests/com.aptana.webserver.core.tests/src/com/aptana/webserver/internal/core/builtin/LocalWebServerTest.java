@@ -12,8 +12,10 @@
 package com.aptana.webserver.internal.core.builtin;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -22,6 +24,7 @@ import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.zip.GZIPInputStream;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.NullProgressMonitor;
@@ -77,4 +80,180 @@ public class LocalWebServerTest
 			}
 		}
 	}
+
+	@Test
+	public void testConditionalGet() throws IOException, CoreException
+	{
+		LocalWebServer webServer = startServer(PAGE_CONTENTS);
+		try
+		{
+			URL url = webServer.getBaseURL();
+			HttpURLConnection connection = openConnection(url);
+			assertEquals(HttpURLConnection.HTTP_OK, connection.getResponseCode());
+			String etag = connection.getHeaderField("ETag"); //$NON-NLS-1$
+			String lastModified = connection.getHeaderField("Last-Modified"); //$NON-NLS-1$
+			assertNotNull(etag);
+			assertNotNull(lastModified);
+			assertEquals(PAGE_CONTENTS, read(connection.getInputStream()));
+
+			connection = openConnection(url);
+			connection.setRequestProperty("If-None-Match", etag); //$NON-NLS-1$
+			assertEquals(HttpURLConnection.HTTP_NOT_MODIFIED, connection.getResponseCode());
+			assertEquals(etag, connection.getHeaderField("ETag")); //$NON-NLS-1$
+
+			connection = openConnection(url);
+			connection.setRequestProperty("If-Modified-Since", lastModified); //$NON-NLS-1$
+			assertEquals(HttpURLConnection.HTTP_NOT_MODIFIED, connection.getResponseCode());
+
+			connection = openConnection(url);
+			connection.setRequestProperty("If-None-Match", "\"other\""); //$NON-NLS-1$ //$NON-NLS-2$
+			assertEquals(HttpURLConnection.HTTP_OK, connection.getResponseCode());
+			assertEquals(PAGE_CONTENTS, read(connection.getInputStream()));
+		}
+		finally
+		{
+			webServer.stop(true, new NullProgressMonitor());
+		}
+	}
+
+	@Test
+	public void testRange() throws IOException, CoreException
+	{
+		LocalWebServer webServer = startServer(PAGE_CONTENTS);
+		try
+		{
+			URL url = webServer.getBaseURL();
+			HttpURLConnection connection = openConnection(url);
+			connection.setRequestProperty("Range", "bytes=6-11"); //$NON-NLS-1$ //$NON-NLS-2$
+			assertEquals(HttpURLConnection.HTTP_PARTIAL, connection.getResponseCode());
+			String contentRange = connection.getHeaderField("Content-Range"); //$NON-NLS-1$
+			assertEquals("bytes 6-11/" + PAGE_CONTENTS.length(), contentRange); //$NON-NLS-1$
+			assertEquals(PAGE_CONTENTS.substring(6, 12), read(connection.getInputStream()));
+
+			connection = openConnection(url);
+			connection.setRequestProperty("Range", "bytes=-7"); //$NON-NLS-1$ //$NON-NLS-2$
+			assertEquals(HttpURLConnection.HTTP_PARTIAL, connection.getResponseCode());
+			assertEquals(PAGE_CONTENTS.substring(PAGE_CONTENTS.length() - 7), read(connection.getInputStream()));
+
+			connection = openConnection(url);
+			String range = "bytes=" + PAGE_CONTENTS.length() + "-"; //$NON-NLS-1$ //$NON-NLS-2$
+			connection.setRequestProperty("Range", range); //$NON-NLS-1$
+			assertEquals(416, connection.getResponseCode());
+		}
+		finally
+		{
+			webServer.stop(true, new NullProgressMonitor());
+		}
+	}
+
+	@Test
+	public void testGzip() throws IOException, CoreException
+	{
+		StringBuilder contents = new StringBuilder(PAGE_CONTENTS);
+		for (int i = 0; i < 20; i++)
+		{
+			contents.append("<p>Some more text</p>"); //$NON-NLS-1$
+		}
+		LocalWebServer webServer = startServer(contents.toString());
+		try
+		{
+			HttpURLConnection connection = openConnection(webServer.getBaseURL());
+			connection.setRequestProperty("Accept-Encoding", "gzip"); //$NON-NLS-1$ //$NON-NLS-2$
+			assertEquals(HttpURLConnection.HTTP_OK, connection.getResponseCode());
+			assertEquals("gzip", connection.getHeaderField("Content-Encoding")); //$NON-NLS-1$ //$NON-NLS-2$
+			assertTrue(connection.getContentLength() < contents.length());
+			assertEquals(contents.toString(), read(new GZIPInputStream(connection.getInputStream())));
+		}
+		finally
+		{
+			webServer.stop(true, new NullProgressMonitor());
+		}
+	}
+
+	@Test
+	public void testLiveReload() throws IOException, CoreException
+	{
+		LocalWebServer webServer = startServer(PAGE_CONTENTS, true);
+		try
+		{
+			URL url = webServer.getBaseURL();
+			String page = read(openConnection(url).getInputStream());
+			assertTrue(page.endsWith(LiveReloadChannel.SCRIPT_TAG + "</body>")); //$NON-NLS-1$
+
+			HttpURLConnection connection = openConnection(new URL(url, LiveReloadChannel.SCRIPT_PATH));
+			assertEquals(HttpURLConnection.HTTP_OK, connection.getResponseCode());
+			assertTrue(read(connection.getInputStream()).contains(LiveReloadChannel.EVENTS_PATH));
+
+			connection = openConnection(new URL(url, LiveReloadChannel.EVENTS_PATH));
+			connection.setReadTimeout(5000);
+			assertEquals(HttpURLConnection.HTTP_OK, connection.getResponseCode());
+			assertTrue(connection.getContentType().startsWith("text/event-stream")); //$NON-NLS-1$
+			BufferedReader events = new BufferedReader(new InputStreamReader(connection.getInputStream()));
+			try
+			{
+				LiveReloadChannel channel = webServer.getLiveReloadChannel();
+				assertEquals(1, channel.getStreamCount());
+				channel.broadcast("/css/site.css"); //$NON-NLS-1$
+
+				String line;
+				while ((line = events.readLine()) != null && !line.startsWith("event:")) //$NON-NLS-1$
+				{
+					// skips the opening retry field
+				}
+				assertEquals("event: change", line); //$NON-NLS-1$
+				assertEquals("data: /css/site.css", events.readLine()); //$NON-NLS-1$
+			}
+			finally
+			{
+				events.close();
+			}
+		}
+		finally
+		{
+			webServer.stop(true, new NullProgressMonitor());
+		}
+	}
+
+	private LocalWebServer startServer(String contents) throws IOException
+	{
+		return startServer(contents, false);
+	}
+
+	private LocalWebServer startServer(String contents, boolean liveReload) throws IOException
+	{
+		File dir = File.createTempFile(getClass().getSimpleName(), "temp"); //$NON-NLS-1$
+		assertTrue(dir.delete());
+		assertTrue(dir.mkdir());
+		File file = new File(dir, "index.html"); //$NON-NLS-1$
+		OutputStreamWriter w = new OutputStreamWriter(new FileOutputStream(file));
+		w.write(contents);
+		w.close();
+
+		LocalWebServer webServer = new LocalWebServer(dir.toURI());
+		webServer.setLiveReloadEnabled(liveReload);
+		webServer.start(ILaunchManager.RUN_MODE, new NullProgressMonitor());
+		return webServer;
+	}
+
+	private static HttpURLConnection openConnection(URL url) throws IOException
+	{
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		connection.setAllowUserInteraction(false);
+		connection.setUseCaches(false);
+		return connection;
+	}
+
+	private static String read(InputStream stream) throws IOException
+	{
+		InputStreamReader in = new InputStreamReader(stream);
+		StringBuffer sb = new StringBuffer();
+		int n;
+		char[] cbuf = new char[1024];
+		while ((n = in.read(cbuf)) > 0)
+		{
+			sb.append(new String(cbuf, 0, n));
+		}
+		in.close();
+		return sb.toString();
+	}
 }
@@ -20,7 +20,8 @@ import org.junit.runners.Suite.SuiteClasses;
 @RunWith(Suite.class)
 //@formatter:off
 @SuiteClasses({
-	VT100EmulatorBackendTest.class
+	VT100EmulatorBackendTest.class,
+	VT100EmulatorPerformanceTest.class
 })
 //@formatter:on
 public class AllTests
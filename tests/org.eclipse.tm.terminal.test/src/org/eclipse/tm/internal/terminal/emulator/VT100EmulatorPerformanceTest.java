@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (c) 2007 Wind River Systems, Inc. and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ * Michael Scharf (Wind River) - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.tm.internal.terminal.emulator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+
+import org.eclipse.tm.internal.terminal.control.impl.ITerminalControlForText;
+import org.eclipse.tm.internal.terminal.provisional.api.ITerminalConnector;
+import org.eclipse.tm.internal.terminal.provisional.api.TerminalState;
+import org.eclipse.tm.terminal.model.ITerminalTextData;
+import org.eclipse.tm.terminal.model.TerminalTextDataFactory;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import com.aptana.testing.categories.PerformanceTests;
+
+/**
+ * Measures how fast the emulator processes a build log, in MB/sec.
+ */
+@Category({ PerformanceTests.class })
+public class VT100EmulatorPerformanceTest {
+	static final int SIZE=8*1024*1024;
+	static final String ENCODING="ISO-8859-1";
+
+	@Test
+	public void testPlainText() throws UnsupportedEncodingException {
+		run("plain", makeLog(false));
+	}
+
+	@Test
+	public void testAnsiText() throws UnsupportedEncodingException {
+		run("ansi ", makeLog(true));
+	}
+
+	private byte[] makeLog(boolean colored) throws UnsupportedEncodingException {
+		StringBuffer buffer=new StringBuffer(SIZE+100);
+		for (int i = 0; buffer.length() < SIZE; i++) {
+			if(colored)
+				buffer.append(i%10==0?"\u001b[1;31m[ERROR]\u001b[0m ":"\u001b[32m[INFO]\u001b[0m ");
+			else
+				buffer.append(i%10==0?"[ERROR] ":"[INFO] ");
+			buffer.append("Compiling "+i+" source files to /home/build/workspace/project/target/classes\r\n");
+		}
+		return buffer.toString().getBytes(ENCODING);
+	}
+
+	private void run(String label, byte[] log) throws UnsupportedEncodingException {
+		ITerminalTextData data=TerminalTextDataFactory.makeTerminalTextData();
+		data.setMaxHeight(1000);
+		// unlike a StringReader, this one isn't ready at the end of the text
+		InputStreamReader reader=new InputStreamReader(new ByteArrayInputStream(log), ENCODING);
+		VT100Emulator emulator=new VT100Emulator(data, new ITerminalControlForText() {
+			public TerminalState getState() {
+				return TerminalState.CONNECTED;
+			}
+			public void setState(TerminalState state) {
+			}
+			public void setTerminalTitle(String title) {
+			}
+			public void setApplicationKeypad(boolean mode) {
+			}
+			public ITerminalConnector getTerminalConnector() {
+				return null;
+			}
+			public OutputStream getOutputStream() {
+				return new ByteArrayOutputStream();
+			}
+		}, reader);
+		emulator.setDimensions(24, 132);
+
+		long t0=System.currentTimeMillis();
+		emulator.processText();
+		long t=Math.max(1, System.currentTimeMillis()-t0);
+		System.out.println(label+" "+(log.length*1000L/t)/(1024*1024)+" MB/sec "+data.getHeight());
+	}
+}
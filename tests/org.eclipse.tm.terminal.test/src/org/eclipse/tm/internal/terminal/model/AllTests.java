@@ -25,6 +25,7 @@ import org.junit.runners.Suite.SuiteClasses;
 	TerminalTextDataFastScrollTest.class,
 	TerminalTextDataFastScrollTestMaxHeigth.class,
 	TerminalTextDataPerformanceTest.class,
+	TerminalTextDataRingStoreTest.class,
 	TerminalTextDataSnapshotTest.class,
 	TerminalTextDataSnapshotWindowTest.class,
 	TerminalTextDataStoreTest.class,
@@ -122,6 +122,48 @@ public class TerminalTextDataPerformanceTest {
 		}
 	}
 	
+	@Test
+	public void testPerformance0Ring() {
+		ITerminalTextData term=new TerminalTextData(new TerminalTextDataRingStore());
+		method0(term,"0r");
+	}
+	
+	@Test
+	public void testPerformance1Ring() {
+		ITerminalTextData term=new TerminalTextData(new TerminalTextDataRingStore());
+		method1(term, "1r");
+	}
+	
+	@Test
+	public void testPerformanceScroll() {
+		ITerminalTextData term=new TerminalTextData(new TerminalTextDataFastScroll(10000));
+		methodScroll(term, "s ");
+	}
+	
+	@Test
+	public void testPerformanceScrollRing() {
+		ITerminalTextData term=new TerminalTextData(new TerminalTextDataRingStore());
+		methodScroll(term, "sr");
+	}
+	private void methodScroll(ITerminalTextData term, String label) {
+		Style style=Style.getStyle(StyleColor.getStyleColor("fg"), StyleColor.getStyleColor("bg"), false, false, false, false);
+		term.setMaxHeight(10000);
+		term.setDimensions(1,200);
+		String s="This is a test string";
+		long n=0;
+		long t0=System.currentTimeMillis();
+		for (int i = 0; i < 10000000; i++) {
+			char[] chars=s.toCharArray();
+			term.addLine();
+			term.setChars(term.getHeight()-1, 0, chars, style);
+			n++;
+			if(System.currentTimeMillis()-t0>TIME) {
+				System.out.println(label+" "+(n*1000)/(System.currentTimeMillis()-t0)+" addLine()/sec "+term.getHeight());
+				break;
+			}
+		}
+	}
+	
 	@Test
 	public void testPerformance2() {
 		TerminalTextData term=new TerminalTextData();